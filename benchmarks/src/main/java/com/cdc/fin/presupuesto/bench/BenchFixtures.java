@@ -0,0 +1,184 @@
+package com.cdc.fin.presupuesto.bench;
+
+import com.cdc.fin.presupuesto.model.Departamento;
+import com.cdc.fin.presupuesto.model.Presupuesto;
+import com.cdc.fin.presupuesto.model.SolicitudPresupuesto;
+import com.cdc.fin.presupuesto.repository.BulkWriter;
+import com.cdc.fin.presupuesto.repository.CatalogGenerations;
+import com.cdc.fin.presupuesto.repository.DepartamentoRepository;
+import com.cdc.fin.presupuesto.repository.PresupuestoRepository;
+import com.cdc.fin.presupuesto.service.CsvImportPipeline;
+import com.cdc.fin.presupuesto.service.LocalDiskExportStorage;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Datos sintéticos y armado de repositorios sobre InMemoryDynamoDbClient.
+ * La semilla es fija para que las corridas sean comparables entre sí.
+ */
+public final class BenchFixtures {
+
+    public static final String SOLICITUDES = "solicitudes";
+    public static final String PRESUPUESTOS = "presupuestos";
+    public static final String DEPARTAMENTOS = "departamentos";
+    public static final String PROVEEDORES = "proveedores";
+    public static final String CATEGORIAS = "categorias-gasto";
+
+    // Catálogos de tamaño similar al de producción
+    public static final int CECOS = 400;
+    public static final int CUENTAS = 60;
+
+    private static final String[] ESTATUS = {"Pendiente", "Aprobado", "Rechazado", "Procesado"};
+    private static final String[] DEPTOS = {"Finanzas", "Tecnología", "Operaciones", "Comercial", "Recursos Humanos"};
+
+    private BenchFixtures() {}
+
+    public static InMemoryDynamoDbClient newClient() {
+        return new InMemoryDynamoDbClient()
+            .createTable(SOLICITUDES, "id", "solicitudId")
+            .createTable(PRESUPUESTOS, "id")
+            .createTable(DEPARTAMENTOS, "id")
+            .createTable(PROVEEDORES, "id")
+            .createTable(CATEGORIAS, "id");
+    }
+
+    public static DynamoDbEnhancedClient enhanced(InMemoryDynamoDbClient client) {
+        return DynamoDbEnhancedClient.builder().dynamoDbClient(client).build();
+    }
+
+    /** BulkWriter con la concurrencia por defecto, sobre el pool común. */
+    public static BulkWriter bulkWriter(InMemoryDynamoDbClient client) {
+        return new BulkWriter(client, ForkJoinPool.commonPool(), 4, 8, 0);
+    }
+
+    /** Generaciones de catálogo; sin item de control todas las filas son visibles. */
+    public static CatalogGenerations generations(InMemoryDynamoDbClient client, BulkWriter bulkWriter) {
+        return new CatalogGenerations(client, bulkWriter, 5000);
+    }
+
+    /** Pipeline de importación con los valores por defecto y reportes de errores en un directorio temporal. */
+    public static CsvImportPipeline csvImportPipeline() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(16);
+        executor.setDaemon(true);
+        executor.setThreadNamePrefix("bench-import-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        try {
+            LocalDiskExportStorage storage = new LocalDiskExportStorage(
+                Files.createTempDirectory("bench-import").toString());
+            return new CsvImportPipeline(executor, storage, 500, 4, 1000, 100);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static List<SolicitudPresupuesto> solicitudes(int rows) {
+        Random random = new Random(42);
+        List<SolicitudPresupuesto> list = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            SolicitudPresupuesto s = new SolicitudPresupuesto();
+            s.setId("EMP" + (i % 2000));
+            s.setSolicitudId(String.format("SOL-%08d", i));
+            s.setNumeroEmpleado("EMP" + (i % 2000));
+            s.setSolicitante("Empleado " + (i % 2000));
+            s.setCorreo("empleado" + (i % 2000) + "@cdc.com");
+            s.setEstatusConfirmacion(ESTATUS[random.nextInt(ESTATUS.length)]);
+            s.setDepartamento(DEPTOS[random.nextInt(DEPTOS.length)]);
+            s.setSubDepartamento("Sub " + random.nextInt(40));
+            s.setCentroCostos((1000 + random.nextInt(CECOS)) + "-Centro");
+            s.setCuentaGastos(String.valueOf(6000 + random.nextInt(CUENTAS)));
+            s.setCategoriaGasto("Categoria " + random.nextInt(120));
+            s.setProveedor("Proveedor " + random.nextInt(5000));
+            s.setPeriodoPresupuesto("2025-" + (1 + random.nextInt(12)));
+            s.setFecha("2025-" + String.format("%02d-%02d", 1 + random.nextInt(12), 1 + random.nextInt(28)));
+            s.setMontoSubtotal(100 + random.nextInt(100_000));
+            list.add(s);
+        }
+        return list;
+    }
+
+    /**
+     * Carga presupuestos para la mitad de las combinaciones (CeCo, Cuenta) y un departamento por CeCo,
+     * así el export ejercita tanto la búsqueda directa como el respaldo por PresupuestoDefault.
+     */
+    public static void seedCatalogos(PresupuestoRepository presupuestos, DepartamentoRepository departamentos) {
+        List<Presupuesto> ps = new ArrayList<>();
+        List<Departamento> ds = new ArrayList<>();
+        for (int c = 0; c < CECOS; c++) {
+            String ceco = String.valueOf(1000 + c);
+            for (int a = 0; a < CUENTAS; a += 2) {
+                Presupuesto p = new Presupuesto();
+                p.setId(ceco + "-" + (6000 + a));
+                p.setCeco(ceco);
+                p.setCuentaGastos(String.valueOf(6000 + a));
+                p.setPresupuesto(String.valueOf(50_000 + c * 10 + a));
+                ps.add(p);
+            }
+            Departamento d = new Departamento();
+            d.setId("DEP-" + ceco);
+            d.setCeco(ceco);
+            d.setNombreDepartamento(DEPTOS[c % DEPTOS.length]);
+            d.setSubDepartamento("Sub " + (c % 40));
+            d.setRrhh("rrhh" + (c % 10) + "@cdc.com");
+            d.setPresupuestoDefault(String.valueOf(25_000 + c));
+            ds.add(d);
+        }
+        presupuestos.saveAll(ps);
+        departamentos.saveAll(ds);
+    }
+
+    public static byte[] proveedoresCsv(int rows) {
+        StringBuilder sb = new StringBuilder(rows * 160);
+        sb.append("ID,Nombre,Duplicado,Categoria,Subsidiaria,Contacto,Telefono,Correo,Acceso,Numero,Cuentas\n");
+        for (int i = 0; i < rows; i++) {
+            sb.append("PRV").append(i).append(",\"Proveedor ").append(i).append(", S.A. de C.V.\",No,Servicios,CDC,")
+              .append("Contacto ").append(i).append(",555-").append(1000 + i % 9000).append(',')
+              .append("proveedor").append(i).append("@mail.com,No,").append(10_000 + i).append(",6001;6002\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static byte[] categoriasCsv(int rows) {
+        StringBuilder sb = new StringBuilder(rows * 80);
+        sb.append("Nombre,Descripcion,CuentaDeGastos,Cuenta,Saldo\n");
+        for (int i = 0; i < rows; i++) {
+            sb.append("Categoria ").append(i).append(",Descripción de la categoría ").append(i).append(',')
+              .append(6000 + i % CUENTAS).append(',').append(i).append(",\"$").append(1_000 + i).append(",307.56\"\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static byte[] presupuestosCsv(int rows) {
+        StringBuilder sb = new StringBuilder(rows * 90);
+        sb.append("CeCo,CuentaGastos,Descripcion,Periodo,Presupuesto,Responsable\n");
+        for (int i = 0; i < rows; i++) {
+            sb.append(1000 + i % CECOS).append(',').append(6000 + i % CUENTAS).append(",\"Gasto de operación, partida ")
+              .append(i).append("\",2024-").append(1 + i % 12).append(',').append(50_000 + i).append(",Responsable ")
+              .append(i % 50).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static byte[] departamentosCsv(int rows) {
+        StringBuilder sb = new StringBuilder(rows * 80);
+        sb.append("Departamento,Nombre,RRHH,CeCo,Presupuesto Default\n");
+        for (int i = 0; i < rows; i++) {
+            sb.append(DEPTOS[i % DEPTOS.length]).append(",Sub ").append(i).append(",rrhh").append(i % 10)
+              .append("@cdc.com,").append(1000 + i % CECOS).append(',').append(25_000 + i).append('\n');
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,131 @@
+package com.cdc.fin.presupuesto.bench;
+
+import com.cdc.fin.presupuesto.repository.BulkWriter;
+import com.cdc.fin.presupuesto.repository.CatalogGenerations;
+import com.cdc.fin.presupuesto.repository.CategoriaGastoRepository;
+import com.cdc.fin.presupuesto.repository.DepartamentoRepository;
+import com.cdc.fin.presupuesto.repository.PresupuestoRepository;
+import com.cdc.fin.presupuesto.repository.ProveedorRepository;
+import com.cdc.fin.presupuesto.service.CategoriaGastoService;
+import com.cdc.fin.presupuesto.service.CsvImportPipeline;
+import com.cdc.fin.presupuesto.service.DepartamentoService;
+import com.cdc.fin.presupuesto.service.ImportMetrics;
+import com.cdc.fin.presupuesto.service.ProveedorService;
+import com.cdc.fin.presupuesto.service.ProveedorTypeahead;
+import com.cdc.fin.presupuesto.service.ReferenceDataCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Importaciones CSV de catálogos de punta a punta (parseo en streaming, validación en paralelo y
+ * escritura en lotes sobre el doble en memoria). Las tablas se vacían antes de cada invocación.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvImportBenchmark {
+
+    @Param({"1000", "10000"})
+    public int rows;
+
+    private InMemoryDynamoDbClient client;
+    private ProveedorService proveedorService;
+    private CategoriaGastoService categoriaGastoService;
+    private DepartamentoService departamentoService;
+
+    private MockMultipartFile proveedoresCsv;
+    private MockMultipartFile categoriasCsv;
+    private MockMultipartFile departamentosCsv;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        client = BenchFixtures.newClient();
+        DynamoDbEnhancedClient enhanced = BenchFixtures.enhanced(client);
+        BulkWriter bulkWriter = BenchFixtures.bulkWriter(client);
+        CatalogGenerations generaciones = BenchFixtures.generations(client, bulkWriter);
+
+        ImportMetrics importMetrics = new ImportMetrics(new SimpleMeterRegistry());
+        CsvImportPipeline csvImportPipeline = BenchFixtures.csvImportPipeline();
+
+        ProveedorRepository proveedorRepository = new ProveedorRepository(enhanced, BenchFixtures.PROVEEDORES);
+        ReflectionTestUtils.setField(proveedorRepository, "bulkWriter", bulkWriter);
+        ReflectionTestUtils.setField(proveedorRepository, "generaciones", generaciones);
+        proveedorService = new ProveedorService();
+        ReflectionTestUtils.setField(proveedorService, "proveedorRepository", proveedorRepository);
+        ReflectionTestUtils.setField(proveedorService, "importMetrics", importMetrics);
+        ReflectionTestUtils.setField(proveedorService, "csvImportPipeline", csvImportPipeline);
+        ReflectionTestUtils.setField(proveedorService, "proveedorTypeahead", new ProveedorTypeahead(proveedorRepository));
+
+        CategoriaGastoRepository categoriaRepository = new CategoriaGastoRepository(enhanced, BenchFixtures.CATEGORIAS);
+        ReflectionTestUtils.setField(categoriaRepository, "enhancedClient", enhanced);
+        ReflectionTestUtils.setField(categoriaRepository, "bulkWriter", bulkWriter);
+        ReflectionTestUtils.setField(categoriaRepository, "generaciones", generaciones);
+        categoriaGastoService = new CategoriaGastoService();
+        ReflectionTestUtils.setField(categoriaGastoService, "categoriaGastoRepository", categoriaRepository);
+        ReflectionTestUtils.setField(categoriaGastoService, "importMetrics", importMetrics);
+        ReflectionTestUtils.setField(categoriaGastoService, "csvImportPipeline", csvImportPipeline);
+
+        DepartamentoRepository departamentoRepository = new DepartamentoRepository(enhanced, BenchFixtures.DEPARTAMENTOS);
+        ReflectionTestUtils.setField(departamentoRepository, "enhancedClient", enhanced);
+        ReflectionTestUtils.setField(departamentoRepository, "bulkWriter", bulkWriter);
+        ReflectionTestUtils.setField(departamentoRepository, "generaciones", generaciones);
+        PresupuestoRepository presupuestoRepository = new PresupuestoRepository(enhanced, BenchFixtures.PRESUPUESTOS);
+        ReflectionTestUtils.setField(presupuestoRepository, "generaciones", generaciones);
+        departamentoService = new DepartamentoService();
+        ReflectionTestUtils.setField(departamentoService, "departamentoRepository", departamentoRepository);
+        ReflectionTestUtils.setField(departamentoService, "referenceDataCache",
+            new ReferenceDataCache(presupuestoRepository, departamentoRepository));
+        ReflectionTestUtils.setField(departamentoService, "importMetrics", importMetrics);
+        ReflectionTestUtils.setField(departamentoService, "csvImportPipeline", csvImportPipeline);
+
+        proveedoresCsv = csv("proveedores.csv", BenchFixtures.proveedoresCsv(rows));
+        categoriasCsv = csv("categorias.csv", BenchFixtures.categoriasCsv(rows));
+        departamentosCsv = csv("departamentos.csv", BenchFixtures.departamentosCsv(rows));
+    }
+
+    @Setup(Level.Invocation)
+    public void limpiarTablas() {
+        client.clear(BenchFixtures.PROVEEDORES);
+        client.clear(BenchFixtures.CATEGORIAS);
+        client.clear(BenchFixtures.DEPARTAMENTOS);
+    }
+
+    @Benchmark
+    public Map<String, Object> importarProveedores() throws Exception {
+        return proveedorService.importProveedoresFromCSV(proveedoresCsv, false);
+    }
+
+    @Benchmark
+    public Map<String, Object> importarCategorias() throws Exception {
+        return categoriaGastoService.importCategoriasFromCSV(categoriasCsv, false);
+    }
+
+    @Benchmark
+    public Map<String, Object> importarDepartamentos() throws Exception {
+        return departamentoService.importDepartamentosFromCSV(departamentosCsv, false);
+    }
+
+    private static MockMultipartFile csv(String name, byte[] content) {
+        return new MockMultipartFile("file", name, "text/csv", content);
+    }
+}
@@ -0,0 +1,172 @@
+package com.cdc.fin.presupuesto.bench;
+
+import com.cdc.fin.presupuesto.util.CategoriaIdGenerator;
+import com.cdc.fin.presupuesto.util.CsvTokenizer;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solo el parseo de los CSV de importación, sin validación ni escritura: OpenCSV (registro completo
+ * como String[]) contra {@link CsvTokenizer} leyendo el flujo y mapeando el archivo en disco.
+ * Proveedores usa las 11 columnas; presupuestos solo 3 de 6, donde pesa decodificar solo las
+ * columnas necesarias. También compara el ID de categoría con la cadena de regex anterior.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvParseBenchmark {
+
+    private static final int[] COLUMNAS_PROVEEDOR = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+    private static final int[] COLUMNAS_PRESUPUESTO = {0, 1, 4};
+    private static final String[] NOMBRES_CATEGORIA = {
+        "Papelería y artículos de oficina", "Energía eléctrica", "Señalización", "Mantenimiento - Equipo de cómputo",
+        "Viáticos nacionales", "Comisiones bancarias (México)", "Publicidad & mercadotecnia", "Capacitación"
+    };
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    private byte[] proveedores;
+    private byte[] presupuestos;
+    private Path proveedoresArchivo;
+    private Path presupuestosArchivo;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        proveedores = BenchFixtures.proveedoresCsv(rows);
+        presupuestos = BenchFixtures.presupuestosCsv(rows);
+        proveedoresArchivo = Files.createTempFile("bench-proveedores-", ".csv");
+        presupuestosArchivo = Files.createTempFile("bench-presupuestos-", ".csv");
+        Files.write(proveedoresArchivo, proveedores);
+        Files.write(presupuestosArchivo, presupuestos);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(proveedoresArchivo);
+        Files.deleteIfExists(presupuestosArchivo);
+    }
+
+    @Benchmark
+    public void proveedoresOpenCsv(Blackhole bh) throws Exception {
+        openCsv(proveedores, COLUMNAS_PROVEEDOR, bh);
+    }
+
+    @Benchmark
+    public void proveedoresTokenizerFlujo(Blackhole bh) throws IOException {
+        try (CsvTokenizer csv = CsvTokenizer.leer(new ByteArrayInputStream(proveedores))) {
+            tokenizer(csv, COLUMNAS_PROVEEDOR, bh);
+        }
+    }
+
+    @Benchmark
+    public void proveedoresTokenizerMapeado(Blackhole bh) throws IOException {
+        try (CsvTokenizer csv = CsvTokenizer.mapear(proveedoresArchivo)) {
+            tokenizer(csv, COLUMNAS_PROVEEDOR, bh);
+        }
+    }
+
+    @Benchmark
+    public void presupuestosOpenCsv(Blackhole bh) throws Exception {
+        openCsv(presupuestos, COLUMNAS_PRESUPUESTO, bh);
+    }
+
+    @Benchmark
+    public void presupuestosTokenizerFlujo(Blackhole bh) throws IOException {
+        try (CsvTokenizer csv = CsvTokenizer.leer(new ByteArrayInputStream(presupuestos))) {
+            tokenizer(csv, COLUMNAS_PRESUPUESTO, bh);
+        }
+    }
+
+    @Benchmark
+    public void presupuestosTokenizerMapeado(Blackhole bh) throws IOException {
+        try (CsvTokenizer csv = CsvTokenizer.mapear(presupuestosArchivo)) {
+            tokenizer(csv, COLUMNAS_PRESUPUESTO, bh);
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void categoriaIdRegex(Blackhole bh) {
+        for (String nombre : NOMBRES_CATEGORIA) {
+            bh.consume(categoriaIdRegex(nombre));
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void categoriaIdTabla(Blackhole bh) {
+        for (String nombre : NOMBRES_CATEGORIA) {
+            bh.consume(CategoriaIdGenerator.generar(nombre));
+        }
+    }
+
+    private static void openCsv(byte[] contenido, int[] columnas, Blackhole bh) throws Exception {
+        try (CSVReader csvReader = new CSVReaderBuilder(new InputStreamReader(new ByteArrayInputStream(contenido), StandardCharsets.UTF_8))
+                .withSkipLines(1)
+                .build()) {
+            String[] record;
+            while ((record = csvReader.readNext()) != null) {
+                for (int columna : columnas) {
+                    bh.consume(record[columna]);
+                }
+            }
+        }
+    }
+
+    private static void tokenizer(CsvTokenizer csv, int[] columnas, Blackhole bh) throws IOException {
+        csv.siguiente();
+        csv.seleccionar(columnas);
+        String[] record;
+        while ((record = csv.leerRegistro()) != null) {
+            for (int columna : columnas) {
+                bh.consume(record[columna]);
+            }
+        }
+    }
+
+    // Implementación anterior de CategoriaGastoService.generateCategoriaId
+    private static String categoriaIdRegex(String nombre) {
+        String normalized = nombre.trim()
+            .toUpperCase()
+            .replaceAll("[ÁÀÂÃÄÅ]", "A")
+            .replaceAll("[ÉÈÊË]", "E")
+            .replaceAll("[ÍÌÎÏ]", "I")
+            .replaceAll("[ÓÒÔÕÖ]", "O")
+            .replaceAll("[ÚÙÛÜ]", "U")
+            .replaceAll("[Ñ]", "N")
+            .replaceAll("[Ç]", "C")
+            .replaceAll("[^A-Z0-9]", "_")
+            .replaceAll("_+", "_")
+            .replaceAll("^_|_$", "");
+        if (normalized.length() > 50) {
+            normalized = normalized.substring(0, 50);
+        }
+        return "CAT_" + normalized;
+    }
+}
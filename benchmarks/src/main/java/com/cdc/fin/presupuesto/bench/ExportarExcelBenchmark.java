@@ -0,0 +1,90 @@
+package com.cdc.fin.presupuesto.bench;
+
+import com.cdc.fin.presupuesto.model.SolicitudPresupuesto;
+import com.cdc.fin.presupuesto.repository.BulkWriter;
+import com.cdc.fin.presupuesto.repository.CatalogGenerations;
+import com.cdc.fin.presupuesto.repository.DepartamentoRepository;
+import com.cdc.fin.presupuesto.repository.PresupuestoRepository;
+import com.cdc.fin.presupuesto.repository.SolicitudPresupuestoRepository;
+import com.cdc.fin.presupuesto.service.ProcesarSolicitudesService;
+import com.cdc.fin.presupuesto.service.ReferenceDataCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Armado del Excel de /procesar: búsqueda de presupuesto por fila sobre la foto de
+ * ReferenceDataCache y escritura SXSSF. El archivo se descarta para no medir disco.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportarExcelBenchmark {
+
+    @Param({"1000", "10000"})
+    public int rows;
+
+    private ProcesarSolicitudesService service;
+    private ReferenceDataCache referenceDataCache;
+    private List<SolicitudPresupuesto> solicitudes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        InMemoryDynamoDbClient client = BenchFixtures.newClient();
+        DynamoDbEnhancedClient enhanced = BenchFixtures.enhanced(client);
+        PresupuestoRepository presupuestos = new PresupuestoRepository(enhanced, BenchFixtures.PRESUPUESTOS);
+        DepartamentoRepository departamentos = new DepartamentoRepository(enhanced, BenchFixtures.DEPARTAMENTOS);
+        BulkWriter bulkWriter = BenchFixtures.bulkWriter(client);
+        ReflectionTestUtils.setField(presupuestos, "bulkWriter", bulkWriter);
+        ReflectionTestUtils.setField(departamentos, "bulkWriter", bulkWriter);
+        CatalogGenerations generaciones = BenchFixtures.generations(client, bulkWriter);
+        ReflectionTestUtils.setField(presupuestos, "generaciones", generaciones);
+        ReflectionTestUtils.setField(departamentos, "generaciones", generaciones);
+        BenchFixtures.seedCatalogos(presupuestos, departamentos);
+
+        referenceDataCache = new ReferenceDataCache(presupuestos, departamentos);
+        referenceDataCache.refresh();
+        SolicitudPresupuestoRepository repository = new SolicitudPresupuestoRepository(enhanced, BenchFixtures.SOLICITUDES);
+        service = new ProcesarSolicitudesService(repository, null, null, referenceDataCache);
+        solicitudes = BenchFixtures.solicitudes(rows);
+    }
+
+    @Benchmark
+    public void exportarExcel() throws IOException {
+        service.exportarExcel(solicitudes, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public int lookupPorFila() {
+        // Solo el ciclo de búsquedas, sin POI
+        ReferenceDataCache.Snapshot snapshot = referenceDataCache.snapshot();
+        int encontrados = 0;
+        for (SolicitudPresupuesto s : solicitudes) {
+            String ceco = s.getCentroCostos().split("-", 2)[0];
+            if (snapshot.findPresupuesto(ceco, s.getCuentaGastos()).isPresent()
+                    || snapshot.findDepartamentoByCeco(ceco) != null) {
+                encontrados++;
+            }
+        }
+        return encontrados;
+    }
+}
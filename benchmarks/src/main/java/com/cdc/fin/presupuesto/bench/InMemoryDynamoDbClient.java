@@ -0,0 +1,206 @@
+package com.cdc.fin.presupuesto.bench;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Doble en memoria de DynamoDbClient para los benchmarks.
+ * Soporta put/get/delete, batchGetItem, batchWriteItem y scan paginado por llave; el resto de operaciones
+ * lanza UnsupportedOperationException. No evalúa FilterExpression ni segmentos: los benchmarks
+ * miden el costo del lado de la aplicación (mapeo, filtrado en memoria, armado de archivos),
+ * no el de DynamoDB.
+ */
+public class InMemoryDynamoDbClient implements DynamoDbClient {
+
+    // Aproxima el corte de 1 MB por página de DynamoDB para items de este tamaño
+    private static final int DEFAULT_PAGE_ITEMS = 1000;
+
+    private final Map<String, Table> tables = new ConcurrentHashMap<>();
+
+    private static final class Table {
+        final String hashKey;
+        final String rangeKey;
+        final List<Map<String, AttributeValue>> items = new ArrayList<>();
+        final Map<String, Integer> positions = new HashMap<>();
+
+        Table(String hashKey, String rangeKey) {
+            this.hashKey = hashKey;
+            this.rangeKey = rangeKey;
+        }
+
+        String keyOf(Map<String, AttributeValue> item) {
+            String hash = item.get(hashKey).s();
+            return rangeKey == null ? hash : hash + '\u0000' + item.get(rangeKey).s();
+        }
+
+        synchronized void put(Map<String, AttributeValue> item) {
+            String key = keyOf(item);
+            Integer pos = positions.get(key);
+            if (pos != null) {
+                items.set(pos, item);
+            } else {
+                positions.put(key, items.size());
+                items.add(item);
+            }
+        }
+
+        synchronized Map<String, AttributeValue> get(Map<String, AttributeValue> key) {
+            Integer pos = positions.get(keyOf(key));
+            return pos != null ? items.get(pos) : null;
+        }
+
+        synchronized void delete(Map<String, AttributeValue> key) {
+            Integer pos = positions.remove(keyOf(key));
+            if (pos != null) {
+                items.remove((int) pos);
+                positions.clear();
+                for (int i = 0; i < items.size(); i++) {
+                    positions.put(keyOf(items.get(i)), i);
+                }
+            }
+        }
+
+        synchronized void clear() {
+            items.clear();
+            positions.clear();
+        }
+    }
+
+    public InMemoryDynamoDbClient createTable(String name, String hashKey) {
+        return createTable(name, hashKey, null);
+    }
+
+    public InMemoryDynamoDbClient createTable(String name, String hashKey, String rangeKey) {
+        tables.put(name, new Table(hashKey, rangeKey));
+        return this;
+    }
+
+    public void clear(String tableName) {
+        table(tableName).clear();
+    }
+
+    public int count(String tableName) {
+        Table table = table(tableName);
+        synchronized (table) {
+            return table.items.size();
+        }
+    }
+
+    private Table table(String name) {
+        Table table = tables.get(name);
+        if (table == null) {
+            throw ResourceNotFoundException.builder().message("Tabla no registrada: " + name).build();
+        }
+        return table;
+    }
+
+    @Override
+    public PutItemResponse putItem(PutItemRequest request) {
+        table(request.tableName()).put(request.item());
+        return PutItemResponse.builder().build();
+    }
+
+    @Override
+    public GetItemResponse getItem(GetItemRequest request) {
+        Map<String, AttributeValue> item = table(request.tableName()).get(request.key());
+        return GetItemResponse.builder().item(item).build();
+    }
+
+    @Override
+    public DeleteItemResponse deleteItem(DeleteItemRequest request) {
+        table(request.tableName()).delete(request.key());
+        return DeleteItemResponse.builder().build();
+    }
+
+    @Override
+    public BatchGetItemResponse batchGetItem(BatchGetItemRequest request) {
+        // Todas las llaves se procesan en la primera llamada (UnprocessedKeys vacío); no aplica proyección
+        Map<String, List<Map<String, AttributeValue>>> responses = new HashMap<>();
+        request.requestItems().forEach((tableName, keysAndAttributes) -> {
+            Table table = table(tableName);
+            List<Map<String, AttributeValue>> items = new ArrayList<>();
+            for (Map<String, AttributeValue> key : keysAndAttributes.keys()) {
+                Map<String, AttributeValue> item = table.get(key);
+                if (item != null) {
+                    items.add(item);
+                }
+            }
+            responses.put(tableName, items);
+        });
+        return BatchGetItemResponse.builder().responses(responses).unprocessedKeys(Map.of()).build();
+    }
+
+    @Override
+    public BatchWriteItemResponse batchWriteItem(BatchWriteItemRequest request) {
+        request.requestItems().forEach((tableName, writes) -> {
+            Table table = table(tableName);
+            for (WriteRequest write : writes) {
+                if (write.putRequest() != null) {
+                    table.put(write.putRequest().item());
+                } else if (write.deleteRequest() != null) {
+                    table.delete(write.deleteRequest().key());
+                }
+            }
+        });
+        return BatchWriteItemResponse.builder().unprocessedItems(Map.of()).build();
+    }
+
+    @Override
+    public ScanResponse scan(ScanRequest request) {
+        Table table = table(request.tableName());
+        int pageSize = request.limit() != null ? request.limit() : DEFAULT_PAGE_ITEMS;
+        synchronized (table) {
+            int start = 0;
+            if (request.hasExclusiveStartKey() && !request.exclusiveStartKey().isEmpty()) {
+                Integer pos = table.positions.get(table.keyOf(request.exclusiveStartKey()));
+                start = pos != null ? pos + 1 : table.items.size();
+            }
+            int end = Math.min(start + pageSize, table.items.size());
+            List<Map<String, AttributeValue>> page = new ArrayList<>(table.items.subList(start, end));
+            ScanResponse.Builder response = ScanResponse.builder()
+                .items(page)
+                .count(page.size())
+                .scannedCount(page.size());
+            if (end < table.items.size() && !page.isEmpty()) {
+                Map<String, AttributeValue> last = page.get(page.size() - 1);
+                Map<String, AttributeValue> lastKey = new HashMap<>();
+                lastKey.put(table.hashKey, last.get(table.hashKey));
+                if (table.rangeKey != null) {
+                    lastKey.put(table.rangeKey, last.get(table.rangeKey));
+                }
+                response.lastEvaluatedKey(lastKey);
+            }
+            return response.build();
+        }
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+        tables.clear();
+    }
+}
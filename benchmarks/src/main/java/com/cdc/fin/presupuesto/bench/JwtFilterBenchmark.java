@@ -0,0 +1,74 @@
+package com.cdc.fin.presupuesto.bench;
+
+import com.cdc.fin.presupuesto.config.SecurityConfig;
+import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.jsonwebtoken.SignatureAlgorithm;
+import jakarta.servlet.Filter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencia del filtro JWT por petición /api/**: parseo y verificación de firma del token,
+ * armado de authorities y paso a la cadena.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtFilterBenchmark {
+
+    private static final String SECRET = "benchmark-secret-benchmark-secret-benchmark-secret";
+
+    private Filter filter;
+    private String token;
+
+    @Setup
+    public void setup() {
+        SecurityConfig config = new SecurityConfig(null, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(config, "jwtSecret", SECRET);
+        filter = config.jwtAuthenticationFilter();
+        token = Jwts.builder()
+            .setSubject("empleado@cdc.com")
+            .claim("email", "empleado@cdc.com")
+            .claim("group", List.of("CDC_APP_PRES_USER", "Everyone"))
+            .setExpiration(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)))
+            .signWith(SignatureAlgorithm.HS256, SECRET.getBytes())
+            .compact();
+    }
+
+    @TearDown(Level.Invocation)
+    public void limpiarContexto() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Benchmark
+    public int filtrarPeticionApi() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/solicitudes-presupuesto");
+        request.addHeader("Authorization", "Bearer " + token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response.getStatus();
+    }
+}
@@ -0,0 +1,69 @@
+package com.cdc.fin.presupuesto.bench;
+
+import com.cdc.fin.presupuesto.model.Proveedor;
+import com.cdc.fin.presupuesto.repository.BulkWriter;
+import com.cdc.fin.presupuesto.repository.ProveedorRepository;
+import com.cdc.fin.presupuesto.service.ProveedorTypeahead;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Autocompletado de proveedores: una consulta por tecla sobre la foto ya cargada.
+ * La latencia debe mantenerse plana al crecer el catálogo.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProveedorTypeaheadBenchmark {
+
+    @Param({"5000", "50000"})
+    public int proveedores;
+
+    @Param({"prov", "edor 12", "1001"})
+    public String texto;
+
+    private ProveedorTypeahead typeahead;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        InMemoryDynamoDbClient client = BenchFixtures.newClient();
+        ProveedorRepository repository = new ProveedorRepository(BenchFixtures.enhanced(client), BenchFixtures.PROVEEDORES);
+        BulkWriter bulkWriter = BenchFixtures.bulkWriter(client);
+        ReflectionTestUtils.setField(repository, "bulkWriter", bulkWriter);
+        ReflectionTestUtils.setField(repository, "generaciones", BenchFixtures.generations(client, bulkWriter));
+        List<Proveedor> lista = new ArrayList<>(proveedores);
+        for (int i = 0; i < proveedores; i++) {
+            Proveedor p = new Proveedor();
+            p.setId("PRV" + i);
+            p.setNombre("Proveedor " + i + ", S.A. de C.V.");
+            p.setNumeroProveedor(String.valueOf(10_000 + i));
+            lista.add(p);
+        }
+        repository.saveAll(lista);
+        typeahead = new ProveedorTypeahead(repository);
+        typeahead.refresh();
+    }
+
+    @Benchmark
+    public ProveedorTypeahead.Resultado buscar() {
+        return typeahead.buscar(texto, 20);
+    }
+}
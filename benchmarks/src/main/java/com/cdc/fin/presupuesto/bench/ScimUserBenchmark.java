@@ -0,0 +1,102 @@
+package com.cdc.fin.presupuesto.bench;
+
+import com.cdc.fin.presupuesto.model.ScimUser;
+import com.cdc.fin.presupuesto.repository.ScimUserRepository;
+import com.cdc.fin.presupuesto.util.ScimUserItemCodec;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Costo por item de usuarios SCIM: clasificación por grupos y decodificación del item de DynamoDB.
+ * decodeConMapperNuevo reproduce el mapeo anterior (un ObjectMapper por llamada) como referencia.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScimUserBenchmark {
+
+    private ScimUserRepository repository;
+    private ScimUser admin;
+    private ScimUser sinGrupo;
+    private Map<String, AttributeValue> item;
+
+    @Setup
+    public void setup() throws JsonProcessingException {
+        repository = new ScimUserRepository("scim-users");
+
+        admin = new ScimUser();
+        admin.setGroup(List.of("Everyone", "CDC_APP_PRES_USER", "CDC_APP_PRES_ADMIN"));
+        sinGrupo = new ScimUser();
+        sinGrupo.setGroup(List.of("Everyone", "Ventas", "Marketing"));
+
+        ScimUser user = new ScimUser();
+        user.setId("00u1abcd2EFGH3ijk4l5");
+        user.setUserName("empleado@cdc.com");
+        user.setActive(true);
+        ScimUser.Name name = new ScimUser.Name();
+        name.setGivenName("Ana");
+        name.setFamilyName("García");
+        user.setName(name);
+        user.setFirstName("Ana");
+        user.setLastName("García");
+        user.setEmails(List.of(new ScimUser.Email("empleado@cdc.com", true, "work")));
+        user.setEmployeeNumber("12345");
+        user.setDepartment("Finanzas");
+        user.setUserType("USER");
+        user.setDisplayName("Ana García");
+        item = new java.util.HashMap<>(ScimUserItemCodec.toItem(user));
+        item.put("group", AttributeValue.builder().s("CDC_APP_PRES_USER").build());
+    }
+
+    @Benchmark
+    public String getUserRoleTypeAdmin() {
+        return repository.getUserRoleType(admin);
+    }
+
+    @Benchmark
+    public String getUserRoleTypeSinRol() {
+        return repository.getUserRoleType(sinGrupo);
+    }
+
+    @Benchmark
+    public ScimUser decodeCodec() throws JsonProcessingException {
+        return ScimUserItemCodec.fromItem(item);
+    }
+
+    @Benchmark
+    public ScimUser decodeConMapperNuevo() throws JsonProcessingException {
+        ObjectMapper mapper = new ObjectMapper();
+        ScimUser user = new ScimUser();
+        user.setId(item.get("id").s());
+        user.setUserName(item.get("userName").s());
+        user.setActive(item.containsKey("active") ? item.get("active").bool() : true);
+        user.setName(mapper.readValue(item.get("name").s(), ScimUser.Name.class));
+        user.setEmails(List.of(new ScimUser.Email(item.get("email").s(), true, "work")));
+        user.setFirstName(item.get("firstName").s());
+        user.setLastName(item.get("lastName").s());
+        user.setEmployeeNumber(item.get("employeeNumber").s());
+        user.setUserType(item.get("userType").s());
+        user.setDepartment(item.get("department").s());
+        user.setDisplayName(item.get("displayName").s());
+        user.setGroup(List.of(item.get("group").s()));
+        return user;
+    }
+}
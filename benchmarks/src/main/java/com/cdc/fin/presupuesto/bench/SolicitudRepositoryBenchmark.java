@@ -0,0 +1,69 @@
+package com.cdc.fin.presupuesto.bench;
+
+import com.cdc.fin.presupuesto.model.CursorPage;
+import com.cdc.fin.presupuesto.model.SolicitudPresupuesto;
+import com.cdc.fin.presupuesto.repository.SolicitudPresupuestoRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listado de solicitudes: resultado completo ordenado en memoria (findByDynamicFilters)
+ * contra la primera página del listado paginado por llave (findPageByFilters).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolicitudRepositoryBenchmark {
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    private SolicitudPresupuestoRepository repository;
+    private Map<String, String> filtros;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        InMemoryDynamoDbClient client = BenchFixtures.newClient();
+        DynamoDbEnhancedClient enhanced = BenchFixtures.enhanced(client);
+        repository = new SolicitudPresupuestoRepository(enhanced, BenchFixtures.SOLICITUDES);
+        ReflectionTestUtils.setField(repository, "enhancedClient", enhanced);
+        ReflectionTestUtils.setField(repository, "bulkWriter", BenchFixtures.bulkWriter(client));
+        repository.saveAll(BenchFixtures.solicitudes(rows));
+        filtros = Map.of("estatusConfirmacion", "Aprobado", "departamento", "Finanzas", "proveedor", "Proveedor 12");
+    }
+
+    @Benchmark
+    public List<SolicitudPresupuesto> findByDynamicFilters() {
+        return repository.findByDynamicFilters(filtros);
+    }
+
+    @Benchmark
+    public List<SolicitudPresupuesto> findAll() {
+        return repository.findAll();
+    }
+
+    @Benchmark
+    public CursorPage<SolicitudPresupuesto> findPageByFiltersScan() {
+        // El doble no evalúa FilterExpression: mide el costo de una página de scan y su mapeo
+        return repository.findPageByFilters(Map.of(), 20, null);
+    }
+}
@@ -0,0 +1,154 @@
+package com.cdc.fin.presupuesto.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class AsyncConfig {
+
+    @Value("${presupuesto.email.async.pool-size:1}")
+    private int emailPoolSize;
+
+    @Value("${presupuesto.email.async.queue-capacity:10}")
+    private int emailQueueCapacity;
+
+    @Value("${presupuesto.procesar.jobs.pool-size:1}")
+    private int procesarPoolSize;
+
+    @Value("${scim.scan.total-segments:1}")
+    private int scimScanSegments;
+
+    @Value("${presupuesto.bulk-write.concurrency:4}")
+    private int bulkWriteConcurrency;
+
+    @Value("${presupuesto.import.parallelism:4}")
+    private int importParallelism;
+
+    @Value("${presupuesto.import.jobs.pool-size:1}")
+    private int importJobsPoolSize;
+
+    @Value("${presupuesto.import.jobs.queue-capacity:10}")
+    private int importJobsQueueCapacity;
+
+    /**
+     * Pool donde EmailOutboxDispatcher drena la outbox de correos, fuera del hilo del scheduler.
+     * El dispatcher mantiene un solo drenado activo, así que basta un hilo.
+     */
+    @Bean(name = "emailExecutor")
+    public ThreadPoolTaskExecutor emailExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(emailPoolSize);
+        executor.setMaxPoolSize(emailPoolSize);
+        executor.setQueueCapacity(emailQueueCapacity);
+        executor.setThreadNamePrefix("email-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Hilo de las recargas de ReferenceDataCache tras una importación. ReferenceDataCache deja a lo
+     * sumo una recarga en cola, así que basta un hilo y una cola corta.
+     */
+    @Bean(name = "cacheRefreshExecutor")
+    public ThreadPoolTaskExecutor cacheRefreshExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(2);
+        executor.setThreadNamePrefix("cache-refresh-");
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Pool para los trabajos de /procesar. Es pequeño a propósito: el procesamiento es de un solo
+     * trabajo activo a la vez y no debe competir con los hilos de Tomcat.
+     */
+    @Bean(name = "procesarExecutor")
+    public ThreadPoolTaskExecutor procesarExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(procesarPoolSize);
+        executor.setMaxPoolSize(procesarPoolSize);
+        executor.setQueueCapacity(10);
+        executor.setThreadNamePrefix("procesar-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(120);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Pool para el scan paralelo por segmentos de la tabla de usuarios SCIM.
+     * Un hilo por segmento; si se satura, el hilo de la petición escanea el segmento.
+     */
+    @Bean(name = "scimScanExecutor")
+    public ThreadPoolTaskExecutor scimScanExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        int size = Math.max(scimScanSegments, 1);
+        executor.setCorePoolSize(size);
+        executor.setMaxPoolSize(size);
+        executor.setQueueCapacity(size * 4);
+        executor.setThreadNamePrefix("scim-scan-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Pool de escritores de BulkWriter. Cada escritura masiva usa hasta "concurrency" hilos;
+     * si el pool está ocupado por otra importación, el hilo llamador escribe sus lotes.
+     */
+    @Bean(name = "bulkWriteExecutor")
+    public ThreadPoolTaskExecutor bulkWriteExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        int size = Math.max(bulkWriteConcurrency, 1);
+        executor.setCorePoolSize(size);
+        executor.setMaxPoolSize(size);
+        executor.setQueueCapacity(size * 4);
+        executor.setThreadNamePrefix("bulk-write-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Pool de la importación CSV en streaming: valida bloques de filas y escribe lotes mientras el
+     * hilo de la petición sigue leyendo. Con la cola llena el hilo llamador ejecuta la tarea.
+     */
+    @Bean(name = "importExecutor")
+    public ThreadPoolTaskExecutor importExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        int size = Math.max(importParallelism, 1);
+        executor.setCorePoolSize(size);
+        executor.setMaxPoolSize(size);
+        executor.setQueueCapacity(size * 4);
+        executor.setThreadNamePrefix("import-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Pool de las importaciones asíncronas (un hilo por importación completa). Sin CallerRunsPolicy:
+     * con la cola llena la petición se rechaza en lugar de ocupar el hilo de Tomcat.
+     */
+    @Bean(name = "importJobExecutor")
+    public ThreadPoolTaskExecutor importJobExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(importJobsPoolSize);
+        executor.setMaxPoolSize(importJobsPoolSize);
+        executor.setQueueCapacity(importJobsQueueCapacity);
+        executor.setThreadNamePrefix("import-job-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(120);
+        executor.initialize();
+        return executor;
+    }
+}
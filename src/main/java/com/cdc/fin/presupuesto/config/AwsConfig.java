@@ -3,6 +3,7 @@ package com.cdc.fin.presupuesto.config;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.beans.factory.annotation.Value;
+import io.micrometer.core.instrument.MeterRegistry;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 
@@ -13,9 +14,10 @@ public class AwsConfig {
     private String awsRegion;
 
     @Bean
-    public DynamoDbClient dynamoDbClient() {
+    public DynamoDbClient dynamoDbClient(MeterRegistry meterRegistry) {
         return DynamoDbClient.builder()
                 .region(Region.of(System.getenv().getOrDefault("AWS_REGION", awsRegion)))
+                .overrideConfiguration(c -> c.addExecutionInterceptor(new AwsSdkMetricsInterceptor(meterRegistry)))
                 .build();
     }
 
@@ -27,9 +29,10 @@ public class AwsConfig {
     }
 
     @Bean
-    public software.amazon.awssdk.services.ses.SesClient sesClient() {
+    public software.amazon.awssdk.services.ses.SesClient sesClient(MeterRegistry meterRegistry) {
         return software.amazon.awssdk.services.ses.SesClient.builder()
                 .region(Region.of(System.getenv().getOrDefault("AWS_REGION", awsRegion)))
+                .overrideConfiguration(c -> c.addExecutionInterceptor(new AwsSdkMetricsInterceptor(meterRegistry)))
                 .build();
     }
 }
@@ -0,0 +1,143 @@
+package com.cdc.fin.presupuesto.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.SdkResponse;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactGetItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interceptor del AWS SDK que registra latencia por llamada (aws.sdk.llamadas) y, para DynamoDB,
+ * capacidad consumida (aws.dynamodb.capacidad) e items leídos por Scan/Query (aws.dynamodb.items).
+ * Pide ReturnConsumedCapacity=TOTAL en las operaciones que lo soportan si el llamador no lo indicó.
+ */
+public class AwsSdkMetricsInterceptor implements ExecutionInterceptor {
+
+    private static final ExecutionAttribute<Long> INICIO = new ExecutionAttribute<>("presupuesto.metrics.inicio");
+
+    private final MeterRegistry registry;
+
+    public AwsSdkMetricsInterceptor(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes attributes) {
+        attributes.putAttribute(INICIO, System.nanoTime());
+    }
+
+    @Override
+    public SdkRequest modifyRequest(Context.ModifyRequest context, ExecutionAttributes attributes) {
+        SdkRequest request = context.request();
+        if (request instanceof ScanRequest r && r.returnConsumedCapacity() == null)
+            return r.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        if (request instanceof QueryRequest r && r.returnConsumedCapacity() == null)
+            return r.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        if (request instanceof GetItemRequest r && r.returnConsumedCapacity() == null)
+            return r.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        if (request instanceof PutItemRequest r && r.returnConsumedCapacity() == null)
+            return r.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        if (request instanceof UpdateItemRequest r && r.returnConsumedCapacity() == null)
+            return r.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        if (request instanceof DeleteItemRequest r && r.returnConsumedCapacity() == null)
+            return r.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        if (request instanceof BatchGetItemRequest r && r.returnConsumedCapacity() == null)
+            return r.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        if (request instanceof BatchWriteItemRequest r && r.returnConsumedCapacity() == null)
+            return r.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        if (request instanceof TransactWriteItemsRequest r && r.returnConsumedCapacity() == null)
+            return r.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        if (request instanceof TransactGetItemsRequest r && r.returnConsumedCapacity() == null)
+            return r.toBuilder().returnConsumedCapacity(ReturnConsumedCapacity.TOTAL).build();
+        return request;
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes attributes) {
+        SdkRequest request = context.request();
+        SdkResponse response = context.response();
+        String servicio = attributes.getAttribute(SdkExecutionAttribute.SERVICE_NAME);
+        String operacion = attributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+        String tabla = tabla(request);
+        registrarLatencia(attributes, servicio, operacion, tabla, "ok");
+
+        response.getValueForField("ConsumedCapacity", Object.class).ifPresent(cc -> {
+            double unidades = capacidad(cc);
+            DistributionSummary.builder("aws.dynamodb.capacidad")
+                .description("Unidades de capacidad consumidas por llamada")
+                .tags("tabla", tabla, "operacion", operacion)
+                .register(registry)
+                .record(unidades);
+        });
+        response.getValueForField("Count", Integer.class).ifPresent(count ->
+            DistributionSummary.builder("aws.dynamodb.items")
+                .description("Items devueltos por página de Scan/Query")
+                .tags("tabla", tabla, "operacion", operacion)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(count));
+    }
+
+    @Override
+    public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes attributes) {
+        String servicio = attributes.getAttribute(SdkExecutionAttribute.SERVICE_NAME);
+        String operacion = attributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+        registrarLatencia(attributes, servicio, operacion, tabla(context.request()), "error");
+    }
+
+    private void registrarLatencia(ExecutionAttributes attributes, String servicio, String operacion,
+                                   String tabla, String resultado) {
+        Long inicio = attributes.getAttribute(INICIO);
+        if (inicio == null) return;
+        Timer.builder("aws.sdk.llamadas")
+            .description("Latencia de llamadas al AWS SDK, incluyendo reintentos")
+            .tags("servicio", String.valueOf(servicio), "operacion", String.valueOf(operacion),
+                  "tabla", tabla, "resultado", resultado)
+            .register(registry)
+            .record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+    }
+
+    private static String tabla(SdkRequest request) {
+        return request.getValueForField("TableName", String.class)
+            .or(() -> request.getValueForField("RequestItems", Map.class)
+                .filter(m -> m.size() == 1)
+                .map(m -> String.valueOf(m.keySet().iterator().next())))
+            .orElse("-");
+    }
+
+    // ConsumedCapacity es un objeto en operaciones simples y una lista en batch/transact
+    private static double capacidad(Object consumed) {
+        if (consumed instanceof ConsumedCapacity c) {
+            return c.capacityUnits() != null ? c.capacityUnits() : 0d;
+        }
+        if (consumed instanceof List<?> list) {
+            double total = 0d;
+            for (Object o : list) {
+                total += capacidad(o);
+            }
+            return total;
+        }
+        return 0d;
+    }
+}
@@ -0,0 +1,79 @@
+package com.cdc.fin.presupuesto.config;
+
+import com.cdc.fin.presupuesto.model.CursorPage;
+import com.cdc.fin.presupuesto.model.ScimListResponse;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Mide cada método público de los repositorios: latencia (presupuesto.repositorio.llamadas)
+ * y número de items devueltos (presupuesto.repositorio.items), etiquetados por tabla y operación.
+ */
+@Aspect
+@Component
+public class RepositoryMetricsAspect {
+
+    // Nombre lógico de la tabla (sufijo de aws.dynamodb.table.*) por repositorio
+    private static final Map<String, String> TABLAS = Map.of(
+        "SolicitudPresupuestoRepository", "solicitudes",
+        "PresupuestoRepository", "presupuestos",
+        "DepartamentoRepository", "departamentos",
+        "ProveedorRepository", "proveedores",
+        "CategoriaGastoRepository", "categorias-gasto",
+        "ScimUserRepository", "scim-users",
+        "ScimGroupRepository", "scim-groups");
+
+    private final MeterRegistry registry;
+
+    public RepositoryMetricsAspect(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Around("within(com.cdc.fin.presupuesto.repository..*) && execution(public * *(..))")
+    public Object medir(ProceedingJoinPoint pjp) throws Throwable {
+        String repositorio = pjp.getSignature().getDeclaringType().getSimpleName();
+        String tabla = TABLAS.getOrDefault(repositorio, repositorio);
+        String operacion = pjp.getSignature().getName();
+        Timer.Sample sample = Timer.start(registry);
+        String resultado = "ok";
+        try {
+            Object result = pjp.proceed();
+            int items = contarItems(result);
+            if (items >= 0) {
+                DistributionSummary.builder("presupuesto.repositorio.items")
+                    .description("Items devueltos por llamada a repositorio")
+                    .tags("tabla", tabla, "operacion", operacion)
+                    .publishPercentileHistogram()
+                    .register(registry)
+                    .record(items);
+            }
+            return result;
+        } catch (Throwable t) {
+            resultado = "error";
+            throw t;
+        } finally {
+            sample.stop(Timer.builder("presupuesto.repositorio.llamadas")
+                .description("Latencia de los métodos de repositorio")
+                .tags("tabla", tabla, "operacion", operacion, "resultado", resultado)
+                .register(registry));
+        }
+    }
+
+    // -1 cuando el resultado no es una colección de items
+    private static int contarItems(Object result) {
+        if (result instanceof Collection<?> c) return c.size();
+        if (result instanceof Optional<?> o) return o.isPresent() ? 1 : 0;
+        if (result instanceof CursorPage<?> p) return p.getItems().size();
+        if (result instanceof ScimListResponse<?> r) return r.getResources() != null ? r.getResources().size() : 0;
+        return -1;
+    }
+}
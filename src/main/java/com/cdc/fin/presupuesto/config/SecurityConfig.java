@@ -2,6 +2,8 @@ package com.cdc.fin.presupuesto.config;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -51,9 +53,20 @@ public class SecurityConfig {
     private static final Logger logger = LoggerFactory.getLogger(SecurityConfig.class);
 
     private final com.cdc.fin.presupuesto.service.ScimUserService scimUserService;
+    private final MeterRegistry meterRegistry;
 
-    public SecurityConfig(com.cdc.fin.presupuesto.service.ScimUserService scimUserService) {
+    public SecurityConfig(com.cdc.fin.presupuesto.service.ScimUserService scimUserService, MeterRegistry meterRegistry) {
         this.scimUserService = scimUserService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    // Latencia del filtro JWT sin contar el resto de la cadena, por tipo de ruta y resultado
+    private void registrarFiltroJwt(long inicio, String ruta, String resultado) {
+        Timer.builder("presupuesto.jwt.filtro")
+            .description("Latencia de validación del token en el filtro JWT")
+            .tags("ruta", ruta, "resultado", resultado)
+            .register(meterRegistry)
+            .record(System.nanoTime() - inicio, java.util.concurrent.TimeUnit.NANOSECONDS);
     }
 
     @Value("${security.jwt.secret}")
@@ -172,11 +185,14 @@ public class SecurityConfig {
             @Override
             public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
                     throws IOException, ServletException {
+                long inicio = System.nanoTime();
                 HttpServletRequest httpRequest = (HttpServletRequest) request;
                 String path = httpRequest.getRequestURI();
                 String authHeader = httpRequest.getHeader("Authorization");
                 boolean isScim = path.startsWith("/scim/v2/");
                 boolean isApi = path.startsWith("/api/");
+                String ruta = isScim ? "scim" : isApi ? "api" : "otra";
+                String resultado = "sin_token";
                 boolean authenticated = false;
                 if (authHeader != null && authHeader.startsWith("Bearer ")) {
                     String token = authHeader.substring(7);
@@ -189,6 +205,7 @@ public class SecurityConfig {
                                 new UsernamePasswordAuthenticationToken("scim-client", null, List.of(new SimpleGrantedAuthority("ROLE_SCIM")));
                         SecurityContextHolder.getContext().setAuthentication(authentication);
                         authenticated = true;
+                        resultado = "autenticado";
                     } else {
                         // Para otros endpoints, JWT estricto
                         try {
@@ -216,8 +233,10 @@ public class SecurityConfig {
                             authentication.setDetails(email); // Puedes usar un objeto custom si necesitas más atributos
                             SecurityContextHolder.getContext().setAuthentication(authentication);
                             authenticated = true;
+                            resultado = "autenticado";
                         } catch (io.jsonwebtoken.ExpiredJwtException e) {
                             logger.warn("JWT expirado: {}", e.getMessage());
+                            registrarFiltroJwt(inicio, ruta, "expirado");
                             jakarta.servlet.http.HttpServletResponse httpResp = (jakarta.servlet.http.HttpServletResponse) response;
                             httpResp.setStatus(401);
                             httpResp.setContentType("application/json");
@@ -225,9 +244,11 @@ public class SecurityConfig {
                             return;
                         } catch (Exception e) {
                             logger.warn("JWT Filter: Invalid token. Secret used: {}. Token: {}", jwtSecret, token, e);
+                            resultado = "invalido";
                         }
                     }
                 }
+                registrarFiltroJwt(inicio, ruta, resultado);
                 // Si es endpoint /api/** y no está autenticado, responde 401 en vez de redirigir
                 if (isApi && !authenticated) {
                     ((jakarta.servlet.http.HttpServletResponse) response).sendError(401, "Unauthorized: Invalid or missing token");
@@ -1,11 +1,15 @@
 package com.cdc.fin.presupuesto.controller;
 
 import com.cdc.fin.presupuesto.model.CategoriaGasto;
+import com.cdc.fin.presupuesto.model.ImportacionJob;
 import com.cdc.fin.presupuesto.service.CategoriaGastoService;
+import com.cdc.fin.presupuesto.service.ImportacionJobService;
+import com.cdc.fin.presupuesto.util.RecordReader;
 import com.opencsv.exceptions.CsvException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
@@ -23,6 +27,9 @@ public class CategoriaGastoController {
     @Autowired
     private CategoriaGastoService categoriaGastoService;
 
+    @Autowired
+    private ImportacionJobService importacionJobService;
+
     @GetMapping
     public ResponseEntity<List<CategoriaGasto>> getAllCategorias() {
         List<CategoriaGasto> categorias = categoriaGastoService.getAllCategorias();
@@ -31,7 +38,9 @@ public class CategoriaGastoController {
     @PostMapping("/import-csv")
     public ResponseEntity<Map<String, Object>> importCategoriasFromCSV(
             @RequestParam("file") MultipartFile file,
-            @RequestParam(value = "replaceAll", defaultValue = "true") boolean replaceAll) {
+            @RequestParam(value = "replaceAll", defaultValue = "true") boolean replaceAll,
+            @RequestParam(value = "delta", defaultValue = "false") boolean delta,
+            @RequestParam(value = "async", defaultValue = "false") boolean async) {
         
         try {
             // Validate file
@@ -43,15 +52,22 @@ public class CategoriaGastoController {
             }
             
             String originalFilename = file.getOriginalFilename();
-            if (originalFilename == null || !originalFilename.toLowerCase().endsWith(".csv")) {
+            if (originalFilename == null || !(originalFilename.toLowerCase().endsWith(".csv") || RecordReader.esXlsx(originalFilename))) {
                 Map<String, Object> error = new HashMap<>();
                 error.put("success", false);
-                error.put("message", "File must be a CSV file");
+                error.put("message", "File must be a CSV or XLSX file");
                 return ResponseEntity.badRequest().body(error);
             }
             
+            // Archivos grandes: se guarda el archivo y se responde 202 con el jobId para consultar el avance
+            if (async) {
+                ImportacionJob job = importacionJobService.submit("categorias-gasto", file,
+                    (archivo, progreso) -> categoriaGastoService.importCategoriasFromCSV(archivo, replaceAll, delta, progreso));
+                return ImportacionController.aceptada(job);
+            }
+
             // Process CSV
-            Map<String, Object> result = categoriaGastoService.importCategoriasFromCSV(file, replaceAll);
+            Map<String, Object> result = categoriaGastoService.importCategoriasFromCSV(file, replaceAll, delta);
             
             if (Boolean.TRUE.equals(result.get("success"))) {
                 return ResponseEntity.ok(result);
@@ -59,6 +75,9 @@ public class CategoriaGastoController {
                 return ResponseEntity.badRequest().body(result);
             }
             
+        } catch (TaskRejectedException e) {
+            logger.warn("Cola de importaciones llena: {}", e.getMessage());
+            return ImportacionController.colaLlena();
         } catch (IOException e) {
             logger.error("IO error during CSV import: {}", e.getMessage());
             Map<String, Object> error = new HashMap<>();
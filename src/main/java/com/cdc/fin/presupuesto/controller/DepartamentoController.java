@@ -1,11 +1,15 @@
 package com.cdc.fin.presupuesto.controller;
 
 import com.cdc.fin.presupuesto.model.Departamento;
+import com.cdc.fin.presupuesto.model.ImportacionJob;
 import com.cdc.fin.presupuesto.service.DepartamentoService;
+import com.cdc.fin.presupuesto.service.ImportacionJobService;
+import com.cdc.fin.presupuesto.util.RecordReader;
 import com.opencsv.exceptions.CsvException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.ResponseEntity;
 
 
@@ -25,6 +29,9 @@ public class DepartamentoController {
     @Autowired
     private DepartamentoService departamentoService;
 
+    @Autowired
+    private ImportacionJobService importacionJobService;
+
     @GetMapping
     public ResponseEntity<List<Departamento>> getAllDepartamentos() {
         List<Departamento> departamentos = departamentoService.getAllDepartamentos();
@@ -34,7 +41,9 @@ public class DepartamentoController {
     @PostMapping("/import-csv")
     public ResponseEntity<Map<String, Object>> importDepartamentosFromCSV(
             @RequestParam("file") MultipartFile file,
-            @RequestParam(value = "replaceAll", defaultValue = "true") boolean replaceAll) {
+            @RequestParam(value = "replaceAll", defaultValue = "true") boolean replaceAll,
+            @RequestParam(value = "delta", defaultValue = "false") boolean delta,
+            @RequestParam(value = "async", defaultValue = "false") boolean async) {
         
         try {
             // Validate file
@@ -46,15 +55,22 @@ public class DepartamentoController {
             }
             
             String originalFilename = file.getOriginalFilename();
-            if (originalFilename == null || !originalFilename.toLowerCase().endsWith(".csv")) {
+            if (originalFilename == null || !(originalFilename.toLowerCase().endsWith(".csv") || RecordReader.esXlsx(originalFilename))) {
                 Map<String, Object> error = new HashMap<>();
                 error.put("success", false);
-                error.put("message", "File must be a CSV file");
+                error.put("message", "File must be a CSV or XLSX file");
                 return ResponseEntity.badRequest().body(error);
             }
             
+            // Archivos grandes: se guarda el archivo y se responde 202 con el jobId para consultar el avance
+            if (async) {
+                ImportacionJob job = importacionJobService.submit("departamentos", file,
+                    (archivo, progreso) -> departamentoService.importDepartamentosFromCSV(archivo, replaceAll, delta, progreso));
+                return ImportacionController.aceptada(job);
+            }
+
             // Process CSV
-            Map<String, Object> result = departamentoService.importDepartamentosFromCSV(file, replaceAll);
+            Map<String, Object> result = departamentoService.importDepartamentosFromCSV(file, replaceAll, delta);
             
             if (Boolean.TRUE.equals(result.get("success"))) {
                 return ResponseEntity.ok(result);
@@ -62,6 +78,9 @@ public class DepartamentoController {
                 return ResponseEntity.badRequest().body(result);
             }
             
+        } catch (TaskRejectedException e) {
+            logger.warn("Cola de importaciones llena: {}", e.getMessage());
+            return ImportacionController.colaLlena();
         } catch (IOException e) {
             logger.error("IO error during CSV import: {}", e.getMessage());
             Map<String, Object> error = new HashMap<>();
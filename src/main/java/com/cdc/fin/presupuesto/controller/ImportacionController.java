@@ -0,0 +1,92 @@
+package com.cdc.fin.presupuesto.controller;
+
+import com.cdc.fin.presupuesto.model.ImportacionJob;
+import com.cdc.fin.presupuesto.service.CsvImportPipeline;
+import com.cdc.fin.presupuesto.service.ImportacionJobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/importaciones")
+public class ImportacionController {
+
+    @Autowired
+    private CsvImportPipeline csvImportPipeline;
+
+    @Autowired
+    private ImportacionJobService importacionJobService;
+
+    /**
+     * Avance de una importación asíncrona (async=true en /import-csv); al terminar incluye la
+     * respuesta completa de la importación en "resultado".
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> getJob(@PathVariable String jobId) {
+        return importacionJobService.find(jobId)
+            .map(job -> ResponseEntity.ok(jobResponse(job)))
+            .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(Map.of("success", false, "message", "Importación no encontrada")));
+    }
+
+    /**
+     * Reporte completo de errores de una importación CSV (errorReportUrl de la respuesta).
+     */
+    @GetMapping("/reportes/{reporteId}")
+    public ResponseEntity<StreamingResponseBody> descargarReporte(@PathVariable String reporteId) {
+        if (!csvImportPipeline.existeReporte(reporteId)) {
+            return ResponseEntity.notFound().build();
+        }
+        StreamingResponseBody body = out -> {
+            try (InputStream in = csvImportPipeline.abrirReporte(reporteId)) {
+                in.transferTo(out);
+            }
+        };
+        return ResponseEntity.ok()
+            .header("Content-Type", "text/csv; charset=UTF-8")
+            .header("Content-Disposition", "attachment; filename=\"errores-importacion.csv\"")
+            .body(body);
+    }
+
+    /** Respuesta 202 de los endpoints /import-csv con async=true. */
+    static ResponseEntity<Map<String, Object>> aceptada(ImportacionJob job) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+            .header(HttpHeaders.LOCATION, "/api/importaciones/jobs/" + job.getJobId())
+            .body(jobResponse(job));
+    }
+
+    /** Respuesta 503 cuando la cola de importaciones asíncronas está llena. */
+    static ResponseEntity<Map<String, Object>> colaLlena() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .body(Map.of("success", false, "message", "Hay demasiadas importaciones en curso; intenta de nuevo en unos minutos"));
+    }
+
+    private static Map<String, Object> jobResponse(ImportacionJob job) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", job.getEstado() != ImportacionJob.Estado.ERROR);
+        response.put("jobId", job.getJobId());
+        response.put("catalogo", job.getCatalogo());
+        response.put("nombreArchivo", job.getNombreArchivo());
+        response.put("estado", job.getEstado());
+        response.put("leidas", job.getLeidas());
+        response.put("exitosas", job.getExitosas());
+        response.put("errores", job.getErrores());
+        response.put("mensaje", job.getMensaje());
+        response.put("fechaCreacion", job.getFechaCreacion());
+        response.put("fechaFin", job.getFechaFin());
+        if (job.getResultado() != null) {
+            response.put("resultado", job.getResultado());
+        }
+        return response;
+    }
+}
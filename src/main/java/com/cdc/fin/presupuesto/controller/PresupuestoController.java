@@ -1,7 +1,10 @@
 package com.cdc.fin.presupuesto.controller;
 
+import com.cdc.fin.presupuesto.model.ImportacionJob;
+import com.cdc.fin.presupuesto.service.ImportacionJobService;
 import com.cdc.fin.presupuesto.service.PresupuestoService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
@@ -15,6 +18,9 @@ public class PresupuestoController {
     @Autowired
     private PresupuestoService presupuestoService;
 
+    @Autowired
+    private ImportacionJobService importacionJobService;
+
     @GetMapping
     public ResponseEntity<Map<String, Object>> getPresupuesto(
         @RequestParam("centroCostos") String ceCo,
@@ -46,10 +52,19 @@ public class PresupuestoController {
     @PostMapping("/import-csv")
     public ResponseEntity<?> importPresupuestosFromCSV(
             @RequestParam("file") MultipartFile file,
-            @RequestParam(value = "replaceAll", defaultValue = "false") boolean replaceAll) {
+            @RequestParam(value = "replaceAll", defaultValue = "false") boolean replaceAll,
+            @RequestParam(value = "delta", defaultValue = "false") boolean delta,
+            @RequestParam(value = "async", defaultValue = "false") boolean async) {
         try {
-            Map<String, Object> result = presupuestoService.importPresupuestosFromCSV(file, replaceAll);
+            if (async) {
+                ImportacionJob job = importacionJobService.submit("presupuestos", file,
+                    (archivo, progreso) -> presupuestoService.importPresupuestosFromCSV(archivo, replaceAll, delta, progreso));
+                return ImportacionController.aceptada(job);
+            }
+            Map<String, Object> result = presupuestoService.importPresupuestosFromCSV(file, replaceAll, delta);
             return ResponseEntity.ok(result);
+        } catch (TaskRejectedException e) {
+            return ImportacionController.colaLlena();
         } catch (Exception e) {
             return ResponseEntity.status(500).body(Map.of("success", false, "message", e.getMessage()));
         }
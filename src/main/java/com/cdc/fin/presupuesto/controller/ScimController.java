@@ -10,6 +10,7 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.cdc.fin.presupuesto.util.ScimUserItemCodec;
 import org.springframework.http.HttpStatus;
 import com.cdc.fin.presupuesto.model.ScimUser;
 import com.cdc.fin.presupuesto.model.ScimListResponse;
@@ -86,7 +87,7 @@ public class ScimController {
         }
         try {
             ScimUser response = scimUserService.createUserFromJson(body); // <-- Usa el método correcto
-            logger.info("SCIM response to Okta (createUser): {}", new ObjectMapper().writeValueAsString(response));
+            logger.info("SCIM response to Okta (createUser): {}", ScimUserItemCodec.mapper().writeValueAsString(response));
             return ResponseEntity.status(HttpStatus.CREATED).body(response); // HttpStatus.CREATED
         } catch (Exception e) {
             logger.error("Error creating SCIM user", e);
@@ -106,7 +107,7 @@ public class ScimController {
         @RequestParam(defaultValue = "100") int count,
         @RequestParam(required = false) String sortBy
     ) throws JsonProcessingException {
-        ScimListResponse<ScimUser> responseBody = scimUserService.listUsers(filter);
+        ScimListResponse<ScimUser> responseBody = scimUserService.listUsers(filter, startIndex, count);
         return ResponseEntity.ok()
             .contentType(new MediaType("application", "scim+json"))
             .body(responseBody);
@@ -154,7 +155,7 @@ public class ScimController {
         }
         try {
             ScimUser result = scimUserService.patchUser(id, patch);
-            logger.info("SCIM response to Okta (patchUser): {}", new ObjectMapper().writeValueAsString(result));
+            logger.info("SCIM response to Okta (patchUser): {}", ScimUserItemCodec.mapper().writeValueAsString(result));
             logger.debug("[SCIM][ScimController] Resultado de patchUser: {}", result);
             return ResponseEntity.ok(result);
         } catch (Exception e) {
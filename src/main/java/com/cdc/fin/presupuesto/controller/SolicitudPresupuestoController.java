@@ -1,5 +1,7 @@
 package com.cdc.fin.presupuesto.controller;
 
+import com.cdc.fin.presupuesto.model.CursorPage;
+import com.cdc.fin.presupuesto.model.ProcesamientoJob;
 import com.cdc.fin.presupuesto.model.SolicitudPresupuesto;
 import com.cdc.fin.presupuesto.repository.SolicitudPresupuestoRepository;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -7,9 +9,14 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.cdc.fin.presupuesto.util.EstatusSolicitud;
+import com.cdc.fin.presupuesto.util.SolicitudIdGenerator;
 import com.cdc.fin.presupuesto.util.UserAuthUtils;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import jakarta.servlet.http.HttpServletResponse;
 
@@ -19,14 +26,17 @@ import java.io.IOException;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
 
 import com.cdc.fin.presupuesto.service.UserInfoService;
 import com.cdc.fin.presupuesto.service.EmailService;
 import com.cdc.fin.presupuesto.service.ProcesarSolicitudesService;
+import com.cdc.fin.presupuesto.service.ProcesamientoJobService;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -38,59 +48,68 @@ import org.springframework.beans.factory.annotation.Value;
 public class SolicitudPresupuestoController {
 
     private static final Logger logger = LoggerFactory.getLogger(SolicitudPresupuestoController.class);
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final TypeReference<Map<String, Object>> MAP_TYPE = new TypeReference<>() {};
 
     private final SolicitudPresupuestoRepository solicitudPresupuestoRepository;
     private final ProcesarSolicitudesService procesarSolicitudesService;
+    private final ProcesamientoJobService procesamientoJobService;
     private final UserAuthUtils userAuthUtils;
     
     private final EmailService emailService;
+    private final ObjectMapper objectMapper;
+    private final SolicitudIdGenerator idGenerator;
 
 
     @Autowired
     public SolicitudPresupuestoController(ProcesarSolicitudesService procesarSolicitudesService,
                                           SolicitudPresupuestoRepository solicitudPresupuestoRepository,
                                           UserAuthUtils userAuthUtils,
-                                          EmailService emailService) {
+                                          EmailService emailService,
+                                          ProcesamientoJobService procesamientoJobService,
+                                          ObjectMapper objectMapper,
+                                          SolicitudIdGenerator idGenerator) {
 
         this.procesarSolicitudesService = procesarSolicitudesService;
         this.solicitudPresupuestoRepository = solicitudPresupuestoRepository;
         this.userAuthUtils = userAuthUtils;
         this.emailService = emailService;
+        this.procesamientoJobService = procesamientoJobService;
+        this.objectMapper = objectMapper;
+        this.idGenerator = idGenerator;
     }
 
     @GetMapping
     public ResponseEntity<Map<String, Object>> getAllSolicitudes(
             @RequestParam Map<String, String> params) {
         try {
-            int page = params.containsKey("page") ? Integer.parseInt(params.get("page")) : 0;
             int size = params.containsKey("size") ? Integer.parseInt(params.get("size")) : 20;
+            String cursor = params.get("cursor");
 
-            // Validar que page no sea menor que cero
-            if (page < 0) {
-                page = 0;
+            // Validar tamaño de página
+            if (size < 1) {
+                size = 1;
+            } else if (size > MAX_PAGE_SIZE) {
+                size = MAX_PAGE_SIZE;
             }
 
-            // Elimina page y size del mapa de filtros
+            // Elimina los parámetros de paginación del mapa de filtros
             params.remove("page");
             params.remove("size");
-
-            // Llama al servicio/repositorio con filtros dinámicos (sin paginación JPA)
-            List<SolicitudPresupuesto> solicitudes = solicitudPresupuestoRepository.findByDynamicFilters(params);
-
-            // Simula paginación en memoria si es necesario
-            int fromIndex = Math.min(page * size, solicitudes.size());
-            int toIndex = Math.min(fromIndex + size, solicitudes.size());
-            List<SolicitudPresupuesto> pageContent = solicitudes.subList(fromIndex, toIndex);
-
-            int totalPages = (int) Math.ceil((double) solicitudes.size() / size);
-
-            return ResponseEntity.ok(Map.of(
-                "content", pageContent,
-                "totalElements", solicitudes.size(),
-                "totalPages", totalPages,
-                "page", page,
-                "size", size
-            ));
+            params.remove("cursor");
+
+            // Filtros resueltos en DynamoDB (GSI / FilterExpression), paginados por LastEvaluatedKey
+            CursorPage<SolicitudPresupuesto> page = solicitudPresupuestoRepository.findPageByFilters(params, size, cursor);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("content", page.getItems());
+            response.put("size", size);
+            response.put("nextCursor", page.getNextCursor());
+            response.put("hasMore", page.isHasMore());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Parámetros de paginación inválidos: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
         } catch (Exception e) {
             logger.error("Error obteniendo solicitudes de presupuesto: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -134,13 +153,15 @@ public class SolicitudPresupuestoController {
             String departamento = scimUser != null ? scimUser.getDepartment() : null;
 
             // Generar ID único si no existe
-            if (solicitud.getId() == null || solicitud.getId().isEmpty()) {
-                solicitud.setId(UUID.randomUUID().toString());
+            boolean idGenerado = solicitud.getId() == null || solicitud.getId().isEmpty();
+            if (idGenerado) {
+                solicitud.setId(idGenerator.nextId());
             }
 
             // Generar solicitudId si no existe
-            if (solicitud.getSolicitudId() == null || solicitud.getSolicitudId().isEmpty()) {
-                solicitud.setSolicitudId("REQ-" + System.currentTimeMillis());
+            boolean solicitudIdGenerado = solicitud.getSolicitudId() == null || solicitud.getSolicitudId().isEmpty();
+            if (solicitudIdGenerado) {
+                solicitud.setSolicitudId(idGenerator.nextSolicitudId());
             }
 
             // Establecer información del usuario si no está presente
@@ -165,36 +186,36 @@ public class SolicitudPresupuestoController {
 
             // Establecer estatus por defecto si no existe
             if (solicitud.getEstatusConfirmacion() == null || solicitud.getEstatusConfirmacion().isEmpty()) {
-                solicitud.setEstatusConfirmacion("Pendiente");
+                solicitud.setEstatusConfirmacion(EstatusSolicitud.PENDIENTE);
             }
 
-            // Guardar la solicitud
-            SolicitudPresupuesto savedSolicitud = solicitudPresupuestoRepository.save(solicitud);
-
-            // --- ENVÍO DE CORREOS NUEVA SOLICITUD ---
-            try {
-                // 5A. Correo al aprobador
-                emailService.sendNuevaSolicitudAprobadorEmail(savedSolicitud);     
-        
-                // 5B. Correo al solicitante
-                String correoSolicitante = savedSolicitud.getCorreo();
-                if (correoSolicitante != null && !correoSolicitante.isEmpty()) {
-                    emailService.sendNuevaSolicitudSolicitanteEmail(correoSolicitante, savedSolicitud);
-                } else {
-                    logger.warn("No se envió correo al solicitante porque el correo es nulo o vacío");
-                }
-            } catch (Exception ex) {
-                logger.error("No se pudo enviar correo de nueva solicitud: {}", ex.getMessage(), ex);
-            }
-            // --- FIN ENVÍO DE CORREOS ---
+            // Guardar la solicitud y encolar sus correos (5A aprobador, 5B solicitante) en la misma
+            // transacción; el envío por SES ocurre en segundo plano. El alta es condicional: si las
+            // llaves generadas ya existen se generan otras (las que fijó el cliente no se cambian)
+            SolicitudPresupuesto savedSolicitud = solicitudPresupuestoRepository.create(
+                solicitud, emailService::correosNuevaSolicitud,
+                idGenerado || solicitudIdGenerado
+                    ? s -> {
+                        if (idGenerado) s.setId(idGenerator.nextId());
+                        if (solicitudIdGenerado) s.setSolicitudId(idGenerator.nextSolicitudId());
+                    }
+                    : null);
 
             return ResponseEntity.status(HttpStatus.CREATED).body(savedSolicitud);
+        } catch (SolicitudPresupuestoRepository.SolicitudExistenteException e) {
+            logger.warn("Alta rechazada: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (Exception e) {
             logger.error("Error creando solicitud de presupuesto: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    /**
+     * Reemplazo de los campos editables: los que no vengan en el body se eliminan. Llaves, metadatos,
+     * versión y estatusConfirmacion se conservan (el estatus cambia solo por PUT /cambiar-estatus).
+     * Una sola llamada UpdateItem condicionada a que la solicitud exista.
+     */
     @PutMapping("/{id}")
     public ResponseEntity<SolicitudPresupuesto> updateSolicitud(
             @PathVariable String id,
@@ -205,33 +226,58 @@ public class SolicitudPresupuestoController {
             if (solicitudId == null || solicitudId.isEmpty()) {
                 solicitudId = id;
             }
-            
-            // Verificar que la solicitud existe
-            Optional<SolicitudPresupuesto> existingSolicitud = solicitudPresupuestoRepository.findById(id, solicitudId);
-            if (!existingSolicitud.isPresent()) {
+
+            Optional<SolicitudPresupuesto> updatedSolicitud = solicitudPresupuestoRepository.replace(
+                id, solicitudId, solicitud, solicitud.getActualizadoPor());
+            if (!updatedSolicitud.isPresent()) {
                 logger.warn("Solicitud no encontrada para ID: {}", id);
                 return ResponseEntity.notFound().build();
             }
-            
-            // Mantener los IDs originales
-            solicitud.setId(id);
-            solicitud.setSolicitudId(solicitudId);
-            
-            // Mantener fecha de creación original
-            solicitud.setFechaCreacion(existingSolicitud.get().getFechaCreacion());
-            
-            // Actualizar fecha de modificación
-            solicitud.setFechaActualizacion(Instant.now());
-            
-            // Guardar la solicitud actualizada
-            SolicitudPresupuesto updatedSolicitud = solicitudPresupuestoRepository.save(solicitud);
-            return ResponseEntity.ok(updatedSolicitud);
+            return ResponseEntity.ok(updatedSolicitud.get());
         } catch (Exception e) {
             logger.error("Error actualizando solicitud: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    /**
+     * Edición parcial: solo se escriben los campos presentes en el body (null = eliminar el atributo).
+     * Una sola llamada UpdateItem, sin lectura previa ni reescritura del item completo. Llaves,
+     * metadatos y estatusConfirmacion se ignoran: el estatus cambia solo por PUT /cambiar-estatus.
+     */
+    @PatchMapping("/{id}")
+    public ResponseEntity<SolicitudPresupuesto> patchSolicitud(
+            @PathVariable String id,
+            @RequestParam(required = false) String solicitudId,
+            @RequestBody Map<String, Object> cambios) {
+        try {
+            // Si no se proporciona solicitudId, usar el mismo ID
+            if (solicitudId == null || solicitudId.isEmpty()) {
+                solicitudId = id;
+            }
+            String userLogueado = cambios.get("userLogueado") != null ? cambios.get("userLogueado").toString() : null;
+
+            SolicitudPresupuesto valores;
+            try {
+                valores = objectMapper.convertValue(cambios, SolicitudPresupuesto.class);
+            } catch (IllegalArgumentException e) {
+                logger.warn("Body inválido para edición parcial de {}: {}", id, e.getMessage());
+                return ResponseEntity.badRequest().build();
+            }
+
+            Optional<SolicitudPresupuesto> updatedSolicitud = solicitudPresupuestoRepository.updatePartial(
+                id, solicitudId, valores, cambios.keySet(), userLogueado);
+            if (!updatedSolicitud.isPresent()) {
+                logger.warn("Solicitud no encontrada para ID: {}", id);
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(updatedSolicitud.get());
+        } catch (Exception e) {
+            logger.error("Error actualizando parcialmente solicitud: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<Map<String, String>> deleteSolicitud(
             @PathVariable String id,
@@ -259,55 +305,134 @@ public class SolicitudPresupuestoController {
     }
 
     @GetMapping("/usuario/{numeroEmpleado}")
-    public ResponseEntity<List<SolicitudPresupuesto>> getSolicitudesByEmpleado(
-            @PathVariable String numeroEmpleado) {
+    public ResponseEntity<Map<String, Object>> getSolicitudesByEmpleado(
+            @PathVariable String numeroEmpleado,
+            @RequestParam(defaultValue = "20") int limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String estatus,
+            @RequestParam(required = false) List<String> fields) {
         try {
-            List<SolicitudPresupuesto> solicitudes = solicitudPresupuestoRepository.findByNumEmpleado(numeroEmpleado);
-            return ResponseEntity.ok(solicitudes);
+            limit = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+            // Query sobre numeroEmpleado-index: una página (Limit + ExclusiveStartKey) en lugar de todo el historial
+            Map<String, String> filters = new HashMap<>();
+            filters.put("numeroEmpleado", numeroEmpleado);
+            filters.put("estatusConfirmacion", estatus);
+            CursorPage<SolicitudPresupuesto> page =
+                solicitudPresupuestoRepository.findPageByFilters(filters, limit, cursor, fields);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("content", fields == null || fields.isEmpty() ? page.getItems() : project(page.getItems(), fields));
+            response.put("size", limit);
+            response.put("nextCursor", page.getNextCursor());
+            response.put("hasMore", page.isHasMore());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Parámetros inválidos para solicitudes de empleado {}: {}", numeroEmpleado, e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
         } catch (Exception e) {
             logger.error("Error obteniendo solicitudes para empleado {}: {}", numeroEmpleado, e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
-    
+    // Solo los campos pedidos en la respuesta; el resto del bean viene vacío por la proyección
+    private List<Map<String, Object>> project(List<SolicitudPresupuesto> items, List<String> fields) {
+        List<Map<String, Object>> projected = new ArrayList<>(items.size());
+        for (SolicitudPresupuesto item : items) {
+            Map<String, Object> all = objectMapper.convertValue(item, MAP_TYPE);
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (String field : fields) {
+                row.put(field, all.get(field));
+            }
+            projected.add(row);
+        }
+        return projected;
+    }
+
     @GetMapping("/procesar")
-    public ResponseEntity<byte[]> exportarExcel() {
+    public ResponseEntity<StreamingResponseBody> exportarExcel() {
         try {
-            byte[] excelBytes = procesarSolicitudesService.procesarYExportarExcel();
+            List<SolicitudPresupuesto> procesadas = procesarSolicitudesService.procesarSolicitudesAprobadas();
+            // El Excel se escribe directamente en la respuesta (SXSSF), sin armarlo en memoria
+            StreamingResponseBody body = out -> procesarSolicitudesService.exportarExcel(procesadas, out);
             return ResponseEntity.ok()
                 .header("Content-Type", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")
                 .header("Content-Disposition", "attachment; filename=\"solicitudes.xlsx\"")
-                .body(excelBytes);
+                .body(body);
         } catch (Exception ex) {
             logger.error("Error exportando Excel", ex);
             return ResponseEntity.internalServerError().build();
         }
     }
 
-    // Replace Lambda-specific POST endpoint with standard Spring Boot endpoint
+    /**
+     * Encola el procesamiento y responde de inmediato con el jobId (202).
+     * Si ya hay un procesamiento activo, o se repite el header Idempotency-Key, se devuelve el mismo trabajo.
+     */
     @PostMapping("/procesar")
-    public ResponseEntity<byte[]> procesarSolicitudesPost() {
+    public ResponseEntity<Map<String, Object>> procesarSolicitudesPost(
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         logger.info("POST /api/solicitudes-presupuesto/procesar endpoint invoked (App Runner)");
         try {
-            logger.info("Llamando a procesarYExportarExcel...");
-            byte[] excelBytes = procesarSolicitudesService.procesarYExportarExcel();
-            logger.info("Procesamiento y exportación completado. Bytes generados: {}", excelBytes.length);
-
-            return ResponseEntity.ok()
-                .header("Content-Type", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")
-                .header("Content-Disposition", "attachment; filename=\"solicitudes.xlsx\"")
-                .body(excelBytes);
+            ProcesamientoJob job = procesamientoJobService.submit(idempotencyKey);
+            return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .header(HttpHeaders.LOCATION, "/api/solicitudes-presupuesto/procesar/jobs/" + job.getJobId())
+                .body(jobResponse(job));
         } catch (Exception ex) {
-            logger.error("Error en procesarYExportarExcel: {}", ex.getMessage(), ex);
-            // Devuelve un error 500 con un cuerpo JSON como bytes
-            String errorJson = "{\"success\":false,\"message\":\"Error procesando solicitudes\"}";
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .header("Content-Type", "application/json")
-                .body(errorJson.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            logger.error("Error encolando procesamiento: {}", ex.getMessage(), ex);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(Map.of("success", false, "message", "No se pudo iniciar el procesamiento de solicitudes"));
         }
     }
 
+    @GetMapping("/procesar/jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> getProcesamientoJob(@PathVariable String jobId) {
+        return procesamientoJobService.find(jobId)
+            .map(job -> ResponseEntity.ok(jobResponse(job)))
+            .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .body(Map.of("success", false, "message", "Trabajo no encontrado")));
+    }
+
+    @GetMapping("/procesar/jobs/{jobId}/archivo")
+    public ResponseEntity<StreamingResponseBody> descargarProcesamientoJob(@PathVariable String jobId) {
+        Optional<ProcesamientoJob> job = procesamientoJobService.find(jobId);
+        if (job.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!job.get().isArchivoDisponible()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        if (!procesamientoJobService.existeArchivo(job.get())) {
+            // Venció o quedó en un almacén que esta instancia no ve
+            return ResponseEntity.status(HttpStatus.GONE).build();
+        }
+        StreamingResponseBody body = out -> {
+            try (java.io.InputStream in = procesamientoJobService.openArchivo(job.get())) {
+                in.transferTo(out);
+            }
+        };
+        return ResponseEntity.ok()
+            .header("Content-Type", "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet")
+            .header("Content-Disposition", "attachment; filename=\"solicitudes.xlsx\"")
+            .body(body);
+    }
+
+    private Map<String, Object> jobResponse(ProcesamientoJob job) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", job.getEstado() != ProcesamientoJob.Estado.ERROR);
+        response.put("jobId", job.getJobId());
+        response.put("estado", job.getEstado());
+        response.put("total", job.getTotal());
+        response.put("procesadas", job.getProcesadas());
+        response.put("mensaje", job.getMensaje());
+        response.put("fechaCreacion", job.getFechaCreacion());
+        response.put("fechaFin", job.getFechaFin());
+        if (job.isArchivoDisponible()) {
+            response.put("archivoUrl", "/api/solicitudes-presupuesto/procesar/jobs/" + job.getJobId() + "/archivo");
+        }
+        return response;
+    }
+
     @PutMapping("/cambiar-estatus")
     public ResponseEntity<Map<String, Object>> cambiarEstatus(
             @RequestBody Map<String, Object> request) {
@@ -315,6 +440,9 @@ public class SolicitudPresupuestoController {
             String id = null;
             String solicitudId = null;
             String nuevoEstatus = null;
+            // Opcionales: condicionan la transición a lo que el cliente tenía en pantalla
+            String estatusEsperado = request.get("estatusEsperado") != null ? request.get("estatusEsperado").toString() : null;
+            Object versionRaw = request.get("version");
             String userLogueado = request.get("userLogueado") != null ? request.get("userLogueado").toString() : "";
             // Manejar diferentes formatos de payload
             if (request.containsKey("solicitud")) {
@@ -324,6 +452,9 @@ public class SolicitudPresupuestoController {
                 if (solicitudData != null) {
                     id = (String) solicitudData.get("id");
                     solicitudId = (String) solicitudData.get("solicitudId");
+                    if (versionRaw == null) {
+                        versionRaw = solicitudData.get("version");
+                    }
                 }
             } else if (request.containsKey("solicitudId")) {
                 solicitudId = (String) request.get("solicitudId");
@@ -335,60 +466,81 @@ public class SolicitudPresupuestoController {
                 return ResponseEntity.badRequest()
                         .body(Map.of("success", false, "message", "id y solicitudId son requeridos"));
             }
-            Optional<SolicitudPresupuesto> existingSolicitud = solicitudPresupuestoRepository.findById(id, solicitudId);
-            if (!existingSolicitud.isPresent()) {
+            if (nuevoEstatus == null || nuevoEstatus.isEmpty()) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("success", false, "message", "El nuevo estatus es requerido"));
+            }
+            Long versionEsperada;
+            try {
+                versionEsperada = versionRaw != null ? Long.valueOf(versionRaw.toString()) : null;
+            } catch (NumberFormatException ex) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("success", false, "message", "version inválida: " + versionRaw));
+            }
+            // Datos del correo según el cambio de estatus (se encola en la outbox, no espera a SES)
+            String motivoRechazo = request.get("motivoRechazo") != null ? request.get("motivoRechazo").toString() : "";
+            // Obtener el displayName del usuario logueado (aprobador)
+            String nombreAprobador = "";
+            try {
+                // Obtener el correo del usuario autenticado desde el header (API Gateway Authorizer)
+                ScimUser scimUserAprobador = userAuthUtils.getScimUserByEmail(userLogueado);
+                if (scimUserAprobador != null && scimUserAprobador.getDisplayName() != null && !scimUserAprobador.getDisplayName().isEmpty()) {
+                    nombreAprobador = scimUserAprobador.getDisplayName();
+                } else {
+                    nombreAprobador = userLogueado;
+                }
+            } catch (Exception ex) {
+                logger.warn("No se pudo obtener el nombre del aprobador, usando correo. Error: {}", ex.getMessage());
+                nombreAprobador = "";
+            }
+            final String estatus = nuevoEstatus;
+            final String aprobador = nombreAprobador;
+            // El cambio de estatus y su correo se escriben en una sola transacción condicional
+            Optional<SolicitudPresupuesto> anterior;
+            try {
+                anterior = solicitudPresupuestoRepository.cambiarEstatus(
+                    id, solicitudId, nuevoEstatus, estatusEsperado, versionEsperada, null,
+                    (previa, posterior) -> emailService.correoCambioEstatus(
+                        previa.getEstatusConfirmacion(),
+                        estatus,
+                        posterior.getCorreo(),
+                        posterior,
+                        motivoRechazo,
+                        aprobador,
+                        ""
+                    ));
+            } catch (SolicitudPresupuestoRepository.EstatusConflictoException ex) {
+                logger.warn("Conflicto al cambiar estatus de {}/{}: actual={}, version={}",
+                    id, solicitudId, ex.getEstatusActual(), ex.getVersionActual());
+                Map<String, Object> conflicto = new HashMap<>();
+                conflicto.put("success", false);
+                conflicto.put("message", ex.getMessage());
+                conflicto.put("estatusActual", ex.getEstatusActual());
+                conflicto.put("version", ex.getVersionActual());
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(conflicto);
+            }
+            if (!anterior.isPresent()) {
                 logger.warn("Solicitud no encontrada para ID: {} y solicitudId: {}", id, solicitudId);
                 return ResponseEntity.status(HttpStatus.NOT_FOUND)
                         .body(Map.of("success", false, "message", "Solicitud no encontrada"));
             }
-            // Actualizar el estatus
-            SolicitudPresupuesto solicitud = existingSolicitud.get();
+            // La respuesta se arma desde la imagen anterior más los cambios aplicados, sin releer el item
+            SolicitudPresupuesto solicitud = anterior.get();
             String estatusAnterior = solicitud.getEstatusConfirmacion();
-            solicitud.setEstatusConfirmacion(nuevoEstatus);
+            solicitud.setEstatusConfirmacion(EstatusSolicitud.normalizar(nuevoEstatus));
             solicitud.setFechaActualizacion(Instant.now());
-            // Guardar la solicitud actualizada
-            SolicitudPresupuesto updatedSolicitud = solicitudPresupuestoRepository.save(solicitud);
-
-            // --- ENVÍO DE CORREO SEGÚN CAMBIO DE ESTATUS ---
-            try {
-                String motivoRechazo = request.get("motivoRechazo") != null ? request.get("motivoRechazo").toString() : "";
-                String correoSolicitante = solicitud.getCorreo();
-                // Obtener el displayName del usuario logueado (aprobador)
-                String nombreAprobador = "";
-                try {
-                    // Obtener el correo del usuario autenticado desde el header (API Gateway Authorizer)
-                    ScimUser scimUserAprobador = userAuthUtils.getScimUserByEmail(userLogueado);
-                    if (scimUserAprobador != null && scimUserAprobador.getDisplayName() != null && !scimUserAprobador.getDisplayName().isEmpty()) {
-                        nombreAprobador = scimUserAprobador.getDisplayName();
-                    } else {
-                        nombreAprobador = userLogueado;
-                    }
-                } catch (Exception ex) {
-                    logger.warn("No se pudo obtener el nombre del aprobador, usando correo. Error: {}", ex.getMessage());
-                    nombreAprobador = "";
-                }
-                emailService.sendNotificacionCambioEstatus(
-                    estatusAnterior,
-                    nuevoEstatus,
-                    correoSolicitante,
-                    solicitud,
-                    motivoRechazo,
-                    nombreAprobador,
-                    ""
-                );
-            } catch (Exception ex) {
-                logger.warn("No se pudo enviar correo de notificación de estatus: {}", ex.getMessage());
-            }
-            // --- FIN ENVÍO DE CORREO ---
-
-            return ResponseEntity.ok(Map.of(
-                "success", true,
-                "message", "Estatus actualizado exitosamente",
-                "solicitudId", updatedSolicitud.getId(),
-                "estatusAnterior", estatusAnterior,
-                "nuevoEstatus", nuevoEstatus,
-                "solicitud", updatedSolicitud
-            ));
+            solicitud.setVersion(solicitud.getVersion() != null ? solicitud.getVersion() + 1 : 1L);
+            SolicitudPresupuesto updatedSolicitud = solicitud;
+
+            // HashMap: estatusAnterior puede venir en null en solicitudes antiguas
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "Estatus actualizado exitosamente");
+            response.put("solicitudId", updatedSolicitud.getId());
+            response.put("estatusAnterior", estatusAnterior);
+            response.put("nuevoEstatus", nuevoEstatus);
+            response.put("solicitud", updatedSolicitud);
+            return ResponseEntity.ok(response);
         } catch (Exception e) {
             logger.error("Error cambiando estatus de solicitud: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -14,6 +14,9 @@ public class CategoriaGasto {
     private String cuenta;
     private double saldo;
 
+    // Generación del catálogo a la que pertenece el registro (ver CatalogGenerations)
+    private Long generacion;
+
     public CategoriaGasto() {}
 
     @DynamoDbPartitionKey
@@ -69,4 +72,12 @@ public class CategoriaGasto {
     public void setSaldo(double saldo) {
         this.saldo = saldo;
     }
+
+    public Long getGeneracion() {
+        return generacion;
+    }
+
+    public void setGeneracion(Long generacion) {
+        this.generacion = generacion;
+    }
 }
@@ -0,0 +1,22 @@
+package com.cdc.fin.presupuesto.model;
+
+import java.util.List;
+
+/**
+ * Página de resultados paginada por llave (LastEvaluatedKey) en lugar de por número de página.
+ * nextCursor es null cuando ya no hay más resultados.
+ */
+public class CursorPage<T> {
+
+    private final List<T> items;
+    private final String nextCursor;
+
+    public CursorPage(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getItems() { return items; }
+    public String getNextCursor() { return nextCursor; }
+    public boolean isHasMore() { return nextCursor != null; }
+}
@@ -14,6 +14,9 @@ public class Departamento {
     private String ceco;
     private String presupuestoDefault;
 
+    // Generación del catálogo a la que pertenece el registro (ver CatalogGenerations)
+    private Long generacion;
+
     public Departamento() {}
 
     @DynamoDbPartitionKey
@@ -69,4 +72,12 @@ public class Departamento {
     public void setPresupuestoDefault(String presupuestoDefault) {
         this.presupuestoDefault = presupuestoDefault;
     }
+
+    public Long getGeneracion() {
+        return generacion;
+    }
+
+    public void setGeneracion(Long generacion) {
+        this.generacion = generacion;
+    }
 }
@@ -0,0 +1,114 @@
+package com.cdc.fin.presupuesto.model;
+
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondaryPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondarySortKey;
+
+import java.time.Instant;
+
+/**
+ * Correo pendiente de enviar (outbox). Se escribe junto con el cambio que lo origina y lo envía
+ * EmailOutboxDispatcher en segundo plano. La llave se deriva del evento (tipo, solicitud, versión),
+ * así el mismo aviso no se encola ni se envía dos veces.
+ */
+@DynamoDbBean
+public class EmailOutbox {
+
+    public static final String PENDIENTE = "PENDIENTE";
+    public static final String ENVIADO = "ENVIADO";
+    public static final String FALLIDO = "FALLIDO";
+    // Avisos al aprobador que esperan a salir en un resumen (EmailDigestService) y los ya incluidos en uno
+    public static final String EN_RESUMEN = "EN_RESUMEN";
+    public static final String AGRUPADO = "AGRUPADO";
+
+    private String messageKey;
+    private String tipo;
+    private String remitente;
+    private String destinatario;
+    private String asunto;
+    private String cuerpo;
+    private String estado;
+    // Epoch ms a partir del cual el dispatcher puede tomarlo (reintento o reserva vigente)
+    private Long proximoIntento;
+    private Integer intentos;
+    private String ultimoError;
+    private String messageId;
+    private Instant fechaCreacion;
+    private Instant fechaEnvio;
+    // Epoch segundos para el TTL de DynamoDB; solo se fija al enviarse o agruparse
+    private Long expiraEn;
+    // Solo avisos EN_RESUMEN: sección del resumen y renglón ya formateado de la solicitud
+    private String departamento;
+    private String detalle;
+    // Llave del resumen que incluyó este aviso (AGRUPADO)
+    private String resumen;
+
+    public EmailOutbox() {}
+
+    public EmailOutbox(String messageKey, String tipo, String destinatario, String asunto, String cuerpo) {
+        this.messageKey = messageKey;
+        this.tipo = tipo;
+        this.destinatario = destinatario;
+        this.asunto = asunto;
+        this.cuerpo = cuerpo;
+        this.estado = PENDIENTE;
+        this.intentos = 0;
+        this.fechaCreacion = Instant.now();
+        this.proximoIntento = fechaCreacion.toEpochMilli();
+    }
+
+    @DynamoDbPartitionKey
+    public String getMessageKey() { return messageKey; }
+    public void setMessageKey(String messageKey) { this.messageKey = messageKey; }
+
+    public String getTipo() { return tipo; }
+    public void setTipo(String tipo) { this.tipo = tipo; }
+
+    public String getRemitente() { return remitente; }
+    public void setRemitente(String remitente) { this.remitente = remitente; }
+
+    public String getDestinatario() { return destinatario; }
+    public void setDestinatario(String destinatario) { this.destinatario = destinatario; }
+
+    public String getAsunto() { return asunto; }
+    public void setAsunto(String asunto) { this.asunto = asunto; }
+
+    public String getCuerpo() { return cuerpo; }
+    public void setCuerpo(String cuerpo) { this.cuerpo = cuerpo; }
+
+    @DynamoDbSecondaryPartitionKey(indexNames = {"estado-proximoIntento-index"})
+    public String getEstado() { return estado; }
+    public void setEstado(String estado) { this.estado = estado; }
+
+    @DynamoDbSecondarySortKey(indexNames = {"estado-proximoIntento-index"})
+    public Long getProximoIntento() { return proximoIntento; }
+    public void setProximoIntento(Long proximoIntento) { this.proximoIntento = proximoIntento; }
+
+    public Integer getIntentos() { return intentos; }
+    public void setIntentos(Integer intentos) { this.intentos = intentos; }
+
+    public String getUltimoError() { return ultimoError; }
+    public void setUltimoError(String ultimoError) { this.ultimoError = ultimoError; }
+
+    public String getMessageId() { return messageId; }
+    public void setMessageId(String messageId) { this.messageId = messageId; }
+
+    public Instant getFechaCreacion() { return fechaCreacion; }
+    public void setFechaCreacion(Instant fechaCreacion) { this.fechaCreacion = fechaCreacion; }
+
+    public Instant getFechaEnvio() { return fechaEnvio; }
+    public void setFechaEnvio(Instant fechaEnvio) { this.fechaEnvio = fechaEnvio; }
+
+    public Long getExpiraEn() { return expiraEn; }
+    public void setExpiraEn(Long expiraEn) { this.expiraEn = expiraEn; }
+
+    public String getDepartamento() { return departamento; }
+    public void setDepartamento(String departamento) { this.departamento = departamento; }
+
+    public String getDetalle() { return detalle; }
+    public void setDetalle(String detalle) { this.detalle = detalle; }
+
+    public String getResumen() { return resumen; }
+    public void setResumen(String resumen) { this.resumen = resumen; }
+}
@@ -0,0 +1,71 @@
+package com.cdc.fin.presupuesto.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Estado de una importación CSV asíncrona (archivo guardado en disco y procesado en segundo plano).
+ * Se guarda en la tabla de trabajos para consultarse desde cualquier instancia.
+ */
+public class ImportacionJob {
+
+    public enum Estado { EN_COLA, EN_PROCESO, COMPLETADO, ERROR }
+
+    private final String jobId;
+    private final String catalogo;
+    private final String nombreArchivo;
+    private final Instant fechaCreacion;
+    private volatile Estado estado = Estado.EN_COLA;
+    private volatile int leidas;
+    private volatile int exitosas;
+    private volatile int errores;
+    private volatile String mensaje;
+    private volatile Map<String, Object> resultado;
+    private volatile Instant fechaFin;
+    private volatile String archivoTemporal;
+
+    public ImportacionJob(String jobId, String catalogo, String nombreArchivo) {
+        this(jobId, catalogo, nombreArchivo, Instant.now());
+    }
+
+    /** Importación leída de la tabla de trabajos, con su fecha de creación original. */
+    public ImportacionJob(String jobId, String catalogo, String nombreArchivo, Instant fechaCreacion) {
+        this.jobId = jobId;
+        this.catalogo = catalogo;
+        this.nombreArchivo = nombreArchivo;
+        this.fechaCreacion = fechaCreacion;
+    }
+
+    public String getJobId() { return jobId; }
+    public String getCatalogo() { return catalogo; }
+    public String getNombreArchivo() { return nombreArchivo; }
+    public Instant getFechaCreacion() { return fechaCreacion; }
+    public Estado getEstado() { return estado; }
+    public void setEstado(Estado estado) { this.estado = estado; }
+    public int getLeidas() { return leidas; }
+    public int getExitosas() { return exitosas; }
+    public int getErrores() { return errores; }
+    public String getMensaje() { return mensaje; }
+    public void setMensaje(String mensaje) { this.mensaje = mensaje; }
+    /** Respuesta completa de la importación (la misma del endpoint síncrono); null hasta terminar. */
+    public Map<String, Object> getResultado() { return resultado; }
+    public void setResultado(Map<String, Object> resultado) { this.resultado = resultado; }
+    public Instant getFechaFin() { return fechaFin; }
+    public void setFechaFin(Instant fechaFin) { this.fechaFin = fechaFin; }
+
+    @JsonIgnore
+    public String getArchivoTemporal() { return archivoTemporal; }
+    public void setArchivoTemporal(String archivoTemporal) { this.archivoTemporal = archivoTemporal; }
+
+    public void actualizarAvance(int leidas, int exitosas, int errores) {
+        this.leidas = leidas;
+        this.exitosas = exitosas;
+        this.errores = errores;
+    }
+
+    public boolean isActivo() {
+        return estado == Estado.EN_COLA || estado == Estado.EN_PROCESO;
+    }
+}
@@ -14,6 +14,9 @@ public class Presupuesto {
     private String fechaInicial;
     private String fechaFinal;
 
+    // Generación del catálogo a la que pertenece el registro (ver CatalogGenerations)
+    private Long generacion;
+
     public Presupuesto() {}
 
     @DynamoDbPartitionKey
@@ -69,4 +72,12 @@ public class Presupuesto {
     public void setFechaFinal(String fechaFinal) {
         this.fechaFinal = fechaFinal;
     }
+
+    public Long getGeneracion() {
+        return generacion;
+    }
+
+    public void setGeneracion(Long generacion) {
+        this.generacion = generacion;
+    }
 }
@@ -0,0 +1,60 @@
+package com.cdc.fin.presupuesto.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.time.Instant;
+
+/**
+ * Estado de un procesamiento asíncrono de solicitudes aprobadas (/procesar).
+ */
+public class ProcesamientoJob {
+
+    public enum Estado { EN_COLA, EN_PROCESO, COMPLETADO, ERROR }
+
+    private final String jobId;
+    private final Instant fechaCreacion;
+    private volatile Estado estado = Estado.EN_COLA;
+    private volatile int total;
+    private volatile int procesadas;
+    private volatile int exportadas;
+    private volatile String mensaje;
+    private volatile Instant fechaFin;
+    private volatile String archivoKey;
+
+    public ProcesamientoJob(String jobId) {
+        this(jobId, Instant.now());
+    }
+
+    /** Trabajo leído de la tabla de trabajos, con su fecha de creación original. */
+    public ProcesamientoJob(String jobId, Instant fechaCreacion) {
+        this.jobId = jobId;
+        this.fechaCreacion = fechaCreacion;
+    }
+
+    public String getJobId() { return jobId; }
+    public Instant getFechaCreacion() { return fechaCreacion; }
+    public Estado getEstado() { return estado; }
+    public void setEstado(Estado estado) { this.estado = estado; }
+    public int getTotal() { return total; }
+    public void setTotal(int total) { this.total = total; }
+    public int getProcesadas() { return procesadas; }
+    public void setProcesadas(int procesadas) { this.procesadas = procesadas; }
+    public int getExportadas() { return exportadas; }
+    public void setExportadas(int exportadas) { this.exportadas = exportadas; }
+    public String getMensaje() { return mensaje; }
+    public void setMensaje(String mensaje) { this.mensaje = mensaje; }
+    public Instant getFechaFin() { return fechaFin; }
+    public void setFechaFin(Instant fechaFin) { this.fechaFin = fechaFin; }
+
+    @JsonIgnore
+    public String getArchivoKey() { return archivoKey; }
+    public void setArchivoKey(String archivoKey) { this.archivoKey = archivoKey; }
+
+    public boolean isActivo() {
+        return estado == Estado.EN_COLA || estado == Estado.EN_PROCESO;
+    }
+
+    public boolean isArchivoDisponible() {
+        return estado == Estado.COMPLETADO && archivoKey != null;
+    }
+}
@@ -19,6 +19,9 @@ public class Proveedor {
     private String numeroProveedor;
     private String cuentasGastos;
 
+    // Generación del catálogo a la que pertenece el registro (ver CatalogGenerations)
+    private Long generacion;
+
     public Proveedor() {}
 
     @DynamoDbPartitionKey
@@ -120,6 +123,14 @@ public class Proveedor {
         this.cuentasGastos = cuentasGastos;
     }
 
+    public Long getGeneracion() {
+        return generacion;
+    }
+
+    public void setGeneracion(Long generacion) {
+        this.generacion = generacion;
+    }
+
     @Override
     public String toString() {
         return "Proveedor{" +
@@ -1,5 +1,7 @@
 package com.cdc.fin.presupuesto.model;
 
+import com.cdc.fin.presupuesto.util.TextoBusqueda;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
@@ -54,6 +56,9 @@ public class SolicitudPresupuesto {
     
     private String comentarios;
 
+    // Se incrementa en cada transición de estatus o edición parcial; el cliente lo reenvía para detectar ediciones concurrentes
+    private Long version;
+
     public SolicitudPresupuesto() {}
 
     @DynamoDbPartitionKey
@@ -268,4 +273,63 @@ public class SolicitudPresupuesto {
     public void setComentarios(String comentarios) {
         this.comentarios = comentarios;
     }
-}
\ No newline at end of file
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    // Copias plegadas (minúsculas, sin acentos) de los campos de búsqueda parcial: se calculan de
+    // los campos en cada escritura y DynamoDB evalúa contains() sobre ellas (ver TextoBusqueda)
+
+    @JsonIgnore
+    public String getSolicitanteBusqueda() {
+        return TextoBusqueda.plegar(solicitante);
+    }
+
+    public void setSolicitanteBusqueda(String ignorado) {
+    }
+
+    @JsonIgnore
+    public String getProveedorBusqueda() {
+        return TextoBusqueda.plegar(proveedor);
+    }
+
+    public void setProveedorBusqueda(String ignorado) {
+    }
+
+    @JsonIgnore
+    public String getDepartamentoBusqueda() {
+        return TextoBusqueda.plegar(departamento);
+    }
+
+    public void setDepartamentoBusqueda(String ignorado) {
+    }
+
+    @JsonIgnore
+    public String getSubDepartamentoBusqueda() {
+        return TextoBusqueda.plegar(subDepartamento);
+    }
+
+    public void setSubDepartamentoBusqueda(String ignorado) {
+    }
+
+    @JsonIgnore
+    public String getCategoriaGastoBusqueda() {
+        return TextoBusqueda.plegar(categoriaGasto);
+    }
+
+    public void setCategoriaGastoBusqueda(String ignorado) {
+    }
+
+    @JsonIgnore
+    public String getCuentaGastosBusqueda() {
+        return TextoBusqueda.plegar(cuentaGastos);
+    }
+
+    public void setCuentaGastosBusqueda(String ignorado) {
+    }
+}
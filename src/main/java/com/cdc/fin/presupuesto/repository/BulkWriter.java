@@ -0,0 +1,396 @@
+package com.cdc.fin.presupuesto.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.TableMetadata;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteRequest;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.RequestLimitExceededException;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Escritura masiva (BatchWriteItem) para las importaciones de catálogos y solicitudes.
+ * <p>
+ * Divide la lista en lotes de 25 que procesan varios escritores en paralelo. Los elementos sin
+ * procesar (throttling) se reintentan con backoff exponencial con jitter; si el lote completo es
+ * rechazado por un error no recuperable (p. ej. llaves duplicadas), se escribe fila por fila para
+ * aislar las filas inválidas. El ritmo se adapta a la ConsumedCapacity: al primer throttling la
+ * tasa baja a la mitad de lo observado y se recupera gradualmente con cada lote completo.
+ * Ninguna fila se pierde en silencio: el resultado informa cada fila que no se pudo escribir.
+ */
+@Component
+public class BulkWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkWriter.class);
+
+    static final int BATCH_SIZE = 25;
+    private static final long BACKOFF_BASE_MS = 50;
+    private static final long BACKOFF_MAX_MS = 5000;
+
+    private final DynamoDbClient dynamoDbClient;
+    private final Executor executor;
+    private final int concurrency;
+    private final int maxRetries;
+    private final double maxWcuPorSegundo;
+
+    public BulkWriter(DynamoDbClient dynamoDbClient,
+                      @Qualifier("bulkWriteExecutor") Executor executor,
+                      @Value("${presupuesto.bulk-write.concurrency:4}") int concurrency,
+                      @Value("${presupuesto.bulk-write.max-retries:8}") int maxRetries,
+                      @Value("${presupuesto.bulk-write.max-wcu-per-second:0}") double maxWcuPorSegundo) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.executor = executor;
+        this.concurrency = Math.max(1, concurrency);
+        this.maxRetries = Math.max(0, maxRetries);
+        this.maxWcuPorSegundo = maxWcuPorSegundo;
+    }
+
+    /**
+     * Fila que no se pudo escribir; indice es la posición en la lista recibida.
+     */
+    public static final class Fallo {
+        private final int indice;
+        private final String mensaje;
+
+        Fallo(int indice, String mensaje) {
+            this.indice = indice;
+            this.mensaje = mensaje;
+        }
+
+        public int getIndice() { return indice; }
+        public String getMensaje() { return mensaje; }
+    }
+
+    /**
+     * Resumen de una escritura masiva.
+     */
+    public static final class Resultado {
+        private final int total;
+        private final AtomicInteger escritos = new AtomicInteger();
+        private final AtomicInteger reintentos = new AtomicInteger();
+        private final DoubleAdder capacidad = new DoubleAdder();
+        private final List<Fallo> fallos = Collections.synchronizedList(new ArrayList<>());
+        private final long inicio = System.nanoTime();
+        private volatile long millis;
+
+        Resultado(int total) {
+            this.total = total;
+        }
+
+        public int getTotal() { return total; }
+        public int getEscritos() { return escritos.get(); }
+        public int getReintentos() { return reintentos.get(); }
+        public double getCapacidadConsumida() { return capacidad.sum(); }
+        public long getMillis() { return millis; }
+        public boolean isCompleto() { return fallos.isEmpty(); }
+
+        /** Fallos ordenados por índice de fila. */
+        public List<Fallo> getFallos() {
+            List<Fallo> copia;
+            synchronized (fallos) {
+                copia = new ArrayList<>(fallos);
+            }
+            copia.sort((a, b) -> Integer.compare(a.indice, b.indice));
+            return copia;
+        }
+
+        /**
+         * Lanza IllegalStateException si alguna fila no se escribió; para los llamadores que no
+         * reportan filas individuales.
+         */
+        public Resultado requireCompleto(String descripcion) {
+            if (!isCompleto()) {
+                List<Fallo> detalle = getFallos();
+                throw new IllegalStateException("No se pudieron escribir " + detalle.size() + " de " + total + " "
+                    + descripcion + ": " + detalle.get(0).getMensaje());
+            }
+            return this;
+        }
+
+        double segundos() {
+            return Math.max((System.nanoTime() - inicio) / 1e9, 1e-3);
+        }
+    }
+
+    public <T> Resultado putAll(DynamoDbTable<T> table, List<T> items) {
+        List<WriteRequest> requests = new ArrayList<>(items.size());
+        for (T item : items) {
+            requests.add(WriteRequest.builder()
+                .putRequest(PutRequest.builder().item(table.tableSchema().itemToMap(item, true)).build())
+                .build());
+        }
+        return write(table.tableName(), requests);
+    }
+
+    public <T> Resultado deleteAll(DynamoDbTable<T> table, List<T> items) {
+        TableMetadata metadata = table.tableSchema().tableMetadata();
+        List<String> keyNames = new ArrayList<>();
+        keyNames.add(metadata.primaryPartitionKey());
+        metadata.primarySortKey().ifPresent(keyNames::add);
+        List<WriteRequest> requests = new ArrayList<>(items.size());
+        for (T item : items) {
+            Map<String, AttributeValue> key = table.tableSchema().itemToMap(item, keyNames);
+            requests.add(WriteRequest.builder()
+                .deleteRequest(DeleteRequest.builder().key(key).build())
+                .build());
+        }
+        return write(table.tableName(), requests);
+    }
+
+    private Resultado write(String tableName, List<WriteRequest> requests) {
+        Resultado resultado = new Resultado(requests.size());
+        Queue<Lote> lotes = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < requests.size(); i += BATCH_SIZE) {
+            lotes.add(new Lote(i, requests.subList(i, Math.min(i + BATCH_SIZE, requests.size()))));
+        }
+        Pacer pacer = new Pacer(maxWcuPorSegundo);
+        int escritores = Math.min(concurrency, lotes.size());
+        List<CompletableFuture<Void>> tareas = new ArrayList<>(escritores);
+        for (int w = 0; w < escritores; w++) {
+            tareas.add(CompletableFuture.runAsync(() -> {
+                Lote lote;
+                while ((lote = lotes.poll()) != null) {
+                    try {
+                        escribirLote(tableName, lote, pacer, resultado);
+                    } catch (RuntimeException e) {
+                        logger.error("Error inesperado escribiendo lote en {}: {}", tableName, e.getMessage(), e);
+                        lote.fallarTodo(resultado, e.getMessage());
+                    }
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(tareas.toArray(new CompletableFuture[0])).join();
+        resultado.millis = (System.nanoTime() - resultado.inicio) / 1_000_000;
+        logger.info("Escritura masiva en {}: {}/{} filas en {} ms ({} reintentos, {} WCU, {} fallidas)",
+            tableName, resultado.getEscritos(), resultado.getTotal(), resultado.getMillis(),
+            resultado.getReintentos(), String.format("%.1f", resultado.getCapacidadConsumida()), resultado.fallos.size());
+        return resultado;
+    }
+
+    private void escribirLote(String tableName, Lote lote, Pacer pacer, Resultado resultado) {
+        List<WriteRequest> pendientes = lote.requests;
+        List<Integer> indices = lote.indices;
+        for (int intento = 0; ; intento++) {
+            if (!dormir(pacer.espera())) {
+                fallar(indices, resultado, "Interrumpido");
+                return;
+            }
+            BatchWriteItemResponse response;
+            try {
+                response = dynamoDbClient.batchWriteItem(BatchWriteItemRequest.builder()
+                    .requestItems(Map.of(tableName, pendientes))
+                    .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                    .build());
+            } catch (ProvisionedThroughputExceededException | RequestLimitExceededException | SdkClientException e) {
+                if (intento >= maxRetries) {
+                    fallar(indices, resultado, e.getMessage());
+                    return;
+                }
+                pacer.throttling(resultado.getCapacidadConsumida() / resultado.segundos());
+                resultado.reintentos.incrementAndGet();
+                if (!dormir(backoff(intento))) {
+                    fallar(indices, resultado, "Interrumpido");
+                    return;
+                }
+                continue;
+            } catch (DynamoDbException e) {
+                // Error de validación del lote completo: se escribe fila por fila para aislar la inválida
+                logger.warn("Lote rechazado en {} ({}), se escribirá fila por fila", tableName, e.getMessage());
+                escribirIndividual(tableName, pendientes, indices, resultado);
+                return;
+            }
+
+            double unidades = capacidad(response.consumedCapacity());
+            resultado.capacidad.add(unidades);
+            pacer.consumido(unidades);
+            List<WriteRequest> sinProcesar = response.hasUnprocessedItems()
+                ? response.unprocessedItems().getOrDefault(tableName, List.of())
+                : List.of();
+            resultado.escritos.addAndGet(pendientes.size() - sinProcesar.size());
+            if (sinProcesar.isEmpty()) {
+                pacer.exito();
+                return;
+            }
+            List<Integer> indicesSinProcesar = indicesDe(pendientes, indices, sinProcesar);
+            if (intento >= maxRetries) {
+                fallar(indicesSinProcesar, resultado, "Sin procesar después de " + maxRetries + " reintentos (throttling)");
+                return;
+            }
+            pacer.throttling(resultado.getCapacidadConsumida() / resultado.segundos());
+            resultado.reintentos.incrementAndGet();
+            if (!dormir(backoff(intento))) {
+                fallar(indicesSinProcesar, resultado, "Interrumpido");
+                return;
+            }
+            pendientes = sinProcesar;
+            indices = indicesSinProcesar;
+        }
+    }
+
+    /**
+     * Índice original de cada escritura que DynamoDB devolvió sin procesar. Vuelven como copias, así
+     * que se emparejan por igualdad; si dos filas son idénticas cada una conserva su propio índice.
+     */
+    private static List<Integer> indicesDe(List<WriteRequest> enviadas, List<Integer> indices, List<WriteRequest> sinProcesar) {
+        Map<WriteRequest, ArrayDeque<Integer>> porEscritura = new HashMap<>();
+        for (int i = 0; i < enviadas.size(); i++) {
+            porEscritura.computeIfAbsent(enviadas.get(i), k -> new ArrayDeque<>()).add(indices.get(i));
+        }
+        List<Integer> resultado = new ArrayList<>(sinProcesar.size());
+        for (WriteRequest request : sinProcesar) {
+            ArrayDeque<Integer> disponibles = porEscritura.get(request);
+            if (disponibles == null || disponibles.isEmpty()) {
+                throw new IllegalStateException("DynamoDB devolvió sin procesar una escritura que no se envió en el lote");
+            }
+            resultado.add(disponibles.poll());
+        }
+        return resultado;
+    }
+
+    private static void fallar(List<Integer> indices, Resultado resultado, String mensaje) {
+        for (int indice : indices) {
+            resultado.fallos.add(new Fallo(indice, mensaje));
+        }
+    }
+
+    private void escribirIndividual(String tableName, List<WriteRequest> pendientes, List<Integer> indices, Resultado resultado) {
+        for (int i = 0; i < pendientes.size(); i++) {
+            WriteRequest request = pendientes.get(i);
+            try {
+                if (request.putRequest() != null) {
+                    dynamoDbClient.putItem(PutItemRequest.builder()
+                        .tableName(tableName)
+                        .item(request.putRequest().item())
+                        .build());
+                } else {
+                    dynamoDbClient.deleteItem(DeleteItemRequest.builder()
+                        .tableName(tableName)
+                        .key(request.deleteRequest().key())
+                        .build());
+                }
+                resultado.escritos.incrementAndGet();
+            } catch (RuntimeException e) {
+                resultado.fallos.add(new Fallo(indices.get(i), e.getMessage()));
+            }
+        }
+    }
+
+    // Full jitter: espera aleatoria entre 0 y min(máximo, base * 2^intento)
+    private static long backoff(int intento) {
+        long techo = Math.min(BACKOFF_MAX_MS, BACKOFF_BASE_MS << Math.min(intento, 16));
+        return ThreadLocalRandom.current().nextLong(techo + 1);
+    }
+
+    private static boolean dormir(long millis) {
+        if (millis <= 0) return true;
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static double capacidad(List<ConsumedCapacity> consumida) {
+        double total = 0;
+        if (consumida != null) {
+            for (ConsumedCapacity c : consumida) {
+                if (c.capacityUnits() != null) total += c.capacityUnits();
+            }
+        }
+        return total;
+    }
+
+    /** Lote de hasta 25 escrituras con la posición de cada una en la lista original. */
+    private static final class Lote {
+        final List<WriteRequest> requests;
+        final List<Integer> indices;
+
+        Lote(int desde, List<WriteRequest> requests) {
+            this.requests = requests;
+            this.indices = new ArrayList<>(requests.size());
+            for (int i = 0; i < requests.size(); i++) {
+                indices.add(desde + i);
+            }
+        }
+
+        void fallarTodo(Resultado resultado, String mensaje) {
+            fallar(indices, resultado, mensaje);
+        }
+    }
+
+    /**
+     * Ritmo adaptativo compartido por los escritores de una misma escritura masiva.
+     * Sin límite configurado no frena hasta el primer throttling; a partir de ahí reparte las
+     * escrituras a la tasa vigente (WCU/s), que baja a la mitad con cada throttling y sube un 10%
+     * con cada lote completo hasta volver al límite (o a ilimitado si no se configuró).
+     */
+    private static final class Pacer {
+        private static final double TASA_MINIMA = 5;
+
+        private final double maximo;
+        private double tasa;
+        private double techo;
+        private long siguienteNanos;
+
+        Pacer(double maximo) {
+            this.maximo = maximo > 0 ? maximo : Double.POSITIVE_INFINITY;
+            this.tasa = this.maximo;
+        }
+
+        synchronized long espera() {
+            long ahora = System.nanoTime();
+            return Math.max(0, (siguienteNanos - ahora) / 1_000_000);
+        }
+
+        synchronized void consumido(double unidades) {
+            if (Double.isInfinite(tasa) || unidades <= 0) return;
+            long ahora = System.nanoTime();
+            siguienteNanos = Math.max(siguienteNanos, ahora) + (long) (unidades / tasa * 1e9);
+        }
+
+        synchronized void throttling(double observada) {
+            double base = Double.isInfinite(tasa) ? observada : tasa;
+            if (Double.isInfinite(tasa)) techo = observada;
+            tasa = Math.max(TASA_MINIMA, base / 2);
+        }
+
+        synchronized void exito() {
+            if (Double.isInfinite(tasa)) return;
+            tasa = tasa * 1.1;
+            if (tasa >= maximo || (Double.isInfinite(maximo) && tasa >= techo)) {
+                tasa = maximo;
+            }
+        }
+    }
+}
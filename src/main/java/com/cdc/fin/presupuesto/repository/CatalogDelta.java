@@ -0,0 +1,249 @@
+package com.cdc.fin.presupuesto.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Sincronización por diferencias de un catálogo completo (importación en modo delta).
+ * <p>
+ * Cada fila se reduce a un hash de contenido de 64 bits (SHA-256 truncado sobre sus atributos en
+ * orden, sin {@value CatalogGenerations#ATRIBUTO}). Con un scan se arma el mapa id → hash de lo
+ * que ya está en la tabla y solo se escriben las filas nuevas o cambiadas y se eliminan las que el
+ * archivo ya no trae; las filas idénticas no consumen escritura. El hash se calcula a partir de
+ * los items leídos, así que no requiere atributos adicionales ni una primera carga especial.
+ * Las filas llegan por lotes mientras se lee el archivo: la memoria depende del tamaño del
+ * catálogo y no del archivo.
+ */
+@Component
+public class CatalogDelta {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogDelta.class);
+
+    private final BulkWriter bulkWriter;
+
+    public CatalogDelta(BulkWriter bulkWriter) {
+        this.bulkWriter = bulkWriter;
+    }
+
+    /**
+     * Abre una sincronización contra las filas existentes. Las filas nuevas se entregan por lotes
+     * con {@link Sesion#escribir}, que puede llamarse desde varios hilos; las bajas se aplican en
+     * {@link Sesion#terminar}.
+     *
+     * @param llaveNatural llave con la que se empatan filas sin ID estable (null = el ID)
+     * @param asignarId    copia a la fila nueva el ID de la existente con la misma llave natural
+     */
+    public <T> Sesion<T> iniciar(DynamoDbTable<T> table, List<T> existentes,
+                                 Function<T, String> llaveNatural, BiConsumer<T, String> asignarId) {
+        return new Sesion<>(table, existentes, llaveNatural, asignarId);
+    }
+
+    /**
+     * Estado de una sincronización: hash e item por ID de lo que había en la tabla (tamaño del
+     * catálogo, no del archivo) y el conjunto de IDs vistos en el archivo.
+     */
+    public final class Sesion<T> {
+        private final DynamoDbTable<T> table;
+        private final String pk;
+        private final Function<T, String> llaveNatural;
+        private final BiConsumer<T, String> asignarId;
+        // Se actualiza con cada fila escrita: un ID repetido en el archivo se compara con su fila anterior
+        private final Map<String, Long> hashes = new ConcurrentHashMap<>();
+        private final Map<String, T> existentesPorId = new HashMap<>();
+        private final Map<String, String> idPorLlave = new HashMap<>();
+        private final Set<String> vistos = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger insertados = new AtomicInteger();
+        private final AtomicInteger actualizados = new AtomicInteger();
+        private final AtomicInteger sinCambios = new AtomicInteger();
+        private final DoubleAdder capacidad = new DoubleAdder();
+        private final long inicio = System.nanoTime();
+
+        private Sesion(DynamoDbTable<T> table, List<T> existentes,
+                       Function<T, String> llaveNatural, BiConsumer<T, String> asignarId) {
+            this.table = table;
+            this.pk = table.tableSchema().tableMetadata().primaryPartitionKey();
+            this.llaveNatural = llaveNatural;
+            this.asignarId = asignarId;
+            for (T item : existentes) {
+                Map<String, AttributeValue> attributes = table.tableSchema().itemToMap(item, true);
+                String id = attributes.get(pk).s();
+                hashes.put(id, hash(attributes));
+                existentesPorId.put(id, item);
+                if (llaveNatural != null) {
+                    idPorLlave.putIfAbsent(llaveNatural.apply(item), id);
+                }
+            }
+        }
+
+        /**
+         * Escribe las filas nuevas o cambiadas del lote.
+         * @return fallos con índices del lote recibido
+         */
+        public List<BulkWriter.Fallo> escribir(List<T> lote) {
+            List<T> escrituras = new ArrayList<>();
+            List<Integer> indices = new ArrayList<>();
+            for (int i = 0; i < lote.size(); i++) {
+                T item = lote.get(i);
+                if (llaveNatural != null) {
+                    String id = idPorLlave.get(llaveNatural.apply(item));
+                    if (id != null) {
+                        asignarId.accept(item, id);
+                    }
+                }
+                Map<String, AttributeValue> attributes = table.tableSchema().itemToMap(item, true);
+                String id = attributes.get(pk).s();
+                vistos.add(id);
+                long hash = hash(attributes);
+                Long anterior = hashes.put(id, hash);
+                if (anterior == null) {
+                    insertados.incrementAndGet();
+                } else if (anterior != hash) {
+                    actualizados.incrementAndGet();
+                } else {
+                    sinCambios.incrementAndGet();
+                    continue;
+                }
+                escrituras.add(item);
+                indices.add(i);
+            }
+            BulkWriter.Resultado puts = bulkWriter.putAll(table, escrituras);
+            capacidad.add(puts.getCapacidadConsumida());
+            List<BulkWriter.Fallo> fallos = new ArrayList<>();
+            for (BulkWriter.Fallo fallo : puts.getFallos()) {
+                fallos.add(new BulkWriter.Fallo(indices.get(fallo.getIndice()), fallo.getMensaje()));
+            }
+            return fallos;
+        }
+
+        /**
+         * Elimina las filas existentes que no llegaron en ningún lote.
+         */
+        public Resultado terminar() {
+            List<T> bajas = new ArrayList<>();
+            List<String> idsBajas = new ArrayList<>();
+            for (Map.Entry<String, T> entry : existentesPorId.entrySet()) {
+                if (!vistos.contains(entry.getKey())) {
+                    bajas.add(entry.getValue());
+                    idsBajas.add(entry.getKey());
+                }
+            }
+            BulkWriter.Resultado deletes = bulkWriter.deleteAll(table, bajas);
+            Resultado resultado = new Resultado();
+            boolean[] fallidas = new boolean[idsBajas.size()];
+            for (BulkWriter.Fallo fallo : deletes.getFallos()) {
+                fallidas[fallo.getIndice()] = true;
+                resultado.noEliminados.add(idsBajas.get(fallo.getIndice()));
+            }
+            for (int i = 0; i < idsBajas.size(); i++) {
+                if (!fallidas[i]) {
+                    resultado.idsEliminados.add(idsBajas.get(i));
+                }
+            }
+            resultado.insertados = insertados.get();
+            resultado.actualizados = actualizados.get();
+            resultado.sinCambios = sinCambios.get();
+            resultado.eliminados = deletes.getEscritos();
+            resultado.capacidadConsumida = capacidad.sum() + deletes.getCapacidadConsumida();
+            resultado.millis = (System.nanoTime() - inicio) / 1_000_000;
+            logger.info("Delta en {}: {} insertados, {} actualizados, {} eliminados, {} sin cambios ({} ms)",
+                table.tableName(), resultado.insertados, resultado.actualizados, resultado.eliminados,
+                resultado.sinCambios, resultado.millis);
+            return resultado;
+        }
+    }
+
+    /**
+     * Resumen de la sincronización.
+     */
+    public static final class Resultado {
+        private int insertados;
+        private int actualizados;
+        private int eliminados;
+        private int sinCambios;
+        private double capacidadConsumida;
+        private long millis;
+        private final List<String> noEliminados = new ArrayList<>();
+        private final List<String> idsEliminados = new ArrayList<>();
+
+        public int getInsertados() { return insertados; }
+        public int getActualizados() { return actualizados; }
+        public int getEliminados() { return eliminados; }
+        public int getSinCambios() { return sinCambios; }
+        public double getCapacidadConsumida() { return capacidadConsumida; }
+        public long getMillis() { return millis; }
+        public List<String> getNoEliminados() { return noEliminados; }
+        public List<String> getIdsEliminados() { return idsEliminados; }
+
+        public Map<String, Object> resumen() {
+            Map<String, Object> resumen = new LinkedHashMap<>();
+            resumen.put("insertados", insertados);
+            resumen.put("actualizados", actualizados);
+            resumen.put("eliminados", eliminados);
+            resumen.put("sinCambios", sinCambios);
+            resumen.put("capacidadConsumida", capacidadConsumida);
+            resumen.put("millis", millis);
+            return resumen;
+        }
+    }
+
+    /**
+     * Hash de contenido estable: atributos ordenados por nombre, cada uno con su tipo, sin la generación.
+     */
+    static long hash(Map<String, AttributeValue> attributes) {
+        MessageDigest digest = sha256();
+        for (Map.Entry<String, AttributeValue> entry : new TreeMap<>(attributes).entrySet()) {
+            if (CatalogGenerations.ATRIBUTO.equals(entry.getKey())) continue;
+            actualizar(digest, entry.getKey());
+            AttributeValue value = entry.getValue();
+            if (value.s() != null) {
+                actualizar(digest, "S");
+                actualizar(digest, value.s());
+            } else if (value.n() != null) {
+                actualizar(digest, "N");
+                actualizar(digest, value.n());
+            } else if (value.bool() != null) {
+                actualizar(digest, "BOOL");
+                actualizar(digest, value.bool().toString());
+            } else {
+                actualizar(digest, "?");
+                actualizar(digest, value.toString());
+            }
+        }
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+
+    private static void actualizar(MessageDigest digest, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        // Prefijo de longitud: evita que "ab"+"c" y "a"+"bc" den el mismo hash
+        digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        digest.update(bytes);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+}
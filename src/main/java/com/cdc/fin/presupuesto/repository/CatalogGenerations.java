@@ -0,0 +1,495 @@
+package com.cdc.fin.presupuesto.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Generaciones de los catálogos (proveedores, departamentos, presupuestos y categorías) para
+ * reemplazos completos (replaceAll) sin ventana de catálogo vacío ni a medio cargar.
+ * <p>
+ * Un item de control por tabla (id = {@value #ID_CONTROL}) guarda la generación activa y la última
+ * asignada. Cada fila lleva el atributo {@value #ATRIBUTO} y su generación en la llave
+ * ("{generación}#{id}"; sin prefijo en la generación 0), así una carga nueva nunca sobrescribe
+ * la fila vigente con el mismo ID. Un reemplazo reserva una generación nueva, escribe el catálogo
+ * completo con ella y al final la activa con un UpdateItem condicional. Solo es visible la
+ * generación activa: durante la carga se ve el catálogo anterior completo y al activar se ve el
+ * nuevo completo. Si el reemplazo falla se eliminan sus filas ({@link #abandonar}); las de
+ * generaciones anteriores se eliminan en segundo plano con escrituras por lotes ({@link BulkWriter}).
+ * <p>
+ * Las escrituras sueltas (save, deleteById, importaciones que agregan) van siempre a la generación
+ * activa. Si hay un reemplazo en curso, su ID se anota en el item de control y al activar se
+ * traslada a la generación nueva (se copia la fila o, si ya no existe, se elimina también ahí).
+ * <p>
+ * Las tablas sin item de control (activa = 0) se comportan como antes: las filas sin generación
+ * son visibles.
+ */
+@Component
+public class CatalogGenerations {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogGenerations.class);
+
+    public static final String ID_CONTROL = "__generacion__";
+    public static final String ATRIBUTO = "generacion";
+    private static final String ACTIVA = "activa";
+    private static final String ULTIMA = "ultima";
+    private static final String ACTIVADA_EN = "activadaEn";
+    // IDs escritos en la generación activa durante un reemplazo y contador de esas anotaciones
+    private static final String PENDIENTES = "pendientes";
+    private static final String CAMBIOS = "cambios";
+    private static final String SEPARADOR = "#";
+    private static final int IDS_POR_ANOTACION = 100;
+
+    private final DynamoDbClient dynamoDbClient;
+    private final BulkWriter bulkWriter;
+    private final long ttlMillis;
+
+    private final Map<String, Puntero> punteros = new ConcurrentHashMap<>();
+    // Tablas usadas en esta instancia; las recorre la recolección periódica
+    private final Map<String, DynamoDbTable<?>> tablas = new ConcurrentHashMap<>();
+
+    public CatalogGenerations(DynamoDbClient dynamoDbClient, BulkWriter bulkWriter,
+                              @Value("${presupuesto.catalog.generation-ttl-ms:5000}") long ttlMillis) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.bulkWriter = bulkWriter;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * Tabla de un catálogo con el acceso al ID y a la generación de sus items.
+     */
+    public static final class Catalogo<T> {
+        private final DynamoDbTable<T> table;
+        private final Function<T, String> id;
+        private final BiConsumer<T, String> asignarId;
+        private final BiConsumer<T, Long> asignarGeneracion;
+
+        public Catalogo(DynamoDbTable<T> table, Function<T, String> id, BiConsumer<T, String> asignarId,
+                        BiConsumer<T, Long> asignarGeneracion) {
+            this.table = table;
+            this.id = id;
+            this.asignarId = asignarId;
+            this.asignarGeneracion = asignarGeneracion;
+        }
+
+        public DynamoDbTable<T> table() {
+            return table;
+        }
+
+        String id(T item) {
+            return id.apply(item);
+        }
+
+        /** Pone en el item la generación y su llave con prefijo. */
+        void asignar(T item, long generacion) {
+            asignarGeneracion.accept(item, generacion);
+            asignarId.accept(item, llave(generacion, id.apply(item)));
+        }
+
+        /** Devuelve al item el ID sin prefijo de generación. */
+        void restaurar(T item, long generacion) {
+            asignarId.accept(item, idLogico(generacion, id.apply(item)));
+        }
+    }
+
+    private static final class Puntero {
+        final long activa;
+        final long ultima;
+        final long activadaEn;
+        final long leidoEn = System.currentTimeMillis();
+
+        Puntero(long activa, long ultima, long activadaEn) {
+            this.activa = activa;
+            this.ultima = ultima;
+            this.activadaEn = activadaEn;
+        }
+    }
+
+    /** Llave de un ID en una generación. */
+    static String llave(long generacion, String id) {
+        return generacion == 0 ? id : generacion + SEPARADOR + id;
+    }
+
+    static String idLogico(long generacion, String llave) {
+        String prefijo = generacion + SEPARADOR;
+        return generacion != 0 && llave != null && llave.startsWith(prefijo) ? llave.substring(prefijo.length()) : llave;
+    }
+
+    /**
+     * Generación activa; se relee de DynamoDB como máximo cada generation-ttl-ms, así una
+     * activación hecha en otra instancia se ve en pocos segundos.
+     */
+    public long activa(DynamoDbTable<?> table) {
+        return puntero(table, false).activa;
+    }
+
+    /**
+     * Generación para escrituras sueltas o importaciones sin reemplazo: la activa, con lectura
+     * consistente.
+     */
+    public long paraEscritura(DynamoDbTable<?> table) {
+        return puntero(table, true).activa;
+    }
+
+    /** Guarda un item en la generación activa; el item conserva su ID sin prefijo. */
+    public <T> long guardar(Catalogo<T> catalogo, T item) {
+        long generacion = paraEscritura(catalogo.table);
+        String id = catalogo.id(item);
+        catalogo.asignar(item, generacion);
+        try {
+            catalogo.table.putItem(item);
+        } finally {
+            catalogo.restaurar(item, generacion);
+        }
+        anotarEscrituras(catalogo.table, List.of(id), generacion);
+        return generacion;
+    }
+
+    /**
+     * Guarda en lotes en la generación activa; ver {@link BulkWriter}.
+     * @return resultado con las filas que no se pudieron escribir (índices de la lista recibida)
+     */
+    public <T> BulkWriter.Resultado guardarTodos(Catalogo<T> catalogo, List<T> items) {
+        long generacion = paraEscritura(catalogo.table);
+        items.forEach(item -> catalogo.asignar(item, generacion));
+        BulkWriter.Resultado resultado;
+        try {
+            resultado = bulkWriter.putAll(catalogo.table, items);
+        } finally {
+            items.forEach(item -> catalogo.restaurar(item, generacion));
+        }
+        anotarEscrituras(catalogo.table, escritos(items, resultado, catalogo::id), generacion);
+        return resultado;
+    }
+
+    public <T> void eliminar(Catalogo<T> catalogo, String id) {
+        long generacion = paraEscritura(catalogo.table);
+        catalogo.table.deleteItem(Key.builder().partitionValue(llave(generacion, id)).build());
+        anotarEscrituras(catalogo.table, List.of(id), generacion);
+    }
+
+    /** Item visible con ese ID (sin prefijo), en la generación activa. */
+    public <T> T buscar(Catalogo<T> catalogo, String id) {
+        if (ID_CONTROL.equals(id)) return null;
+        long activa = activa(catalogo.table);
+        T item = catalogo.table.getItem(Key.builder().partitionValue(llave(activa, id)).build());
+        if (item != null) {
+            catalogo.restaurar(item, activa);
+        }
+        return item;
+    }
+
+    /** Catálogo visible (generación activa) con IDs sin prefijo. */
+    public <T> List<T> visibles(Catalogo<T> catalogo) {
+        long activa = activa(catalogo.table);
+        List<T> items = escanear(catalogo.table, activa);
+        items.forEach(item -> catalogo.restaurar(item, activa));
+        return items;
+    }
+
+    /**
+     * Catálogo visible con las llaves tal como están en la tabla; para comparar contra él en una
+     * importación delta, que escribe en la misma generación.
+     */
+    public <T> List<T> visiblesConLlave(Catalogo<T> catalogo) {
+        return escanear(catalogo.table, paraEscritura(catalogo.table));
+    }
+
+    private <T> List<T> escanear(DynamoDbTable<T> table, long activa) {
+        Expression.Builder filtro = Expression.builder()
+            .putExpressionName("#pk", partitionKey(table))
+            .putExpressionName("#gen", ATRIBUTO)
+            .putExpressionValue(":control", AttributeValue.fromS(ID_CONTROL))
+            .putExpressionValue(":activa", AttributeValue.fromN(Long.toString(activa)));
+        filtro.expression(activa == 0
+            ? "#pk <> :control AND (attribute_not_exists(#gen) OR #gen = :activa)"
+            : "#pk <> :control AND #gen = :activa");
+        return table.scan(ScanEnhancedRequest.builder().filterExpression(filtro.build()).build())
+            .items().stream().collect(Collectors.toList());
+    }
+
+    /**
+     * Reserva una generación nueva (contador atómico en el item de control).
+     */
+    public long iniciar(DynamoDbTable<?> table) {
+        Map<String, AttributeValue> attributes = dynamoDbClient.updateItem(UpdateItemRequest.builder()
+            .tableName(table.tableName())
+            .key(control(table))
+            .updateExpression("ADD #ultima :uno")
+            .expressionAttributeNames(Map.of("#ultima", ULTIMA))
+            .expressionAttributeValues(Map.of(":uno", AttributeValue.fromN("1")))
+            .returnValues(ReturnValue.ALL_NEW)
+            .build()).attributes();
+        Puntero puntero = leer(attributes);
+        punteros.put(table.tableName(), puntero);
+        logger.info("Tabla {}: generación {} reservada (activa {})", table.tableName(), puntero.ultima, puntero.activa);
+        return puntero.ultima;
+    }
+
+    /**
+     * Traslada a la generación indicada las escrituras sueltas hechas durante la carga y la activa
+     * si es posterior a la activa. La activación se condiciona al contador de anotaciones: si
+     * llegó otra escritura suelta entre el traslado y la activación, se vuelve a trasladar.
+     * @return false si otra importación ya activó una generación igual o más reciente
+     */
+    public boolean activar(DynamoDbTable<?> table, long generacion) {
+        while (true) {
+            Map<String, AttributeValue> control = leerControl(table);
+            Puntero actual = leer(control);
+            if (actual.activa >= generacion) {
+                punteros.remove(table.tableName());
+                logger.warn("Tabla {}: la generación {} no se activó, ya hay una más reciente", table.tableName(), generacion);
+                return false;
+            }
+            AttributeValue pendientes = control != null ? control.get(PENDIENTES) : null;
+            if (pendientes != null && pendientes.hasSs()) {
+                for (String id : pendientes.ss()) {
+                    trasladar(table, id, actual.activa, generacion);
+                }
+            }
+            long cambios = control != null ? numero(control.get(CAMBIOS)) : 0;
+            Map<String, AttributeValue> valores = new HashMap<>();
+            valores.put(":gen", AttributeValue.fromN(Long.toString(generacion)));
+            valores.put(":ahora", AttributeValue.fromN(Long.toString(System.currentTimeMillis())));
+            String sinCambios = "attribute_not_exists(#cambios)";
+            if (cambios > 0) {
+                sinCambios = "#cambios = :cambios";
+                valores.put(":cambios", AttributeValue.fromN(Long.toString(cambios)));
+            }
+            try {
+                Map<String, AttributeValue> attributes = dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                    .tableName(table.tableName())
+                    .key(control(table))
+                    .updateExpression("SET #activa = :gen, #activadaEn = :ahora REMOVE #pendientes")
+                    .conditionExpression("(attribute_not_exists(#activa) OR #activa < :gen) AND " + sinCambios)
+                    .expressionAttributeNames(Map.of("#activa", ACTIVA, "#activadaEn", ACTIVADA_EN,
+                        "#pendientes", PENDIENTES, "#cambios", CAMBIOS))
+                    .expressionAttributeValues(valores)
+                    .returnValues(ReturnValue.ALL_NEW)
+                    .build()).attributes();
+                punteros.put(table.tableName(), leer(attributes));
+                logger.info("Tabla {}: generación {} activada", table.tableName(), generacion);
+                return true;
+            } catch (ConditionalCheckFailedException e) {
+                // Otra escritura suelta o una activación más reciente: se vuelve a leer el control
+                logger.debug("Tabla {}: el control cambió al activar la generación {}, se reintenta", table.tableName(), generacion);
+            }
+        }
+    }
+
+    /**
+     * Elimina las filas de una generación que no se activó (reemplazo fallido o abandonado). Si no
+     * hay otro reemplazo en curso, también se descartan las anotaciones de escrituras sueltas.
+     * @return filas eliminadas
+     */
+    public <T> int abandonar(DynamoDbTable<T> table, long generacion) {
+        Expression filtro = Expression.builder()
+            .expression("#gen = :gen")
+            .putExpressionName("#gen", ATRIBUTO)
+            .putExpressionValue(":gen", AttributeValue.fromN(Long.toString(generacion)))
+            .build();
+        List<T> filas = table.scan(ScanEnhancedRequest.builder().filterExpression(filtro).build())
+            .items().stream().collect(Collectors.toList());
+        int eliminadas = 0;
+        if (!filas.isEmpty()) {
+            BulkWriter.Resultado resultado = bulkWriter.deleteAll(table, filas);
+            eliminadas = resultado.getEscritos();
+            if (!resultado.isCompleto()) {
+                // Quedan invisibles y las elimina la recolección después del siguiente reemplazo
+                logger.warn("Tabla {}: {} filas de la generación {} no se pudieron eliminar",
+                    table.tableName(), resultado.getFallos().size(), generacion);
+            }
+        }
+        try {
+            dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                .tableName(table.tableName())
+                .key(control(table))
+                .updateExpression("REMOVE #pendientes")
+                .conditionExpression("#ultima = :gen")
+                .expressionAttributeNames(Map.of("#pendientes", PENDIENTES, "#ultima", ULTIMA))
+                .expressionAttributeValues(Map.of(":gen", AttributeValue.fromN(Long.toString(generacion))))
+                .build());
+        } catch (ConditionalCheckFailedException e) {
+            // Hay un reemplazo posterior en curso: sus anotaciones se conservan
+        }
+        punteros.remove(table.tableName());
+        logger.warn("Tabla {}: generación {} abandonada, {} filas eliminadas", table.tableName(), generacion, eliminadas);
+        return eliminadas;
+    }
+
+    /**
+     * Anota los IDs escritos en la generación indicada si hay un reemplazo en curso, para que se
+     * trasladen al activarlo. Si la activación ocurrió entre la escritura y la anotación, el
+     * traslado se hace aquí mismo.
+     */
+    void anotarEscrituras(DynamoDbTable<?> table, List<String> ids, long generacion) {
+        if (ids.isEmpty()) return;
+        Puntero puntero = puntero(table, true);
+        if (puntero.ultima <= generacion) {
+            return;
+        }
+        for (int i = 0; i < ids.size(); i += IDS_POR_ANOTACION) {
+            List<String> tramo = ids.subList(i, Math.min(i + IDS_POR_ANOTACION, ids.size()));
+            puntero = leer(dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                .tableName(table.tableName())
+                .key(control(table))
+                .updateExpression("ADD #pendientes :ids, #cambios :uno")
+                .expressionAttributeNames(Map.of("#pendientes", PENDIENTES, "#cambios", CAMBIOS))
+                .expressionAttributeValues(Map.of(":ids", AttributeValue.fromSs(tramo), ":uno", AttributeValue.fromN("1")))
+                .returnValues(ReturnValue.ALL_NEW)
+                .build()).attributes());
+        }
+        punteros.put(table.tableName(), puntero);
+        if (puntero.activa > generacion) {
+            for (String id : ids) {
+                trasladar(table, id, generacion, puntero.activa);
+            }
+            if (puntero.ultima == puntero.activa) {
+                // Sin otro reemplazo en curso la anotación ya no hace falta
+                for (int i = 0; i < ids.size(); i += IDS_POR_ANOTACION) {
+                    List<String> tramo = ids.subList(i, Math.min(i + IDS_POR_ANOTACION, ids.size()));
+                    dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                        .tableName(table.tableName())
+                        .key(control(table))
+                        .updateExpression("DELETE #pendientes :ids")
+                        .expressionAttributeNames(Map.of("#pendientes", PENDIENTES))
+                        .expressionAttributeValues(Map.of(":ids", AttributeValue.fromSs(tramo)))
+                        .build());
+                }
+            }
+        }
+    }
+
+    /**
+     * Copia la fila de un ID a otra generación, o la elimina ahí si ya no existe en la de origen.
+     */
+    private void trasladar(DynamoDbTable<?> table, String id, long desde, long hacia) {
+        String pk = partitionKey(table);
+        Map<String, AttributeValue> item = dynamoDbClient.getItem(GetItemRequest.builder()
+            .tableName(table.tableName())
+            .key(Map.of(pk, AttributeValue.fromS(llave(desde, id))))
+            .consistentRead(true)
+            .build()).item();
+        Map<String, AttributeValue> destino = Map.of(pk, AttributeValue.fromS(llave(hacia, id)));
+        if (item == null || item.isEmpty()) {
+            dynamoDbClient.deleteItem(DeleteItemRequest.builder().tableName(table.tableName()).key(destino).build());
+            return;
+        }
+        Map<String, AttributeValue> copia = new HashMap<>(item);
+        copia.putAll(destino);
+        copia.put(ATRIBUTO, AttributeValue.fromN(Long.toString(hacia)));
+        dynamoDbClient.putItem(PutItemRequest.builder().tableName(table.tableName()).item(copia).build());
+    }
+
+    /**
+     * Elimina por lotes las filas de generaciones anteriores a la activa. Espera a que la
+     * activación sea más vieja que dos veces generation-ttl-ms para que ninguna instancia siga
+     * leyendo la generación anterior.
+     * @return filas eliminadas
+     */
+    public <T> int recolectar(DynamoDbTable<T> table) {
+        Puntero puntero = puntero(table, true);
+        long activa = puntero.activa;
+        if (activa == 0 || System.currentTimeMillis() - puntero.activadaEn < 2 * ttlMillis) return 0;
+        Expression filtro = Expression.builder()
+            .expression("#pk <> :control AND (attribute_not_exists(#gen) OR #gen < :activa)")
+            .putExpressionName("#pk", partitionKey(table))
+            .putExpressionName("#gen", ATRIBUTO)
+            .putExpressionValue(":control", AttributeValue.fromS(ID_CONTROL))
+            .putExpressionValue(":activa", AttributeValue.fromN(Long.toString(activa)))
+            .build();
+        List<T> anteriores = table.scan(ScanEnhancedRequest.builder().filterExpression(filtro).build())
+            .items().stream().collect(Collectors.toList());
+        if (anteriores.isEmpty()) return 0;
+        BulkWriter.Resultado resultado = bulkWriter.deleteAll(table, anteriores);
+        logger.info("Tabla {}: {} filas de generaciones anteriores a {} eliminadas en {} ms ({} pendientes)",
+            table.tableName(), resultado.getEscritos(), activa, resultado.getMillis(), resultado.getFallos().size());
+        return resultado.getEscritos();
+    }
+
+    @Scheduled(fixedDelayString = "${presupuesto.catalog.gc-ms:300000}",
+               initialDelayString = "${presupuesto.catalog.gc-ms:300000}")
+    public void recolectarTodas() {
+        for (DynamoDbTable<?> table : tablas.values()) {
+            try {
+                recolectar(table);
+            } catch (Exception e) {
+                // Se reintenta en la siguiente pasada
+                logger.warn("No se pudieron eliminar generaciones anteriores de {}: {}", table.tableName(), e.getMessage());
+            }
+        }
+    }
+
+    private static <T> List<String> escritos(List<T> items, BulkWriter.Resultado resultado, Function<T, String> id) {
+        boolean[] fallidos = new boolean[items.size()];
+        for (BulkWriter.Fallo fallo : resultado.getFallos()) {
+            fallidos[fallo.getIndice()] = true;
+        }
+        List<String> ids = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            if (!fallidos[i]) {
+                ids.add(id.apply(items.get(i)));
+            }
+        }
+        return ids;
+    }
+
+    private Puntero puntero(DynamoDbTable<?> table, boolean consistente) {
+        Puntero actual = punteros.get(table.tableName());
+        if (!consistente && actual != null && System.currentTimeMillis() - actual.leidoEn < ttlMillis) {
+            return actual;
+        }
+        Puntero puntero = leer(leerControl(table));
+        punteros.put(table.tableName(), puntero);
+        return puntero;
+    }
+
+    private Map<String, AttributeValue> leerControl(DynamoDbTable<?> table) {
+        tablas.putIfAbsent(table.tableName(), table);
+        return dynamoDbClient.getItem(GetItemRequest.builder()
+            .tableName(table.tableName())
+            .key(control(table))
+            .consistentRead(true)
+            .build()).item();
+    }
+
+    private static Puntero leer(Map<String, AttributeValue> item) {
+        if (item == null || item.isEmpty()) return new Puntero(0, 0, 0);
+        return new Puntero(numero(item.get(ACTIVA)), numero(item.get(ULTIMA)), numero(item.get(ACTIVADA_EN)));
+    }
+
+    private static long numero(AttributeValue value) {
+        return value != null && value.n() != null ? Long.parseLong(value.n()) : 0;
+    }
+
+    private static Map<String, AttributeValue> control(DynamoDbTable<?> table) {
+        return Map.of(partitionKey(table), AttributeValue.fromS(ID_CONTROL));
+    }
+
+    private static String partitionKey(DynamoDbTable<?> table) {
+        return table.tableSchema().tableMetadata().primaryPartitionKey();
+    }
+}
@@ -0,0 +1,163 @@
+package com.cdc.fin.presupuesto.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Importación de un catálogo por lotes mientras se lee el archivo.
+ * <p>
+ * Según el modo, cada lote se agrega a la generación vigente, se escribe en una generación nueva
+ * que se activa al terminar ({@link CatalogGenerations}) o se compara contra el catálogo actual
+ * ({@link CatalogDelta}). {@link #escribir} puede llamarse desde varios hilos a la vez; la
+ * activación o las bajas se aplican una sola vez en {@link #terminar}. Un reemplazo que no se
+ * activa (registros fallidos, error al leer el archivo) elimina sus filas; por eso la sesión se
+ * usa en un try-with-resources.
+ */
+public class CatalogImportSession<T> implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogImportSession.class);
+
+    public enum Modo {
+        AGREGAR, REEMPLAZAR, DELTA;
+
+        /** delta tiene precedencia sobre replaceAll. */
+        public static Modo de(boolean replaceAll, boolean delta) {
+            return delta ? DELTA : replaceAll ? REEMPLAZAR : AGREGAR;
+        }
+    }
+
+    private final CatalogGenerations.Catalogo<T> catalogo;
+    private final DynamoDbTable<T> table;
+    private final Modo modo;
+    private final String descripcion;
+    private final CatalogGenerations generaciones;
+    private final BulkWriter bulkWriter;
+    private final CatalogDelta.Sesion<T> delta;
+    private final long generacion;
+    private final AtomicInteger escritos = new AtomicInteger();
+    private final AtomicInteger fallidos = new AtomicInteger();
+    private volatile boolean terminada;
+
+    /**
+     * @param descripcion catálogo en plural con artículo ("los proveedores"), para mensajes
+     * @param delta       sesión de diferencias contra {@link CatalogGenerations#visiblesConLlave}; solo en modo DELTA
+     */
+    CatalogImportSession(CatalogGenerations.Catalogo<T> catalogo, Modo modo, String descripcion,
+                         CatalogGenerations generaciones, BulkWriter bulkWriter, CatalogDelta.Sesion<T> delta) {
+        this.catalogo = catalogo;
+        this.table = catalogo.table();
+        this.modo = modo;
+        this.descripcion = descripcion;
+        this.generaciones = generaciones;
+        this.bulkWriter = bulkWriter;
+        this.delta = delta;
+        this.generacion = modo == Modo.REEMPLAZAR ? generaciones.iniciar(table) : generaciones.paraEscritura(table);
+    }
+
+    public Modo getModo() {
+        return modo;
+    }
+
+    /**
+     * Escribe un lote con la generación de la importación. Los items conservan su ID sin prefijo
+     * de generación (el asignado por delta si empataron con una fila existente).
+     * @return fallos con índices del lote recibido
+     */
+    public List<BulkWriter.Fallo> escribir(List<T> lote) {
+        lote.forEach(item -> catalogo.asignar(item, generacion));
+        List<BulkWriter.Fallo> fallos;
+        try {
+            fallos = delta != null ? delta.escribir(lote) : bulkWriter.putAll(table, lote).getFallos();
+        } finally {
+            lote.forEach(item -> catalogo.restaurar(item, generacion));
+        }
+        escritos.addAndGet(lote.size() - fallos.size());
+        fallidos.addAndGet(fallos.size());
+        if (modo != Modo.REEMPLAZAR) {
+            // Si hay un reemplazo en curso, estas filas se trasladan a él al activarlo
+            generaciones.anotarEscrituras(table, escritos(lote, fallos), generacion);
+        }
+        return fallos;
+    }
+
+    /**
+     * Cierra la importación. Sin registros recibidos el catálogo actual se conserva en todos los modos.
+     * @throws IllegalStateException si otra importación activó una generación más reciente
+     */
+    public Cierre terminar() {
+        terminada = true;
+        Cierre cierre = new Cierre();
+        if (escritos.get() + fallidos.get() == 0) {
+            logger.warn("Tabla {}: la importación no trajo registros; el catálogo actual se conserva", table.tableName());
+            return cierre;
+        }
+        if (modo == Modo.REEMPLAZAR) {
+            if (fallidos.get() > 0) {
+                generaciones.abandonar(table, generacion);
+                cierre.advertencias.add("No se reemplazó el catálogo porque hubo registros sin guardar; sigue vigente el anterior sin cambios.");
+            } else if (!generaciones.activar(table, generacion)) {
+                generaciones.abandonar(table, generacion);
+                throw new IllegalStateException("Otra importación reemplazó " + descripcion + " mientras se cargaba este archivo");
+            }
+        } else if (modo == Modo.DELTA) {
+            CatalogDelta.Resultado resultado = delta.terminar();
+            cierre.diff = resultado.resumen();
+            for (String id : resultado.getNoEliminados()) {
+                cierre.noEliminados.add(CatalogGenerations.idLogico(generacion, id));
+            }
+            List<String> bajas = new ArrayList<>();
+            for (String id : resultado.getIdsEliminados()) {
+                bajas.add(CatalogGenerations.idLogico(generacion, id));
+            }
+            generaciones.anotarEscrituras(table, bajas, generacion);
+        }
+        return cierre;
+    }
+
+    /**
+     * Un reemplazo que no llegó a {@link #terminar} (error al leer el archivo o en el pipeline)
+     * elimina las filas que alcanzó a escribir; el catálogo anterior sigue vigente.
+     */
+    @Override
+    public void close() {
+        if (modo == Modo.REEMPLAZAR && !terminada) {
+            terminada = true;
+            generaciones.abandonar(table, generacion);
+        }
+    }
+
+    private List<String> escritos(List<T> lote, List<BulkWriter.Fallo> fallos) {
+        boolean[] fallidas = new boolean[lote.size()];
+        for (BulkWriter.Fallo fallo : fallos) {
+            fallidas[fallo.getIndice()] = true;
+        }
+        List<String> ids = new ArrayList<>(lote.size());
+        for (int i = 0; i < lote.size(); i++) {
+            if (!fallidas[i]) {
+                ids.add(catalogo.id(lote.get(i)));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Resultado del cierre: resumen de diferencias (modo delta), IDs que no se pudieron eliminar y
+     * advertencias para el reporte de la importación.
+     */
+    public static final class Cierre {
+        private Map<String, Object> diff;
+        private final List<String> noEliminados = new ArrayList<>();
+        private final List<String> advertencias = new ArrayList<>();
+
+        /** Resumen de {@link CatalogDelta.Resultado#resumen()}; null fuera del modo delta. */
+        public Map<String, Object> getDiff() { return diff; }
+        public List<String> getNoEliminados() { return noEliminados; }
+        public List<String> getAdvertencias() { return advertencias; }
+    }
+}
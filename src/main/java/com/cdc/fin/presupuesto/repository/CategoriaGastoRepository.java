@@ -6,69 +6,76 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
-import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
-import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest;
-import software.amazon.awssdk.enhanced.dynamodb.model.PageIterable;
-import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
-import software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @Repository
 public class CategoriaGastoRepository {
 
     private final DynamoDbTable<CategoriaGasto> table;
+    private final CatalogGenerations.Catalogo<CategoriaGasto> catalogo;
 
     @Autowired
     private DynamoDbEnhancedClient enhancedClient;
 
+    @Autowired
+    private BulkWriter bulkWriter;
+
+    @Autowired
+    private CatalogGenerations generaciones;
+
+    @Autowired
+    private CatalogDelta catalogDelta;
+
     @Autowired
     public CategoriaGastoRepository(DynamoDbEnhancedClient enhancedClient,
                                    @Value("${aws.dynamodb.table.categorias-gasto}") String tableName) {
         this.table = enhancedClient.table(tableName, 
                                          TableSchema.fromBean(CategoriaGasto.class));
+        this.catalogo = new CatalogGenerations.Catalogo<>(table, CategoriaGasto::getId, CategoriaGasto::setId, CategoriaGasto::setGeneracion);
     }
 
     public CategoriaGasto save(CategoriaGasto categoria) {
-        table.putItem(categoria);
+        generaciones.guardar(catalogo, categoria);
         return categoria;
     }
 
     public Optional<CategoriaGasto> findById(String id) {
-        Key key = Key.builder().partitionValue(id).build();
-        CategoriaGasto item = table.getItem(key);
-        return Optional.ofNullable(item);
+        return Optional.ofNullable(generaciones.buscar(catalogo, id));
     }
 
     public List<CategoriaGasto> findAll() {
-        PageIterable<CategoriaGasto> pages = table.scan(ScanEnhancedRequest.builder().build());
-        return pages.items().stream().collect(Collectors.toList());
+        return generaciones.visibles(catalogo);
     }
 
     public void deleteById(String id) {
-        Key key = Key.builder().partitionValue(id).build();
-        table.deleteItem(key);
+        generaciones.eliminar(catalogo, id);
     }
 
+    /**
+     * Retira todo el catálogo activando una generación vacía; las filas se eliminan en segundo plano.
+     */
     public void deleteAll() {
-        List<CategoriaGasto> allCategorias = findAll();
-        for (CategoriaGasto categoria : allCategorias) {
-            deleteById(categoria.getId());
-        }
+        generaciones.activar(table, generaciones.iniciar(table));
+    }
+
+    /**
+     * Guarda en lotes concurrentes con reintento de elementos no procesados; ver {@link BulkWriter}.
+     * @return resultado con las filas que no se pudieron escribir (índices de la lista recibida)
+     */
+    public BulkWriter.Resultado saveAll(List<CategoriaGasto> categorias) {
+        return generaciones.guardarTodos(catalogo, categorias);
     }
 
-    public void saveAll(List<CategoriaGasto> categorias) {
-        final int BATCH_SIZE = 25;
-        for (int i = 0; i < categorias.size(); i += BATCH_SIZE) {
-            List<CategoriaGasto> batch = categorias.subList(i, Math.min(i + BATCH_SIZE, categorias.size()));
-            WriteBatch.Builder<CategoriaGasto> writeBatchBuilder = WriteBatch.builder(CategoriaGasto.class).mappedTableResource(table);
-            batch.forEach(writeBatchBuilder::addPutItem);
-            enhancedClient.batchWriteItem(BatchWriteItemEnhancedRequest.builder()
-                .writeBatches(writeBatchBuilder.build())
-                .build());
-        }
+    /**
+     * Abre una importación por lotes (agregar, reemplazar o delta); ver {@link CatalogImportSession}.
+     */
+    public CatalogImportSession<CategoriaGasto> iniciarImportacion(CatalogImportSession.Modo modo) {
+        CatalogDelta.Sesion<CategoriaGasto> delta = modo == CatalogImportSession.Modo.DELTA
+            ? catalogDelta.iniciar(table, generaciones.visiblesConLlave(catalogo), null, null)
+            : null;
+        return new CatalogImportSession<>(catalogo, modo, "las categorías", generaciones, bulkWriter, delta);
     }
 }
@@ -6,70 +6,84 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
-import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
-import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest;
-import software.amazon.awssdk.enhanced.dynamodb.model.PageIterable;
-import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
-import software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @Repository
 public class DepartamentoRepository {
 
     private final DynamoDbTable<Departamento> table;
+    private final CatalogGenerations.Catalogo<Departamento> catalogo;
 
     @Autowired
     private DynamoDbEnhancedClient enhancedClient;
 
+    @Autowired
+    private BulkWriter bulkWriter;
+
+    @Autowired
+    private CatalogGenerations generaciones;
+
+    @Autowired
+    private CatalogDelta catalogDelta;
+
     @Autowired
     public DepartamentoRepository(DynamoDbEnhancedClient enhancedClient,
                                  @Value("${aws.dynamodb.table.departamentos}") String tableName) {
         this.table = enhancedClient.table(tableName, 
                                          TableSchema.fromBean(Departamento.class));
+        this.catalogo = new CatalogGenerations.Catalogo<>(table, Departamento::getId, Departamento::setId, Departamento::setGeneracion);
     }
 
     public Departamento save(Departamento departamento) {
-        table.putItem(departamento);
+        generaciones.guardar(catalogo, departamento);
         return departamento;
     }
 
     public Optional<Departamento> findById(String id) {
-        Key key = Key.builder().partitionValue(id).build();
-        Departamento item = table.getItem(key);
-        return Optional.ofNullable(item);
+        return Optional.ofNullable(generaciones.buscar(catalogo, id));
     }
 
     public List<Departamento> findAll() {
-        PageIterable<Departamento> pages = table.scan(ScanEnhancedRequest.builder().build());
-        return pages.items().stream().collect(Collectors.toList());
+        return generaciones.visibles(catalogo);
     }
 
     public void deleteById(String id) {
-        Key key = Key.builder().partitionValue(id).build();
-        table.deleteItem(key);
+        generaciones.eliminar(catalogo, id);
     }
 
+    /**
+     * Retira todo el catálogo activando una generación vacía; las filas se eliminan en segundo plano.
+     */
     public void deleteAll() {
-        List<Departamento> allDepartamentos = findAll();
-        for (Departamento departamento : allDepartamentos) {
-            deleteById(departamento.getId());
-        }
+        generaciones.activar(table, generaciones.iniciar(table));
+    }
+
+    /**
+     * Guarda en lotes concurrentes con reintento de elementos no procesados; ver {@link BulkWriter}.
+     * @return resultado con las filas que no se pudieron escribir (índices de la lista recibida)
+     */
+    public BulkWriter.Resultado saveAll(List<Departamento> departamentos) {
+        return generaciones.guardarTodos(catalogo, departamentos);
+    }
+
+    private static String llaveNatural(Departamento departamento) {
+        return departamento.getCeco() + '\u0000' + departamento.getNombreDepartamento()
+            + '\u0000' + departamento.getSubDepartamento();
     }
 
-    public void saveAll(List<Departamento> departamentos) {
-        final int BATCH_SIZE = 25;
-        for (int i = 0; i < departamentos.size(); i += BATCH_SIZE) {
-            List<Departamento> batch = departamentos.subList(i, Math.min(i + BATCH_SIZE, departamentos.size()));
-            WriteBatch.Builder<Departamento> writeBatchBuilder = WriteBatch.builder(Departamento.class).mappedTableResource(table);
-            batch.forEach(writeBatchBuilder::addPutItem);
-            enhancedClient.batchWriteItem(BatchWriteItemEnhancedRequest.builder()
-                .writeBatches(writeBatchBuilder.build())
-                .build());
-        }
+    /**
+     * Abre una importación por lotes (agregar, reemplazar o delta); ver {@link CatalogImportSession}.
+     * En modo delta el CSV no trae ID (se genera uno aleatorio por importación): se conserva el de
+     * la fila existente con la misma (CeCo, Departamento, Sub-Departamento) para poder comparar contenido.
+     */
+    public CatalogImportSession<Departamento> iniciarImportacion(CatalogImportSession.Modo modo) {
+        CatalogDelta.Sesion<Departamento> delta = modo == CatalogImportSession.Modo.DELTA
+            ? catalogDelta.iniciar(table, generaciones.visiblesConLlave(catalogo), DepartamentoRepository::llaveNatural, Departamento::setId)
+            : null;
+        return new CatalogImportSession<>(catalogo, modo, "los departamentos", generaciones, bulkWriter, delta);
     }
 
     // Busca el primer departamento que tenga el ceco dado (no es búsqueda por partition key)
@@ -0,0 +1,248 @@
+package com.cdc.fin.presupuesto.repository;
+
+import com.cdc.fin.presupuesto.model.EmailOutbox;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
+import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.TransactPutItemEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.Put;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tabla outbox de correos. Los pendientes se consultan por el GSI estado-proximoIntento-index
+ * (estado = PENDIENTE y proximoIntento <= ahora); las transiciones son UpdateItem condicionales para
+ * que varias instancias puedan drenar la misma tabla sin enviar un correo dos veces.
+ */
+@Repository
+public class EmailOutboxRepository {
+
+    private static final String INDICE_PENDIENTES = "estado-proximoIntento-index";
+    // La llave se deriva del evento: si ya existe, el correo ya estaba encolado
+    private static final Expression NO_EXISTE = Expression.builder()
+        .expression("attribute_not_exists(#key)")
+        .expressionNames(Map.of("#key", "messageKey"))
+        .build();
+
+    private final DynamoDbTable<EmailOutbox> table;
+    private final String tableName;
+
+    @Autowired
+    private DynamoDbClient dynamoDbClient;
+
+    @Autowired
+    public EmailOutboxRepository(DynamoDbEnhancedClient enhancedClient,
+                                 @Value("${aws.dynamodb.table.email-outbox}") String tableName) {
+        this.table = enhancedClient.table(tableName, TableSchema.fromBean(EmailOutbox.class));
+        this.tableName = tableName;
+    }
+
+    /** Para incluir correos en la transacción de otra tabla (ver SolicitudPresupuestoRepository). */
+    public DynamoDbTable<EmailOutbox> getTable() {
+        return table;
+    }
+
+    /**
+     * Encola un correo si su llave no existe todavía.
+     * @return false si ya estaba encolado (duplicado)
+     */
+    public boolean encolar(EmailOutbox mensaje) {
+        try {
+            table.putItem(PutItemEnhancedRequest.builder(EmailOutbox.class)
+                .item(mensaje)
+                .conditionExpression(NO_EXISTE)
+                .build());
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Igual que {@link #putSiNoExiste(EmailOutbox)}, para transacciones del cliente enhanced
+     * (ver SolicitudPresupuestoRepository).
+     */
+    public TransactPutItemEnhancedRequest<EmailOutbox> transactPutSiNoExiste(EmailOutbox mensaje) {
+        return TransactPutItemEnhancedRequest.builder(EmailOutbox.class)
+            .item(mensaje)
+            .conditionExpression(NO_EXISTE)
+            .build();
+    }
+
+    /**
+     * Put de un correo para la transacción de otra tabla (cliente de bajo nivel), condicionado a que
+     * la llave no exista: un correo ya encolado cancela la transacción con ConditionalCheckFailed.
+     */
+    public TransactWriteItem putSiNoExiste(EmailOutbox mensaje) {
+        return TransactWriteItem.builder().put(Put.builder()
+            .tableName(tableName)
+            .item(table.tableSchema().itemToMap(mensaje, true))
+            .conditionExpression("attribute_not_exists(#key)")
+            .expressionAttributeNames(Map.of("#key", "messageKey"))
+            .build()).build();
+    }
+
+    /**
+     * Pendientes cuyo proximoIntento ya pasó, del más antiguo al más reciente.
+     */
+    public List<EmailOutbox> findPendientes(long ahora, int limite) {
+        QueryEnhancedRequest request = QueryEnhancedRequest.builder()
+            .queryConditional(QueryConditional.sortLessThanOrEqualTo(
+                Key.builder().partitionValue(EmailOutbox.PENDIENTE).sortValue(ahora).build()))
+            .limit(limite)
+            .build();
+        List<EmailOutbox> pendientes = new ArrayList<>();
+        table.index(INDICE_PENDIENTES).query(request).stream()
+            .findFirst()
+            .ifPresent(page -> pendientes.addAll(page.items()));
+        return pendientes;
+    }
+
+    /**
+     * Avisos que esperan un resumen, del más antiguo al más reciente (todas las páginas).
+     */
+    public List<EmailOutbox> findEnResumen() {
+        QueryEnhancedRequest request = QueryEnhancedRequest.builder()
+            .queryConditional(QueryConditional.keyEqualTo(Key.builder().partitionValue(EmailOutbox.EN_RESUMEN).build()))
+            .build();
+        List<EmailOutbox> avisos = new ArrayList<>();
+        table.index(INDICE_PENDIENTES).query(request).forEach(page -> avisos.addAll(page.items()));
+        return avisos;
+    }
+
+    /**
+     * En una sola transacción encola el resumen (PENDIENTE) y marca AGRUPADO cada aviso incluido,
+     * condicionado a que sigan EN_RESUMEN: si otra instancia ya los agrupó no se escribe nada.
+     * Una transacción admite 100 operaciones, así que caben hasta 99 avisos.
+     *
+     * @return false si algún aviso ya no estaba EN_RESUMEN o el resumen ya existía
+     */
+    public boolean agrupar(EmailOutbox resumen, List<EmailOutbox> avisos, long expiraEn) {
+        List<TransactWriteItem> operaciones = new ArrayList<>();
+        operaciones.add(putSiNoExiste(resumen));
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":agrupado", AttributeValue.builder().s(EmailOutbox.AGRUPADO).build());
+        values.put(":enResumen", AttributeValue.builder().s(EmailOutbox.EN_RESUMEN).build());
+        values.put(":resumen", AttributeValue.builder().s(resumen.getMessageKey()).build());
+        values.put(":expira", numero(expiraEn));
+        for (EmailOutbox aviso : avisos) {
+            operaciones.add(TransactWriteItem.builder().update(Update.builder()
+                .tableName(tableName)
+                .key(llave(aviso.getMessageKey()))
+                .updateExpression("SET #estado = :agrupado, resumen = :resumen, expiraEn = :expira")
+                .conditionExpression("#estado = :enResumen")
+                .expressionAttributeNames(Map.of("#estado", "estado"))
+                .expressionAttributeValues(values)
+                .build()).build());
+        }
+        try {
+            dynamoDbClient.transactWriteItems(TransactWriteItemsRequest.builder().transactItems(operaciones).build());
+            return true;
+        } catch (TransactionCanceledException e) {
+            boolean condicion = e.cancellationReasons().stream()
+                .anyMatch(reason -> "ConditionalCheckFailed".equals(reason.code()));
+            if (condicion) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reserva un pendiente hasta "hasta" moviendo su proximoIntento, condicionado a que nadie lo
+     * haya tomado desde que se leyó. Si la instancia cae durante el envío, se vuelve a tomar al vencer.
+     * @return false si otra instancia lo tomó o ya no está pendiente
+     */
+    public boolean reservar(EmailOutbox mensaje, long hasta) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":hasta", numero(hasta));
+        values.put(":leido", numero(mensaje.getProximoIntento()));
+        values.put(":pendiente", AttributeValue.builder().s(EmailOutbox.PENDIENTE).build());
+        try {
+            dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(llave(mensaje.getMessageKey()))
+                .updateExpression("SET #proximo = :hasta")
+                .conditionExpression("#estado = :pendiente AND #proximo = :leido")
+                .expressionAttributeNames(Map.of("#proximo", "proximoIntento", "#estado", "estado"))
+                .expressionAttributeValues(values)
+                .build());
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    /** Enviado: deja de consultarse como pendiente y DynamoDB lo elimina al llegar a expiraEn. */
+    public void marcarEnviado(String messageKey, int intentos, String messageId, long expiraEn) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":estado", AttributeValue.builder().s(EmailOutbox.ENVIADO).build());
+        values.put(":intentos", numero(intentos));
+        values.put(":messageId", AttributeValue.builder().s(messageId != null ? messageId : "").build());
+        values.put(":fecha", AttributeValue.builder().s(Instant.now().toString()).build());
+        values.put(":expira", numero(expiraEn));
+        actualizar(messageKey,
+            "SET #estado = :estado, intentos = :intentos, messageId = :messageId, fechaEnvio = :fecha, expiraEn = :expira",
+            values);
+    }
+
+    /** Error transitorio: sigue pendiente y se reintenta a partir de proximoIntento. */
+    public void reprogramar(String messageKey, int intentos, long proximoIntento, String error) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":intentos", numero(intentos));
+        values.put(":proximo", numero(proximoIntento));
+        values.put(":error", AttributeValue.builder().s(error != null ? error : "").build());
+        actualizar(messageKey, "SET intentos = :intentos, proximoIntento = :proximo, ultimoError = :error", values);
+    }
+
+    /** Sin más reintentos: se conserva (sin TTL) para revisarlo y reencolarlo manualmente. */
+    public void marcarFallido(String messageKey, int intentos, String error) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        values.put(":estado", AttributeValue.builder().s(EmailOutbox.FALLIDO).build());
+        values.put(":intentos", numero(intentos));
+        values.put(":error", AttributeValue.builder().s(error != null ? error : "").build());
+        actualizar(messageKey, "SET #estado = :estado, intentos = :intentos, ultimoError = :error", values);
+    }
+
+    private void actualizar(String messageKey, String expresion, Map<String, AttributeValue> values) {
+        Map<String, String> names = new HashMap<>();
+        if (expresion.contains("#estado")) {
+            names.put("#estado", "estado");
+        }
+        dynamoDbClient.updateItem(UpdateItemRequest.builder()
+            .tableName(tableName)
+            .key(llave(messageKey))
+            .updateExpression(expresion)
+            .expressionAttributeNames(names.isEmpty() ? null : names)
+            .expressionAttributeValues(values)
+            .build());
+    }
+
+    private static Map<String, AttributeValue> llave(String messageKey) {
+        return Map.of("messageKey", AttributeValue.builder().s(messageKey).build());
+    }
+
+    private static AttributeValue numero(long valor) {
+        return AttributeValue.builder().n(Long.toString(valor)).build();
+    }
+}
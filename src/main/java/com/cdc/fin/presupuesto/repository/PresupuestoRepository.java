@@ -7,8 +7,6 @@ import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
-import software.amazon.awssdk.enhanced.dynamodb.model.PageIterable;
-import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
 
 import java.util.List;
 import java.util.Optional;
@@ -17,35 +15,64 @@ import java.util.Optional;
 public class PresupuestoRepository {
 
     private final DynamoDbTable<Presupuesto> table;
+    private final CatalogGenerations.Catalogo<Presupuesto> catalogo;
+
+    @Autowired
+    private BulkWriter bulkWriter;
+
+    @Autowired
+    private CatalogGenerations generaciones;
+
+    @Autowired
+    private CatalogDelta catalogDelta;
 
     @Autowired
     public PresupuestoRepository(DynamoDbEnhancedClient enhancedClient,
                                  @Value("${aws.dynamodb.table.presupuestos}") String tableName) {
         this.table = enhancedClient.table(tableName,
                                          TableSchema.fromBean(Presupuesto.class));
+        this.catalogo = new CatalogGenerations.Catalogo<>(table, Presupuesto::getId, Presupuesto::setId, Presupuesto::setGeneracion);
     }
 
     public Presupuesto save(Presupuesto presupuesto) {
-        table.putItem(presupuesto);
+        generaciones.guardar(catalogo, presupuesto);
         return presupuesto;
     }
 
-    public void saveAll(List<Presupuesto> presupuestos) {
-        for (Presupuesto p : presupuestos) {
-            save(p);
-        }
+    /**
+     * Guarda en lotes concurrentes con reintento de elementos no procesados; ver {@link BulkWriter}.
+     * @return resultado con las filas que no se pudieron escribir (índices de la lista recibida)
+     */
+    public BulkWriter.Resultado saveAll(List<Presupuesto> presupuestos) {
+        return generaciones.guardarTodos(catalogo, presupuestos);
+    }
+
+    private static String llaveNatural(Presupuesto presupuesto) {
+        return presupuesto.getCeco() + '\u0000' + presupuesto.getCuentaGastos();
+    }
+
+    /**
+     * Abre una importación por lotes (agregar, reemplazar o delta); ver {@link CatalogImportSession}.
+     * En modo delta el CSV no trae ID (se genera uno aleatorio por importación): se conserva el de
+     * la fila existente con la misma (CeCo, CuentaGastos) para poder comparar contenido.
+     */
+    public CatalogImportSession<Presupuesto> iniciarImportacion(CatalogImportSession.Modo modo) {
+        CatalogDelta.Sesion<Presupuesto> delta = modo == CatalogImportSession.Modo.DELTA
+            ? catalogDelta.iniciar(table, generaciones.visiblesConLlave(catalogo), PresupuestoRepository::llaveNatural, Presupuesto::setId)
+            : null;
+        return new CatalogImportSession<>(catalogo, modo, "los presupuestos", generaciones, bulkWriter, delta);
     }
 
     public List<Presupuesto> findAll() {
-        PageIterable<Presupuesto> pages = table.scan(ScanEnhancedRequest.builder().build());
-        return pages.items().stream().toList();
+        return generaciones.visibles(catalogo);
     }
 
 
+    /**
+     * Retira todo el catálogo activando una generación vacía; las filas se eliminan en segundo plano.
+     */
     public void deleteAll() {
-        for (Presupuesto p : findAll()) {
-            table.deleteItem(p);
-        }
+        generaciones.activar(table, generaciones.iniciar(table));
     }
 
     public Optional<Presupuesto> findByCecoAndCuentaGastos(String ceco, String cuentaGastos) {
@@ -1,70 +1,76 @@
 package com.cdc.fin.presupuesto.repository;
 
 import com.cdc.fin.presupuesto.model.Proveedor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
-import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
-import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest;
-import software.amazon.awssdk.enhanced.dynamodb.model.PageIterable;
-import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
-import software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 @Repository
 public class ProveedorRepository {
 
     private final DynamoDbTable<Proveedor> table;
-    private final DynamoDbEnhancedClient enhancedClient;
+    private final CatalogGenerations.Catalogo<Proveedor> catalogo;
+
+    @Autowired
+    private BulkWriter bulkWriter;
+
+    @Autowired
+    private CatalogGenerations generaciones;
+
+    @Autowired
+    private CatalogDelta catalogDelta;
 
     public ProveedorRepository(DynamoDbEnhancedClient enhancedClient,
                               @Value("${aws.dynamodb.table.proveedores}") String tableName) {
-        this.enhancedClient = enhancedClient;
         this.table = enhancedClient.table(tableName, TableSchema.fromBean(Proveedor.class));
+        this.catalogo = new CatalogGenerations.Catalogo<>(table, Proveedor::getId, Proveedor::setId, Proveedor::setGeneracion);
     }
 
     public Proveedor save(Proveedor proveedor) {
-        table.putItem(proveedor);
+        generaciones.guardar(catalogo, proveedor);
         return proveedor;
     }
 
     public Optional<Proveedor> findById(String id) {
-        Key key = Key.builder().partitionValue(id).build();
-        Proveedor item = table.getItem(key);
-        return Optional.ofNullable(item);
+        return Optional.ofNullable(generaciones.buscar(catalogo, id));
     }
 
     public List<Proveedor> findAll() {
-        PageIterable<Proveedor> pages = table.scan(ScanEnhancedRequest.builder().build());
-        return pages.items().stream().collect(Collectors.toList());
+        return generaciones.visibles(catalogo);
     }
 
     public void deleteById(String id) {
-        Key key = Key.builder().partitionValue(id).build();
-        table.deleteItem(key);
+        generaciones.eliminar(catalogo, id);
     }
 
+    /**
+     * Retira todo el catálogo activando una generación vacía; las filas se eliminan en segundo plano.
+     */
     public void deleteAll() {
-        List<Proveedor> allProveedores = findAll();
-        for (Proveedor proveedor : allProveedores) {
-            deleteById(proveedor.getId());
-        }
+        generaciones.activar(table, generaciones.iniciar(table));
+    }
+
+    /**
+     * Guarda en lotes concurrentes con reintento de elementos no procesados; ver {@link BulkWriter}.
+     * @return resultado con las filas que no se pudieron escribir (índices de la lista recibida)
+     */
+    public BulkWriter.Resultado saveAll(List<Proveedor> proveedores) {
+        return generaciones.guardarTodos(catalogo, proveedores);
     }
 
-    public void saveAll(List<Proveedor> proveedores) {
-        final int BATCH_SIZE = 25;
-        for (int i = 0; i < proveedores.size(); i += BATCH_SIZE) {
-            List<Proveedor> batch = proveedores.subList(i, Math.min(i + BATCH_SIZE, proveedores.size()));
-            WriteBatch.Builder<Proveedor> writeBatchBuilder = WriteBatch.builder(Proveedor.class).mappedTableResource(table);
-            batch.forEach(writeBatchBuilder::addPutItem);
-            enhancedClient.batchWriteItem(BatchWriteItemEnhancedRequest.builder()
-                .writeBatches(writeBatchBuilder.build())
-                .build());
-        }
+    /**
+     * Abre una importación por lotes (agregar, reemplazar o delta); ver {@link CatalogImportSession}.
+     */
+    public CatalogImportSession<Proveedor> iniciarImportacion(CatalogImportSession.Modo modo) {
+        CatalogDelta.Sesion<Proveedor> delta = modo == CatalogImportSession.Modo.DELTA
+            ? catalogDelta.iniciar(table, generaciones.visiblesConLlave(catalogo), null, null)
+            : null;
+        return new CatalogImportSession<>(catalogo, modo, "los proveedores", generaciones, bulkWriter, delta);
     }
 }
\ No newline at end of file
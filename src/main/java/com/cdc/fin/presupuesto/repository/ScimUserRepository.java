@@ -2,10 +2,13 @@ package com.cdc.fin.presupuesto.repository;
 
 import com.cdc.fin.presupuesto.model.ScimListResponse;
 import com.cdc.fin.presupuesto.model.ScimUser;
+import com.cdc.fin.presupuesto.util.ScimUserCache;
+import com.cdc.fin.presupuesto.util.ScimUserItemCodec;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
@@ -16,9 +19,13 @@ import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -62,6 +69,8 @@ public class ScimUserRepository {
                 .key(key)
                 .attributeUpdates(updates)
                 .build());
+            listado = null;
+            scimUserCache.invalidate(userId, userName);
         }
         logger.info("updateUserWithSamlAttributes finished for userId: {}", response.hasItems() && !response.items().isEmpty() ? response.items().get(0).get("id").s() : null);
     }
@@ -69,6 +78,25 @@ public class ScimUserRepository {
     @Autowired(required = false)
     private DynamoDbClient dynamoDbClient;
 
+    @Autowired
+    private ScimUserCache scimUserCache;
+
+    @Autowired(required = false)
+    @Qualifier("scimScanExecutor")
+    private Executor scimScanExecutor;
+
+    @Value("${scim.scan.total-segments:1}")
+    private int scanTotalSegments;
+
+    // Vigencia de la lista ordenada que comparten las páginas consecutivas de un listado (0 = sin caché)
+    @Value("${scim.list.cache-ms:30000}")
+    private long listCacheMs;
+
+    /** Lista completa ordenada por id y el momento en que se leyó. */
+    private record ListadoUsuarios(List<ScimUser> usuarios, long cargadoEn) {}
+
+    private volatile ListadoUsuarios listado;
+
     private String usersTable;
 
     @Autowired
@@ -85,32 +113,14 @@ public class ScimUserRepository {
         ensureScimCompliance(user);
 
         if (dynamoDbClient != null && usersTable != null && !usersTable.isEmpty()) {
-            Map<String, AttributeValue> item = new HashMap<>();
-            item.put("id", AttributeValue.builder().s(id).build());
-            item.put("userName", AttributeValue.builder().s(user.getUserName()).build());
-            item.put("active", AttributeValue.builder().bool(user.getActive() != null ? user.getActive() : true).build());
-            if (user.getName() != null)
-                item.put("name", AttributeValue.builder().s(new ObjectMapper().writeValueAsString(user.getName())).build());
-            if (user.getEmails() != null && !user.getEmails().isEmpty())
-                item.put("email", AttributeValue.builder().s(user.getEmails().get(0).getValue()).build());
-            if (user.getFirstName() != null)
-                item.put("firstName", AttributeValue.builder().s(user.getFirstName()).build());
-            if (user.getLastName() != null)
-                item.put("lastName", AttributeValue.builder().s(user.getLastName()).build());
-            // Use snake_case for DynamoDB attributes
-            if (user.getEmployeeNumber() != null)
-                item.put("employeeNumber", AttributeValue.builder().s(user.getEmployeeNumber()).build());
-            if (user.getDepartment() != null)
-                item.put("department", AttributeValue.builder().s(user.getDepartment()).build());
-            if (user.getUserType() != null)
-                item.put("userType", AttributeValue.builder().s(user.getUserType()).build());
-            if (user.getDisplayName() != null)
-                item.put("displayName", AttributeValue.builder().s(user.getDisplayName()).build());
+            Map<String, AttributeValue> item = ScimUserItemCodec.toItem(user);
             logger.info("createUser DynamoDB item: {}", item);
             dynamoDbClient.putItem(PutItemRequest.builder()
                 .tableName(usersTable)
                 .item(item)
                 .build());
+            listado = null;
+            scimUserCache.invalidate(id, user.getUserName());
         }
         logger.info("createUser finished for userId: {}", user.getId());
         return user;
@@ -131,30 +141,7 @@ public class ScimUserRepository {
 
         ScimUser user = null;
         if (result.hasItem()) {
-            Map<String, AttributeValue> item = result.item();
-            user = new ScimUser();
-            user.setId(item.get("id").s());
-            user.setUserName(item.get("userName").s());
-            user.setActive(item.containsKey("active") ? item.get("active").bool() : true);
-            if (item.containsKey("name"))
-                user.setName(new ObjectMapper().readValue(item.get("name").s(), ScimUser.Name.class));
-            // Leer atributos SAML/enterprise
-            if (item.containsKey("email"))
-                user.setEmails(List.of(new ScimUser.Email(item.get("email").s(), true, "work")));
-            if (item.containsKey("firstName"))
-                user.setFirstName(item.get("firstName").s());
-            if (item.containsKey("lastName"))
-                user.setLastName(item.get("lastName").s());
-            if (item.containsKey("employeeNumber"))
-                user.setEmployeeNumber(item.get("employeeNumber").s());
-            if (item.containsKey("department"))
-                user.setDepartment(item.get("department").s());
-            if (item.containsKey("userType"))
-                user.setUserType(item.get("userType").s());
-            if (item.containsKey("displayName"))
-                user.setDisplayName(item.get("displayName").s());
-            if (item.containsKey("group"))
-                user.setGroup(List.of(item.get("group").s()));
+            user = ScimUserItemCodec.fromItem(result.item());
             ensureScimCompliance(user);
             user.setUserType(getUserRoleType(user));
         }
@@ -171,33 +158,15 @@ public class ScimUserRepository {
         ensureScimCompliance(user);
 
         if (dynamoDbClient != null && usersTable != null && !usersTable.isEmpty()) {
-            Map<String, AttributeValue> item = new HashMap<>();
-            item.put("id", AttributeValue.builder().s(id).build());
-            item.put("userName", AttributeValue.builder().s(user.getUserName()).build());
-            item.put("active", AttributeValue.builder().bool(user.getActive() != null ? user.getActive() : true).build());
-            if (user.getName() != null)
-                item.put("name", AttributeValue.builder().s(new ObjectMapper().writeValueAsString(user.getName())).build());
-            if (user.getEmails() != null && !user.getEmails().isEmpty())
-                item.put("email", AttributeValue.builder().s(user.getEmails().get(0).getValue()).build());
-            if (user.getFirstName() != null)
-                item.put("firstName", AttributeValue.builder().s(user.getFirstName()).build());
-            if (user.getLastName() != null)
-                item.put("lastName", AttributeValue.builder().s(user.getLastName()).build());
-            // Use snake_case for DynamoDB attributes
-            if (user.getEmployeeNumber() != null)
-                item.put("employeeNumber", AttributeValue.builder().s(user.getEmployeeNumber()).build());
-            if (user.getDepartment() != null)
-                item.put("department", AttributeValue.builder().s(user.getDepartment()).build());
-            if (user.getUserType() != null)
-                item.put("userType", AttributeValue.builder().s(user.getUserType()).build());
-            if (user.getDisplayName() != null)
-                item.put("displayName", AttributeValue.builder().s(user.getDisplayName()).build());
+            Map<String, AttributeValue> item = ScimUserItemCodec.toItem(user);
             logger.info("replaceUser DynamoDB item: {}", item);
             logger.debug("[SCIM][replaceUser] DynamoDB putItem: {}", item);
             dynamoDbClient.putItem(PutItemRequest.builder()
                 .tableName(usersTable)
                 .item(item)
                 .build());
+            listado = null;
+            scimUserCache.invalidate(id, user.getUserName());
         } else {
             logger.debug("[SCIM][replaceUser] DynamoDB client o tabla no configurados: dynamoDbClient={}, usersTable={}", dynamoDbClient, usersTable);
         }
@@ -234,7 +203,11 @@ public class ScimUserRepository {
 
     // Buscar usuarios por userName (GET /Users?filter=userName eq "...")
     public ScimListResponse<ScimUser> listUsers(String filter) throws JsonProcessingException {
-        logger.info("listUsers called with filter: {}", filter);
+        return listUsers(filter, 1, Integer.MAX_VALUE);
+    }
+
+    public ScimListResponse<ScimUser> listUsers(String filter, int startIndex, int count) throws JsonProcessingException {
+        logger.info("listUsers called with filter: {}, startIndex: {}, count: {}", filter, startIndex, count);
         Pattern USER_NAME_FILTER_PATTERN = Pattern.compile("userName\\s+eq\\s+\"([^\"]+)\"");
         Matcher matcher = (filter != null) ? USER_NAME_FILTER_PATTERN.matcher(filter) : null;
 
@@ -248,111 +221,138 @@ public class ScimUserRepository {
                 .expressionAttributeValues(Map.of(":v_user", AttributeValue.builder().s(userNameToFilter).build()))
                 .build();
             QueryResponse response = dynamoDbClient.query(queryRequest);
-            ObjectMapper mapper = new ObjectMapper();
             for (Map<String, AttributeValue> item : response.items()) {
-                ScimUser user = new ScimUser();
-                AttributeValue idAttr = item.get("id");
-                if (idAttr != null) user.setId(idAttr.s());
-                AttributeValue userNameAttr = item.get("userName");
-                if (userNameAttr != null) user.setUserName(userNameAttr.s());
-                user.setActive(item.containsKey("active") ? item.get("active").bool() : true);
-                AttributeValue nameAttr = item.get("name");
-                if (nameAttr != null)
-                    user.setName(mapper.readValue(nameAttr.s(), ScimUser.Name.class));
-                // Leer atributos SAML/enterprise
-                if (item.containsKey("email"))
-                    user.setEmails(List.of(new ScimUser.Email(item.get("email").s(), true, "work")));
-                if (item.containsKey("firstName"))
-                    user.setFirstName(item.get("firstName").s());
-                if (item.containsKey("lastName"))
-                    user.setLastName(item.get("lastName").s());
-                if (item.containsKey("employeeNumber"))
-                    user.setEmployeeNumber(item.get("employeeNumber").s());
-                if (item.containsKey("userType"))
-                    user.setUserType(item.get("userType").s());
-                if (item.containsKey("department"))
-                    user.setDepartment(item.get("department").s());
-                if (item.containsKey("displayName"))
-                    user.setDisplayName(item.get("displayName").s());
-                if (item.containsKey("group"))
-                    user.setGroup(List.of(item.get("group").s()));
-                ensureScimCompliance(user);
-                // Establece el tipo de usuario según roles
-                user.setUserType(getUserRoleType(user));
-                filteredUsers.add(user);
+                filteredUsers.add(itemToUser(item));
             }
         } else {
-            // Si no hay filtro, puedes hacer un scan y devolver todos los usuarios
-            filteredUsers = listUsers().getResources();
+            // Sin filtro: scan paginado de toda la tabla con la ventana startIndex/count
+            return listUsers(startIndex, count);
         }
 
-        ScimListResponse<ScimUser> response = new ScimListResponse<>();
-        response.setTotalResults(filteredUsers.size());
-        response.setItemsPerPage(filteredUsers.size());
-        response.setStartIndex(1);
-        response.setResources(filteredUsers);
-
+        ScimListResponse<ScimUser> response = window(filteredUsers, startIndex, count);
         logger.info("listUsers finished, totalResults: {}", response.getTotalResults());
         return response;
     }
 
     // Listar todos los usuarios (GET /Users)
     public ScimListResponse<ScimUser> listUsers() {
-        logger.info("listUsers (all) called");
-        List<ScimUser> userResources = new ArrayList<>();
+        return listUsers(1, Integer.MAX_VALUE);
+    }
 
-        if (dynamoDbClient != null && usersTable != null && !usersTable.isEmpty()) {
-            ScanRequest scanRequest = ScanRequest.builder().tableName(usersTable).build();
-            ScanResponse scanResponse = dynamoDbClient.scan(scanRequest);
-            ObjectMapper mapper = new ObjectMapper();
-
-            for (Map<String, AttributeValue> item : scanResponse.items()) {
-                try {
-                    ScimUser user = new ScimUser();
-                    AttributeValue idAttr = item.get("id");
-                    if (idAttr != null) user.setId(idAttr.s());
-                    AttributeValue userNameAttr = item.get("userName");
-                    if (userNameAttr != null) user.setUserName(userNameAttr.s());
-                    user.setActive(item.containsKey("active") ? item.get("active").bool() : true);
-                    AttributeValue nameAttr = item.get("name");
-                    if (nameAttr != null)
-                        user.setName(mapper.readValue(nameAttr.s(), ScimUser.Name.class));
-                    // Leer atributos SAML/enterprise
-                    if (item.containsKey("email"))
-                        user.setEmails(List.of(new ScimUser.Email(item.get("email").s(), true, "work")));
-                    if (item.containsKey("firstName"))
-                        user.setFirstName(item.get("firstName").s());
-                    if (item.containsKey("lastName"))
-                        user.setLastName(item.get("lastName").s());
-                    if (item.containsKey("employeeNumber"))
-                        user.setEmployeeNumber(item.get("employeeNumber").s());
-                    if (item.containsKey("userType"))
-                        user.setUserType(item.get("userType").s());
-                    if (item.containsKey("department"))
-                        user.setDepartment(item.get("department").s());
-                    if (item.containsKey("displayName"))
-                        user.setDisplayName(item.get("displayName").s());
-                    if (item.containsKey("group"))
-                        user.setGroup(List.of(item.get("group").s()));
-                    ensureScimCompliance(user);
-                    // Establece el tipo de usuario según roles
-                    user.setUserType(getUserRoleType(user));
-                    userResources.add(user);
-                } catch (Exception e) {
-                    System.err.println("Error procesando el registro de usuario: " + item);
-                    e.printStackTrace();
-                }
+    /**
+     * Lista todos los usuarios aplicando la ventana SCIM startIndex (base 1) / count.
+     * El scan recorre todas las páginas (LastEvaluatedKey) y, si scim.scan.total-segments &gt; 1,
+     * se divide en segmentos paralelos. Los resultados se ordenan por id para que la ventana
+     * sea estable entre peticiones consecutivas de Okta.
+     * Okta recorre el listado pidiendo startIndex = 1, 1 + count, ...: la primera página lee y
+     * ordena la tabla, y las siguientes reutilizan esa lista durante scim.list.cache-ms en lugar de
+     * escanear y ordenar todo en cada página. Cualquier escritura SCIM de esta instancia la descarta.
+     */
+    public ScimListResponse<ScimUser> listUsers(int startIndex, int count) {
+        logger.info("listUsers (all) called, startIndex: {}, count: {}", startIndex, count);
+        ScimListResponse<ScimUser> response = window(usuariosOrdenados(startIndex), startIndex, count);
+        logger.info("listUsers (all) finished, totalResults: {}, itemsPerPage: {}",
+            response.getTotalResults(), response.getItemsPerPage());
+        return response;
+    }
+
+    private List<ScimUser> usuariosOrdenados(int startIndex) {
+        if (dynamoDbClient == null || usersTable == null || usersTable.isEmpty()) {
+            return List.of();
+        }
+        long ahora = System.currentTimeMillis();
+        ListadoUsuarios vigente = listado;
+        if (startIndex > 1 && vigente != null && ahora - vigente.cargadoEn() < listCacheMs) {
+            return vigente.usuarios();
+        }
+        List<ScimUser> userResources = new ArrayList<>();
+        List<Map<String, AttributeValue>> items = scanAllItems();
+        for (Map<String, AttributeValue> item : items) {
+            try {
+                userResources.add(itemToUser(item));
+            } catch (Exception e) {
+                logger.error("Error procesando el registro de usuario: {}", item, e);
             }
         }
+        userResources.sort(Comparator.comparing(ScimUser::getId, Comparator.nullsLast(Comparator.naturalOrder())));
+        List<ScimUser> usuarios = Collections.unmodifiableList(userResources);
+        if (listCacheMs > 0) {
+            listado = new ListadoUsuarios(usuarios, ahora);
+        }
+        return usuarios;
+    }
+
+    /**
+     * Recorta la lista completa a la ventana pedida. startIndex &lt; 1 se trata como 1 y
+     * count negativo como 0 (RFC 7644, sección 3.4.2.4).
+     */
+    private ScimListResponse<ScimUser> window(List<ScimUser> all, int startIndex, int count) {
+        int start = Math.max(startIndex, 1);
+        int from = Math.min(start - 1, all.size());
+        int to = (int) Math.min((long) from + Math.max(count, 0), all.size());
+        List<ScimUser> page = new ArrayList<>(all.subList(from, to));
+
         ScimListResponse<ScimUser> response = new ScimListResponse<>();
-        response.setTotalResults(userResources.size());
-        response.setItemsPerPage(userResources.size());
-        response.setStartIndex(1);
-        response.setResources(userResources);
-        logger.info("listUsers (all) finished, totalResults: {}", response.getTotalResults());
+        response.setTotalResults(all.size());
+        response.setItemsPerPage(page.size());
+        response.setStartIndex(start);
+        response.setResources(page);
         return response;
     }
 
+    private List<Map<String, AttributeValue>> scanAllItems() {
+        if (scanTotalSegments <= 1 || scimScanExecutor == null) {
+            return scanSegment(null);
+        }
+        List<CompletableFuture<List<Map<String, AttributeValue>>>> futures = new ArrayList<>();
+        for (int segment = 0; segment < scanTotalSegments; segment++) {
+            final int seg = segment;
+            futures.add(CompletableFuture.supplyAsync(() -> scanSegment(seg), scimScanExecutor));
+        }
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        try {
+            for (CompletableFuture<List<Map<String, AttributeValue>>> future : futures) {
+                items.addAll(future.join());
+            }
+        } catch (CompletionException e) {
+            // Un segmento fallido invalida todo el listado; no se devuelven resultados truncados
+            futures.forEach(f -> f.cancel(true));
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+        return items;
+    }
+
+    // Recorre todas las páginas de un segmento (o de la tabla completa si segment es null)
+    private List<Map<String, AttributeValue>> scanSegment(Integer segment) {
+        List<Map<String, AttributeValue>> items = new ArrayList<>();
+        Map<String, AttributeValue> startKey = null;
+        int pages = 0;
+        do {
+            ScanRequest.Builder builder = ScanRequest.builder().tableName(usersTable);
+            if (segment != null) {
+                builder.segment(segment).totalSegments(scanTotalSegments);
+            }
+            if (startKey != null) {
+                builder.exclusiveStartKey(startKey);
+            }
+            ScanResponse scanResponse = dynamoDbClient.scan(builder.build());
+            items.addAll(scanResponse.items());
+            startKey = scanResponse.hasLastEvaluatedKey() && !scanResponse.lastEvaluatedKey().isEmpty()
+                ? scanResponse.lastEvaluatedKey() : null;
+            pages++;
+        } while (startKey != null);
+        logger.debug("[SCIM][scan] Segmento {} leído: {} usuarios en {} páginas", segment, items.size(), pages);
+        return items;
+    }
+
+    private ScimUser itemToUser(Map<String, AttributeValue> item) throws JsonProcessingException {
+        ScimUser user = ScimUserItemCodec.fromItem(item);
+        ensureScimCompliance(user);
+        // Establece el tipo de usuario según roles
+        user.setUserType(getUserRoleType(user));
+        return user;
+    }
+
     // Eliminar usuario por ID (DELETE /Users/{id})
     public void deleteUser(String id) {
         logger.info("deleteUser called for id: {}", id);
@@ -363,6 +363,8 @@ public class ScimUserRepository {
                 .tableName(usersTable)
                 .key(key)
                 .build());
+            listado = null;
+            scimUserCache.invalidate(id, null);
         }
         logger.info("deleteUser finished for id: {}", id);
     }
@@ -378,7 +380,7 @@ public class ScimUserRepository {
     // Crear usuario (POST /Users)
     public ScimUser createUserFromJson(String body) throws JsonProcessingException {
         logger.info("createUserFromJson called with body: {}", body);
-        ObjectMapper mapper = new ObjectMapper();
+        ObjectMapper mapper = ScimUserItemCodec.mapper();
         JsonNode root = mapper.readTree(body);
         logger.debug("[SCIM][createUserFromJson] JSON recibido: {}", root);
 
@@ -457,7 +459,7 @@ public class ScimUserRepository {
     public ScimUser replaceUserFromJson(String id, String body) throws JsonProcessingException {
         logger.info("replaceUserFromJson called with id: {}, body: {}", id, body);
         logger.debug("[SCIM][replaceUserFromJson] JSON recibido: {}", body);
-        ObjectMapper mapper = new ObjectMapper();
+        ObjectMapper mapper = ScimUserItemCodec.mapper();
         JsonNode root = mapper.readTree(body);
 
         ScimUser user = mapper.treeToValue(root, ScimUser.class);
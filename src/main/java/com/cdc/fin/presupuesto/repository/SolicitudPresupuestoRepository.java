@@ -1,45 +1,511 @@
 package com.cdc.fin.presupuesto.repository;
 
+import com.cdc.fin.presupuesto.model.CursorPage;
+import com.cdc.fin.presupuesto.model.EmailOutbox;
 import com.cdc.fin.presupuesto.model.SolicitudPresupuesto;
+import com.cdc.fin.presupuesto.util.CursorCodec;
+import com.cdc.fin.presupuesto.util.EstatusSolicitud;
+import com.cdc.fin.presupuesto.util.TextoBusqueda;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
-import software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
 import software.amazon.awssdk.enhanced.dynamodb.model.PageIterable;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
-import software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch;
+import software.amazon.awssdk.enhanced.dynamodb.model.TransactPutItemEnhancedRequest;
+import software.amazon.awssdk.enhanced.dynamodb.model.TransactWriteItemsEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Repository
 public class SolicitudPresupuestoRepository {
+    private static final Logger logger = LoggerFactory.getLogger(SolicitudPresupuestoRepository.class);
+
+    // Filtros que se comparan por igualdad (pueden resolverse con un GSI); el estatus acepta
+    // cualquiera de sus variantes de mayúsculas (ver EstatusSolicitud)
+    private static final Set<String> EQUALITY_FILTERS = Set.of(
+        "numeroEmpleado", "estatusConfirmacion", "periodoPresupuesto");
+    // Filtros de búsqueda parcial, se envían como contains() en la FilterExpression
+    private static final Set<String> CONTAINS_FILTERS = Set.of(
+        "proveedor", "solicitante", "departamento", "subDepartamento", "categoriaGasto", "cuentaGastos", "fecha");
+    // Campo -> su copia plegada (ver SolicitudPresupuesto y TextoBusqueda); contains() se evalúa sobre
+    // la copia con el término plegado, sin distinguir mayúsculas ni acentos
+    private static final Map<String, String> ATRIBUTOS_BUSQUEDA = Map.of(
+        "solicitante", "solicitanteBusqueda",
+        "proveedor", "proveedorBusqueda",
+        "departamento", "departamentoBusqueda",
+        "subDepartamento", "subDepartamentoBusqueda",
+        "categoriaGasto", "categoriaGastoBusqueda",
+        "cuentaGastos", "cuentaGastosBusqueda");
+    // Máximo de lecturas a DynamoDB por página para acotar el costo cuando el filtro es muy selectivo
+    private static final int MAX_ROUND_TRIPS_PER_PAGE = 10;
+    // Tamaño de página de findByDynamicFilters (lee todo el resultado, página por página)
+    private static final int PAGINA_COMPLETA = 1000;
+    private static final int MAX_BATCH_RETRIES = 6;
+    // Intentos de alta con llaves nuevas cuando las generadas ya existen
+    private static final int MAX_CREATE_ATTEMPTS = 3;
 
     private final DynamoDbTable<SolicitudPresupuesto> table;
+    private final String tableName;
 
     @Autowired
     private DynamoDbEnhancedClient enhancedClient;
 
+    @Autowired
+    private DynamoDbClient dynamoDbClient;
+
+    @Autowired
+    private BulkWriter bulkWriter;
+
+    @Autowired
+    private EmailOutboxRepository emailOutboxRepository;
+
+    /**
+     * La condición de una transición de estatus no se cumplió: otro usuario ya cambió la solicitud.
+     * Incluye el estatus y la versión vigentes para que el cliente pueda refrescar.
+     */
+    public static class EstatusConflictoException extends RuntimeException {
+        private final String estatusActual;
+        private final Long versionActual;
+
+        public EstatusConflictoException(String estatusActual, Long versionActual) {
+            super("La solicitud fue modificada por otro usuario (estatus actual: " + estatusActual + ")");
+            this.estatusActual = estatusActual;
+            this.versionActual = versionActual;
+        }
+
+        public String getEstatusActual() { return estatusActual; }
+        public Long getVersionActual() { return versionActual; }
+    }
+
+    /**
+     * El alta no se escribió porque ya existe una solicitud con las mismas llaves.
+     */
+    public static class SolicitudExistenteException extends RuntimeException {
+        public SolicitudExistenteException(String id, String solicitudId) {
+            super("Ya existe una solicitud con id " + id + " y solicitudId " + solicitudId);
+        }
+    }
+
     @Autowired
     public SolicitudPresupuestoRepository(DynamoDbEnhancedClient enhancedClient,
                                          @Value("${aws.dynamodb.table.solicitudes}") String tableName) {
         this.table = enhancedClient.table(tableName, 
                                          TableSchema.fromBean(SolicitudPresupuesto.class));
+        this.tableName = tableName;
+    }
+
+    // Llaves y metadatos que una edición parcial no puede sobrescribir. El estatus solo cambia por
+    // cambiarEstatus (transición condicional con su correo), nunca por PATCH; las copias plegadas se
+    // derivan de sus campos
+    private static final Set<String> CAMPOS_NO_EDITABLES = Stream.concat(
+            Stream.of("id", "solicitudId", "fechaCreacion", "creadoPor", "fechaActualizacion", "version", "estatusConfirmacion"),
+            ATRIBUTOS_BUSQUEDA.values().stream())
+        .collect(Collectors.toUnmodifiableSet());
+
+    /**
+     * Edición parcial (PATCH) en una sola llamada UpdateItem: SET de los campos enviados con valor,
+     * REMOVE de los enviados en null; el resto del item no se toca. fechaCreacion/creadoPor solo se
+     * fijan si faltan (if_not_exists), fechaActualizacion se renueva y la versión se incrementa. La
+     * copia plegada de un campo de búsqueda se actualiza junto con él.
+     *
+     * @param cambios   bean con los valores nuevos
+     * @param campos    nombres de los atributos que el cliente envió; los desconocidos se ignoran
+     * @param usuario   correo de quien edita (actualizadoPor y, si falta, creadoPor); puede ser null
+     * @return el item completo tras la edición (ReturnValues=ALL_NEW), vacío si no existe
+     */
+    public Optional<SolicitudPresupuesto> updatePartial(String id, String solicitudId, SolicitudPresupuesto cambios,
+                                                        Set<String> campos, String usuario) {
+        List<String> editables = new ArrayList<>();
+        for (String campo : campos) {
+            if (!CAMPOS_NO_EDITABLES.contains(campo) && table.tableSchema().attributeNames().contains(campo)) {
+                editables.add(campo);
+            }
+        }
+        Map<String, AttributeValue> valores = table.tableSchema().itemToMap(cambios, editables);
+
+        Map<String, String> names = new HashMap<>();
+        Map<String, AttributeValue> values = new HashMap<>();
+        names.put("#id", "id");
+        names.put("#fechaCre", "fechaCreacion");
+        names.put("#fechaAct", "fechaActualizacion");
+        names.put("#version", "version");
+        String ahora = Instant.now().toString();
+        values.put(":ahora", AttributeValue.builder().s(ahora).build());
+        values.put(":cero", AttributeValue.builder().n("0").build());
+        values.put(":uno", AttributeValue.builder().n("1").build());
+
+        StringBuilder set = new StringBuilder(
+            "SET #fechaAct = :ahora, #fechaCre = if_not_exists(#fechaCre, :ahora), "
+            + "#version = if_not_exists(#version, :cero) + :uno");
+        if (usuario != null && !usuario.isEmpty()) {
+            names.put("#actPor", "actualizadoPor");
+            names.put("#crePor", "creadoPor");
+            values.put(":usuario", AttributeValue.builder().s(usuario).build());
+            set.append(", #actPor = :usuario, #crePor = if_not_exists(#crePor, :usuario)");
+            editables.remove("actualizadoPor");
+        }
+        StringBuilder remove = new StringBuilder();
+        int i = 0;
+        for (String campo : editables) {
+            names.put("#f" + i, campo);
+            AttributeValue valor = valores.get(campo);
+            if (valor != null) {
+                values.put(":f" + i, valor);
+                set.append(", #f").append(i).append(" = :f").append(i);
+            } else {
+                remove.append(remove.length() == 0 ? " REMOVE " : ", ").append("#f").append(i);
+            }
+            String plegado = ATRIBUTOS_BUSQUEDA.get(campo);
+            if (plegado != null) {
+                names.put("#b" + i, plegado);
+                if (valor != null && valor.s() != null) {
+                    values.put(":b" + i, AttributeValue.builder().s(TextoBusqueda.plegar(valor.s())).build());
+                    set.append(", #b").append(i).append(" = :b").append(i);
+                } else {
+                    remove.append(remove.length() == 0 ? " REMOVE " : ", ").append("#b").append(i);
+                }
+            }
+            i++;
+        }
+
+        UpdateItemRequest request = UpdateItemRequest.builder()
+            .tableName(tableName)
+            .key(Map.of(
+                "id", AttributeValue.builder().s(id).build(),
+                "solicitudId", AttributeValue.builder().s(solicitudId).build()))
+            .updateExpression(set.append(remove).toString())
+            .conditionExpression("attribute_exists(#id)")
+            .expressionAttributeNames(names)
+            .expressionAttributeValues(values)
+            .returnValues(ReturnValue.ALL_NEW)
+            .build();
+        try {
+            UpdateItemResponse response = dynamoDbClient.updateItem(request);
+            SolicitudPresupuesto actualizada = table.tableSchema().mapToItem(response.attributes());
+            return Optional.of(actualizada);
+        } catch (ConditionalCheckFailedException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Reemplazo (PUT) de los campos editables: igual que {@link #updatePartial} con todos los
+     * atributos de la tabla, así que los que no traiga el bean se eliminan. Llaves, fechaCreacion,
+     * creadoPor, estatusConfirmacion y la versión se conservan (la versión se incrementa), de modo que
+     * un reemplazo no cambia el estatus ni hace retroceder la versión de las llaves del outbox.
+     *
+     * @return el item completo tras el reemplazo, vacío si no existe
+     */
+    public Optional<SolicitudPresupuesto> replace(String id, String solicitudId, SolicitudPresupuesto solicitud,
+                                                  String usuario) {
+        return updatePartial(id, solicitudId, solicitud, Set.copyOf(table.tableSchema().attributeNames()), usuario);
+    }
+
+    /**
+     * Cambia el estatus en una sola llamada UpdateItem, sin leer ni reescribir el item completo.
+     * Condiciones: el item existe; si se indica estatusEsperado, el estatus actual debe coincidir
+     * (si no, el estatus actual debe ser distinto del nuevo); si se indica versionEsperada, la versión
+     * actual debe coincidir. La versión se incrementa en cada transición. Los estatus se comparan sin
+     * importar mayúsculas y el nuevo se guarda en forma canónica (ver EstatusSolicitud).
+     *
+     * @param camposAdicionales atributos de texto a fijar en la misma escritura (comentarios, actualizadoPor)
+     * @return la imagen anterior del item (ReturnValues=ALL_OLD), vacío si no existe
+     * @throws EstatusConflictoException si el item existe pero la condición no se cumplió
+     */
+    public Optional<SolicitudPresupuesto> cambiarEstatus(String id, String solicitudId, String nuevoEstatus,
+                                                         String estatusEsperado, Long versionEsperada,
+                                                         Map<String, String> camposAdicionales) {
+        Update update = actualizacionEstatus(id, solicitudId, nuevoEstatus, esperados(estatusEsperado), versionEsperada,
+            camposAdicionales, Instant.now().toString());
+        UpdateItemRequest request = UpdateItemRequest.builder()
+            .tableName(update.tableName())
+            .key(update.key())
+            .updateExpression(update.updateExpression())
+            .conditionExpression(update.conditionExpression())
+            .expressionAttributeNames(update.expressionAttributeNames())
+            .expressionAttributeValues(update.expressionAttributeValues())
+            .returnValues(ReturnValue.ALL_OLD)
+            .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+            .build();
+        try {
+            UpdateItemResponse response = dynamoDbClient.updateItem(request);
+            return Optional.of(table.tableSchema().mapToItem(response.attributes()));
+        } catch (ConditionalCheckFailedException e) {
+            if (!e.hasItem() || e.item().isEmpty()) {
+                return Optional.empty();
+            }
+            SolicitudPresupuesto actual = table.tableSchema().mapToItem(e.item());
+            throw new EstatusConflictoException(actual.getEstatusConfirmacion(), actual.getVersion());
+        }
+    }
+
+    /**
+     * Igual que {@link #cambiarEstatus(String, String, String, String, Long, Map)}, pero el correo de
+     * la transición se encola en la misma TransactWriteItems que el cambio: o se escriben ambos o
+     * ninguno. El cuerpo del correo usa el item completo (correo, solicitante, montos), que no se
+     * puede obtener de la condición, así que se lee antes de escribir. La primera lectura es
+     * eventualmente consistente (la mitad de capacidad): la escritura se condiciona a la versión leída,
+     * así que una imagen desfasada solo provoca un reintento. Los reintentos, y la validación que
+     * rechazaría la transición, usan lectura consistente.
+     *
+     * @param correo recibe la imagen anterior y la posterior (estatus, fecha, versión y campos ya
+     *               aplicados) y devuelve el correo a encolar, o null si la transición no lleva
+     * @return la imagen anterior del item, vacío si no existe
+     * @throws EstatusConflictoException si el item existe pero la condición no se cumplió
+     */
+    public Optional<SolicitudPresupuesto> cambiarEstatus(String id, String solicitudId, String nuevoEstatus,
+                                                         String estatusEsperado, Long versionEsperada,
+                                                         Map<String, String> camposAdicionales,
+                                                         BiFunction<SolicitudPresupuesto, SolicitudPresupuesto, EmailOutbox> correo) {
+        Key key = Key.builder().partitionValue(id).sortValue(solicitudId).build();
+        SolicitudPresupuesto anterior = null;
+        boolean consistente = false;
+        for (int attempt = 0; attempt <= MAX_BATCH_RETRIES; attempt++) {
+            if (attempt > 0 && consistente) {
+                backoff(attempt);
+            }
+            boolean lecturaConsistente = consistente;
+            anterior = table.getItem(r -> r.key(key).consistentRead(lecturaConsistente));
+            if (anterior == null && !consistente) {
+                // Puede ser una réplica desfasada: solo una lectura consistente confirma que no existe
+                consistente = true;
+                continue;
+            }
+            if (anterior == null) {
+                return Optional.empty();
+            }
+            String estatusActual = anterior.getEstatusConfirmacion();
+            long versionActual = anterior.getVersion() != null ? anterior.getVersion() : 0L;
+            boolean estatusValido = estatusEsperado != null && !estatusEsperado.isEmpty()
+                ? estatusEsperado.equalsIgnoreCase(estatusActual)
+                : !nuevoEstatus.equalsIgnoreCase(estatusActual);
+            if (!estatusValido || (versionEsperada != null && versionEsperada != versionActual)) {
+                if (!consistente) {
+                    consistente = true;
+                    continue;
+                }
+                throw new EstatusConflictoException(estatusActual, anterior.getVersion());
+            }
+
+            String fechaAct = Instant.now().toString();
+            EmailOutbox mensaje = correo.apply(anterior, imagenPosterior(anterior, nuevoEstatus, fechaAct, camposAdicionales));
+
+            // Condicionada a la versión leída: el correo se armó con esa imagen
+            Update update = actualizacionEstatus(id, solicitudId, nuevoEstatus, esperados(estatusEsperado), versionActual,
+                camposAdicionales, fechaAct);
+            List<TransactWriteItem> operaciones = new ArrayList<>();
+            operaciones.add(TransactWriteItem.builder().update(update).build());
+            if (mensaje != null) {
+                operaciones.add(emailOutboxRepository.putSiNoExiste(mensaje));
+            }
+            try {
+                dynamoDbClient.transactWriteItems(TransactWriteItemsRequest.builder().transactItems(operaciones).build());
+                return Optional.of(anterior);
+            } catch (TransactionCanceledException e) {
+                List<CancellationReason> reasons = e.cancellationReasons();
+                String codigoSolicitud = !reasons.isEmpty() ? reasons.get(0).code() : null;
+                String codigoCorreo = reasons.size() > 1 ? reasons.get(1).code() : null;
+                if ("ConditionalCheckFailed".equals(codigoCorreo) && !"ConditionalCheckFailed".equals(codigoSolicitud)) {
+                    // El correo de esta versión ya estaba encolado: basta con el cambio de estatus
+                    return cambiarEstatus(id, solicitudId, nuevoEstatus, estatusEsperado, versionActual, camposAdicionales);
+                }
+                if (!"ConditionalCheckFailed".equals(codigoSolicitud) && !"TransactionConflict".equals(codigoSolicitud)) {
+                    throw e;
+                }
+                // Cambió entre la lectura y la escritura (o la lectura estaba desfasada): se relee y se valida de nuevo
+                consistente = true;
+            }
+        }
+        if (anterior == null) {
+            return Optional.empty();
+        }
+        throw new EstatusConflictoException(anterior.getEstatusConfirmacion(), anterior.getVersion());
+    }
+
+    private static List<String> esperados(String estatusEsperado) {
+        return estatusEsperado != null && !estatusEsperado.isEmpty() ? EstatusSolicitud.variantes(estatusEsperado) : null;
+    }
+
+    /**
+     * Copia de la solicitud con la transición aplicada, tal como queda tras el Update de
+     * {@link #actualizacionEstatus}: estatus, fecha, versión + 1 y campos adicionales.
+     */
+    private SolicitudPresupuesto imagenPosterior(SolicitudPresupuesto anterior, String nuevoEstatus, String fechaAct,
+                                                 Map<String, String> camposAdicionales) {
+        long version = anterior.getVersion() != null ? anterior.getVersion() : 0L;
+        Map<String, AttributeValue> imagen = new HashMap<>(table.tableSchema().itemToMap(anterior, true));
+        imagen.put("estatusConfirmacion", AttributeValue.builder().s(EstatusSolicitud.normalizar(nuevoEstatus)).build());
+        imagen.put("fechaActualizacion", AttributeValue.builder().s(fechaAct).build());
+        imagen.put("version", AttributeValue.builder().n(Long.toString(version + 1)).build());
+        if (camposAdicionales != null) {
+            camposAdicionales.forEach((campo, valor) -> {
+                if (valor != null) imagen.put(campo, AttributeValue.builder().s(valor).build());
+            });
+        }
+        return table.tableSchema().mapToItem(imagen);
+    }
+
+    /**
+     * Update de una transición de estatus (SET estatus, fecha y versión + 1, más los campos
+     * adicionales) con sus condiciones; ver {@link #cambiarEstatus(String, String, String, String, Long, Map)}.
+     */
+    private Update actualizacionEstatus(String id, String solicitudId, String nuevoEstatus, List<String> estatusEsperados,
+                                        Long versionEsperada, Map<String, String> camposAdicionales, String fechaAct) {
+        Map<String, String> names = new HashMap<>();
+        Map<String, AttributeValue> values = new HashMap<>();
+        names.put("#id", "id");
+        names.put("#estatus", "estatusConfirmacion");
+        names.put("#fechaAct", "fechaActualizacion");
+        names.put("#version", "version");
+        values.put(":nuevo", AttributeValue.builder().s(EstatusSolicitud.normalizar(nuevoEstatus)).build());
+        values.put(":fechaAct", AttributeValue.builder().s(fechaAct).build());
+        values.put(":cero", AttributeValue.builder().n("0").build());
+        values.put(":uno", AttributeValue.builder().n("1").build());
+
+        StringBuilder update = new StringBuilder(
+            "SET #estatus = :nuevo, #fechaAct = :fechaAct, #version = if_not_exists(#version, :cero) + :uno");
+        int i = 0;
+        if (camposAdicionales != null) {
+            for (Map.Entry<String, String> campo : camposAdicionales.entrySet()) {
+                if (campo.getValue() == null) continue;
+                names.put("#c" + i, campo.getKey());
+                values.put(":c" + i, AttributeValue.builder().s(campo.getValue()).build());
+                update.append(", #c").append(i).append(" = :c").append(i);
+                i++;
+            }
+        }
+
+        StringBuilder condition = new StringBuilder("attribute_exists(#id)");
+        if (estatusEsperados != null && !estatusEsperados.isEmpty()) {
+            List<String> placeholders = new ArrayList<>();
+            for (int e = 0; e < estatusEsperados.size(); e++) {
+                values.put(":e" + e, AttributeValue.builder().s(estatusEsperados.get(e)).build());
+                placeholders.add(":e" + e);
+            }
+            condition.append(" AND #estatus IN (").append(String.join(", ", placeholders)).append(")");
+        } else {
+            // Sin estatus esperado al menos se evita repetir la misma transición (doble clic, dos aprobadores)
+            List<String> placeholders = new ArrayList<>();
+            List<String> variantes = EstatusSolicitud.variantes(nuevoEstatus);
+            for (int n = 0; n < variantes.size(); n++) {
+                values.put(":n" + n, AttributeValue.builder().s(variantes.get(n)).build());
+                placeholders.add(":n" + n);
+            }
+            condition.append(" AND (attribute_not_exists(#estatus) OR NOT (#estatus IN (")
+                .append(String.join(", ", placeholders)).append(")))");
+        }
+        if (versionEsperada != null) {
+            values.put(":version", AttributeValue.builder().n(versionEsperada.toString()).build());
+            condition.append(versionEsperada == 0
+                ? " AND (attribute_not_exists(#version) OR #version = :version)"
+                : " AND #version = :version");
+        }
+
+        return Update.builder()
+            .tableName(tableName)
+            .key(Map.of(
+                "id", AttributeValue.builder().s(id).build(),
+                "solicitudId", AttributeValue.builder().s(solicitudId).build()))
+            .updateExpression(update.toString())
+            .conditionExpression(condition.toString())
+            .expressionAttributeNames(names)
+            .expressionAttributeValues(values)
+            .build();
     }
 
     public SolicitudPresupuesto save(SolicitudPresupuesto solicitud) {
+        solicitud.setEstatusConfirmacion(EstatusSolicitud.normalizar(solicitud.getEstatusConfirmacion()));
         table.putItem(solicitud);
         return solicitud;
     }
 
+    /**
+     * Alta de una solicitud junto con sus correos en una sola transacción. A diferencia de save, el
+     * put se condiciona a attribute_not_exists(id): dos instancias que generen las mismas llaves
+     * (nodos del generador de IDs repetidos) no se sobrescriben. Si las llaves ya existen se piden
+     * llaves nuevas y se reintenta; los correos se vuelven a generar porque su llave incluye el id.
+     *
+     * @param correos     correos a encolar para la solicitud (con sus llaves vigentes)
+     * @param nuevasLlaves asigna id/solicitudId nuevos a la solicitud; null si las llaves las fijó el
+     *                     cliente y no deben cambiarse
+     * @throws SolicitudExistenteException si las llaves ya existen y no se pueden regenerar
+     */
+    public SolicitudPresupuesto create(SolicitudPresupuesto solicitud,
+                                       Function<SolicitudPresupuesto, List<EmailOutbox>> correos,
+                                       Consumer<SolicitudPresupuesto> nuevasLlaves) {
+        solicitud.setEstatusConfirmacion(EstatusSolicitud.normalizar(solicitud.getEstatusConfirmacion()));
+        Expression noExiste = Expression.builder()
+            .expression("attribute_not_exists(#id)")
+            .expressionNames(Map.of("#id", "id"))
+            .build();
+        for (int attempt = 1; ; attempt++) {
+            TransactWriteItemsEnhancedRequest.Builder request = TransactWriteItemsEnhancedRequest.builder()
+                .addPutItem(table, TransactPutItemEnhancedRequest.builder(SolicitudPresupuesto.class)
+                    .item(solicitud)
+                    .conditionExpression(noExiste)
+                    .build());
+            for (EmailOutbox correo : correos.apply(solicitud)) {
+                request.addPutItem(emailOutboxRepository.getTable(), emailOutboxRepository.transactPutSiNoExiste(correo));
+            }
+            try {
+                enhancedClient.transactWriteItems(request.build());
+                return solicitud;
+            } catch (TransactionCanceledException e) {
+                List<CancellationReason> reasons = e.cancellationReasons();
+                boolean existe = !reasons.isEmpty() && "ConditionalCheckFailed".equals(reasons.get(0).code());
+                if (!existe) {
+                    throw e;
+                }
+                if (nuevasLlaves == null || attempt >= MAX_CREATE_ATTEMPTS) {
+                    throw new SolicitudExistenteException(solicitud.getId(), solicitud.getSolicitudId());
+                }
+                logger.warn("Las llaves generadas {}/{} ya existen; se generan nuevas (revisar presupuesto.id.node)",
+                    solicitud.getId(), solicitud.getSolicitudId());
+                nuevasLlaves.accept(solicitud);
+            }
+        }
+    }
+
     public Optional<SolicitudPresupuesto> findById(String id, String solicitudId) {
         Key key = Key.builder()
                 .partitionValue(id)
@@ -80,80 +546,443 @@ public class SolicitudPresupuestoRepository {
 
     public void deleteAll() {
         List<SolicitudPresupuesto> allSolicitudes = findAll();
-        for (SolicitudPresupuesto solicitud : allSolicitudes) {
-            deleteById(solicitud.getId(), solicitud.getSolicitudId());
-        }
+        BulkWriter.Resultado resultado = bulkWriter.deleteAll(table, allSolicitudes);
+        resultado.requireCompleto("solicitudes (eliminación)");
+    }
+
+    public List<SolicitudPresupuesto> findByEstatus(String estatus) {
+        // Use GSI for estatusConfirmacion, una consulta por cada variante de mayúsculas
+        return EstatusSolicitud.variantes(estatus).stream()
+                .flatMap(variante -> table.index("estatusConfirmacion-index")
+                        .query(QueryEnhancedRequest.builder()
+                                .queryConditional(QueryConditional
+                                        .keyEqualTo(Key.builder().partitionValue(variante).build()))
+                                .build())
+                        .stream())
+                .flatMap(page -> page.items().stream())
+                .collect(Collectors.toList());
     }
 
+    /**
+     * Guarda en lotes concurrentes reintentando los elementos no procesados (throttling); ver {@link BulkWriter}.
+     * Lanza IllegalStateException si después de los reintentos quedan elementos sin escribir.
+     */
     public void saveAll(List<SolicitudPresupuesto> solicitudes) {
+        solicitudes.forEach(s -> s.setEstatusConfirmacion(EstatusSolicitud.normalizar(s.getEstatusConfirmacion())));
+        BulkWriter.Resultado resultado = bulkWriter.putAll(table, solicitudes);
+        resultado.requireCompleto("solicitudes");
+    }
+
+    /**
+     * Cambia el estatus en lotes de 25 solo si el estatus actual en DynamoDB es uno de los esperados.
+     * Cada lote es una transacción de UpdateItem (SET estatus, fechaActualizacion y versión + 1), así
+     * una edición hecha después de leer las solicitudes no se sobrescribe con la copia leída. Cada
+     * Update se condiciona también a la versión leída: si la solicitud cambió pero sigue en un estatus
+     * esperado se toma la imagen vigente del motivo de cancelación y se reintenta; si ya transicionó
+     * (otro proceso) se descarta.
+     *
+     * @param correo genera el correo de una solicitud a partir de su imagen posterior (null si no
+     *               lleva); se encola en la misma transacción, condicionado a que su llave no exista.
+     *               null para no encolar nada
+     * @return la imagen posterior de las solicitudes que efectivamente cambiaron
+     */
+    public List<SolicitudPresupuesto> cambiarEstatusEnLote(List<SolicitudPresupuesto> solicitudes, String nuevoEstatus,
+                                                           List<String> estatusEsperados,
+                                                           Function<SolicitudPresupuesto, EmailOutbox> correo) {
         final int BATCH_SIZE = 25;
+        List<SolicitudPresupuesto> escritas = new ArrayList<>();
+        Set<String> sinCorreo = new HashSet<>();
         for (int i = 0; i < solicitudes.size(); i += BATCH_SIZE) {
-            List<SolicitudPresupuesto> batch = solicitudes.subList(i, Math.min(i + BATCH_SIZE, solicitudes.size()));
-            WriteBatch.Builder<SolicitudPresupuesto> writeBatchBuilder = WriteBatch.builder(SolicitudPresupuesto.class).mappedTableResource(table);
-            batch.forEach(writeBatchBuilder::addPutItem);
-            enhancedClient.batchWriteItem(BatchWriteItemEnhancedRequest.builder()
-                .writeBatches(writeBatchBuilder.build())
-                .build());
+            List<SolicitudPresupuesto> pending = new ArrayList<>(solicitudes.subList(i, Math.min(i + BATCH_SIZE, solicitudes.size())));
+            int attempt = 0;
+            while (!pending.isEmpty()) {
+                if (attempt > 0) {
+                    if (attempt > MAX_BATCH_RETRIES) {
+                        throw new IllegalStateException("No se pudo cambiar el estatus de " + pending.size()
+                            + " solicitudes después de " + MAX_BATCH_RETRIES + " reintentos");
+                    }
+                    backoff(attempt);
+                }
+                String fechaAct = Instant.now().toString();
+                List<TransactWriteItem> operaciones = new ArrayList<>();
+                List<SolicitudPresupuesto> posteriores = new ArrayList<>();
+                for (SolicitudPresupuesto s : pending) {
+                    long version = s.getVersion() != null ? s.getVersion() : 0L;
+                    Update update = actualizacionEstatus(s.getId(), s.getSolicitudId(), nuevoEstatus, estatusEsperados,
+                        version, null, fechaAct);
+                    operaciones.add(TransactWriteItem.builder().update(update.toBuilder()
+                        .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+                        .build()).build());
+                    posteriores.add(imagenPosterior(s, nuevoEstatus, fechaAct, null));
+                }
+                // Los correos van después: los motivos de cancelación de las solicitudes conservan su índice
+                List<String> conCorreo = new ArrayList<>();
+                if (correo != null) {
+                    for (SolicitudPresupuesto posterior : posteriores) {
+                        String llave = posterior.getId() + "#" + posterior.getSolicitudId();
+                        EmailOutbox mensaje = sinCorreo.contains(llave) ? null : correo.apply(posterior);
+                        if (mensaje != null) {
+                            operaciones.add(emailOutboxRepository.putSiNoExiste(mensaje));
+                            conCorreo.add(llave);
+                        }
+                    }
+                }
+                try {
+                    dynamoDbClient.transactWriteItems(TransactWriteItemsRequest.builder().transactItems(operaciones).build());
+                    escritas.addAll(posteriores);
+                    pending = List.of();
+                } catch (TransactionCanceledException e) {
+                    // Los motivos vienen en el mismo orden que las operaciones
+                    List<CancellationReason> reasons = e.cancellationReasons();
+                    // Correo ya encolado (reintento del mismo evento): la solicitud se reintenta sin él
+                    for (int j = 0; j < conCorreo.size(); j++) {
+                        int k = pending.size() + j;
+                        if (k < reasons.size() && "ConditionalCheckFailed".equals(reasons.get(k).code())) {
+                            sinCorreo.add(conCorreo.get(j));
+                        }
+                    }
+                    List<SolicitudPresupuesto> retry = new ArrayList<>();
+                    for (int j = 0; j < pending.size(); j++) {
+                        CancellationReason reason = j < reasons.size() ? reasons.get(j) : null;
+                        if (reason == null || !"ConditionalCheckFailed".equals(reason.code())) {
+                            retry.add(pending.get(j));
+                        } else if (reason.hasItem() && !reason.item().isEmpty()) {
+                            // Cambió después de leerla: se reintenta con la imagen vigente si sigue en un estatus esperado
+                            SolicitudPresupuesto vigente = table.tableSchema().mapToItem(reason.item());
+                            if (estatusEsperados.contains(vigente.getEstatusConfirmacion())) {
+                                retry.add(vigente);
+                            }
+                        }
+                    }
+                    pending = retry;
+                }
+                attempt++;
+            }
         }
+        return escritas;
     }
 
+    private static void backoff(int attempt) {
+        try {
+            Thread.sleep(Math.min(50L << attempt, 2000L));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrumpido mientras se reintentaba el guardado por lotes", e);
+        }
+    }
+
+    /**
+     * Todas las solicitudes que cumplen los filtros, ordenadas por fecha descendente. Los filtros se
+     * evalúan en DynamoDB igual que en {@link #findPageByFilters(Map, int, String)} (índice o
+     * FilterExpression, búsqueda parcial sobre las copias plegadas); solo el orden se aplica en memoria.
+     */
     public List<SolicitudPresupuesto> findByDynamicFilters(Map<String, String> filters) {
-        // Escaneo completo y filtrado en memoria (útil para pocos registros)
-        return findAll().stream()
-            .filter(s -> {
-                boolean matches = true;
-                for (Map.Entry<String, String> entry : filters.entrySet()) {
-                    String key = entry.getKey();
-                    String value = entry.getValue();
-                    if (value == null || value.isEmpty()) continue;
-                    // Comparación dinámica por campo (búsqueda parcial, case-insensitive)
-                    switch (key) {
-                        case "numeroEmpleado":
-                            matches &= s.getNumeroEmpleado() != null && s.getNumeroEmpleado().toLowerCase().contains(value.toLowerCase());
-                            break;
-                        case "estatusConfirmacion":
-                            matches &= s.getEstatusConfirmacion() != null && s.getEstatusConfirmacion().toLowerCase().contains(value.toLowerCase());
-                            break;
-                        case "departamento":
-                            matches &= s.getDepartamento() != null && s.getDepartamento().toLowerCase().contains(value.toLowerCase());
-                            break;
-                        case "proveedor":
-                            matches &= s.getProveedor() != null && s.getProveedor().toLowerCase().contains(value.toLowerCase());
-                            break;
-                        case "solicitante":
-                            matches &= s.getSolicitante() != null && s.getSolicitante().toLowerCase().contains(value.toLowerCase());
-                            break;
-                        case "subDepartamento":
-                            matches &= s.getSubDepartamento() != null && s.getSubDepartamento().toLowerCase().contains(value.toLowerCase());
-                            break;
-                        case "categoriaGasto":
-                            matches &= s.getCategoriaGasto() != null && s.getCategoriaGasto().toLowerCase().contains(value.toLowerCase());
-                            break;
-                        case "cuentaGastos":
-                            matches &= s.getCuentaGastos() != null && s.getCuentaGastos().toLowerCase().contains(value.toLowerCase());
-                            break;
-                        case "periodoPresupuesto":
-                            matches &= s.getPeriodoPresupuesto() != null && s.getPeriodoPresupuesto().toLowerCase().contains(value.toLowerCase());
-                            break;
-                        case "fecha":
-                            matches &= s.getFecha() != null && s.getFecha().toLowerCase().contains(value.toLowerCase());
-                            break;
-                        // Agrega más campos según tu modelo
-                        default:
-                            // Si el campo no es reconocido, ignora el filtro
-                            break;
-                    }
-                    if (!matches) break;
+        List<SolicitudPresupuesto> resultado = new ArrayList<>();
+        String cursor = null;
+        do {
+            CursorPage<SolicitudPresupuesto> pagina = findPageByFilters(filters, PAGINA_COMPLETA, cursor);
+            resultado.addAll(pagina.getItems());
+            cursor = pagina.getNextCursor();
+        } while (cursor != null);
+        resultado.sort((a, b) -> {
+            // Ordena por fecha descendente (nulls al final)
+            if (a.getFecha() == null && b.getFecha() == null) return 0;
+            if (a.getFecha() == null) return 1;
+            if (b.getFecha() == null) return -1;
+            int byFecha = b.getFecha().compareTo(a.getFecha());
+            if (byFecha != 0 || a.getSolicitudId() == null || b.getSolicitudId() == null) return byFecha;
+            // Mismo día: los solicitudId generados por SolicitudIdGenerator ordenan por creación
+            return b.getSolicitudId().compareTo(a.getSolicitudId());
+        });
+        return resultado;
+    }
+
+    /**
+     * Consulta paginada por llave con filtros aplicados en DynamoDB.
+     * Usa numeroEmpleado-index o estatusConfirmacion-index cuando el filtro correspondiente
+     * viene informado; el resto de filtros se envía como FilterExpression. Las búsquedas parciales
+     * de texto comparan contra las copias plegadas, sin distinguir mayúsculas ni acentos;
+     * numeroEmpleado y periodoPresupuesto se comparan por igualdad exacta. El estatus se busca en
+     * todas sus variantes de mayúsculas: por el índice, una consulta por variante, una tras otra en
+     * el mismo cursor. El costo por página es proporcional al tamaño de página y no al tamaño de la tabla.
+     *
+     * @param filters filtros por campo (los no reconocidos se ignoran)
+     * @param limit   número máximo de elementos a devolver
+     * @param cursor  cursor devuelto por la página anterior con los mismos filtros, o null para la primera;
+     *                si se generó con otros filtros u otro índice lanza IllegalArgumentException
+     */
+    public CursorPage<SolicitudPresupuesto> findPageByFilters(Map<String, String> filters, int limit, String cursor) {
+        return findPageByFilters(filters, limit, cursor, null);
+    }
+
+    /**
+     * Igual que {@link #findPageByFilters(Map, int, String)} pero leyendo solo los atributos indicados
+     * (ProjectionExpression); los demás campos del bean quedan en null.
+     *
+     * @param fields atributos a proyectar, o null/vacío para el item completo
+     * @throws IllegalArgumentException si algún atributo no existe en la tabla
+     */
+    public CursorPage<SolicitudPresupuesto> findPageByFilters(Map<String, String> filters, int limit, String cursor,
+                                                              Collection<String> fields) {
+        List<String> projection = projection(fields);
+        Map<String, String> active = new HashMap<>();
+        filters.forEach((k, v) -> {
+            if (v != null && !v.isEmpty() && (EQUALITY_FILTERS.contains(k) || CONTAINS_FILTERS.contains(k))) {
+                active.put(k, v);
+            }
+        });
+
+        // Elegir el índice: el GSI de numeroEmpleado es el más selectivo
+        String indexName = null;
+        String indexKey = null;
+        if (active.containsKey("numeroEmpleado")) {
+            indexName = "numeroEmpleado-index";
+            indexKey = "numeroEmpleado";
+        } else if (active.containsKey("estatusConfirmacion")) {
+            indexName = "estatusConfirmacion-index";
+            indexKey = "estatusConfirmacion";
+        }
+        String keyValue = indexKey != null ? active.remove(indexKey) : null;
+        // Valores de la llave del índice a consultar, en orden; null para scan
+        List<String> claves = null;
+        if ("estatusConfirmacion".equals(indexKey)) {
+            keyValue = EstatusSolicitud.normalizar(keyValue);
+            claves = EstatusSolicitud.variantes(keyValue);
+        } else if (indexKey != null) {
+            claves = List.of(keyValue);
+        }
+        Expression filterExpression = buildFilterExpression(active);
+
+        // El cursor queda ligado al índice y a los filtros con que se generó
+        Map<String, String> firma = new TreeMap<>(active);
+        if (indexKey != null) {
+            firma.put(indexKey, keyValue);
+        }
+        String consulta = (indexName != null ? indexName : "scan") + "|" + firma;
+
+        // La llave del índice en el cursor indica la variante en curso; un cursor con solo esa llave
+        // apunta al inicio de la variante
+        int variante = 0;
+        Map<String, AttributeValue> startKey = CursorCodec.decode(cursor, consulta);
+        if (startKey != null && claves != null) {
+            AttributeValue clave = startKey.get(indexKey);
+            variante = clave != null ? claves.indexOf(clave.s()) : -1;
+            if (variante < 0) {
+                throw new IllegalArgumentException("Cursor de paginación inválido");
+            }
+            if (startKey.size() == 1) {
+                startKey = null;
+            }
+        }
+        List<SolicitudPresupuesto> items = new ArrayList<>();
+        boolean terminado = false;
+        int roundTrips = 0;
+        while (items.size() < limit && roundTrips < MAX_ROUND_TRIPS_PER_PAGE) {
+            // Limit se aplica antes del filtro, así nunca se leen más elementos de los que caben en la página
+            int remaining = limit - items.size();
+            Page<SolicitudPresupuesto> page;
+            if (indexName != null) {
+                QueryEnhancedRequest.Builder request = QueryEnhancedRequest.builder()
+                    .queryConditional(QueryConditional.keyEqualTo(Key.builder().partitionValue(claves.get(variante)).build()))
+                    .limit(remaining)
+                    .exclusiveStartKey(startKey);
+                if (filterExpression != null) request.filterExpression(filterExpression);
+                if (projection != null) request.attributesToProject(projection);
+                page = firstPage(table.index(indexName).query(request.build()).iterator());
+            } else {
+                ScanEnhancedRequest.Builder request = ScanEnhancedRequest.builder()
+                    .limit(remaining)
+                    .exclusiveStartKey(startKey);
+                if (filterExpression != null) request.filterExpression(filterExpression);
+                if (projection != null) request.attributesToProject(projection);
+                page = firstPage(table.scan(request.build()).iterator());
+            }
+            startKey = null;
+            if (page != null) {
+                items.addAll(page.items());
+                startKey = page.lastEvaluatedKey();
+                roundTrips++;
+            }
+            if (startKey == null || startKey.isEmpty()) {
+                startKey = null;
+                if (claves == null || variante + 1 >= claves.size()) {
+                    terminado = true;
+                    break;
+                }
+                variante++;
+            }
+        }
+
+        String siguiente = null;
+        if (!terminado) {
+            siguiente = CursorCodec.encode(startKey != null
+                ? startKey
+                : Map.of(indexKey, AttributeValue.builder().s(claves.get(variante)).build()), consulta);
+        }
+        return new CursorPage<>(items, siguiente);
+    }
+
+    /**
+     * Normaliza las solicitudes guardadas antes de las reglas actuales: completa las copias plegadas
+     * de búsqueda (o las desfasadas) y lleva el estatus a su forma canónica ("APROBADO" → "Aprobado").
+     * Recorre la tabla con un scan paginado que solo proyecta esos campos; cada corrección es un
+     * UpdateItem condicionado a que el campo no haya cambiado desde la lectura (si cambió, la
+     * escritura que lo cambió ya lo dejó normalizado). Es idempotente.
+     *
+     * @return solicitudes actualizadas
+     */
+    public int normalizarGuardadas() {
+        Map<String, String> names = new HashMap<>();
+        List<String> proyeccion = new ArrayList<>(List.of("#id", "#sid", "#estatus"));
+        names.put("#id", "id");
+        names.put("#sid", "solicitudId");
+        names.put("#estatus", "estatusConfirmacion");
+        int i = 0;
+        for (Map.Entry<String, String> campo : ATRIBUTOS_BUSQUEDA.entrySet()) {
+            names.put("#c" + i, campo.getKey());
+            names.put("#b" + i, campo.getValue());
+            proyeccion.add("#c" + i);
+            proyeccion.add("#b" + i);
+            i++;
+        }
+        ScanRequest request = ScanRequest.builder()
+            .tableName(tableName)
+            .projectionExpression(String.join(", ", proyeccion))
+            .expressionAttributeNames(names)
+            .build();
+        int actualizadas = 0;
+        for (ScanResponse pagina : dynamoDbClient.scanPaginator(request)) {
+            for (Map<String, AttributeValue> item : pagina.items()) {
+                if (normalizar(item)) {
+                    actualizadas++;
+                }
+            }
+        }
+        return actualizadas;
+    }
+
+    private boolean normalizar(Map<String, AttributeValue> item) {
+        Map<String, String> names = new HashMap<>();
+        Map<String, AttributeValue> values = new HashMap<>();
+        List<String> set = new ArrayList<>();
+        List<String> remove = new ArrayList<>();
+        List<String> condiciones = new ArrayList<>(List.of("attribute_exists(#id)"));
+        int i = 0;
+        for (Map.Entry<String, String> campo : ATRIBUTOS_BUSQUEDA.entrySet()) {
+            AttributeValue fuente = item.get(campo.getKey());
+            AttributeValue guardado = item.get(campo.getValue());
+            String esperado = TextoBusqueda.plegar(fuente != null ? fuente.s() : null);
+            if (Objects.equals(esperado, guardado != null ? guardado.s() : null)) {
+                continue;
+            }
+            names.put("#c" + i, campo.getKey());
+            names.put("#b" + i, campo.getValue());
+            if (fuente != null) {
+                values.put(":c" + i, fuente);
+                condiciones.add("#c" + i + " = :c" + i);
+            } else {
+                condiciones.add("attribute_not_exists(#c" + i + ")");
+            }
+            if (esperado != null) {
+                values.put(":b" + i, AttributeValue.builder().s(esperado).build());
+                set.add("#b" + i + " = :b" + i);
+            } else {
+                remove.add("#b" + i);
+            }
+            i++;
+        }
+        AttributeValue estatus = item.get("estatusConfirmacion");
+        String canonico = estatus != null ? EstatusSolicitud.normalizar(estatus.s()) : null;
+        boolean corregirEstatus = canonico != null && !canonico.equals(estatus.s());
+        if (corregirEstatus) {
+            names.put("#estatus", "estatusConfirmacion");
+            values.put(":estatusActual", estatus);
+            values.put(":estatus", AttributeValue.builder().s(canonico).build());
+            condiciones.add("#estatus = :estatusActual");
+            set.add("#estatus = :estatus");
+        }
+        if (i == 0 && !corregirEstatus) {
+            return false;
+        }
+        names.put("#id", "id");
+        String update = (set.isEmpty() ? "" : "SET " + String.join(", ", set) + " ")
+            + (remove.isEmpty() ? "" : "REMOVE " + String.join(", ", remove));
+        UpdateItemRequest.Builder request = UpdateItemRequest.builder()
+            .tableName(tableName)
+            .key(Map.of("id", item.get("id"), "solicitudId", item.get("solicitudId")))
+            .updateExpression(update.trim())
+            .conditionExpression(String.join(" AND ", condiciones))
+            .expressionAttributeNames(names);
+        if (!values.isEmpty()) {
+            request.expressionAttributeValues(values);
+        }
+        try {
+            dynamoDbClient.updateItem(request.build());
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            // Se editó o eliminó después de leerla
+            return false;
+        }
+    }
+
+    private static Expression buildFilterExpression(Map<String, String> filters) {
+        if (filters.isEmpty()) {
+            return null;
+        }
+        List<String> conditions = new ArrayList<>();
+        Map<String, String> names = new HashMap<>();
+        Map<String, AttributeValue> values = new HashMap<>();
+        int i = 0;
+        for (Map.Entry<String, String> entry : filters.entrySet()) {
+            String name = "#f" + i;
+            String value = ":v" + i;
+            String plegado = ATRIBUTOS_BUSQUEDA.get(entry.getKey());
+            if ("estatusConfirmacion".equals(entry.getKey())) {
+                names.put(name, entry.getKey());
+                List<String> placeholders = new ArrayList<>();
+                List<String> variantes = EstatusSolicitud.variantes(entry.getValue());
+                for (int v = 0; v < variantes.size(); v++) {
+                    values.put(value + "_" + v, AttributeValue.builder().s(variantes.get(v)).build());
+                    placeholders.add(value + "_" + v);
                 }
-                return matches;
-            })
-            .sorted((a, b) -> {
-                // Ordena por fecha descendente (nulls al final)
-                if (a.getFecha() == null && b.getFecha() == null) return 0;
-                if (a.getFecha() == null) return 1;
-                if (b.getFecha() == null) return -1;
-                return b.getFecha().compareTo(a.getFecha());
-            })
-            .collect(Collectors.toList());
-    }
-}
\ No newline at end of file
+                conditions.add(name + " IN (" + String.join(", ", placeholders) + ")");
+            } else if (EQUALITY_FILTERS.contains(entry.getKey())) {
+                names.put(name, entry.getKey());
+                values.put(value, AttributeValue.builder().s(entry.getValue()).build());
+                conditions.add(name + " = " + value);
+            } else if (plegado != null) {
+                names.put(name, plegado);
+                values.put(value, AttributeValue.builder().s(TextoBusqueda.plegar(entry.getValue())).build());
+                conditions.add("contains(" + name + ", " + value + ")");
+            } else {
+                names.put(name, entry.getKey());
+                values.put(value, AttributeValue.builder().s(entry.getValue()).build());
+                conditions.add("contains(" + name + ", " + value + ")");
+            }
+            i++;
+        }
+        return Expression.builder()
+            .expression(String.join(" AND ", conditions))
+            .expressionNames(names)
+            .expressionValues(values)
+            .build();
+    }
+
+    private List<String> projection(Collection<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return null;
+        }
+        List<String> projection = new ArrayList<>();
+        for (String field : fields) {
+            if (!table.tableSchema().attributeNames().contains(field)) {
+                throw new IllegalArgumentException("Campo no reconocido: " + field);
+            }
+            if (!projection.contains(field)) projection.add(field);
+        }
+        return projection;
+    }
+
+    private static <T> Page<T> firstPage(Iterator<Page<T>> pages) {
+        return pages.hasNext() ? pages.next() : null;
+    }
+}
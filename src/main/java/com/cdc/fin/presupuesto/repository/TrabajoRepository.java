@@ -0,0 +1,209 @@
+package com.cdc.fin.presupuesto.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Tabla de trabajos asíncronos (procesamiento de solicitudes e importaciones), para que cualquier
+ * instancia pueda consultar un trabajo aunque corra en otra. Además del estado de cada trabajo guarda,
+ * con la misma llave de partición, la reserva de cada llave de idempotencia ("llave#...") y el turno
+ * de los trabajos que solo pueden correr uno a la vez ("turno#..."), ambos con alta condicional.
+ * Los registros expiran por el TTL de DynamoDB (expiraEn, epoch segundos).
+ */
+@Repository
+public class TrabajoRepository {
+
+    private static final String PK = "jobId";
+
+    private final DynamoDbClient dynamoDbClient;
+    private final String tableName;
+
+    public TrabajoRepository(DynamoDbClient dynamoDbClient,
+                             @Value("${aws.dynamodb.table.jobs}") String tableName) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.tableName = tableName;
+    }
+
+    /** Guarda el estado completo de un trabajo; solo lo escribe la instancia que lo ejecuta. */
+    public void guardar(Map<String, AttributeValue> item) {
+        dynamoDbClient.putItem(PutItemRequest.builder().tableName(tableName).item(item).build());
+    }
+
+    public Optional<Map<String, AttributeValue>> buscar(String jobId) {
+        Map<String, AttributeValue> item = dynamoDbClient.getItem(GetItemRequest.builder()
+            .tableName(tableName)
+            .key(llave(jobId))
+            .consistentRead(true)
+            .build()).item();
+        return item == null || item.isEmpty() ? Optional.empty() : Optional.of(item);
+    }
+
+    public void eliminar(String jobId) {
+        dynamoDbClient.deleteItem(DeleteItemRequest.builder().tableName(tableName).key(llave(jobId)).build());
+    }
+
+    /** jobId que reservó la llave de idempotencia, si ya se usó. */
+    public Optional<String> buscarLlave(String llave) {
+        return buscar("llave#" + llave).map(item -> texto(item, "titular"));
+    }
+
+    /**
+     * Reserva una llave de idempotencia para un trabajo.
+     *
+     * @return vacío si quedó reservada para jobId; si ya existía, el jobId que la reservó
+     */
+    public Optional<String> reservarLlave(String llave, String jobId, Instant expira) {
+        Map<String, AttributeValue> item = llave("llave#" + llave);
+        item.put("titular", texto(jobId));
+        item.put("expiraEn", numero(expira.getEpochSecond()));
+        try {
+            dynamoDbClient.putItem(PutItemRequest.builder()
+                .tableName(tableName)
+                .item(item)
+                .conditionExpression("attribute_not_exists(#pk)")
+                .expressionAttributeNames(Map.of("#pk", PK))
+                .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+                .build());
+            return Optional.empty();
+        } catch (ConditionalCheckFailedException e) {
+            return Optional.of(e.hasItem() ? texto(e.item(), "titular") : jobId);
+        }
+    }
+
+    /**
+     * Toma el turno de un trabajo exclusivo si está libre o si su titular dejó de renovarlo
+     * (la instancia que lo ejecutaba se detuvo).
+     *
+     * @return vacío si lo tomó; si no, el jobId del titular
+     */
+    public Optional<String> tomarTurno(String turno, String jobId, long vigenciaMs) {
+        long ahora = System.currentTimeMillis();
+        Map<String, AttributeValue> item = llave("turno#" + turno);
+        item.put("titular", texto(jobId));
+        item.put("venceEn", numero(ahora + vigenciaMs));
+        item.put("expiraEn", numero((ahora + vigenciaMs) / 1000 + 86400));
+        try {
+            dynamoDbClient.putItem(PutItemRequest.builder()
+                .tableName(tableName)
+                .item(item)
+                .conditionExpression("attribute_not_exists(#pk) OR #vence < :ahora")
+                .expressionAttributeNames(Map.of("#pk", PK, "#vence", "venceEn"))
+                .expressionAttributeValues(Map.of(":ahora", numero(ahora)))
+                .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+                .build());
+            return Optional.empty();
+        } catch (ConditionalCheckFailedException e) {
+            return Optional.of(e.hasItem() ? texto(e.item(), "titular") : "");
+        }
+    }
+
+    /**
+     * Extiende la vigencia del turno.
+     *
+     * @return false si el turno ya no es del trabajo (venció y otro lo tomó)
+     */
+    public boolean renovarTurno(String turno, String jobId, long vigenciaMs) {
+        long vence = System.currentTimeMillis() + vigenciaMs;
+        try {
+            dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(llave("turno#" + turno))
+                .updateExpression("SET #vence = :vence, #expira = :expira")
+                .conditionExpression("#titular = :jobId")
+                .expressionAttributeNames(Map.of("#vence", "venceEn", "#expira", "expiraEn", "#titular", "titular"))
+                .expressionAttributeValues(Map.of(
+                    ":vence", numero(vence),
+                    ":expira", numero(vence / 1000 + 86400),
+                    ":jobId", texto(jobId)))
+                .build());
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    public void liberarTurno(String turno, String jobId) {
+        try {
+            dynamoDbClient.deleteItem(DeleteItemRequest.builder()
+                .tableName(tableName)
+                .key(llave("turno#" + turno))
+                .conditionExpression("#titular = :jobId")
+                .expressionAttributeNames(Map.of("#titular", "titular"))
+                .expressionAttributeValues(Map.of(":jobId", texto(jobId)))
+                .build());
+        } catch (ConditionalCheckFailedException e) {
+            // Ya lo tomó otro trabajo
+        }
+    }
+
+    /**
+     * Marca como ERROR un trabajo que sigue activo (EN_COLA o EN_PROCESO) pero cuya instancia ya no
+     * lo ejecuta.
+     *
+     * @return false si el trabajo ya había terminado o no existe
+     */
+    public boolean marcarInterrumpido(String jobId, String mensaje, Instant fin, Instant expira) {
+        try {
+            dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                .tableName(tableName)
+                .key(llave(jobId))
+                .updateExpression("SET #estado = :error, #mensaje = :mensaje, #fin = :fin, #expira = :expira")
+                .conditionExpression("#estado IN (:enCola, :enProceso)")
+                .expressionAttributeNames(Map.of(
+                    "#estado", "estado", "#mensaje", "mensaje", "#fin", "fechaFin", "#expira", "expiraEn"))
+                .expressionAttributeValues(Map.of(
+                    ":error", texto("ERROR"),
+                    ":enCola", texto("EN_COLA"),
+                    ":enProceso", texto("EN_PROCESO"),
+                    ":mensaje", texto(mensaje),
+                    ":fin", texto(fin.toString()),
+                    ":expira", numero(expira.getEpochSecond())))
+                .build());
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    private static Map<String, AttributeValue> llave(String jobId) {
+        Map<String, AttributeValue> llave = new HashMap<>();
+        llave.put(PK, texto(jobId));
+        return llave;
+    }
+
+    public static AttributeValue texto(String valor) {
+        return AttributeValue.builder().s(valor).build();
+    }
+
+    public static AttributeValue numero(long valor) {
+        return AttributeValue.builder().n(Long.toString(valor)).build();
+    }
+
+    public static String texto(Map<String, AttributeValue> item, String campo) {
+        AttributeValue valor = item.get(campo);
+        return valor != null ? valor.s() : null;
+    }
+
+    public static long numero(Map<String, AttributeValue> item, String campo) {
+        AttributeValue valor = item.get(campo);
+        return valor != null && valor.n() != null ? Long.parseLong(valor.n()) : 0L;
+    }
+
+    public static Instant fecha(Map<String, AttributeValue> item, String campo) {
+        String valor = texto(item, campo);
+        return valor != null ? Instant.parse(valor) : null;
+    }
+}
@@ -1,9 +1,10 @@
 package com.cdc.fin.presupuesto.service;
 
 import com.cdc.fin.presupuesto.model.CategoriaGasto;
+import com.cdc.fin.presupuesto.repository.CatalogImportSession;
 import com.cdc.fin.presupuesto.repository.CategoriaGastoRepository;
-import com.opencsv.CSVReader;
-import com.opencsv.CSVReaderBuilder;
+import com.cdc.fin.presupuesto.util.CategoriaIdGenerator;
+import com.cdc.fin.presupuesto.util.RecordReader;
 import com.opencsv.exceptions.CsvException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,15 +12,11 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.Set;
 import java.util.HashSet;
-import java.util.UUID;
 
 @Service
 public class CategoriaGastoService {
@@ -28,19 +25,11 @@ public class CategoriaGastoService {
     @Autowired
     private CategoriaGastoRepository categoriaGastoRepository;
 
-    // Bulk insert categorias using DynamoDB batchWrite
-    @Autowired(required = false)
-    private software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient dynamoDbEnhancedClient;
-
-    private software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable<CategoriaGasto> categoriaGastoTable;
+    @Autowired
+    private ImportMetrics importMetrics;
 
-    @Autowired(required = false)
-    public void setCategoriaGastoTable(@org.springframework.beans.factory.annotation.Value("${aws.dynamodb.table.categoriasGasto:fin-dynamodb-${ENVIRONMENT:qa}-presupuesto-categorias-gasto}") String categoriaGastoTableName) {
-        if (dynamoDbEnhancedClient != null) {
-            // El nombre debe ser exactamente el de la tabla DynamoDB
-            this.categoriaGastoTable = dynamoDbEnhancedClient.table(categoriaGastoTableName, software.amazon.awssdk.enhanced.dynamodb.TableSchema.fromBean(CategoriaGasto.class));
-        }
-    }
+    @Autowired
+    private CsvImportPipeline csvImportPipeline;
 
     public List<CategoriaGasto> getAllCategorias() {
         return categoriaGastoRepository.findAll();
@@ -58,140 +47,64 @@ public class CategoriaGastoService {
         categoriaGastoRepository.deleteById(id);
     }
 
+    public Map<String, Object> importCategoriasFromCSV(MultipartFile file, boolean replaceAll) throws IOException, CsvException {
+        return importCategoriasFromCSV(file, replaceAll, false);
+    }
+
     /**
-     * Inserción masiva de categorías usando DynamoDB batchWrite.
-     * Si DynamoDB Enhanced Client no está configurado, usa saveAll.
+     * @param delta si es true el archivo es el catálogo completo y solo se escriben altas, cambios y bajas
      */
-    private void batchInsertCategorias(List<CategoriaGasto> categorias) {
-        logger.info("Intentando guardar {} categorías en DynamoDB...", categorias.size());
-        if (dynamoDbEnhancedClient == null) {
-            logger.warn("DynamoDbEnhancedClient no está configurado. Usando saveAll en repositorio.");
-            categoriaGastoRepository.saveAll(categorias);
-            return;
+    public Map<String, Object> importCategoriasFromCSV(MultipartFile file, boolean replaceAll, boolean delta) throws IOException, CsvException {
+        try (RecordReader lector = RecordReader.leer(file.getInputStream(), file.getOriginalFilename())) {
+            return importCategoriasFromCSV(lector, replaceAll, delta, null);
         }
-        if (categoriaGastoTable == null) {
-            logger.warn("categoriaGastoTable no está configurada. Usando saveAll en repositorio.");
-            categoriaGastoRepository.saveAll(categorias);
-            return;
-        }
-        int batchSize = 25;
-        try {
-            for (int i = 0; i < categorias.size(); i += batchSize) {
-                List<CategoriaGasto> batch = categorias.subList(i, Math.min(i + batchSize, categorias.size()));
-                software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch.Builder<CategoriaGasto> writeBatchBuilder =
-                    software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch.builder(CategoriaGasto.class)
-                        .mappedTableResource(categoriaGastoTable);
-                for (CategoriaGasto categoria : batch) {
-                    writeBatchBuilder.addPutItem(categoria);
-                }
-                software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest.Builder batchWriteBuilder =
-                    software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest.builder();
-                batchWriteBuilder.addWriteBatch(writeBatchBuilder.build());
-                try {
-                    dynamoDbEnhancedClient.batchWriteItem(batchWriteBuilder.build());
-                    logger.info("Batch insert exitoso para {} categorías.", batch.size());
-                } catch (Exception e) {
-                    logger.error("Error al guardar batch en DynamoDB: {}", e.getMessage(), e);
-                }
-            }
-        } catch (software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException e) {
-            logger.error("La tabla DynamoDB no existe o el nombre es incorrecto: {}", e.getMessage());
-            throw new RuntimeException("Error: La tabla DynamoDB para categorías de gasto no existe o el nombre es incorrecto. Verifica la configuración.");
+    }
+
+    /**
+     * Importación desde un archivo en disco (el guardado por una importación asíncrona), CSV o .xlsx según su nombre.
+     * @param progreso avance para consultas mientras corre; null si no se necesita
+     */
+    public Map<String, Object> importCategoriasFromCSV(Path archivo, boolean replaceAll, boolean delta,
+                                                       CsvImportPipeline.Progreso progreso) throws IOException, CsvException {
+        try (RecordReader lector = RecordReader.abrir(archivo)) {
+            return importCategoriasFromCSV(lector, replaceAll, delta, progreso);
         }
     }
 
-    public Map<String, Object> importCategoriasFromCSV(MultipartFile file, boolean replaceAll) throws IOException, CsvException {
+    private Map<String, Object> importCategoriasFromCSV(RecordReader lector, boolean replaceAll, boolean delta,
+                                                        CsvImportPipeline.Progreso progreso) throws IOException, CsvException {
+        long inicio = System.nanoTime();
         logger.info("Iniciando importación de categorías desde CSV...");
-        List<CategoriaGasto> categorias = new ArrayList<>();
-        int successCount = 0;
-        int errorCount = 0;
-        List<String> errors = new ArrayList<>();
         Set<String> idsVistos = new HashSet<>();
         Set<String> idsDuplicados = new HashSet<>();
-        List<CategoriaGasto> categoriasSinDuplicados = new ArrayList<>();
+        Map<String, Object> result;
 
-        try (CSVReader csvReader = new CSVReaderBuilder(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))
-                .withSkipLines(1) // Skip header
-                .build()) {
-            
-            List<String[]> records = csvReader.readAll();
-            
-            for (int i = 0; i < records.size(); i++) {
-                String[] record = records.get(i);
-                int rowNumber = i + 2; // +2 porque se omite el encabezado y arrays son 0-indexados
-                
-                try {
-                    if (record.length < 5) {
-                        errors.add("Línea " + rowNumber + ": Columnas insuficientes (se esperaban al menos 5, se obtuvieron " + record.length + ")");
-                        errorCount++;
-                        continue;
-                    }
-                    
-                    // Validar que el nombre no esté vacío primero
-                    String nombre = record[0].trim();
-                    if (nombre.isEmpty()) {
-                        errors.add("Línea " + rowNumber + ": El campo 'Nombre' es requerido");
-                        errorCount++;
-                        continue;
-                    }
-                    
-                    CategoriaGasto categoria = new CategoriaGasto();
-                    
-                    // Generar ID automáticamente a partir del nombre
-                    String id = generateCategoriaId(nombre);
-                    if (!idsVistos.add(id)) {
-                        idsDuplicados.add(id);
-                        errorCount++;
-                        errors.add("Línea " + rowNumber + ": ID duplicado '" + id + "' - OMITIDO");
-                        continue;
-                    }
-                    categoria.setId(id);
-                    
-                    // Mapear correctamente las columnas del CSV:
-                    // Columna 0: Nombre
-                    // Columna 1: Descripción  
-                    // Columna 2: Cuenta de gastos
-                    // Columna 3: Cuenta
-                    // Columna 4: Saldo
-                    categoria.setNombre(nombre);
-                    categoria.setDescripcion(record[1].trim());
-                    categoria.setCuentaDeGastos(record[2].trim());
-                    categoria.setCuenta(record[3].trim());
-                    
-                    // Parse saldo - manejar formatos como "$3,307,877.56" o "$-"
-                    try {
-                        String saldoStr = record[4].trim();
-                        Double saldoValue = parseSaldoValue(saldoStr);
-                        categoria.setSaldo(saldoValue);
-                    } catch (Exception e) {
-                        logger.warn("Línea {}: No se pudo convertir el saldo '{}', se asigna 0.0", rowNumber, record[4]);
-                        categoria.setSaldo(0.0);
-                    }
-                    
-                    // Validate required fields
-                    if (categoria.getNombre().isEmpty()) {
-                        errors.add("Línea " + rowNumber + ": El campo 'Nombre' es requerido");
-                        errorCount++;
-                        continue;
-                    }
-                    
-                    logger.debug("Categoría creada: ID={}, Nombre={}, Saldo={}", 
-                            categoria.getId(), categoria.getNombre(), categoria.getSaldo());
-                    
-                    categoriasSinDuplicados.add(categoria);
-                    successCount++;
-                    
-                } catch (Exception e) {
-                    errors.add("Línea " + rowNumber + ": Error procesando el registro - " + e.getMessage());
-                    errorCount++;
-                    logger.error("Error procesando la línea CSV {}: {}", rowNumber, e.getMessage());
+        try (CatalogImportSession<CategoriaGasto> sesion = categoriaGastoRepository.iniciarImportacion(CatalogImportSession.Modo.de(replaceAll, delta));
+             CsvImportPipeline.Reporte reporte = csvImportPipeline.nuevoReporte(progreso)) {
+            lector.leerRegistro(); // Encabezado
+            lector.seleccionar(0, 1, 2, 3, 4);
+            // El ID sale del nombre: los duplicados se detectan en orden, después del mapeo en paralelo
+            CsvImportPipeline.Filtro<CategoriaGasto> sinDuplicados = categoria -> {
+                if (idsVistos.add(categoria.getId())) {
+                    return null;
                 }
+                idsDuplicados.add(categoria.getId());
+                return "ID duplicado '" + categoria.getId() + "' - OMITIDO";
+            };
+            csvImportPipeline.importar(reporte, lector::leerRegistro, 2, this::mapearCategoria, sinDuplicados,
+                sesion::escribir, categoria -> "Categoría " + categoria.getId());
+            lector.getAdvertencias().forEach(reporte::advertencia);
+            CatalogImportSession.Cierre cierre = sesion.terminar();
+            for (String id : cierre.getNoEliminados()) {
+                reporte.advertencia("Categoría " + id + ": no se pudo eliminar");
             }
-            
-            // If replace all is true, delete all existing categorias first
-            if (replaceAll) {
-                logger.info("Eliminando todas las categorías existentes antes de importar.");
-                categoriaGastoRepository.deleteAll();
+            cierre.getAdvertencias().forEach(reporte::advertencia);
+            if (!idsDuplicados.isEmpty()) {
+                reporte.advertencia("Advertencia: Se omitieron " + idsDuplicados.size() + " categorías duplicadas por ID. IDs duplicados: " + String.join(", ", idsDuplicados));
+            }
+            result = reporte.resumen();
+            if (cierre.getDiff() != null) {
+                result.put("diff", cierre.getDiff());
             }
         } catch (IOException e) {
             logger.error("Error leyendo el archivo CSV: {}", e.getMessage(), e);
@@ -201,24 +114,8 @@ public class CategoriaGastoService {
             throw new CsvException("Error parsing CSV file: " + e.getMessage());
         }
 
-        // Inserta en lote solo si hay al menos un registro válido
-        if (!categoriasSinDuplicados.isEmpty()) {
-            logger.info("Guardando {} categorías importadas...", categoriasSinDuplicados.size());
-            batchInsertCategorias(categoriasSinDuplicados);
-        } else {
-            logger.warn("No hay categorías válidas para guardar.");
-        }
-        if (!idsDuplicados.isEmpty()) {
-            errors.add("Advertencia: Se omitieron " + idsDuplicados.size() + " categorías duplicadas por ID. IDs duplicados: " + String.join(", ", idsDuplicados));
-        }
-
-        // Prepare response
-        Map<String, Object> result = new HashMap<>();
-        result.put("success", errorCount == 0);
-        result.put("totalRecords", successCount + errorCount);
-        result.put("successCount", successCount);
-        result.put("errorCount", errorCount);
-        result.put("errors", errors);
+        int successCount = (Integer) result.get("successCount");
+        int errorCount = (Integer) result.get("errorCount");
         if (errorCount > 0) {
             result.put("message", String.format("Importación completada con advertencias: %d exitosos, %d errores/omitidos. Consulta el detalle de errores.", successCount, errorCount));
         } else {
@@ -227,38 +124,54 @@ public class CategoriaGastoService {
         
         logger.info("Importación de CSV de categorías completada. Éxito: {}, Errores/Omitidos: {}", successCount, errorCount);
         
+        importMetrics.registrar("categorias-gasto", inicio, successCount, errorCount);
         return result;
     }
-    
+
     /**
-     * Generate a unique ID for categoria based on name
-     * Format: CAT_{NORMALIZED_NAME}
+     * Convierte y valida una fila del CSV (se ejecuta en paralelo por bloques).
      */
-    private String generateCategoriaId(String nombre) {
-        if (nombre == null || nombre.trim().isEmpty()) {
-            return "CAT_" + UUID.randomUUID().toString();
+    private CategoriaGasto mapearCategoria(String[] record) {
+        if (record.length < 5) {
+            throw new IllegalArgumentException("Columnas insuficientes (se esperaban al menos 5, se obtuvieron " + record.length + ")");
         }
-        
-        // Normalize the name: remove accents, convert to uppercase, replace spaces and special characters
-        String normalized = nombre.trim()
-            .toUpperCase()
-            .replaceAll("[ÁÀÂÃÄÅ]", "A")
-            .replaceAll("[ÉÈÊË]", "E")
-            .replaceAll("[ÍÌÎÏ]", "I")
-            .replaceAll("[ÓÒÔÕÖ]", "O")
-            .replaceAll("[ÚÙÛÜ]", "U")
-            .replaceAll("[Ñ]", "N")
-            .replaceAll("[Ç]", "C")
-            .replaceAll("[^A-Z0-9]", "_")  // Replace non-alphanumeric with underscore
-            .replaceAll("_+", "_")         // Replace multiple underscores with single
-            .replaceAll("^_|_$", "");      // Remove leading/trailing underscores
-        
-        // Limit length to avoid very long IDs
-        if (normalized.length() > 50) {
-            normalized = normalized.substring(0, 50);
+
+        // Validar que el nombre no esté vacío primero
+        String nombre = record[0].trim();
+        if (nombre.isEmpty()) {
+            throw new IllegalArgumentException("El campo 'Nombre' es requerido");
+        }
+
+        try {
+            CategoriaGasto categoria = new CategoriaGasto();
+            // Generar ID automáticamente a partir del nombre
+            categoria.setId(CategoriaIdGenerator.generar(nombre));
+
+            // Mapear correctamente las columnas del CSV:
+            // Columna 0: Nombre
+            // Columna 1: Descripción  
+            // Columna 2: Cuenta de gastos
+            // Columna 3: Cuenta
+            // Columna 4: Saldo
+            categoria.setNombre(nombre);
+            categoria.setDescripcion(record[1].trim());
+            categoria.setCuentaDeGastos(record[2].trim());
+            categoria.setCuenta(record[3].trim());
+
+            // Parse saldo - manejar formatos como "$3,307,877.56" o "$-"
+            try {
+                categoria.setSaldo(parseSaldoValue(record[4].trim()));
+            } catch (Exception e) {
+                logger.warn("No se pudo convertir el saldo '{}', se asigna 0.0", record[4]);
+                categoria.setSaldo(0.0);
+            }
+
+            logger.debug("Categoría creada: ID={}, Nombre={}, Saldo={}",
+                    categoria.getId(), categoria.getNombre(), categoria.getSaldo());
+            return categoria;
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Error procesando el registro - " + e.getMessage(), e);
         }
-        
-        return "CAT_" + normalized;
     }
     
     /**
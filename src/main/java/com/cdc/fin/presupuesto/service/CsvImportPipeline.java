@@ -0,0 +1,411 @@
+package com.cdc.fin.presupuesto.service;
+
+import com.cdc.fin.presupuesto.repository.BulkWriter;
+import com.opencsv.CSVWriter;
+import com.opencsv.exceptions.CsvException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+
+/**
+ * Importación CSV en streaming con memoria acotada.
+ * <p>
+ * El hilo de la petición lee registros y los entrega en bloques de chunk-size al pool de
+ * importación, donde se validan y mapean en paralelo. Los bloques se consumen en el orden del
+ * archivo (números de línea y filtros como el de IDs duplicados quedan igual que en una lectura
+ * secuencial) y las filas válidas se acumulan en lotes de write-batch que se escriben en el mismo
+ * pool mientras sigue la lectura. Como máximo hay "parallelism" bloques y "parallelism" lotes en
+ * vuelo: al llegar al tope, el hilo lector toma el más antiguo (si nadie lo ha empezado, lo ejecuta
+ * él mismo) y espera a que termine, así la memoria no depende del tamaño del archivo.
+ * <p>
+ * Los errores por fila se escriben a un CSV temporal en {@link ExportStorage}; la respuesta solo
+ * incluye los primeros max-errors y el ID del reporte completo.
+ */
+@Component
+public class CsvImportPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(CsvImportPipeline.class);
+
+    private final TaskExecutor importExecutor;
+    private final ExportStorage exportStorage;
+    private final int chunkSize;
+    private final int parallelism;
+    private final int writeBatch;
+    private final int maxErrors;
+
+    // reporteId -> fecha de creación, para la limpieza periódica
+    private final Map<String, Instant> reportes = new ConcurrentHashMap<>();
+
+    @Value("${presupuesto.import.reportes.retention-ms:86400000}")
+    private long retentionMs;
+
+    public CsvImportPipeline(@Qualifier("importExecutor") TaskExecutor importExecutor,
+                             ExportStorage exportStorage,
+                             @Value("${presupuesto.import.chunk-size:500}") int chunkSize,
+                             @Value("${presupuesto.import.parallelism:4}") int parallelism,
+                             @Value("${presupuesto.import.write-batch:1000}") int writeBatch,
+                             @Value("${presupuesto.import.max-errors:100}") int maxErrors) {
+        this.importExecutor = importExecutor;
+        this.exportStorage = exportStorage;
+        this.chunkSize = Math.max(chunkSize, 1);
+        this.parallelism = Math.max(parallelism, 1);
+        this.writeBatch = Math.max(writeBatch, 1);
+        this.maxErrors = Math.max(maxErrors, 0);
+    }
+
+    /** Siguiente registro del archivo; null al terminar (p. ej. {@code csvReader::readNext}). */
+    @FunctionalInterface
+    public interface Fuente {
+        String[] siguiente() throws IOException, CsvException;
+    }
+
+    /**
+     * Valida y convierte un registro. Se ejecuta en paralelo: no debe depender de otras filas.
+     * Una excepción descarta la fila y su mensaje queda en el reporte.
+     */
+    @FunctionalInterface
+    public interface Mapeo<T> {
+        T mapear(String[] record);
+    }
+
+    /**
+     * Validación entre filas (p. ej. IDs duplicados); se ejecuta en un solo hilo y en el orden del archivo.
+     * @return null si la fila se acepta, o el motivo del rechazo
+     */
+    @FunctionalInterface
+    public interface Filtro<T> {
+        String rechazar(T item);
+    }
+
+    /**
+     * Escritura de un lote; puede llamarse desde varios hilos a la vez.
+     * @return fallos con índices del lote recibido
+     */
+    @FunctionalInterface
+    public interface Destino<T> {
+        List<BulkWriter.Fallo> escribir(List<T> lote);
+    }
+
+    /**
+     * Avance de una importación en curso: filas leídas del archivo, escritas y con error.
+     * Se notifica por bloque leído y por lote escrito, desde cualquier hilo del pipeline.
+     */
+    @FunctionalInterface
+    public interface Progreso {
+        void actualizar(int leidas, int exitosas, int errores);
+    }
+
+    public Reporte nuevoReporte() {
+        return new Reporte(null);
+    }
+
+    /** @param progreso null si nadie consulta el avance (importación síncrona) */
+    public Reporte nuevoReporte(Progreso progreso) {
+        return new Reporte(progreso);
+    }
+
+    /**
+     * Lee, valida y escribe todas las filas de la fuente; los conteos y errores quedan en el reporte.
+     *
+     * @param primeraLinea número de línea del primer registro de la fuente (para los mensajes)
+     * @param filtro       validación secuencial; null si no hay
+     * @param describir    texto de la fila para los errores de escritura (p. ej. "Proveedor 123")
+     */
+    public <T> void importar(Reporte reporte, Fuente fuente, int primeraLinea, Mapeo<T> mapeo, Filtro<T> filtro,
+                             Destino<T> destino, Function<T, String> describir) throws IOException, CsvException {
+        Deque<FutureTask<List<Fila<T>>>> bloques = new ArrayDeque<>();
+        Deque<FutureTask<Void>> escrituras = new ArrayDeque<>();
+        Lote<T> lote = new Lote<>(writeBatch);
+        try {
+            int linea = primeraLinea;
+            List<String[]> registros = new ArrayList<>(chunkSize);
+            String[] record;
+            while ((record = fuente.siguiente()) != null) {
+                registros.add(record);
+                if (registros.size() == chunkSize) {
+                    bloques.add(enviar(mapearBloque(registros, linea, mapeo)));
+                    linea += registros.size();
+                    reporte.sumarLeidas(registros.size());
+                    registros = new ArrayList<>(chunkSize);
+                    if (bloques.size() >= parallelism) {
+                        lote = consumir(esperar(bloques.poll()), lote, reporte, filtro, destino, describir, escrituras);
+                    }
+                }
+            }
+            if (!registros.isEmpty()) {
+                bloques.add(enviar(mapearBloque(registros, linea, mapeo)));
+                reporte.sumarLeidas(registros.size());
+            }
+            while (!bloques.isEmpty()) {
+                lote = consumir(esperar(bloques.poll()), lote, reporte, filtro, destino, describir, escrituras);
+            }
+            if (!lote.items.isEmpty()) {
+                escrituras.add(enviar(escribirLote(lote, reporte, destino, describir)));
+            }
+            while (!escrituras.isEmpty()) {
+                esperar(escrituras.poll());
+            }
+        } finally {
+            // Solo queda algo en vuelo si hubo una excepción: se cancela lo que no ha empezado
+            bloques.forEach(task -> task.cancel(false));
+            escrituras.forEach(task -> task.cancel(false));
+        }
+    }
+
+    private <T> Lote<T> consumir(List<Fila<T>> filas, Lote<T> lote, Reporte reporte, Filtro<T> filtro,
+                                 Destino<T> destino, Function<T, String> describir,
+                                 Deque<FutureTask<Void>> escrituras) {
+        for (Fila<T> fila : filas) {
+            String motivo = fila.error != null ? fila.error : filtro != null ? filtro.rechazar(fila.item) : null;
+            if (motivo != null) {
+                reporte.error(fila.linea, motivo);
+                continue;
+            }
+            lote.items.add(fila.item);
+            lote.lineas.add(fila.linea);
+            if (lote.items.size() == writeBatch) {
+                escrituras.add(enviar(escribirLote(lote, reporte, destino, describir)));
+                lote = new Lote<>(writeBatch);
+                if (escrituras.size() >= parallelism) {
+                    esperar(escrituras.poll());
+                }
+            }
+        }
+        return lote;
+    }
+
+    private static <T> FutureTask<List<Fila<T>>> mapearBloque(List<String[]> registros, int primeraLinea, Mapeo<T> mapeo) {
+        return new FutureTask<>(() -> {
+            List<Fila<T>> filas = new ArrayList<>(registros.size());
+            for (int i = 0; i < registros.size(); i++) {
+                int linea = primeraLinea + i;
+                try {
+                    filas.add(new Fila<>(linea, mapeo.mapear(registros.get(i)), null));
+                } catch (RuntimeException e) {
+                    filas.add(new Fila<>(linea, null, e.getMessage() != null ? e.getMessage() : e.toString()));
+                }
+            }
+            return filas;
+        });
+    }
+
+    private static <T> FutureTask<Void> escribirLote(Lote<T> lote, Reporte reporte, Destino<T> destino,
+                                                     Function<T, String> describir) {
+        return new FutureTask<>(() -> {
+            List<BulkWriter.Fallo> fallos = destino.escribir(lote.items);
+            for (BulkWriter.Fallo fallo : fallos) {
+                reporte.error(lote.lineas.get(fallo.getIndice()),
+                    describir.apply(lote.items.get(fallo.getIndice())) + ": no se pudo guardar (" + fallo.getMensaje() + ")");
+            }
+            reporte.sumarExitosos(lote.items.size() - fallos.size());
+            return null;
+        });
+    }
+
+    private <V> FutureTask<V> enviar(FutureTask<V> task) {
+        importExecutor.execute(task);
+        return task;
+    }
+
+    /**
+     * Espera una tarea; si sigue en la cola del pool la ejecuta el hilo actual (run() no hace nada
+     * si ya empezó), así el lector nunca queda bloqueado detrás de trabajo que nadie ha tomado.
+     */
+    private static <V> V esperar(FutureTask<V> task) {
+        task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Importación interrumpida", e);
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof RuntimeException runtime) throw runtime;
+            if (causa instanceof Error error) throw error;
+            throw new IllegalStateException(causa);
+        }
+    }
+
+    private static final class Fila<T> {
+        final int linea;
+        final T item;
+        final String error;
+
+        Fila(int linea, T item, String error) {
+            this.linea = linea;
+            this.item = item;
+            this.error = error;
+        }
+    }
+
+    private static final class Lote<T> {
+        final List<T> items;
+        final List<Integer> lineas;
+
+        Lote(int capacidad) {
+            this.items = new ArrayList<>(capacidad);
+            this.lineas = new ArrayList<>(capacidad);
+        }
+    }
+
+    public boolean existeReporte(String reporteId) {
+        return reportes.containsKey(reporteId) && exportStorage.exists(claveReporte(reporteId));
+    }
+
+    public InputStream abrirReporte(String reporteId) throws IOException {
+        return exportStorage.open(claveReporte(reporteId));
+    }
+
+    private static String claveReporte(String reporteId) {
+        return "importacion-" + reporteId + "-errores.csv";
+    }
+
+    /**
+     * Elimina los reportes de errores después del periodo de retención.
+     */
+    @Scheduled(fixedDelayString = "${presupuesto.import.reportes.cleanup-ms:3600000}")
+    public void limpiarReportesVencidos() {
+        Instant limite = Instant.now().minus(Duration.ofMillis(retentionMs));
+        reportes.entrySet().removeIf(entry -> {
+            boolean vencido = entry.getValue().isBefore(limite);
+            if (vencido) {
+                exportStorage.delete(claveReporte(entry.getKey()));
+            }
+            return vencido;
+        });
+    }
+
+    /**
+     * Conteos y errores de una importación. Todos los mensajes van al CSV de errores (se crea con el
+     * primero); en memoria solo se guardan los primeros max-errors.
+     */
+    public final class Reporte implements Closeable {
+        private final String id = UUID.randomUUID().toString();
+        private final List<String> mensajes = new ArrayList<>();
+        private int exitosos;
+        private int errores;
+        private int omitidos;
+        private CSVWriter archivo;
+        private boolean archivoFallido;
+        private int leidas;
+        private final Progreso progreso;
+
+        private Reporte(Progreso progreso) {
+            this.progreso = progreso;
+        }
+
+        /** Fila descartada o no guardada; cuenta como error. */
+        public synchronized void error(int linea, String mensaje) {
+            errores++;
+            registrar(Integer.toString(linea), "Línea " + linea + ": " + mensaje);
+        }
+
+        /** Mensaje general (no cuenta como error de fila). */
+        public synchronized void advertencia(String mensaje) {
+            registrar("", mensaje);
+        }
+
+        synchronized void sumarExitosos(int filas) {
+            exitosos += filas;
+            notificar();
+        }
+
+        synchronized void sumarLeidas(int filas) {
+            leidas += filas;
+            notificar();
+        }
+
+        private void notificar() {
+            if (progreso != null) {
+                progreso.actualizar(leidas, exitosos, errores);
+            }
+        }
+
+        private void registrar(String linea, String mensaje) {
+            if (mensajes.size() < maxErrors) {
+                mensajes.add(mensaje);
+            } else {
+                omitidos++;
+            }
+            if (archivo == null && !archivoFallido) {
+                try {
+                    archivo = new CSVWriter(new OutputStreamWriter(exportStorage.create(claveReporte(id)), StandardCharsets.UTF_8));
+                    archivo.writeNext(new String[]{"linea", "mensaje"});
+                    reportes.put(id, Instant.now());
+                } catch (IOException e) {
+                    archivoFallido = true;
+                    logger.warn("No se pudo crear el reporte de errores {}: {}", id, e.getMessage());
+                }
+            }
+            if (archivo != null) {
+                archivo.writeNext(new String[]{linea, mensaje});
+            }
+        }
+
+        public synchronized int getExitosos() { return exitosos; }
+        public synchronized int getErrores() { return errores; }
+
+        /** Primeros max-errors mensajes, más una línea con los que solo están en el archivo. */
+        public synchronized List<String> getMensajes() {
+            List<String> copia = new ArrayList<>(mensajes);
+            if (omitidos > 0) {
+                copia.add(String.format("... y %d mensajes más en el reporte de errores.", omitidos));
+            }
+            return copia;
+        }
+
+        /** ID del reporte completo; null si no hubo mensajes. */
+        public synchronized String getReporteId() {
+            return archivo != null ? id : null;
+        }
+
+        /**
+         * Campos comunes de la respuesta de importación (success, totalRecords, successCount,
+         * errorCount, errors y, si hubo mensajes, errorReportId/errorReportUrl).
+         */
+        public synchronized Map<String, Object> resumen() {
+            Map<String, Object> result = new HashMap<>();
+            result.put("success", errores == 0);
+            result.put("totalRecords", exitosos + errores);
+            result.put("successCount", exitosos);
+            result.put("errorCount", errores);
+            result.put("errors", getMensajes());
+            if (archivo != null) {
+                result.put("errorReportId", id);
+                result.put("errorReportUrl", "/api/importaciones/reportes/" + id);
+            }
+            return result;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            notificar();
+            if (archivo != null) {
+                archivo.close();
+            }
+        }
+    }
+}
@@ -1,9 +1,9 @@
 package com.cdc.fin.presupuesto.service;
 
 import com.cdc.fin.presupuesto.model.Departamento;
+import com.cdc.fin.presupuesto.repository.CatalogImportSession;
 import com.cdc.fin.presupuesto.repository.DepartamentoRepository;
-import com.opencsv.CSVReader;
-import com.opencsv.CSVReaderBuilder;
+import com.cdc.fin.presupuesto.util.RecordReader;
 import com.opencsv.exceptions.CsvException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,12 +12,9 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.UUID;
 
 @Service
@@ -27,61 +24,14 @@ public class DepartamentoService {
     @Autowired
     private DepartamentoRepository departamentoRepository;
 
-    // Bulk insert departamentos using DynamoDB batchWrite
-    @Autowired(required = false)
-    private software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient dynamoDbEnhancedClient;
-
-    private software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable<Departamento> departamentoTable;
+    @Autowired
+    private ReferenceDataCache referenceDataCache;
 
-    @Autowired(required = false)
-    public void setDepartamentoTable(@org.springframework.beans.factory.annotation.Value("${aws.dynamodb.table.departamentos:fin-dynamodb-${ENVIRONMENT:qa}-presupuesto-departamentos}") String departamentoTableName) {
-        if (dynamoDbEnhancedClient != null) {
-            // El nombre debe ser exactamente el de la tabla DynamoDB
-            this.departamentoTable = dynamoDbEnhancedClient.table(departamentoTableName, software.amazon.awssdk.enhanced.dynamodb.TableSchema.fromBean(Departamento.class));
-        }
-    }
+    @Autowired
+    private ImportMetrics importMetrics;
 
-    private void batchInsertDepartamentos(List<Departamento> departamentos) {
-        logger.info("Intentando guardar {} departamentos en DynamoDB...", departamentos.size());
-        if (dynamoDbEnhancedClient == null) {
-            logger.warn("DynamoDbEnhancedClient no está configurado. Usando saveAll en repositorio.");
-            departamentoRepository.saveAll(departamentos);
-            return;
-        }
-        if (departamentoTable == null) {
-            logger.warn("departamentoTable no está configurada. Usando saveAll en repositorio.");
-            departamentoRepository.saveAll(departamentos);
-            return;
-        }
-        int batchSize = 25;
-        for (int i = 0; i < departamentos.size(); i += batchSize) {
-            List<Departamento> batch = departamentos.subList(i, Math.min(i + batchSize, departamentos.size()));
-            // Asigna el campo clave si falta (ejemplo: id)
-            for (Departamento departamento : batch) {
-                if (departamento.getId() == null || departamento.getId().isEmpty()) {
-                    departamento.setId(UUID.randomUUID().toString());
-                }
-                // Si tu tabla usa otra clave, asígnala aquí
-            }
-            software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch.Builder<Departamento> writeBatchBuilder =
-                software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch.builder(Departamento.class)
-                    .mappedTableResource(departamentoTable);
-            for (Departamento departamento : batch) {
-                writeBatchBuilder.addPutItem(departamento);
-            }
-            software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest.Builder batchWriteBuilder =
-                software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest.builder();
-            batchWriteBuilder.addWriteBatch(writeBatchBuilder.build());
-            try {
-                dynamoDbEnhancedClient.batchWriteItem(batchWriteBuilder.build());
-                logger.info("Batch insert exitoso para {} departamentos.", batch.size());
-            } catch (Exception e) {
-                logger.error("Error al guardar batch en DynamoDB: {}", e.getMessage(), e);
-                // Lanza excepción para que el frontend reciba el error
-                throw new RuntimeException("Error al guardar departamentos en DynamoDB: " + e.getMessage(), e);
-            }
-        }
-    }
+    @Autowired
+    private CsvImportPipeline csvImportPipeline;
 
     public List<Departamento> getAllDepartamentos() {
         return departamentoRepository.findAll();
@@ -92,23 +42,49 @@ public class DepartamentoService {
     }
 
     public Departamento saveDepartamento(Departamento departamento) {
-        return departamentoRepository.save(departamento);
+        Departamento saved = departamentoRepository.save(departamento);
+        referenceDataCache.upsertDepartamento(saved);
+        return saved;
     }
 
     public void deleteDepartamento(String id) {
         departamentoRepository.deleteById(id);
+        referenceDataCache.removeDepartamento(id);
     }
 
     public Map<String, Object> importDepartamentosFromCSV(MultipartFile file, boolean replaceAll) throws Exception {
-        List<String> errors = new ArrayList<>();
-        int successCount = 0;
-        int errorCount = 0;
-        List<Departamento> departamentos = new ArrayList<>();
+        return importDepartamentosFromCSV(file, replaceAll, false);
+    }
 
-        try (CSVReader csvReader = new CSVReaderBuilder(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8)).build()) {
+    /**
+     * @param delta si es true el archivo es el catálogo completo y solo se escriben altas, cambios y bajas
+     */
+    public Map<String, Object> importDepartamentosFromCSV(MultipartFile file, boolean replaceAll, boolean delta) throws Exception {
+        try (RecordReader lector = RecordReader.leer(file.getInputStream(), file.getOriginalFilename())) {
+            return importDepartamentosFromCSV(lector, replaceAll, delta, null);
+        }
+    }
+
+    /**
+     * Importación desde un archivo en disco (el guardado por una importación asíncrona), CSV o .xlsx según su nombre.
+     * @param progreso avance para consultas mientras corre; null si no se necesita
+     */
+    public Map<String, Object> importDepartamentosFromCSV(Path archivo, boolean replaceAll, boolean delta,
+                                                          CsvImportPipeline.Progreso progreso) throws Exception {
+        try (RecordReader lector = RecordReader.abrir(archivo)) {
+            return importDepartamentosFromCSV(lector, replaceAll, delta, progreso);
+        }
+    }
+
+    private Map<String, Object> importDepartamentosFromCSV(RecordReader lector, boolean replaceAll, boolean delta,
+                                                           CsvImportPipeline.Progreso progreso) throws Exception {
+        long inicio = System.nanoTime();
+        Map<String, Object> result;
+
+        try (CsvImportPipeline.Reporte reporte = csvImportPipeline.nuevoReporte(progreso)) {
             logger.info("Iniciando importación de departamentos desde CSV...");
-            String[] header = csvReader.readNext();
-            if (header == null) throw new Exception("El archivo CSV está vacío");
+            String[] header = lector.leerRegistro();
+            if (header == null) throw new Exception("El archivo está vacío");
 
             // Permite variantes de nombres de columna
             int idxNombre = -1, idxSub = -1, idxRrhh = -1, idxCeCo = -1, idxPresupuesto = -1;
@@ -157,68 +133,61 @@ public class DepartamentoService {
                 }
             }
             if (idxNombre == -1 || idxSub == -1 || idxRrhh == -1 || idxCeCo == -1 || idxPresupuesto == -1) {
-                throw new Exception("El archivo CSV debe contener las columnas: Departamento, Sub-Departamento, RRHH, CeCo, Presupuesto Default");
+                throw new Exception("El archivo debe contener las columnas: Departamento, Sub-Departamento, RRHH, CeCo, Presupuesto Default");
             }
 
-            String[] record;
-            int rowNumber = 2;
-            while ((record = csvReader.readNext()) != null) {
-                try {
-                    Departamento departamento = new Departamento();
-                    departamento.setNombreDepartamento(record[idxNombre].trim());
-                    departamento.setSubDepartamento(record[idxSub].trim());
-                    departamento.setRrhh(record[idxRrhh].trim());
-                    departamento.setCeco(record[idxCeCo].trim());
-                    departamento.setPresupuestoDefault(record[idxPresupuesto].trim());
-                    if (departamento.getNombreDepartamento().isEmpty()) {
-                        errors.add("Línea " + rowNumber + ": El campo 'Departamento' es requerido");
-                        errorCount++;
-                    } else {
-                        departamentos.add(departamento);
-                        successCount++;
-                    }
-                } catch (Exception e) {
-                    errors.add("Línea " + rowNumber + ": " + e.getMessage());
-                    errorCount++;
+            int[] indices = {idxNombre, idxSub, idxRrhh, idxCeCo, idxPresupuesto};
+            // Solo se decodifican las columnas que se usan
+            lector.seleccionar(indices);
+            try (CatalogImportSession<Departamento> sesion = departamentoRepository.iniciarImportacion(CatalogImportSession.Modo.de(replaceAll, delta))) {
+                csvImportPipeline.importar(reporte, lector::leerRegistro, 2, record -> mapearDepartamento(record, indices), null,
+                    sesion::escribir, departamento -> "Departamento " + departamento.getId());
+                lector.getAdvertencias().forEach(reporte::advertencia);
+                CatalogImportSession.Cierre cierre = sesion.terminar();
+                for (String id : cierre.getNoEliminados()) {
+                    reporte.advertencia("Departamento " + id + ": no se pudo eliminar");
+                }
+                cierre.getAdvertencias().forEach(reporte::advertencia);
+                result = reporte.resumen();
+                if (cierre.getDiff() != null) {
+                    result.put("diff", cierre.getDiff());
                 }
-                rowNumber++;
-            }
-            if (replaceAll) {
-                logger.info("Eliminando todos los departamentos existentes antes de importar.");
-                departamentoRepository.deleteAll();
             }
         } catch (Exception e) {
             logger.error("Error leyendo el archivo CSV: {}", e.getMessage(), e);
-            errors.add("Error leyendo el archivo CSV: " + e.getMessage());
             // Lanza excepción para que el frontend reciba el error
             throw new RuntimeException("Error leyendo el archivo CSV: " + e.getMessage(), e);
         }
 
-        // Guarda los departamentos importados
-        if (!departamentos.isEmpty()) {
-            logger.info("Guardando {} departamentos importados...", departamentos.size());
-            try {
-                batchInsertDepartamentos(departamentos);
-            } catch (Exception e) {
-                logger.error("Error en batchInsertDepartamentos: {}", e.getMessage(), e);
-                errors.add("Error al guardar departamentos en DynamoDB: " + e.getMessage());
-                // Lanza excepción para que el frontend reciba el error
-                throw new RuntimeException("Error al guardar departamentos en DynamoDB: " + e.getMessage(), e);
-            }
-        } else {
-            logger.warn("No hay departamentos válidos para guardar.");
-        }
+        // Publica la nueva versión del catálogo para las búsquedas por CeCo
+        referenceDataCache.refreshAfterWrite();
 
-        Map<String, Object> result = new HashMap<>();
-        result.put("success", errorCount == 0);
-        result.put("totalRecords", successCount + errorCount);
-        result.put("successCount", successCount);
-        result.put("errorCount", errorCount);
-        result.put("errors", errors);
+        int successCount = (Integer) result.get("successCount");
+        int errorCount = (Integer) result.get("errorCount");
         result.put("message", errorCount > 0
             ? String.format("Importación completada con advertencias: %d exitosos, %d errores/omitidos.", successCount, errorCount)
             : String.format("Importación completada exitosamente: %d registros importados.", successCount));
         logger.info("Importación de CSV de departamentos completada. Éxito: {}, Errores/Omitidos: {}", successCount, errorCount);
+        importMetrics.registrar("departamentos", inicio, successCount, errorCount);
         return result;
     }
-}
\ No newline at end of file
+
+    /**
+     * Convierte una fila del CSV con los índices de columna detectados en el encabezado
+     * (se ejecuta en paralelo por bloques).
+     */
+    private Departamento mapearDepartamento(String[] record, int[] indices) {
+        Departamento departamento = new Departamento();
+        // El CSV no trae ID: se asigna uno nuevo (en modo delta se reemplaza por el existente)
+        departamento.setId(UUID.randomUUID().toString());
+        departamento.setNombreDepartamento(record[indices[0]].trim());
+        departamento.setSubDepartamento(record[indices[1]].trim());
+        departamento.setRrhh(record[indices[2]].trim());
+        departamento.setCeco(record[indices[3]].trim());
+        departamento.setPresupuestoDefault(record[indices[4]].trim());
+        if (departamento.getNombreDepartamento().isEmpty()) {
+            throw new IllegalArgumentException("El campo 'Departamento' es requerido");
+        }
+        return departamento;
+    }
+}
@@ -0,0 +1,102 @@
+package com.cdc.fin.presupuesto.service;
+
+import com.cdc.fin.presupuesto.model.EmailOutbox;
+import com.cdc.fin.presupuesto.repository.EmailOutboxRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Agrupa los avisos de nueva solicitud al aprobador (EN_RESUMEN en la outbox) en un solo correo por
+ * destinatario. Un grupo sale cuando junta max-items avisos o cuando su aviso más antiguo cumple
+ * interval-minutes; el resumen se encola como PENDIENTE y lo envía EmailOutboxDispatcher. Mientras no
+ * exista ruteo de aprobadores todos los avisos van al remitente por defecto, y el resumen los separa
+ * por departamento.
+ */
+@Service
+public class EmailDigestService {
+    private static final Logger logger = LoggerFactory.getLogger(EmailDigestService.class);
+
+    // Una transacción admite 100 operaciones: el resumen más 99 avisos
+    private static final int MAX_AVISOS_POR_TRANSACCION = 99;
+
+    private final EmailOutboxRepository emailOutboxRepository;
+    private final EmailService emailService;
+    private final long intervaloMs;
+    private final int maxAvisos;
+    private final long retencionSegundos;
+
+    public EmailDigestService(EmailOutboxRepository emailOutboxRepository,
+                              EmailService emailService,
+                              @Value("${presupuesto.email.digest.interval-minutes:15}") long intervaloMinutos,
+                              @Value("${presupuesto.email.digest.max-items:50}") int maxAvisos,
+                              @Value("${presupuesto.email.outbox.retention-days:7}") int retencionDias) {
+        this.emailOutboxRepository = emailOutboxRepository;
+        this.emailService = emailService;
+        this.intervaloMs = Duration.ofMinutes(intervaloMinutos).toMillis();
+        this.maxAvisos = Math.max(1, Math.min(maxAvisos, MAX_AVISOS_POR_TRANSACCION));
+        this.retencionSegundos = Duration.ofDays(retencionDias).toSeconds();
+    }
+
+    /**
+     * Revisa los avisos acumulados. Corre aunque el resumen esté deshabilitado para no dejar
+     * atorados los avisos que se acumularon antes de deshabilitarlo.
+     */
+    @Scheduled(fixedDelayString = "${presupuesto.email.digest.check-ms:60000}",
+               initialDelayString = "${presupuesto.email.digest.check-ms:60000}")
+    public void agruparPendientes() {
+        try {
+            int resumenes = agrupar(System.currentTimeMillis());
+            if (resumenes > 0) {
+                logger.info("Resúmenes de nuevas solicitudes encolados: {}", resumenes);
+            }
+        } catch (Exception e) {
+            logger.error("Error agrupando avisos de nuevas solicitudes: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return número de resúmenes encolados
+     */
+    int agrupar(long ahora) {
+        // El índice los devuelve del más antiguo al más reciente; el orden se conserva por destinatario
+        Map<String, List<EmailOutbox>> porDestinatario = new LinkedHashMap<>();
+        for (EmailOutbox aviso : emailOutboxRepository.findEnResumen()) {
+            String destinatario = aviso.getDestinatario() != null ? aviso.getDestinatario() : "";
+            porDestinatario.computeIfAbsent(destinatario, d -> new ArrayList<>()).add(aviso);
+        }
+        int resumenes = 0;
+        for (Map.Entry<String, List<EmailOutbox>> grupo : porDestinatario.entrySet()) {
+            List<EmailOutbox> avisos = grupo.getValue();
+            int desde = 0;
+            while (desde < avisos.size()) {
+                int hasta = Math.min(desde + maxAvisos, avisos.size());
+                boolean lleno = hasta - desde == maxAvisos;
+                boolean vencido = avisos.get(desde).getProximoIntento() <= ahora - intervaloMs;
+                if (!lleno && !vencido) {
+                    break;
+                }
+                List<EmailOutbox> lote = avisos.subList(desde, hasta);
+                EmailOutbox resumen = emailService.correoResumenAprobador(grupo.getKey(), lote);
+                if (emailOutboxRepository.agrupar(resumen, lote, ahora / 1000 + retencionSegundos)) {
+                    emailService.contarOutbox("resumen");
+                    resumenes++;
+                } else {
+                    // Otra instancia agrupó alguno de estos avisos; en la siguiente revisión se releen
+                    logger.info("Avisos para {} ya agrupados por otra instancia; se reintenta en la siguiente revisión", grupo.getKey());
+                    break;
+                }
+                desde = hasta;
+            }
+        }
+        return resumenes;
+    }
+}
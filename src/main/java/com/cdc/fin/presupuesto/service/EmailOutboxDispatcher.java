@@ -0,0 +1,239 @@
+package com.cdc.fin.presupuesto.service;
+
+import com.cdc.fin.presupuesto.model.EmailOutbox;
+import com.cdc.fin.presupuesto.repository.EmailOutboxRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.ses.model.MessageRejectedException;
+import software.amazon.awssdk.services.ses.model.SesException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Drena la tabla outbox de correos en segundo plano. Cada mensaje pendiente se reserva con una
+ * escritura condicional (varias instancias pueden drenar a la vez sin duplicar envíos), se envía por
+ * SES respetando un token bucket ajustado a la cuota de envío y se marca enviado. Los errores
+ * transitorios se reintentan con backoff exponencial; tras max-intentos, o si SES rechaza el mensaje,
+ * queda FALLIDO en la tabla para revisarlo: nunca se descarta.
+ */
+@Service
+public class EmailOutboxDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(EmailOutboxDispatcher.class);
+
+    private final EmailOutboxRepository emailOutboxRepository;
+    private final EmailService emailService;
+    private final TaskExecutor emailExecutor;
+    private final TokenBucket tokens;
+    private final int batchSize;
+    private final int maxIntentos;
+    private final long backoffBaseMs;
+    private final long backoffMaxMs;
+    private final long reservaMs;
+    private final long retencionSegundos;
+    // Un solo drenado a la vez por instancia
+    private final AtomicBoolean drenando = new AtomicBoolean();
+
+    public EmailOutboxDispatcher(EmailOutboxRepository emailOutboxRepository,
+                                 EmailService emailService,
+                                 @Qualifier("emailExecutor") TaskExecutor emailExecutor,
+                                 @Value("${presupuesto.email.outbox.max-per-second:14}") double maxPorSegundo,
+                                 @Value("${presupuesto.email.outbox.batch-size:50}") int batchSize,
+                                 @Value("${presupuesto.email.outbox.max-intentos:10}") int maxIntentos,
+                                 @Value("${presupuesto.email.outbox.backoff-base-ms:30000}") long backoffBaseMs,
+                                 @Value("${presupuesto.email.outbox.backoff-max-ms:3600000}") long backoffMaxMs,
+                                 @Value("${presupuesto.email.outbox.reserva-ms:120000}") long reservaMs,
+                                 @Value("${presupuesto.email.outbox.retention-days:7}") int retencionDias) {
+        this.emailOutboxRepository = emailOutboxRepository;
+        this.emailService = emailService;
+        this.emailExecutor = emailExecutor;
+        this.tokens = new TokenBucket(maxPorSegundo);
+        this.batchSize = batchSize;
+        this.maxIntentos = maxIntentos;
+        this.backoffBaseMs = backoffBaseMs;
+        this.backoffMaxMs = backoffMaxMs;
+        this.reservaMs = reservaMs;
+        this.retencionSegundos = Duration.ofDays(retencionDias).toSeconds();
+    }
+
+    /**
+     * Revisa la outbox periódicamente; el drenado corre en el pool de correos para no ocupar el
+     * hilo del scheduler que comparten los demás procesos periódicos.
+     */
+    @Scheduled(fixedDelayString = "${presupuesto.email.outbox.poll-ms:2000}",
+               initialDelayString = "${presupuesto.email.outbox.poll-ms:2000}")
+    public void programar() {
+        if (!drenando.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            emailExecutor.execute(() -> {
+                try {
+                    drenar();
+                } catch (Exception e) {
+                    logger.error("Error drenando la outbox de correos: {}", e.getMessage(), e);
+                } finally {
+                    drenando.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            drenando.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Envía lotes de pendientes hasta vaciar los que ya vencieron. Un throttling de SES corta el
+     * drenado: el resto espera a la siguiente revisión.
+     */
+    void drenar() {
+        int enviados = 0;
+        while (true) {
+            List<EmailOutbox> pendientes = emailOutboxRepository.findPendientes(System.currentTimeMillis(), batchSize);
+            if (pendientes.isEmpty()) {
+                break;
+            }
+            int tomados = 0;
+            for (EmailOutbox mensaje : pendientes) {
+                tokens.adquirir();
+                if (!emailOutboxRepository.reservar(mensaje, System.currentTimeMillis() + reservaMs)) {
+                    tokens.devolver();
+                    continue;
+                }
+                tomados++;
+                if (!despachar(mensaje)) {
+                    if (enviados > 0) {
+                        logger.info("Outbox de correos: {} enviados antes del throttling", enviados);
+                    }
+                    return;
+                }
+                enviados++;
+            }
+            if (tomados == 0) {
+                // Todo el lote lo tomó otra instancia
+                break;
+            }
+        }
+        if (enviados > 0) {
+            logger.info("Outbox de correos: {} enviados", enviados);
+        }
+    }
+
+    /**
+     * @return false si SES respondió con throttling (hay que dejar de enviar por ahora)
+     */
+    private boolean despachar(EmailOutbox mensaje) {
+        int intentos = (mensaje.getIntentos() != null ? mensaje.getIntentos() : 0) + 1;
+        try {
+            String messageId = emailService.enviar(mensaje);
+            emailOutboxRepository.marcarEnviado(mensaje.getMessageKey(), intentos, messageId,
+                System.currentTimeMillis() / 1000 + retencionSegundos);
+            emailService.contarOutbox("enviado");
+            return true;
+        } catch (MessageRejectedException e) {
+            // Rechazo definitivo (destinatario o contenido inválido): reintentar no sirve
+            fallar(mensaje, intentos, e);
+            return true;
+        } catch (SesException e) {
+            boolean throttling = e.isThrottlingException() || e.statusCode() == 429
+                || (e.awsErrorDetails() != null && "Throttling".equals(e.awsErrorDetails().errorCode()));
+            if (throttling) {
+                // La cuota se agotó: no cuenta como intento del mensaje y se frena el bucket
+                tokens.pausar(backoffBaseMs);
+                emailOutboxRepository.reprogramar(mensaje.getMessageKey(), intentos - 1,
+                    System.currentTimeMillis() + backoffBaseMs, "Throttling: " + e.getMessage());
+                emailService.contarOutbox("throttling");
+                return false;
+            }
+            reintentarOFallar(mensaje, intentos, e);
+            return true;
+        } catch (Exception e) {
+            reintentarOFallar(mensaje, intentos, e);
+            return true;
+        }
+    }
+
+    private void reintentarOFallar(EmailOutbox mensaje, int intentos, Exception e) {
+        if (intentos >= maxIntentos) {
+            fallar(mensaje, intentos, e);
+            return;
+        }
+        long espera = backoff(intentos);
+        logger.warn("Error enviando correo {} (intento {}/{}), se reintenta en {} ms: {}",
+            mensaje.getMessageKey(), intentos, maxIntentos, espera, e.getMessage());
+        emailOutboxRepository.reprogramar(mensaje.getMessageKey(), intentos, System.currentTimeMillis() + espera, e.getMessage());
+        emailService.contarOutbox("reintento");
+    }
+
+    private void fallar(EmailOutbox mensaje, int intentos, Exception e) {
+        logger.error("Correo {} a {} marcado FALLIDO tras {} intentos: {}",
+            mensaje.getMessageKey(), mensaje.getDestinatario(), intentos, e.getMessage(), e);
+        emailOutboxRepository.marcarFallido(mensaje.getMessageKey(), intentos, e.getMessage());
+        emailService.contarOutbox("fallido");
+    }
+
+    // Exponencial con jitter (±20%) para que los reintentos de varias instancias no coincidan
+    private long backoff(int intentos) {
+        long espera = Math.min(backoffBaseMs << Math.min(intentos - 1, 20), backoffMaxMs);
+        return (long) (espera * ThreadLocalRandom.current().nextDouble(0.8, 1.2));
+    }
+
+    /**
+     * Token bucket con capacidad de un segundo de envíos: admite ráfagas hasta la cuota por segundo
+     * de SES y después reparte los envíos a esa tasa. Solo lo usa el hilo que drena.
+     */
+    private static final class TokenBucket {
+        private final double tasa;
+        private double disponibles;
+        private long ultimaRecarga = System.nanoTime();
+
+        TokenBucket(double tasa) {
+            this.tasa = tasa > 0 ? tasa : Double.POSITIVE_INFINITY;
+            this.disponibles = Double.isInfinite(this.tasa) ? 0 : this.tasa;
+        }
+
+        void adquirir() {
+            if (Double.isInfinite(tasa)) return;
+            recargar();
+            if (disponibles < 1) {
+                dormir((long) Math.ceil((1 - disponibles) / tasa * 1000));
+                recargar();
+            }
+            disponibles -= 1;
+        }
+
+        void devolver() {
+            if (Double.isInfinite(tasa)) return;
+            disponibles = Math.min(tasa, disponibles + 1);
+        }
+
+        // Vacía el bucket y lo deja en deuda por "ms": el siguiente envío espera al menos ese tiempo
+        void pausar(long ms) {
+            if (Double.isInfinite(tasa)) return;
+            recargar();
+            disponibles = -(ms / 1000.0) * tasa;
+        }
+
+        private void recargar() {
+            long ahora = System.nanoTime();
+            disponibles = Math.min(tasa, disponibles + (ahora - ultimaRecarga) / 1e9 * tasa);
+            ultimaRecarga = ahora;
+        }
+
+        private static void dormir(long ms) {
+            try {
+                Thread.sleep(ms);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrumpido esperando cupo de envío de correos", e);
+            }
+        }
+    }
+}
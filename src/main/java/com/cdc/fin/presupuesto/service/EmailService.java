@@ -7,16 +7,25 @@ import software.amazon.awssdk.services.ses.SesClient;
 import software.amazon.awssdk.services.ses.model.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 
+import com.cdc.fin.presupuesto.model.EmailOutbox;
 import com.cdc.fin.presupuesto.model.SolicitudPresupuesto;
+import com.cdc.fin.presupuesto.repository.EmailOutboxRepository;
 
 import java.time.format.DateTimeFormatter;
-import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 @Service
 public class EmailService {
 
     private final SesClient sesClient;
+    private final MeterRegistry meterRegistry;
+    private final EmailOutboxRepository emailOutboxRepository;
 
     @Value("${email.charset}")
     private String charsetUtf8;
@@ -27,11 +36,35 @@ public class EmailService {
     @Value("${email.cc}")
     private String defaultCc;
 
+    // Los avisos de nueva solicitud al aprobador esperan a salir en un resumen (EmailDigestService)
+    @Value("${presupuesto.email.digest.enabled:true}")
+    private boolean resumenAprobador;
+
     private static final Logger logger = LoggerFactory.getLogger(EmailService.class);
 
     @Autowired
-    public EmailService(SesClient sesClient) {
+    public EmailService(SesClient sesClient, MeterRegistry meterRegistry, EmailOutboxRepository emailOutboxRepository) {
         this.sesClient = sesClient;
+        this.meterRegistry = meterRegistry;
+        this.emailOutboxRepository = emailOutboxRepository;
+    }
+
+    // Cuenta envíos por tipo (simple/html) y resultado (ok/rechazado_ses/error)
+    private void contarEnvio(String tipo, String resultado) {
+        Counter.builder("presupuesto.email.envios")
+            .description("Correos enviados por SES")
+            .tags("tipo", tipo, "resultado", resultado)
+            .register(meterRegistry)
+            .increment();
+    }
+
+    // Cuenta movimientos de la outbox (encolado/duplicado/enviado/reintento/fallido)
+    void contarOutbox(String resultado) {
+        Counter.builder("presupuesto.email.outbox")
+            .description("Correos encolados y despachados por la outbox")
+            .tags("resultado", resultado)
+            .register(meterRegistry)
+            .increment();
     }
 
     public String sendSimpleEmail(String from, String to, String subject, String body) throws SesException {
@@ -63,13 +96,16 @@ public class EmailService {
             logger.debug("Request SES: {}", request);
             SendEmailResponse response = sesClient.sendEmail(request);
             logger.info("Correo enviado correctamente. messageId={}", response.messageId());
+            contarEnvio("simple", "ok");
             logger.debug("SES Response: {}", response);
             return response.messageId();
         } catch (SesException e) {
             logger.error("SES Exception al enviar correo: {}", e.awsErrorDetails() != null ? e.awsErrorDetails().errorMessage() : e.getMessage(), e);
+            contarEnvio("simple", "rechazado_ses");
             throw e;
         } catch (Exception e) {
             logger.error("Excepción inesperada al enviar correo: {}", e.getMessage(), e);
+            contarEnvio("simple", "error");
             throw e;
         }
     }
@@ -100,13 +136,16 @@ public class EmailService {
             logger.debug("Request SES: {}", sendEmailRequest);
             SendEmailResponse response = sesClient.sendEmail(sendEmailRequest);
             logger.info("Correo HTML enviado correctamente. messageId={}", response.messageId());
+            contarEnvio("html", "ok");
             logger.debug("SES Response: {}", response);
             return response.messageId();
         } catch (SesException e) {
             logger.error("SES Exception al enviar correo HTML: {}", e.awsErrorDetails() != null ? e.awsErrorDetails().errorMessage() : e.getMessage(), e);
+            contarEnvio("html", "rechazado_ses");
             throw e;
         } catch (Exception e) {
             logger.error("Excepción inesperada al enviar correo HTML: {}", e.getMessage(), e);
+            contarEnvio("html", "error");
             throw e;
         }
     }
@@ -238,50 +277,176 @@ public class EmailService {
                 "Atentamente,\nSistema de Presupuestos";
     }
 
-    // Métodos de alto nivel para envío de correos de negocio
+    // 5C. Resumen de nuevas solicitudes (para el aprobador): un renglón por solicitud, agrupadas por departamento
+    public static String detalleNuevaSolicitud(SolicitudPresupuesto s) {
+        String nombreSolicitante = s.getSolicitante() != null ? s.getSolicitante() : "";
+        String nombreCuenta = s.getCategoriaGasto() != null ? s.getCategoriaGasto() : "";
+        String numeroCuenta = s.getCuentaGastos() != null ? s.getCuentaGastos() : "";
+        String periodo = s.getPeriodoPresupuesto() != null ? s.getPeriodoPresupuesto() : "";
+        String fechaSolicitud = s.getFecha() != null ? s.getFecha() : "";
+        return nombreSolicitante + " | Cuenta de gasto: " + nombreCuenta + " (" + numeroCuenta + ")" +
+                " | Periodo: " + periodo + " | Fecha de solicitud: " + fechaSolicitud;
+    }
+
+    public static String cuerpoResumenAprobador(List<EmailOutbox> avisos, String fechaCambio) {
+        Map<String, List<String>> porDepartamento = new TreeMap<>();
+        for (EmailOutbox aviso : avisos) {
+            String departamento = aviso.getDepartamento() != null ? aviso.getDepartamento() : "";
+            porDepartamento.computeIfAbsent(departamento, d -> new ArrayList<>()).add(aviso.getDetalle());
+        }
+        StringBuilder cuerpo = new StringBuilder("Hola ,\n")
+                .append("Al ").append(fechaCambio).append(" hay ").append(avisos.size())
+                .append(" nuevas solicitudes de presupuesto que requieren tu revisión:\n");
+        for (Map.Entry<String, List<String>> departamento : porDepartamento.entrySet()) {
+            cuerpo.append("Departamento: ").append(departamento.getKey())
+                    .append(" - ").append(departamento.getValue().size()).append(" solicitud(es)\n");
+            for (String detalle : departamento.getValue()) {
+                cuerpo.append("\t• ").append(detalle).append("\n");
+            }
+        }
+        return cuerpo.append("Por favor ingresa al sistema para aprobar o rechazar estas solicitudes.\n")
+                .append("Atentamente,\nSistema de Presupuestos")
+                .toString();
+    }
+
+    // Correos de negocio. Se construyen como mensajes de la outbox (tabla DynamoDB) para poder
+    // escribirlos en la misma transacción que el cambio que los origina; los send* los encolan
+    // directamente. El envío por SES lo hace EmailOutboxDispatcher fuera del hilo de la petición.
 
-    public void sendSolicitudProcesadaEmail(String to, SolicitudPresupuesto s, String nombreProcesador, String puestoProcesador) {
+    public EmailOutbox correoSolicitudProcesada(String to, SolicitudPresupuesto s, String nombreProcesador, String puestoProcesador) {
         String asunto = "Solicitud de presupuesto procesada";
         String cuerpo = cuerpoSolicitudProcesada(s, fechaCambioActual(), nombreProcesador, puestoProcesador);
-        sendSafe(null, to, asunto, cuerpo);
+        return mensaje("PROCESADA", s, to, asunto, cuerpo);
     }
 
-    public void sendSolicitudProcesadaDirectaEmail(String to, SolicitudPresupuesto s, String nombreProcesador, String puestoProcesador) {
+    public EmailOutbox correoSolicitudProcesadaDirecta(String to, SolicitudPresupuesto s, String nombreProcesador, String puestoProcesador) {
         String asunto = "Solicitud de presupuesto procesada directamente";
         String cuerpo = cuerpoSolicitudProcesadaDirecta(s, fechaCambioActual(), nombreProcesador, puestoProcesador);
-        sendSafe(null, to, asunto, cuerpo);
+        return mensaje("PROCESADA_DIRECTA", s, to, asunto, cuerpo);
     }
 
-    public void sendSolicitudAprobadaEmail(String to, SolicitudPresupuesto s, String nombreAprobador, String puestoAprobador) {
+    public EmailOutbox correoSolicitudAprobada(String to, SolicitudPresupuesto s, String nombreAprobador, String puestoAprobador) {
         String asunto = "Solicitud de presupuesto aprobada";
         String cuerpo = cuerpoSolicitudAprobada(s, fechaCambioActual(), nombreAprobador, puestoAprobador);
-        sendSafe(null, to, asunto, cuerpo);
+        return mensaje("APROBADA", s, to, asunto, cuerpo);
     }
 
-    public void sendSolicitudRechazadaEmail(String to, SolicitudPresupuesto s, String motivoRechazo, String nombreAprobador, String puestoAprobador) {
+    public EmailOutbox correoSolicitudRechazada(String to, SolicitudPresupuesto s, String motivoRechazo, String nombreAprobador, String puestoAprobador) {
         String asunto = "Solicitud de presupuesto rechazada";
         String cuerpo = cuerpoSolicitudRechazada(s, fechaCambioActual(), motivoRechazo, nombreAprobador, puestoAprobador);
-        sendSafe(null, to, asunto, cuerpo);
+        return mensaje("RECHAZADA", s, to, asunto, cuerpo);
     }
 
-    public void sendNuevaSolicitudAprobadorEmail(SolicitudPresupuesto s) {
+    /**
+     * Con el resumen habilitado el aviso queda EN_RESUMEN: no se envía solo, sino en el siguiente
+     * resumen del aprobador. Conserva el cuerpo individual para cuando el resumen tenga un solo aviso.
+     */
+    public EmailOutbox correoNuevaSolicitudAprobador(SolicitudPresupuesto s) {
         String asunto = "Nueva solicitud de presupuesto recibida";
-        String cuerpo = cuerpoNuevaSolicitudAprobador(s,  fechaCambioActual());
-        sendSafe(null, null, asunto, cuerpo);
+        String cuerpo = cuerpoNuevaSolicitudAprobador(s, fechaCambioActual());
+        EmailOutbox correo = mensaje("NUEVA_APROBADOR", s, null, asunto, cuerpo);
+        if (resumenAprobador) {
+            String departamento = s.getDepartamento() != null ? s.getDepartamento() : "";
+            String centroCostos = s.getCentroCostos() != null ? s.getCentroCostos() : "";
+            correo.setEstado(EmailOutbox.EN_RESUMEN);
+            correo.setDepartamento(departamento + " (" + centroCostos + ")");
+            correo.setDetalle(detalleNuevaSolicitud(s));
+        }
+        return correo;
     }
 
-    public void sendNuevaSolicitudSolicitanteEmail(String to, SolicitudPresupuesto s) {
+    /**
+     * Resumen de varios avisos EN_RESUMEN del mismo destinatario. La llave sale del primer aviso y
+     * del número de avisos, así reintentar el mismo agrupamiento no genera otro correo.
+     */
+    public EmailOutbox correoResumenAprobador(String destinatario, List<EmailOutbox> avisos) {
+        String messageKey = "RESUMEN_APROBADOR#" + avisos.get(0).getMessageKey() + "#" + avisos.size();
+        if (avisos.size() == 1) {
+            EmailOutbox aviso = avisos.get(0);
+            return new EmailOutbox(messageKey, "RESUMEN_APROBADOR", destinatario, aviso.getAsunto(), aviso.getCuerpo());
+        }
+        String asunto = "Nuevas solicitudes de presupuesto recibidas (" + avisos.size() + ")";
+        String cuerpo = cuerpoResumenAprobador(avisos, fechaCambioActual());
+        return new EmailOutbox(messageKey, "RESUMEN_APROBADOR", destinatario, asunto, cuerpo);
+    }
+
+    public EmailOutbox correoNuevaSolicitudSolicitante(String to, SolicitudPresupuesto s) {
         String asunto = "Solicitud de presupuesto recibida";
         String cuerpo = cuerpoNuevaSolicitudSolicitante(s, fechaCambioActual());
-        sendSafe(null, to, asunto, cuerpo);
+        return mensaje("NUEVA_SOLICITANTE", s, to, asunto, cuerpo);
+    }
+
+    /**
+     * Correos de una solicitud nueva: al aprobador y, si trae correo, la confirmación al solicitante.
+     */
+    public List<EmailOutbox> correosNuevaSolicitud(SolicitudPresupuesto s) {
+        List<EmailOutbox> correos = new ArrayList<>();
+        correos.add(correoNuevaSolicitudAprobador(s));
+        if (s.getCorreo() != null && !s.getCorreo().isEmpty()) {
+            correos.add(correoNuevaSolicitudSolicitante(s.getCorreo(), s));
+        } else {
+            logger.warn("No se encola correo al solicitante porque el correo es nulo o vacío");
+        }
+        return correos;
+    }
+
+    public void sendSolicitudProcesadaEmail(String to, SolicitudPresupuesto s, String nombreProcesador, String puestoProcesador) {
+        encolar(correoSolicitudProcesada(to, s, nombreProcesador, puestoProcesador));
+    }
+
+    public void sendSolicitudProcesadaDirectaEmail(String to, SolicitudPresupuesto s, String nombreProcesador, String puestoProcesador) {
+        encolar(correoSolicitudProcesadaDirecta(to, s, nombreProcesador, puestoProcesador));
+    }
+
+    public void sendSolicitudAprobadaEmail(String to, SolicitudPresupuesto s, String nombreAprobador, String puestoAprobador) {
+        encolar(correoSolicitudAprobada(to, s, nombreAprobador, puestoAprobador));
+    }
+
+    public void sendSolicitudRechazadaEmail(String to, SolicitudPresupuesto s, String motivoRechazo, String nombreAprobador, String puestoAprobador) {
+        encolar(correoSolicitudRechazada(to, s, motivoRechazo, nombreAprobador, puestoAprobador));
+    }
+
+    public void sendNuevaSolicitudAprobadorEmail(SolicitudPresupuesto s) {
+        encolar(correoNuevaSolicitudAprobador(s));
+    }
+
+    public void sendNuevaSolicitudSolicitanteEmail(String to, SolicitudPresupuesto s) {
+        encolar(correoNuevaSolicitudSolicitante(to, s));
+    }
+
+    /**
+     * Envía por SES un mensaje de la outbox (lo llama EmailOutboxDispatcher).
+     * @return el messageId de SES
+     */
+    public String enviar(EmailOutbox mensaje) throws SesException {
+        return sendSimpleEmail(mensaje.getRemitente(), mensaje.getDestinatario(), mensaje.getAsunto(), mensaje.getCuerpo());
+    }
+
+    /**
+     * Llave de deduplicación: tipo de aviso + solicitud + versión. La versión cambia con cada
+     * transición, así un reintento de la misma petición no duplica el correo y una transición
+     * posterior sí genera el suyo.
+     */
+    private EmailOutbox mensaje(String tipo, SolicitudPresupuesto s, String to, String asunto, String cuerpo) {
+        String messageKey = tipo + "#" + s.getId() + "#" + s.getSolicitudId() + "#" + (s.getVersion() != null ? s.getVersion() : 0L);
+        String destinatario = to == null || to.isEmpty() ? defaultFrom : to;
+        return new EmailOutbox(messageKey, tipo, destinatario, asunto, cuerpo);
     }
 
-    // Utilidad interna para evitar excepción no controlada en los métodos de negocio
-    private void sendSafe(String from, String to, String subject, String body) {
+    // El error se propaga: quien llama decide si reintenta, el correo no se pierde en silencio.
+    // Los cambios de estatus no pasan por aquí, encolan en la misma transacción (correo*)
+    private void encolar(EmailOutbox correo) {
         try {
-            sendSimpleEmail(from, to, subject, body);
-        } catch (Exception e) {
-            logger.error("Error enviando correo a {}: {}", to, e.getMessage(), e);
+            if (emailOutboxRepository.encolar(correo)) {
+                contarOutbox("encolado");
+            } else {
+                logger.info("Correo {} ya estaba encolado; se omite el duplicado", correo.getMessageKey());
+                contarOutbox("duplicado");
+            }
+        } catch (RuntimeException e) {
+            logger.error("Error encolando correo {} a {}: {}", correo.getMessageKey(), correo.getDestinatario(), e.getMessage(), e);
+            contarOutbox("error");
+            throw e;
         }
     }
 
@@ -293,7 +458,9 @@ public class EmailService {
     }
 
     /**
-     * Envía la notificación de cambio de estatus de solicitud de presupuesto según transición.
+     * Correo de cambio de estatus de solicitud de presupuesto según la transición, para escribirlo en
+     * la misma transacción que el cambio. La versión de la solicitud debe ser ya la posterior a la
+     * transición (forma parte de la llave).
      * 
      * @param estatusAnterior El estatus anterior (ej: "Pendiente")
      * @param nuevoEstatus El nuevo estatus (ej: "Aprobado", "Rechazado", "Procesado")
@@ -302,8 +469,9 @@ public class EmailService {
      * @param motivoRechazo Motivo de rechazo (si aplica)
      * @param nombreAprobador Nombre del aprobador/procesador
      * @param puestoAprobador Puesto del aprobador/procesador
+     * @return el correo, o null si la transición no lleva correo o no hay destinatario
      */
-    public void sendNotificacionCambioEstatus(
+    public EmailOutbox correoCambioEstatus(
             String estatusAnterior,
             String nuevoEstatus,
             String correoSolicitante,
@@ -313,20 +481,39 @@ public class EmailService {
             String puestoAprobador
     ) {
         if (correoSolicitante == null || correoSolicitante.isEmpty()) {
-            logger.warn("No se envió correo de cambio de estatus porque el correo es nulo o vacío");
-            return;
+            logger.warn("No se envía correo de cambio de estatus porque el correo es nulo o vacío");
+            return null;
         }
-        String fechaCambio = fechaCambioActual();
         if ("Pendiente".equalsIgnoreCase(estatusAnterior) && "Aprobado".equalsIgnoreCase(nuevoEstatus)) {
-            sendSolicitudAprobadaEmail(correoSolicitante, solicitud, nombreAprobador, puestoAprobador);
+            return correoSolicitudAprobada(correoSolicitante, solicitud, nombreAprobador, puestoAprobador);
         } else if ("Pendiente".equalsIgnoreCase(estatusAnterior) && "Rechazado".equalsIgnoreCase(nuevoEstatus)) {
-            sendSolicitudRechazadaEmail(correoSolicitante, solicitud, motivoRechazo, nombreAprobador, puestoAprobador);
+            return correoSolicitudRechazada(correoSolicitante, solicitud, motivoRechazo, nombreAprobador, puestoAprobador);
         } else if ("Aprobado".equalsIgnoreCase(estatusAnterior) && "Procesado".equalsIgnoreCase(nuevoEstatus)) {
-            sendSolicitudProcesadaEmail(correoSolicitante, solicitud, nombreAprobador, puestoAprobador);
+            return correoSolicitudProcesada(correoSolicitante, solicitud, nombreAprobador, puestoAprobador);
         } else if ("Pendiente".equalsIgnoreCase(estatusAnterior) && "Procesado".equalsIgnoreCase(nuevoEstatus)) {
-            sendSolicitudProcesadaDirectaEmail(correoSolicitante, solicitud, nombreAprobador, puestoAprobador);
-        } else {
-            logger.info("No se envía correo para transición de estatus: {} -> {}", estatusAnterior, nuevoEstatus);
+            return correoSolicitudProcesadaDirecta(correoSolicitante, solicitud, nombreAprobador, puestoAprobador);
+        }
+        logger.info("No se envía correo para transición de estatus: {} -> {}", estatusAnterior, nuevoEstatus);
+        return null;
+    }
+
+    /**
+     * Encola la notificación de cambio de estatus fuera de una transacción; ver
+     * {@link #correoCambioEstatus}.
+     */
+    public void sendNotificacionCambioEstatus(
+            String estatusAnterior,
+            String nuevoEstatus,
+            String correoSolicitante,
+            SolicitudPresupuesto solicitud,
+            String motivoRechazo,
+            String nombreAprobador,
+            String puestoAprobador
+    ) {
+        EmailOutbox correo = correoCambioEstatus(estatusAnterior, nuevoEstatus, correoSolicitante, solicitud,
+            motivoRechazo, nombreAprobador, puestoAprobador);
+        if (correo != null) {
+            encolar(correo);
         }
     }
 
@@ -0,0 +1,29 @@
+package com.cdc.fin.presupuesto.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+
+/**
+ * Almacén de archivos generados (exportaciones de Excel).
+ * La implementación por defecto es disco local; para usar S3 u otro blob store basta con declarar
+ * otra implementación marcada con @Primary. Con varias instancias el almacén debe ser compartido
+ * (un volumen como EFS o un blob store) para descargar desde cualquiera el archivo que generó otra.
+ */
+public interface ExportStorage {
+
+    OutputStream create(String key) throws IOException;
+
+    InputStream open(String key) throws IOException;
+
+    boolean exists(String key);
+
+    void delete(String key);
+
+    /**
+     * Elimina los archivos cuya llave empieza con el prefijo y que se crearon antes del límite.
+     * @return archivos eliminados
+     */
+    int eliminarAnteriores(String prefijo, Instant limite);
+}
@@ -0,0 +1,40 @@
+package com.cdc.fin.presupuesto.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Métricas comunes de las importaciones CSV: duración total y filas procesadas por catálogo.
+ * El throughput se obtiene como filas / duración en el tablero.
+ */
+@Component
+public class ImportMetrics {
+
+    private final MeterRegistry registry;
+
+    public ImportMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public void registrar(String catalogo, long inicioNanos, int exitosas, int errores) {
+        Timer.builder("presupuesto.import.duracion")
+            .description("Duración de la importación CSV")
+            .tag("catalogo", catalogo)
+            .register(registry)
+            .record(System.nanoTime() - inicioNanos, TimeUnit.NANOSECONDS);
+        Counter.builder("presupuesto.import.filas")
+            .description("Filas procesadas en importaciones CSV")
+            .tags("catalogo", catalogo, "resultado", "exitosa")
+            .register(registry)
+            .increment(exitosas);
+        Counter.builder("presupuesto.import.filas")
+            .description("Filas procesadas en importaciones CSV")
+            .tags("catalogo", catalogo, "resultado", "error")
+            .register(registry)
+            .increment(errores);
+    }
+}
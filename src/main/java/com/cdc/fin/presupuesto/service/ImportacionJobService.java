@@ -0,0 +1,277 @@
+package com.cdc.fin.presupuesto.service;
+
+import com.cdc.fin.presupuesto.model.ImportacionJob;
+import com.cdc.fin.presupuesto.repository.TrabajoRepository;
+import com.cdc.fin.presupuesto.util.RecordReader;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.cdc.fin.presupuesto.repository.TrabajoRepository.fecha;
+import static com.cdc.fin.presupuesto.repository.TrabajoRepository.numero;
+import static com.cdc.fin.presupuesto.repository.TrabajoRepository.texto;
+
+/**
+ * Importaciones asíncronas (CSV o .xlsx). El archivo subido se guarda en un directorio temporal local, se
+ * responde de inmediato con el jobId y la importación corre en el pool importJobExecutor (pequeño y
+ * con cola acotada, sin ejecutar en el hilo llamador), así los hilos de Tomcat quedan libres para
+ * las peticiones interactivas. El avance y la respuesta final se guardan en la tabla de trabajos y se
+ * consultan por jobId desde cualquier instancia; la instancia que la ejecuta guarda el avance cada
+ * heartbeat-ms y, si deja de hacerlo, la importación se reporta como interrumpida.
+ */
+@Service
+public class ImportacionJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImportacionJobService.class);
+
+    private static final String TIPO = "IMPORTACION";
+    private static final String PREFIJO_ARCHIVO = "importacion-";
+    // Heartbeats sin actualizar tras los que la importación se da por interrumpida
+    private static final int HEARTBEATS_PERDIDOS = 3;
+
+    /** Importación de un catálogo a partir del archivo guardado; la implementan los servicios de cada catálogo. */
+    @FunctionalInterface
+    public interface Importador {
+        Map<String, Object> importar(Path archivo, CsvImportPipeline.Progreso progreso) throws Exception;
+    }
+
+    private final TaskExecutor importJobExecutor;
+    private final Path spoolDir;
+    private final TrabajoRepository trabajoRepository;
+    private final ObjectMapper objectMapper;
+    // Importaciones que corren en esta instancia (su estado más reciente)
+    private final Map<String, ImportacionJob> locales = new ConcurrentHashMap<>();
+
+    @Value("${presupuesto.import.jobs.retention-ms:86400000}")
+    private long retentionMs;
+
+    @Value("${presupuesto.jobs.heartbeat-ms:30000}")
+    private long heartbeatMs;
+
+    public ImportacionJobService(@Qualifier("importJobExecutor") TaskExecutor importJobExecutor,
+                                 @Value("${presupuesto.import.spool.dir:${java.io.tmpdir}/presupuesto-imports}") String spoolDir,
+                                 TrabajoRepository trabajoRepository,
+                                 ObjectMapper objectMapper) throws IOException {
+        this.importJobExecutor = importJobExecutor;
+        this.spoolDir = Paths.get(spoolDir).toAbsolutePath().normalize();
+        this.trabajoRepository = trabajoRepository;
+        this.objectMapper = objectMapper;
+        Files.createDirectories(this.spoolDir);
+        limpiarSpool();
+    }
+
+    /**
+     * Guarda el archivo en disco y encola la importación.
+     * @throws org.springframework.core.task.TaskRejectedException si la cola de importaciones está llena
+     */
+    public ImportacionJob submit(String catalogo, MultipartFile file, Importador importador) throws IOException {
+        ImportacionJob job = new ImportacionJob(UUID.randomUUID().toString(), catalogo, file.getOriginalFilename());
+        // La extensión indica el formato al leerlo (CSV o .xlsx)
+        String extension = RecordReader.esXlsx(file.getOriginalFilename()) ? ".xlsx" : ".csv";
+        Path archivo = Files.createTempFile(spoolDir, PREFIJO_ARCHIVO + job.getJobId() + "-", extension);
+        try {
+            file.transferTo(archivo);
+            job.setArchivoTemporal(archivo.toString());
+            trabajoRepository.guardar(item(job));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(archivo);
+            throw e;
+        }
+        locales.put(job.getJobId(), job);
+        try {
+            importJobExecutor.execute(() -> run(job, importador));
+        } catch (RuntimeException e) {
+            job.setEstado(ImportacionJob.Estado.ERROR);
+            job.setMensaje("No se pudo encolar la importación: " + e.getMessage());
+            terminar(job);
+            throw e;
+        }
+        logger.info("Importación {} de {} encolada ({} bytes)", job.getJobId(), catalogo, file.getSize());
+        return job;
+    }
+
+    /**
+     * Estado de la importación: el local si corre en esta instancia, si no el de la tabla de trabajos.
+     * Una importación activa que su instancia dejó de actualizar se marca como interrumpida.
+     */
+    public Optional<ImportacionJob> find(String jobId) {
+        ImportacionJob local = locales.get(jobId);
+        if (local != null) {
+            return Optional.of(local);
+        }
+        Optional<Map<String, AttributeValue>> item = trabajoRepository.buscar(jobId)
+            .filter(i -> TIPO.equals(texto(i, "tipo")));
+        if (item.isEmpty()) {
+            return Optional.empty();
+        }
+        ImportacionJob job = job(item.get());
+        if (job.isActivo() && numero(item.get(), "actualizadoEn") < System.currentTimeMillis() - vigenciaMs()) {
+            interrumpir(jobId);
+            return trabajoRepository.buscar(jobId).map(this::job);
+        }
+        return Optional.of(job);
+    }
+
+    private void run(ImportacionJob job, Importador importador) {
+        job.setEstado(ImportacionJob.Estado.EN_PROCESO);
+        try {
+            trabajoRepository.guardar(item(job));
+            Map<String, Object> resultado = importador.importar(Paths.get(job.getArchivoTemporal()), job::actualizarAvance);
+            job.setResultado(resultado);
+            job.setMensaje((String) resultado.get("message"));
+            job.setEstado(ImportacionJob.Estado.COMPLETADO);
+            logger.info("Importación {} de {} completada", job.getJobId(), job.getCatalogo());
+        } catch (Exception e) {
+            logger.error("Error en importación {} de {}: {}", job.getJobId(), job.getCatalogo(), e.getMessage(), e);
+            job.setEstado(ImportacionJob.Estado.ERROR);
+            job.setMensaje("Error importando el archivo: " + e.getMessage());
+        } finally {
+            terminar(job);
+        }
+    }
+
+    private void terminar(ImportacionJob job) {
+        job.setFechaFin(Instant.now());
+        borrarArchivo(job);
+        try {
+            trabajoRepository.guardar(item(job));
+        } catch (RuntimeException e) {
+            // Sin el estado final, la importación se reportará como interrumpida
+            logger.error("No se pudo guardar el estado final de la importación {}: {}", job.getJobId(), e.getMessage(), e);
+        } finally {
+            locales.remove(job.getJobId());
+        }
+    }
+
+    private void borrarArchivo(ImportacionJob job) {
+        try {
+            Files.deleteIfExists(Paths.get(job.getArchivoTemporal()));
+        } catch (IOException e) {
+            logger.warn("No se pudo eliminar el archivo temporal {}: {}", job.getArchivoTemporal(), e.getMessage());
+        }
+    }
+
+    private void interrumpir(String jobId) {
+        Instant ahora = Instant.now();
+        String mensaje = "La importación se interrumpió porque la instancia que la ejecutaba se detuvo";
+        if (trabajoRepository.marcarInterrumpido(jobId, mensaje, ahora, ahora.plusMillis(retentionMs))) {
+            logger.warn("Importación {} interrumpida", jobId);
+        }
+    }
+
+    /**
+     * Al arrancar, los archivos del spool son de importaciones que corrían cuando la instancia se
+     * detuvo: se eliminan y esas importaciones se marcan como interrumpidas. El spool es local a cada
+     * instancia.
+     */
+    private void limpiarSpool() throws IOException {
+        List<Path> huerfanos;
+        try (Stream<Path> archivos = Files.list(spoolDir)) {
+            huerfanos = archivos.filter(path -> path.getFileName().toString().startsWith(PREFIJO_ARCHIVO))
+                .collect(Collectors.toList());
+        }
+        for (Path archivo : huerfanos) {
+            Files.deleteIfExists(archivo);
+            // importacion-<jobId>-<sufijo>.<ext>, jobId es un UUID
+            String nombre = archivo.getFileName().toString();
+            int inicio = PREFIJO_ARCHIVO.length();
+            int fin = inicio + 36;
+            if (nombre.length() > fin) {
+                try {
+                    interrumpir(nombre.substring(inicio, fin));
+                } catch (RuntimeException e) {
+                    logger.warn("No se pudo marcar como interrumpida la importación de {}: {}", nombre, e.getMessage());
+                }
+            }
+        }
+        if (!huerfanos.isEmpty()) {
+            logger.info("Archivos de importaciones interrumpidas eliminados del spool: {}", huerfanos.size());
+        }
+    }
+
+    /**
+     * Guarda el avance de las importaciones que corren en esta instancia.
+     */
+    @Scheduled(fixedDelayString = "${presupuesto.jobs.heartbeat-ms:30000}")
+    public void heartbeat() {
+        for (ImportacionJob job : locales.values()) {
+            try {
+                trabajoRepository.guardar(item(job));
+            } catch (RuntimeException e) {
+                logger.warn("No se pudo actualizar la importación {}: {}", job.getJobId(), e.getMessage());
+            }
+        }
+    }
+
+    private long vigenciaMs() {
+        return heartbeatMs * HEARTBEATS_PERDIDOS;
+    }
+
+    private Map<String, AttributeValue> item(ImportacionJob job) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("jobId", texto(job.getJobId()));
+        item.put("tipo", texto(TIPO));
+        item.put("catalogo", texto(job.getCatalogo()));
+        item.put("estado", texto(job.getEstado().name()));
+        item.put("leidas", numero(job.getLeidas()));
+        item.put("exitosas", numero(job.getExitosas()));
+        item.put("errores", numero(job.getErrores()));
+        item.put("fechaCreacion", texto(job.getFechaCreacion().toString()));
+        item.put("actualizadoEn", numero(System.currentTimeMillis()));
+        if (job.getNombreArchivo() != null) item.put("nombreArchivo", texto(job.getNombreArchivo()));
+        if (job.getMensaje() != null) item.put("mensaje", texto(job.getMensaje()));
+        if (job.getResultado() != null) {
+            try {
+                item.put("resultado", texto(objectMapper.writeValueAsString(job.getResultado())));
+            } catch (JsonProcessingException e) {
+                logger.warn("No se pudo guardar el resultado de la importación {}: {}", job.getJobId(), e.getMessage());
+            }
+        }
+        if (job.getFechaFin() != null) {
+            item.put("fechaFin", texto(job.getFechaFin().toString()));
+            item.put("expiraEn", numero(job.getFechaFin().plusMillis(retentionMs).getEpochSecond()));
+        }
+        return item;
+    }
+
+    private ImportacionJob job(Map<String, AttributeValue> item) {
+        ImportacionJob job = new ImportacionJob(texto(item, "jobId"), texto(item, "catalogo"),
+            texto(item, "nombreArchivo"), fecha(item, "fechaCreacion"));
+        job.setEstado(ImportacionJob.Estado.valueOf(texto(item, "estado")));
+        job.actualizarAvance((int) numero(item, "leidas"), (int) numero(item, "exitosas"), (int) numero(item, "errores"));
+        job.setMensaje(texto(item, "mensaje"));
+        job.setFechaFin(fecha(item, "fechaFin"));
+        String resultado = texto(item, "resultado");
+        if (resultado != null) {
+            try {
+                job.setResultado(objectMapper.readValue(resultado, new TypeReference<Map<String, Object>>() {}));
+            } catch (JsonProcessingException e) {
+                logger.warn("Resultado ilegible de la importación {}: {}", job.getJobId(), e.getMessage());
+            }
+        }
+        return job;
+    }
+}
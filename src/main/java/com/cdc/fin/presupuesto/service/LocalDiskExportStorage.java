@@ -0,0 +1,86 @@
+package com.cdc.fin.presupuesto.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+@Component
+public class LocalDiskExportStorage implements ExportStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocalDiskExportStorage.class);
+
+    private final Path baseDir;
+
+    public LocalDiskExportStorage(@Value("${presupuesto.export.storage.dir:${java.io.tmpdir}/presupuesto-exports}") String baseDir) throws IOException {
+        this.baseDir = Paths.get(baseDir).toAbsolutePath().normalize();
+        Files.createDirectories(this.baseDir);
+    }
+
+    @Override
+    public OutputStream create(String key) throws IOException {
+        return Files.newOutputStream(resolve(key));
+    }
+
+    @Override
+    public InputStream open(String key) throws IOException {
+        return Files.newInputStream(resolve(key));
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.exists(resolve(key));
+    }
+
+    @Override
+    public void delete(String key) {
+        try {
+            Files.deleteIfExists(resolve(key));
+        } catch (IOException e) {
+            logger.warn("No se pudo eliminar el archivo {}: {}", key, e.getMessage());
+        }
+    }
+
+    @Override
+    public int eliminarAnteriores(String prefijo, Instant limite) {
+        List<Path> archivos;
+        try (Stream<Path> lista = Files.list(baseDir)) {
+            archivos = lista.filter(path -> path.getFileName().toString().startsWith(prefijo))
+                .collect(Collectors.toList());
+        } catch (IOException e) {
+            logger.warn("No se pudo listar {}: {}", baseDir, e.getMessage());
+            return 0;
+        }
+        int eliminados = 0;
+        for (Path archivo : archivos) {
+            try {
+                if (Files.getLastModifiedTime(archivo).toInstant().isBefore(limite) && Files.deleteIfExists(archivo)) {
+                    eliminados++;
+                }
+            } catch (IOException e) {
+                logger.warn("No se pudo eliminar el archivo {}: {}", archivo.getFileName(), e.getMessage());
+            }
+        }
+        return eliminados;
+    }
+
+    private Path resolve(String key) {
+        Path path = baseDir.resolve(key).normalize();
+        // Evita que una llave salga del directorio base
+        if (!path.startsWith(baseDir)) {
+            throw new IllegalArgumentException("Llave de archivo inválida: " + key);
+        }
+        return path;
+    }
+}
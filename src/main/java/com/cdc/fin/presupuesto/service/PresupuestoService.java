@@ -2,23 +2,19 @@ package com.cdc.fin.presupuesto.service;
 
 import com.cdc.fin.presupuesto.model.Presupuesto;
 import com.cdc.fin.presupuesto.model.Departamento;
+import com.cdc.fin.presupuesto.repository.CatalogImportSession;
 import com.cdc.fin.presupuesto.repository.PresupuestoRepository;
-import com.cdc.fin.presupuesto.repository.DepartamentoRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import com.opencsv.CSVReader;
-import com.opencsv.CSVReaderBuilder;
+import com.cdc.fin.presupuesto.util.RecordReader;
 import com.opencsv.exceptions.CsvException;
 
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.nio.file.Path;
 import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,17 +28,23 @@ public class PresupuestoService {
     private PresupuestoRepository presupuestoRepository;
 
     @Autowired
-    private DepartamentoRepository departamentoRepository;
+    private ReferenceDataCache referenceDataCache;
 
-    public String getPresupuesto(String ceCo, String cuentaGastos) {
+    @Autowired
+    private ImportMetrics importMetrics;
 
-        Optional<Presupuesto> presupuestoOpt = presupuestoRepository
-            .findByCecoAndCuentaGastos(ceCo, cuentaGastos);
+    @Autowired
+    private CsvImportPipeline csvImportPipeline;
+
+    public String getPresupuesto(String ceCo, String cuentaGastos) {
+        // Búsquedas O(1) sobre la misma foto de la caché de referencia
+        ReferenceDataCache.Snapshot snapshot = referenceDataCache.snapshot();
+        Optional<Presupuesto> presupuestoOpt = snapshot.findPresupuesto(ceCo, cuentaGastos);
 
         if (presupuestoOpt.isPresent()) {
             return presupuestoOpt.get().getPresupuesto();
         } else {
-            Optional<Departamento> deptoOpt = Optional.ofNullable(departamentoRepository.findByCeco(ceCo));
+            Optional<Departamento> deptoOpt = Optional.ofNullable(snapshot.findDepartamentoByCeco(ceCo));
             if (deptoOpt.isPresent()) {
                 return deptoOpt.get().getPresupuestoDefault();
             }
@@ -51,15 +53,38 @@ public class PresupuestoService {
     }
 
     public Map<String, Object> importPresupuestosFromCSV(MultipartFile file, boolean replaceAll) throws Exception {
-        List<String> errors = new ArrayList<>();
-        int successCount = 0;
-        int errorCount = 0;
-        List<Presupuesto> presupuestos = new ArrayList<>();
+        return importPresupuestosFromCSV(file, replaceAll, false);
+    }
+
+    /**
+     * @param delta si es true el archivo es el catálogo completo y solo se escriben altas, cambios y bajas
+     */
+    public Map<String, Object> importPresupuestosFromCSV(MultipartFile file, boolean replaceAll, boolean delta) throws Exception {
+        try (RecordReader lector = RecordReader.leer(file.getInputStream(), file.getOriginalFilename())) {
+            return importPresupuestosFromCSV(lector, replaceAll, delta, null);
+        }
+    }
+
+    /**
+     * Importación desde un archivo en disco (el guardado por una importación asíncrona), CSV o .xlsx según su nombre.
+     * @param progreso avance para consultas mientras corre; null si no se necesita
+     */
+    public Map<String, Object> importPresupuestosFromCSV(Path archivo, boolean replaceAll, boolean delta,
+                                                         CsvImportPipeline.Progreso progreso) throws Exception {
+        try (RecordReader lector = RecordReader.abrir(archivo)) {
+            return importPresupuestosFromCSV(lector, replaceAll, delta, progreso);
+        }
+    }
+
+    private Map<String, Object> importPresupuestosFromCSV(RecordReader lector, boolean replaceAll, boolean delta,
+                                                          CsvImportPipeline.Progreso progreso) throws Exception {
+        long inicio = System.nanoTime();
+        Map<String, Object> result;
 
-        try (CSVReader csvReader = new CSVReaderBuilder(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8)).build()) {
+        try (CsvImportPipeline.Reporte reporte = csvImportPipeline.nuevoReporte(progreso)) {
             logger.info("Iniciando importación de presupuestos desde CSV...");
-            String[] header = csvReader.readNext();
-            if (header == null) throw new Exception("El archivo CSV está vacío");
+            String[] header = lector.leerRegistro();
+            if (header == null) throw new Exception("El archivo está vacío");
 
             // Busca los índices de las columnas necesarias
             int idxCeCo = -1, idxCuentaGastos = -1, idxPresupuesto = -1;
@@ -70,63 +95,55 @@ public class PresupuestoService {
                 if (col.equalsIgnoreCase("Presupuesto")) idxPresupuesto = i;
             }
             if (idxCeCo == -1 || idxCuentaGastos == -1 || idxPresupuesto == -1) {
-                throw new Exception("El archivo CSV debe contener las columnas: CeCo, CuentaGastos, Presupuesto");
+                throw new Exception("El archivo debe contener las columnas: CeCo, CuentaGastos, Presupuesto");
             }
 
-            String[] record;
-            int rowNumber = 2;
-            while ((record = csvReader.readNext()) != null) {
-                try {
-                    Presupuesto presupuesto = new Presupuesto();
-                    // Asigna el campo clave si falta (ejemplo: id)
-                    if (presupuesto.getId() == null || presupuesto.getId().isEmpty()) {
-                        presupuesto.setId(java.util.UUID.randomUUID().toString());
-                    }
-                    presupuesto.setCeco(record[idxCeCo].trim());
-                    presupuesto.setCuentaGastos(record[idxCuentaGastos].trim());
-                    presupuesto.setPresupuesto(record[idxPresupuesto].trim());
-                    presupuestos.add(presupuesto);
-                    successCount++;
-                } catch (Exception e) {
-                    errors.add("Línea " + rowNumber + ": " + e.getMessage());
-                    errorCount++;
+            int[] indices = {idxCeCo, idxCuentaGastos, idxPresupuesto};
+            // Solo se decodifican las columnas que se usan
+            lector.seleccionar(indices);
+            try (CatalogImportSession<Presupuesto> sesion = presupuestoRepository.iniciarImportacion(CatalogImportSession.Modo.de(replaceAll, delta))) {
+                csvImportPipeline.importar(reporte, lector::leerRegistro, 2, record -> mapearPresupuesto(record, indices), null,
+                    sesion::escribir, presupuesto -> "Presupuesto " + presupuesto.getId());
+                lector.getAdvertencias().forEach(reporte::advertencia);
+                CatalogImportSession.Cierre cierre = sesion.terminar();
+                for (String id : cierre.getNoEliminados()) {
+                    reporte.advertencia("Presupuesto " + id + ": no se pudo eliminar");
+                }
+                cierre.getAdvertencias().forEach(reporte::advertencia);
+                result = reporte.resumen();
+                if (cierre.getDiff() != null) {
+                    result.put("diff", cierre.getDiff());
                 }
-                rowNumber++;
-            }
-            if (replaceAll && !presupuestos.isEmpty()) {
-                logger.info("Eliminando todos los presupuestos existentes antes de importar.");
-                presupuestoRepository.deleteAll();
             }
         } catch (Exception e) {
             logger.error("Error leyendo el archivo CSV: {}", e.getMessage(), e);
-            errors.add("Error leyendo el archivo CSV: " + e.getMessage());
             throw new RuntimeException("Error leyendo el archivo CSV: " + e.getMessage(), e);
         }
 
-        // Guarda los presupuestos importados
-        if (!presupuestos.isEmpty()) {
-            logger.info("Guardando {} presupuestos importados...", presupuestos.size());
-            try {
-                presupuestoRepository.saveAll(presupuestos);
-            } catch (Exception e) {
-                logger.error("Error en saveAll presupuestos: {}", e.getMessage(), e);
-                errors.add("Error al guardar presupuestos en DynamoDB: " + e.getMessage());
-                throw new RuntimeException("Error al guardar presupuestos en DynamoDB: " + e.getMessage(), e);
-            }
-        } else {
-            logger.warn("No hay presupuestos válidos para guardar.");
-        }
+        // Publica la nueva versión del catálogo para las búsquedas por CeCo
+        referenceDataCache.refreshAfterWrite();
 
-        Map<String, Object> result = new HashMap<>();
-        result.put("success", errorCount == 0);
-        result.put("totalRecords", successCount + errorCount);
-        result.put("successCount", successCount);
-        result.put("errorCount", errorCount);
-        result.put("errors", errors);
+        int successCount = (Integer) result.get("successCount");
+        int errorCount = (Integer) result.get("errorCount");
         result.put("message", errorCount > 0
             ? String.format("Importación completada con advertencias: %d exitosos, %d errores/omitidos.", successCount, errorCount)
             : String.format("Importación completada exitosamente: %d registros importados.", successCount));
         logger.info("Importación de CSV de presupuestos completada. Éxito: {}, Errores/Omitidos: {}", successCount, errorCount);
+        importMetrics.registrar("presupuestos", inicio, successCount, errorCount);
         return result;
     }
-}
\ No newline at end of file
+
+    /**
+     * Convierte una fila del CSV con los índices de columna detectados en el encabezado
+     * (se ejecuta en paralelo por bloques).
+     */
+    private Presupuesto mapearPresupuesto(String[] record, int[] indices) {
+        Presupuesto presupuesto = new Presupuesto();
+        // El CSV no trae ID: se asigna uno nuevo (en modo delta se reemplaza por el existente)
+        presupuesto.setId(UUID.randomUUID().toString());
+        presupuesto.setCeco(record[indices[0]].trim());
+        presupuesto.setCuentaGastos(record[indices[1]].trim());
+        presupuesto.setPresupuesto(record[indices[2]].trim());
+        return presupuesto;
+    }
+}
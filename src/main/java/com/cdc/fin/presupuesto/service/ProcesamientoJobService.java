@@ -0,0 +1,273 @@
+package com.cdc.fin.presupuesto.service;
+
+import com.cdc.fin.presupuesto.model.ProcesamientoJob;
+import com.cdc.fin.presupuesto.model.SolicitudPresupuesto;
+import com.cdc.fin.presupuesto.repository.TrabajoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.cdc.fin.presupuesto.repository.TrabajoRepository.fecha;
+import static com.cdc.fin.presupuesto.repository.TrabajoRepository.numero;
+import static com.cdc.fin.presupuesto.repository.TrabajoRepository.texto;
+
+/**
+ * Ejecuta el procesamiento de solicitudes aprobadas como trabajo asíncrono.
+ * Solo hay un trabajo activo a la vez entre todas las instancias (turno en la tabla de trabajos): una
+ * nueva petición (o un reintento del cliente) mientras hay uno en curso recibe el mismo jobId, igual
+ * que una llave de idempotencia repetida. El estado se guarda en la tabla de trabajos, así cualquier
+ * instancia responde la consulta; la instancia que lo ejecuta lo actualiza cada heartbeat-ms y, si
+ * deja de hacerlo, el trabajo se reporta como interrumpido y el turno queda libre. El Excel resultante
+ * se guarda en ExportStorage, que debe ser compartido para descargarse desde cualquier instancia.
+ */
+@Service
+public class ProcesamientoJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcesamientoJobService.class);
+
+    private static final String TIPO = "PROCESAMIENTO";
+    private static final String TURNO = "procesamiento";
+    private static final String PREFIJO_ARCHIVO = "procesamiento-";
+    // Heartbeats sin actualizar tras los que el trabajo se da por interrumpido
+    private static final int HEARTBEATS_PERDIDOS = 3;
+
+    private final ProcesarSolicitudesService procesarSolicitudesService;
+    private final UserInfoService userInfoService;
+    private final ExportStorage exportStorage;
+    private final TaskExecutor procesarExecutor;
+    private final TrabajoRepository trabajoRepository;
+
+    // Trabajos que corren en esta instancia (su estado más reciente)
+    private final Map<String, ProcesamientoJob> locales = new ConcurrentHashMap<>();
+
+    @Value("${presupuesto.procesar.jobs.retention-ms:86400000}")
+    private long retentionMs;
+
+    @Value("${presupuesto.jobs.heartbeat-ms:30000}")
+    private long heartbeatMs;
+
+    public ProcesamientoJobService(ProcesarSolicitudesService procesarSolicitudesService,
+                                   UserInfoService userInfoService,
+                                   ExportStorage exportStorage,
+                                   @Qualifier("procesarExecutor") TaskExecutor procesarExecutor,
+                                   TrabajoRepository trabajoRepository) {
+        this.procesarSolicitudesService = procesarSolicitudesService;
+        this.userInfoService = userInfoService;
+        this.exportStorage = exportStorage;
+        this.procesarExecutor = procesarExecutor;
+        this.trabajoRepository = trabajoRepository;
+    }
+
+    /**
+     * Encola un procesamiento o devuelve el trabajo existente si ya hay uno activo
+     * o si la llave de idempotencia ya fue usada.
+     */
+    public synchronized ProcesamientoJob submit(String idempotencyKey) {
+        boolean conLlave = idempotencyKey != null && !idempotencyKey.isBlank();
+        if (conLlave) {
+            Optional<ProcesamientoJob> existente = trabajoRepository.buscarLlave(TIPO + "#" + idempotencyKey)
+                .flatMap(this::find);
+            if (existente.isPresent()) {
+                return existente.get();
+            }
+        }
+
+        ProcesamientoJob job = new ProcesamientoJob(UUID.randomUUID().toString());
+        // El registro existe antes de tomar el turno o la llave: quien los encuentre tomados puede leerlo
+        trabajoRepository.guardar(item(job));
+        Optional<String> titular = trabajoRepository.tomarTurno(TURNO, job.getJobId(), vigenciaMs());
+        if (titular.isPresent()) {
+            trabajoRepository.eliminar(job.getJobId());
+            Optional<ProcesamientoJob> activo = find(titular.get());
+            if (activo.isPresent()) {
+                logger.info("Ya existe un procesamiento activo ({}), se reutiliza", titular.get());
+                return activo.get();
+            }
+            throw new IllegalStateException("Hay un procesamiento activo en otra instancia");
+        }
+        if (conLlave) {
+            Optional<String> previo = trabajoRepository.reservarLlave(TIPO + "#" + idempotencyKey, job.getJobId(),
+                Instant.now().plusMillis(retentionMs));
+            if (previo.isPresent()) {
+                // Otra petición con la misma llave ganó la reserva
+                trabajoRepository.liberarTurno(TURNO, job.getJobId());
+                trabajoRepository.eliminar(job.getJobId());
+                return find(previo.get()).orElseThrow(() -> new IllegalStateException("Llave de idempotencia en uso"));
+            }
+        }
+
+        // El SecurityContext no se propaga al hilo del trabajo
+        String nombreProcesador = userInfoService.getNombreProcesadorActual();
+        String puestoProcesador = userInfoService.getPuestoProcesadorActual();
+        locales.put(job.getJobId(), job);
+        try {
+            procesarExecutor.execute(() -> run(job, nombreProcesador, puestoProcesador));
+        } catch (RuntimeException e) {
+            job.setEstado(ProcesamientoJob.Estado.ERROR);
+            job.setMensaje("No se pudo encolar el procesamiento: " + e.getMessage());
+            terminar(job);
+            throw e;
+        }
+        logger.info("Procesamiento {} encolado", job.getJobId());
+        return job;
+    }
+
+    /**
+     * Estado del trabajo: el local si corre en esta instancia, si no el de la tabla de trabajos. Un
+     * trabajo activo que su instancia dejó de actualizar se marca como interrumpido.
+     */
+    public Optional<ProcesamientoJob> find(String jobId) {
+        ProcesamientoJob local = locales.get(jobId);
+        if (local != null) {
+            return Optional.of(local);
+        }
+        Optional<Map<String, AttributeValue>> item = trabajoRepository.buscar(jobId)
+            .filter(i -> TIPO.equals(texto(i, "tipo")));
+        if (item.isEmpty()) {
+            return Optional.empty();
+        }
+        ProcesamientoJob job = job(item.get());
+        long limite = System.currentTimeMillis() - vigenciaMs();
+        if (job.isActivo() && numero(item.get(), "actualizadoEn") < limite) {
+            Instant ahora = Instant.now();
+            String mensaje = "El procesamiento se interrumpió porque la instancia que lo ejecutaba se detuvo";
+            if (trabajoRepository.marcarInterrumpido(jobId, mensaje, ahora, ahora.plusMillis(retentionMs))) {
+                logger.warn("Procesamiento {} interrumpido: sin actualizar desde hace más de {} ms", jobId, vigenciaMs());
+            }
+            return trabajoRepository.buscar(jobId).map(this::job);
+        }
+        return Optional.of(job);
+    }
+
+    public InputStream openArchivo(ProcesamientoJob job) throws IOException {
+        return exportStorage.open(job.getArchivoKey());
+    }
+
+    /** El archivo existe en ExportStorage (puede haber vencido o estar en el disco de otra instancia). */
+    public boolean existeArchivo(ProcesamientoJob job) {
+        return job.getArchivoKey() != null && exportStorage.exists(job.getArchivoKey());
+    }
+
+    private void run(ProcesamientoJob job, String nombreProcesador, String puestoProcesador) {
+        job.setEstado(ProcesamientoJob.Estado.EN_PROCESO);
+        trabajoRepository.guardar(item(job));
+        try {
+            List<SolicitudPresupuesto> procesadas = procesarSolicitudesService.procesarSolicitudesAprobadas(
+                nombreProcesador, puestoProcesador,
+                (hechas, total) -> {
+                    job.setTotal(total);
+                    job.setProcesadas(hechas);
+                });
+
+            String key = PREFIJO_ARCHIVO + job.getJobId() + ".xlsx";
+            try (OutputStream out = exportStorage.create(key)) {
+                procesarSolicitudesService.exportarExcel(procesadas, out);
+            }
+            job.setExportadas(procesadas.size());
+            job.setArchivoKey(key);
+            job.setEstado(ProcesamientoJob.Estado.COMPLETADO);
+            job.setMensaje(String.format("Procesamiento completado: %d solicitudes procesadas.", procesadas.size()));
+            logger.info("Procesamiento {} completado: {} solicitudes", job.getJobId(), procesadas.size());
+        } catch (Exception e) {
+            logger.error("Error en procesamiento {}: {}", job.getJobId(), e.getMessage(), e);
+            job.setEstado(ProcesamientoJob.Estado.ERROR);
+            job.setMensaje("Error procesando solicitudes: " + e.getMessage());
+        } finally {
+            terminar(job);
+        }
+    }
+
+    private void terminar(ProcesamientoJob job) {
+        job.setFechaFin(Instant.now());
+        try {
+            trabajoRepository.guardar(item(job));
+        } catch (RuntimeException e) {
+            // Sin el estado final, el trabajo se reportará como interrumpido
+            logger.error("No se pudo guardar el estado final del procesamiento {}: {}", job.getJobId(), e.getMessage(), e);
+        } finally {
+            locales.remove(job.getJobId());
+            trabajoRepository.liberarTurno(TURNO, job.getJobId());
+        }
+    }
+
+    /**
+     * Guarda el avance de los trabajos que corren en esta instancia y renueva su turno.
+     */
+    @Scheduled(fixedDelayString = "${presupuesto.jobs.heartbeat-ms:30000}")
+    public void heartbeat() {
+        for (ProcesamientoJob job : locales.values()) {
+            try {
+                trabajoRepository.guardar(item(job));
+                if (!trabajoRepository.renovarTurno(TURNO, job.getJobId(), vigenciaMs())) {
+                    logger.warn("El procesamiento {} perdió su turno; otra instancia puede iniciar uno nuevo", job.getJobId());
+                }
+            } catch (RuntimeException e) {
+                logger.warn("No se pudo actualizar el procesamiento {}: {}", job.getJobId(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Elimina los archivos de trabajos vencidos; los registros vencen por el TTL de la tabla.
+     */
+    @Scheduled(fixedDelayString = "${presupuesto.procesar.jobs.cleanup-ms:3600000}")
+    public void limpiarTrabajosVencidos() {
+        Instant limite = Instant.now().minus(Duration.ofMillis(retentionMs));
+        int eliminados = exportStorage.eliminarAnteriores(PREFIJO_ARCHIVO, limite);
+        if (eliminados > 0) {
+            logger.info("Archivos de procesamiento vencidos eliminados: {}", eliminados);
+        }
+    }
+
+    private long vigenciaMs() {
+        return heartbeatMs * HEARTBEATS_PERDIDOS;
+    }
+
+    private Map<String, AttributeValue> item(ProcesamientoJob job) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("jobId", texto(job.getJobId()));
+        item.put("tipo", texto(TIPO));
+        item.put("estado", texto(job.getEstado().name()));
+        item.put("total", numero(job.getTotal()));
+        item.put("procesadas", numero(job.getProcesadas()));
+        item.put("exportadas", numero(job.getExportadas()));
+        item.put("fechaCreacion", texto(job.getFechaCreacion().toString()));
+        item.put("actualizadoEn", numero(System.currentTimeMillis()));
+        if (job.getMensaje() != null) item.put("mensaje", texto(job.getMensaje()));
+        if (job.getArchivoKey() != null) item.put("archivoKey", texto(job.getArchivoKey()));
+        if (job.getFechaFin() != null) {
+            item.put("fechaFin", texto(job.getFechaFin().toString()));
+            item.put("expiraEn", numero(job.getFechaFin().plusMillis(retentionMs).getEpochSecond()));
+        }
+        return item;
+    }
+
+    private ProcesamientoJob job(Map<String, AttributeValue> item) {
+        ProcesamientoJob job = new ProcesamientoJob(texto(item, "jobId"), fecha(item, "fechaCreacion"));
+        job.setEstado(ProcesamientoJob.Estado.valueOf(texto(item, "estado")));
+        job.setTotal((int) numero(item, "total"));
+        job.setProcesadas((int) numero(item, "procesadas"));
+        job.setExportadas((int) numero(item, "exportadas"));
+        job.setMensaje(texto(item, "mensaje"));
+        job.setArchivoKey(texto(item, "archivoKey"));
+        job.setFechaFin(fecha(item, "fechaFin"));
+        return job;
+    }
+}
@@ -1,22 +1,21 @@
 package com.cdc.fin.presupuesto.service;
 
 // Dependencia: implementation 'org.apache.poi:poi-ooxml:5.2.3' (o similar)
-import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BiConsumer;
 import com.cdc.fin.presupuesto.model.SolicitudPresupuesto;
 import com.cdc.fin.presupuesto.repository.SolicitudPresupuestoRepository;
+import com.cdc.fin.presupuesto.util.EstatusSolicitud;
 import com.cdc.fin.presupuesto.service.EmailService;
-import com.cdc.fin.presupuesto.repository.PresupuestoRepository;
-import com.cdc.fin.presupuesto.repository.DepartamentoRepository;
 import com.cdc.fin.presupuesto.model.Presupuesto;
 import com.cdc.fin.presupuesto.model.Departamento;
 import org.slf4j.Logger;
@@ -29,65 +28,78 @@ public class ProcesarSolicitudesService {
     private final SolicitudPresupuestoRepository solicitudPresupuestoRepository;
     private final EmailService emailService;
     private final UserInfoService userInfoService;
-    private final PresupuestoRepository presupuestoRepository;
-    private final DepartamentoRepository departamentoRepository;
+    private final ReferenceDataCache referenceDataCache;
+
+    // El GSI compara por igualdad: el estatus se guarda en forma canónica, pero se consultan también
+    // las variantes de mayúsculas escritas antes de normalizarlo (ver EstatusSolicitud)
+    private static final List<String> ESTATUS_APROBADO = EstatusSolicitud.variantes(EstatusSolicitud.APROBADO);
+    // Filas que SXSSF mantiene en memoria antes de volcar a disco
+    private static final int ROW_WINDOW = 100;
+    // Solicitudes por reporte de avance
+    private static final int PROGRESS_CHUNK = 250;
 
     public ProcesarSolicitudesService(
         SolicitudPresupuestoRepository solicitudPresupuestoRepository,
         EmailService emailService,
         UserInfoService userInfoService,
-        PresupuestoRepository presupuestoRepository,
-        DepartamentoRepository departamentoRepository
+        ReferenceDataCache referenceDataCache
     ) {
         this.solicitudPresupuestoRepository = solicitudPresupuestoRepository;
         this.emailService = emailService;
         this.userInfoService = userInfoService;
-        this.presupuestoRepository = presupuestoRepository;
-        this.departamentoRepository = departamentoRepository;
+        this.referenceDataCache = referenceDataCache;
     }
 
-    // Cambia la firma para devolver el Excel como byte[]
-    // NO aceptes OutputStream como argumento, solo sin argumentos
-    public byte[] procesarYExportarExcel() throws IOException {
-        logger.info("Iniciando procesamiento y exportación de solicitudes aprobadas...");
-        // Buscar todas las solicitudes con estatus "Aprobado"
-        List<SolicitudPresupuesto> solicitudes = solicitudPresupuestoRepository.findAll().stream()
-                .filter(s -> "Aprobado".equalsIgnoreCase(s.getEstatusConfirmacion()))
-                .toList();
-        logger.info("Solicitudes encontradas con estatus 'Aprobado': {}", solicitudes.size());
-        String nombreProcesador = userInfoService.getNombreProcesadorActual();
-        String puestoProcesador = userInfoService.getPuestoProcesadorActual();
-        for (SolicitudPresupuesto s : solicitudes) {
-            logger.debug("Procesando solicitud ID: {}, Solicitante: {}", s.getId(), s.getSolicitante());
-            s.setEstatusConfirmacion("Procesado");
-            s.setFechaActualizacion(java.time.Instant.now());
-            solicitudPresupuestoRepository.save(s);
-            logger.debug("Enviando correo de solicitud procesada a: {}", s.getCorreo());
-            emailService.sendSolicitudProcesadaEmail(
-                s.getCorreo(),
-                s,
-                nombreProcesador,
-                puestoProcesador
-            );
-        }
-        logger.info("Exportando a Excel...");
-        byte[] excelBytes = exportarExcel(solicitudes);
-        logger.info("Exportación a Excel finalizada.");
-        // DEBUG: Tamaño y primeros bytes
-        logger.debug("Excel generado, tamaño: {} bytes", excelBytes.length);
-        if (excelBytes.length > 16) {
-            StringBuilder sb = new StringBuilder();
-            for (int i = 0; i < 16; i++) {
-                sb.append(String.format("%02X ", excelBytes[i]));
-            }
-            logger.debug("Primeros 16 bytes del archivo: {}", sb.toString());
+    /**
+     * Marca como "Procesado" las solicitudes aprobadas, encola los correos y devuelve las solicitudes procesadas.
+     */
+    public List<SolicitudPresupuesto> procesarSolicitudesAprobadas() {
+        return procesarSolicitudesAprobadas(
+            userInfoService.getNombreProcesadorActual(),
+            userInfoService.getPuestoProcesadorActual(),
+            (procesadas, total) -> {});
+    }
+
+    /**
+     * Igual que procesarSolicitudesAprobadas(), para ejecutarse fuera del hilo de la petición
+     * (el procesador se recibe explícitamente porque no hay SecurityContext).
+     * Cada transición es condicional al estatus "Aprobado": si dos ejecuciones coinciden, cada
+     * solicitud se procesa y se notifica una sola vez.
+     *
+     * @param progreso recibe (procesadas, total) después de cada lote
+     */
+    public List<SolicitudPresupuesto> procesarSolicitudesAprobadas(String nombreProcesador, String puestoProcesador,
+                                                                   BiConsumer<Integer, Integer> progreso) {
+        logger.info("Iniciando procesamiento de solicitudes aprobadas...");
+        // 1. Consultar solo las solicitudes aprobadas (GSI estatusConfirmacion-index)
+        List<SolicitudPresupuesto> aprobadas = solicitudPresupuestoRepository.findByEstatus(EstatusSolicitud.APROBADO);
+        logger.info("Solicitudes encontradas con estatus 'Aprobado': {}", aprobadas.size());
+        progreso.accept(0, aprobadas.size());
+
+        // 2. Cambiar estatus en lotes de 25 (UpdateItem: solo estatus, fecha y versión), condicionado a
+        //    que sigan "Aprobado". Cada transacción encola también el correo de cada solicitud con la
+        //    versión nueva: solo se notifican las transiciones propias y el envío por SES ocurre en
+        //    segundo plano (EmailOutboxDispatcher)
+        List<SolicitudPresupuesto> solicitudes = new ArrayList<>();
+        for (int i = 0; i < aprobadas.size(); i += PROGRESS_CHUNK) {
+            List<SolicitudPresupuesto> lote = aprobadas.subList(i, Math.min(i + PROGRESS_CHUNK, aprobadas.size()));
+            solicitudes.addAll(solicitudPresupuestoRepository.cambiarEstatusEnLote(lote, EstatusSolicitud.PROCESADO, ESTATUS_APROBADO,
+                s -> emailService.correoSolicitudProcesada(s.getCorreo(), s, nombreProcesador, puestoProcesador)));
+            progreso.accept(Math.min(i + PROGRESS_CHUNK, aprobadas.size()), aprobadas.size());
         }
-        return excelBytes;
+        logger.info("Estatus 'Procesado' guardado para {} solicitudes ({} ya procesadas por otra ejecución)",
+            solicitudes.size(), aprobadas.size() - solicitudes.size());
+        return solicitudes;
     }
 
-    // Cambia para devolver byte[]
-    private byte[] exportarExcel(List<SolicitudPresupuesto> solicitudes) throws IOException {
-        try (Workbook workbook = new XSSFWorkbook()) {
+    /**
+     * Escribe el Excel directamente en el stream usando SXSSF: solo ROW_WINDOW filas viven en heap,
+     * el resto se vuelca a un archivo temporal, así la memoria no crece con el número de filas.
+     */
+    public void exportarExcel(List<SolicitudPresupuesto> solicitudes, OutputStream out) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
+        try {
             Sheet sheet = workbook.createSheet("Solicitudes Procesadas");
             Row header = sheet.createRow(0);
             header.createCell(0).setCellValue("Presupuesto");
@@ -97,6 +109,8 @@ public class ProcesarSolicitudesService {
             header.createCell(4).setCellValue("Monto");
             // ...puedes agregar más columnas si lo deseas...
 
+            // Una sola foto de los catálogos para todo el archivo: búsquedas O(1) por fila
+            ReferenceDataCache.Snapshot referencia = referenceDataCache.snapshot();
             int rowIdx = 1;
             for (SolicitudPresupuesto s : solicitudes) {
                 Row row = sheet.createRow(rowIdx++);
@@ -118,7 +132,7 @@ public class ProcesarSolicitudesService {
                 String presupuesto = null;
                 Presupuesto presupuestoObj = null;
                 try {
-                    presupuestoObj = presupuestoRepository.findByCecoAndCuentaGastos(ceco, cuentaGastos)
+                    presupuestoObj = referencia.findPresupuesto(ceco, cuentaGastos)
                         .orElse(null);
                     logger.debug("Resultado búsqueda presupuestoObj: {}", presupuestoObj);
                 } catch (Exception ex) {
@@ -132,7 +146,7 @@ public class ProcesarSolicitudesService {
                     // Si no existe, buscar PresupuestoDefault en la tabla de departamentos
                     Departamento depto = null;
                     try {
-                        depto = departamentoRepository.findByCeco(ceco);
+                        depto = referencia.findDepartamentoByCeco(ceco);
                         logger.debug("Resultado búsqueda departamento: {}", depto);
                     } catch (Exception ex) {
                         logger.warn("Error buscando departamento para CeCo {}: {}", ceco, ex.getMessage());
@@ -156,10 +170,11 @@ public class ProcesarSolicitudesService {
                 // Monto
                 row.createCell(4).setCellValue(s.getMontoSubtotal());
             }
-            try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-                workbook.write(baos);
-                return baos.toByteArray();
-            }
+            workbook.write(out);
+        } finally {
+            // Elimina los archivos temporales de SXSSF
+            workbook.dispose();
+            workbook.close();
         }
     }
-}
\ No newline at end of file
+}
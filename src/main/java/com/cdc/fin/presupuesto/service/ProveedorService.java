@@ -1,9 +1,9 @@
 package com.cdc.fin.presupuesto.service;
 
 import com.cdc.fin.presupuesto.model.Proveedor;
+import com.cdc.fin.presupuesto.repository.CatalogImportSession;
 import com.cdc.fin.presupuesto.repository.ProveedorRepository;
-import com.opencsv.CSVReader;
-import com.opencsv.CSVReaderBuilder;
+import com.cdc.fin.presupuesto.util.RecordReader;
 import com.opencsv.exceptions.CsvException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,32 +11,26 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 
 @Service
 public class ProveedorService {
-    @Autowired(required = false)
-    private software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient dynamoDbEnhancedClient;
+    private static final Logger logger = LoggerFactory.getLogger(ProveedorService.class);
 
-    private software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable<Proveedor> proveedorTable;
+    @Autowired
+    private ProveedorRepository proveedorRepository;
 
-    @Autowired(required = false)
-    public void setProveedorTable(@org.springframework.beans.factory.annotation.Value("${aws.dynamodb.table.proveedores:fin-dynamodb-${ENVIRONMENT:qa}-presupuesto-proveedores}") String proveedorTableName) {
-        if (dynamoDbEnhancedClient != null) {
-            // El nombre debe ser exactamente el de la tabla DynamoDB
-            this.proveedorTable = dynamoDbEnhancedClient.table(proveedorTableName, software.amazon.awssdk.enhanced.dynamodb.TableSchema.fromBean(Proveedor.class));
-        }
-    }
+    @Autowired
+    private ImportMetrics importMetrics;
 
-    private static final Logger logger = LoggerFactory.getLogger(ProveedorService.class);
+    @Autowired
+    private ProveedorTypeahead proveedorTypeahead;
 
     @Autowired
-    private ProveedorRepository proveedorRepository;
+    private CsvImportPipeline csvImportPipeline;
 
     public List<Proveedor> getAllProveedores() {
         return proveedorRepository.findAll();
@@ -47,115 +41,67 @@ public class ProveedorService {
     }
 
     public Proveedor saveProveedor(Proveedor proveedor) {
-        return proveedorRepository.save(proveedor);
+        Proveedor saved = proveedorRepository.save(proveedor);
+        proveedorTypeahead.upsert(saved);
+        return saved;
     }
 
     public void deleteProveedor(String id) {
         proveedorRepository.deleteById(id);
+        proveedorTypeahead.remove(id);
+    }
+
+    /**
+     * Import proveedores from CSV file.
+     * @param file CSV file
+     * @param replaceAll If true, the imported proveedores replace the whole catalog (generational swap)
+     * @return Map with import summary and errors
+     */
+    public Map<String, Object> importProveedoresFromCSV(MultipartFile file, boolean replaceAll) throws IOException, CsvException {
+        return importProveedoresFromCSV(file, replaceAll, false);
     }
 
     /**
-     * Bulk insert proveedores using DynamoDB batchWrite.
-     * Falls back to saveAll if DynamoDB Enhanced Client is not configured.
+     * @param delta si es true el archivo es el catálogo completo y solo se escriben altas, cambios y bajas
      */
-    private void batchInsertProveedores(List<Proveedor> proveedores) {
-        logger.info("Intentando guardar {} proveedores en DynamoDB...", proveedores.size());
-        if (dynamoDbEnhancedClient == null) {
-            logger.warn("DynamoDbEnhancedClient no está configurado. Usando saveAll en repositorio.");
-            proveedorRepository.saveAll(proveedores);
-            return;
-        }
-        if (proveedorTable == null) {
-            logger.warn("proveedorTable no está configurada. Usando saveAll en repositorio.");
-            proveedorRepository.saveAll(proveedores);
-            return;
-        }
-        int batchSize = 25; // DynamoDB batch write limit
-        for (int i = 0; i < proveedores.size(); i += batchSize) {
-            List<Proveedor> batch = proveedores.subList(i, Math.min(i + batchSize, proveedores.size()));
-            software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch.Builder<Proveedor> writeBatchBuilder =
-                software.amazon.awssdk.enhanced.dynamodb.model.WriteBatch.builder(Proveedor.class)
-                    .mappedTableResource(proveedorTable);
-            for (Proveedor proveedor : batch) {
-                writeBatchBuilder.addPutItem(proveedor);
-            }
-            software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest.Builder batchWriteBuilder =
-                software.amazon.awssdk.enhanced.dynamodb.model.BatchWriteItemEnhancedRequest.builder();
-            batchWriteBuilder.addWriteBatch(writeBatchBuilder.build());
-            try {
-                dynamoDbEnhancedClient.batchWriteItem(batchWriteBuilder.build());
-                logger.info("Batch insert exitoso para {} proveedores.", batch.size());
-            } catch (Exception e) {
-                logger.error("Error al guardar batch en DynamoDB: {}", e.getMessage(), e);
-            }
+    public Map<String, Object> importProveedoresFromCSV(MultipartFile file, boolean replaceAll, boolean delta) throws IOException, CsvException {
+        try (RecordReader lector = RecordReader.leer(file.getInputStream(), file.getOriginalFilename())) {
+            return importProveedoresFromCSV(lector, replaceAll, delta, null);
         }
     }
 
     /**
-     * Import proveedores from CSV file.
-     * @param file CSV file
-     * @param replaceAll If true, deletes all existing proveedores before import
-     * @return Map with import summary and errors
+     * Importación desde un archivo en disco (el guardado por una importación asíncrona), CSV o .xlsx según su nombre.
+     * @param progreso avance para consultas mientras corre; null si no se necesita
      */
-    public Map<String, Object> importProveedoresFromCSV(MultipartFile file, boolean replaceAll) throws IOException, CsvException {
+    public Map<String, Object> importProveedoresFromCSV(Path archivo, boolean replaceAll, boolean delta,
+                                                        CsvImportPipeline.Progreso progreso) throws IOException, CsvException {
+        try (RecordReader lector = RecordReader.abrir(archivo)) {
+            return importProveedoresFromCSV(lector, replaceAll, delta, progreso);
+        }
+    }
+
+    private Map<String, Object> importProveedoresFromCSV(RecordReader lector, boolean replaceAll, boolean delta,
+                                                         CsvImportPipeline.Progreso progreso) throws IOException, CsvException {
+        long inicio = System.nanoTime();
         logger.info("Iniciando importación de proveedores desde CSV...");
-        List<String> errors = new ArrayList<>();
-        int successCount = 0;
-        int errorCount = 0;
-        List<Proveedor> proveedoresExitosos = new ArrayList<>();
-
-        try (CSVReader csvReader = new CSVReaderBuilder(new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))
-                .withSkipLines(1)
-                .build()) {
-            String[] record;
-            int rowNumber = 2;
-            while ((record = csvReader.readNext()) != null) {
-                if (record.length < 11) {
-                    errors.add("Row " + rowNumber + ": Insufficient columns (expected 11, got " + record.length + ")");
-                    errorCount++;
-                    rowNumber++;
-                    continue;
-                }
-                Proveedor proveedor = new Proveedor();
-                proveedor.setId(getColumnValue(record, 0));
-                proveedor.setNombre(getColumnValue(record, 1));
-                proveedor.setDuplicado(getColumnValue(record, 2));
-                proveedor.setCategoria(getColumnValue(record, 3));
-                proveedor.setSubsidiariaPrincipal(getColumnValue(record, 4));
-                proveedor.setContactoPrincipal(getColumnValue(record, 5));
-                proveedor.setTelefono(getColumnValue(record, 6));
-                proveedor.setCorreoElectronico(getColumnValue(record, 7));
-                proveedor.setAccesoInicioSesion(getColumnValue(record, 8));
-                proveedor.setNumeroProveedor(getColumnValue(record, 9));
-                proveedor.setCuentasGastos(getColumnValue(record, 10));
-
-                if (proveedor.getId().isEmpty()) {
-                    errors.add("Línea " + rowNumber + ": El campo 'ID' es requerido (vacío) - OMITIDO");
-                    errorCount++;
-                    rowNumber++;
-                    continue;
-                }
-                if (proveedor.getNombre().isEmpty()) {
-                    errors.add("Línea " + rowNumber + ": El campo 'Nombre' es requerido (vacío) - ID: '" + proveedor.getId() + "' - OMITIDO");
-                    errorCount++;
-                    rowNumber++;
-                    continue;
-                }
-                String idLower = proveedor.getId().toLowerCase();
-                if (idLower.contains("contador") || idLower.contains("tax agency") || idLower.equals("1") || idLower.equals("default")) {
-                    errors.add("Línea " + rowNumber + ": Parece ser dato de sistema/referencia - ID: '" + proveedor.getId() + "' - OMITIDO");
-                    errorCount++;
-                    rowNumber++;
-                    continue;
-                }
-                successCount++;
-                proveedoresExitosos.add(proveedor);
-                rowNumber++;
+        Map<String, Object> result;
+
+        try (CatalogImportSession<Proveedor> sesion = proveedorRepository.iniciarImportacion(CatalogImportSession.Modo.de(replaceAll, delta));
+             CsvImportPipeline.Reporte reporte = csvImportPipeline.nuevoReporte(progreso)) {
+            lector.leerRegistro(); // Encabezado
+            lector.seleccionar(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+            csvImportPipeline.importar(reporte, lector::leerRegistro, 2, this::mapearProveedor, null,
+                sesion::escribir, proveedor -> "Proveedor " + proveedor.getId());
+            lector.getAdvertencias().forEach(reporte::advertencia);
+            CatalogImportSession.Cierre cierre = sesion.terminar();
+            for (String id : cierre.getNoEliminados()) {
+                reporte.advertencia("Proveedor " + id + ": no se pudo eliminar");
             }
-
-            if (replaceAll) {
-                logger.info("Eliminando todos los proveedores existentes antes de importar.");
-                proveedorRepository.deleteAll();
+            cierre.getAdvertencias().forEach(reporte::advertencia);
+            result = reporte.resumen();
+            if (cierre.getDiff() != null) {
+                result.put("diff", cierre.getDiff());
             }
         } catch (IOException e) {
             logger.error("Error leyendo el archivo CSV: {}", e.getMessage(), e);
@@ -164,22 +110,11 @@ public class ProveedorService {
             logger.error("Error parseando el archivo CSV: {}", e.getMessage(), e);
             throw new CsvException("Error parsing CSV file: " + e.getMessage());
         }
+        // El catálogo cambió (con replaceAll, por una generación nueva): se recarga el autocompletado
+        proveedorTypeahead.refreshAfterWrite();
 
-        // Guarda solo los exitosos
-        if (!proveedoresExitosos.isEmpty()) {
-            logger.info("Guardando {} proveedores importados...", proveedoresExitosos.size());
-            batchInsertProveedores(proveedoresExitosos);
-        } else {
-            logger.warn("No hay proveedores válidos para guardar.");
-        }
-
-        Map<String, Object> result = new HashMap<>();
-        result.put("success", errorCount == 0);
-        result.put("totalRecords", successCount + errorCount);
-        result.put("successCount", successCount);
-        result.put("errorCount", errorCount);
-        result.put("errors", errors);
-
+        int successCount = (Integer) result.get("successCount");
+        int errorCount = (Integer) result.get("errorCount");
         if (errorCount > 0) {
             result.put("message", String.format("Importación completada con advertencias: %d exitosos, %d errores/omitidos. Consulta el detalle de errores.", successCount, errorCount));
         } else {
@@ -188,9 +123,43 @@ public class ProveedorService {
 
         logger.info("Importación de CSV de proveedores completada. Éxito: {}, Errores/Omitidos: {}", successCount, errorCount);
 
+        importMetrics.registrar("proveedores", inicio, successCount, errorCount);
         return result;
     }
 
+    /**
+     * Convierte y valida una fila del CSV (se ejecuta en paralelo por bloques).
+     */
+    private Proveedor mapearProveedor(String[] record) {
+        if (record.length < 11) {
+            throw new IllegalArgumentException("Columnas insuficientes (se esperaban 11, se obtuvieron " + record.length + ")");
+        }
+        Proveedor proveedor = new Proveedor();
+        proveedor.setId(getColumnValue(record, 0));
+        proveedor.setNombre(getColumnValue(record, 1));
+        proveedor.setDuplicado(getColumnValue(record, 2));
+        proveedor.setCategoria(getColumnValue(record, 3));
+        proveedor.setSubsidiariaPrincipal(getColumnValue(record, 4));
+        proveedor.setContactoPrincipal(getColumnValue(record, 5));
+        proveedor.setTelefono(getColumnValue(record, 6));
+        proveedor.setCorreoElectronico(getColumnValue(record, 7));
+        proveedor.setAccesoInicioSesion(getColumnValue(record, 8));
+        proveedor.setNumeroProveedor(getColumnValue(record, 9));
+        proveedor.setCuentasGastos(getColumnValue(record, 10));
+
+        if (proveedor.getId().isEmpty()) {
+            throw new IllegalArgumentException("El campo 'ID' es requerido (vacío) - OMITIDO");
+        }
+        if (proveedor.getNombre().isEmpty()) {
+            throw new IllegalArgumentException("El campo 'Nombre' es requerido (vacío) - ID: '" + proveedor.getId() + "' - OMITIDO");
+        }
+        String idLower = proveedor.getId().toLowerCase();
+        if (idLower.contains("contador") || idLower.contains("tax agency") || idLower.equals("1") || idLower.equals("default")) {
+            throw new IllegalArgumentException("Parece ser dato de sistema/referencia - ID: '" + proveedor.getId() + "' - OMITIDO");
+        }
+        return proveedor;
+    }
+
     /**
      * Safe method to get column value with bounds checking
      */
@@ -219,17 +188,19 @@ public class ProveedorService {
     }
 
     /**
-     * Paginación de proveedores filtrando por nombre (mínimo 3 letras).
+     * Paginación de proveedores filtrando por nombre o número de proveedor (mínimo 3 letras).
+     * Se resuelve con el índice de autocompletado: sin acentos ni mayúsculas y ordenado por relevancia.
      */
     public Map<String, Object> getProveedoresPaginatedByNombre(String nombre, int page, int size) {
-        String nombreLower = nombre.toLowerCase();
-        List<Proveedor> filtered = proveedorRepository.findAll().stream()
-            .filter(p -> p.getNombre() != null && p.getNombre().toLowerCase().contains(nombreLower))
-            .toList();
-        int total = filtered.size();
-        int fromIndex = Math.min(page * size, total);
-        int toIndex = Math.min(fromIndex + size, total);
-        List<Proveedor> paged = filtered.subList(fromIndex, toIndex);
+        page = Math.max(page, 0);
+        size = Math.max(size, 0);
+        int topK = (int) Math.min((long) (page + 1) * size, Integer.MAX_VALUE);
+        ProveedorTypeahead.Resultado encontrados = proveedorTypeahead.buscar(nombre, topK);
+        List<Proveedor> ranked = encontrados.getProveedores();
+        int total = encontrados.getTotal();
+        int fromIndex = (int) Math.min((long) page * size, ranked.size());
+        int toIndex = Math.min(fromIndex + size, ranked.size());
+        List<Proveedor> paged = ranked.subList(fromIndex, toIndex);
         Map<String, Object> result = new HashMap<>();
         result.put("total", total);
         result.put("page", page);
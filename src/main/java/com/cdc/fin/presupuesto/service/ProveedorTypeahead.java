@@ -0,0 +1,320 @@
+package com.cdc.fin.presupuesto.service;
+
+import com.cdc.fin.presupuesto.model.Proveedor;
+import com.cdc.fin.presupuesto.repository.ProveedorRepository;
+import com.cdc.fin.presupuesto.util.TextoBusqueda;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Autocompletado de proveedores por nombre y número de proveedor.
+ * <p>
+ * Mantiene una foto inmutable con: los tokens normalizados (sin acentos ni mayúsculas) de cada
+ * nombre y número ordenados, que funcionan como un trie aplanado donde un prefijo es un rango
+ * contiguo encontrado por búsqueda binaria; y un índice de trigramas para las coincidencias en
+ * medio de una palabra. El costo de una consulta depende del número de coincidencias y no del
+ * tamaño del catálogo. La foto se reemplaza completa en cada cambio; los lectores nunca ven un
+ * estado parcial.
+ */
+@Component
+public class ProveedorTypeahead {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProveedorTypeahead.class);
+
+    // Rangos de relevancia: menor es mejor
+    private static final int RANK_EXACTO = 0;
+    private static final int RANK_PREFIJO_NOMBRE = 1;
+    private static final int RANK_PREFIJO_PALABRA = 2;
+    private static final int RANK_CONTIENE = 3;
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final ProveedorRepository proveedorRepository;
+
+    private volatile Snapshot snapshot;
+
+    public ProveedorTypeahead(ProveedorRepository proveedorRepository) {
+        this.proveedorRepository = proveedorRepository;
+    }
+
+    /**
+     * Resultado de una búsqueda: los mejores k proveedores en orden de relevancia y el total de coincidencias.
+     */
+    public static final class Resultado {
+        private final List<Proveedor> proveedores;
+        private final int total;
+
+        Resultado(List<Proveedor> proveedores, int total) {
+            this.proveedores = proveedores;
+            this.total = total;
+        }
+
+        public List<Proveedor> getProveedores() { return proveedores; }
+        public int getTotal() { return total; }
+    }
+
+    /**
+     * Foto inmutable del catálogo de proveedores indexada para búsqueda.
+     */
+    public static final class Snapshot {
+        final Proveedor[] proveedores;
+        final String[] nombres;
+        // Tokens (palabras del nombre y número de proveedor) ordenados, con el proveedor al que pertenecen
+        final String[] tokens;
+        final int[] tokenDoc;
+        final Map<Long, int[]> trigramas;
+        // Desempate precalculado: posición de cada proveedor ordenado por longitud del nombre y luego alfabético
+        final int[] posicion;
+        final int[] porPosicion;
+
+        Snapshot(List<Proveedor> lista) {
+            proveedores = lista.toArray(new Proveedor[0]);
+            nombres = new String[proveedores.length];
+            List<String> tokensPorDoc = new ArrayList<>();
+            List<Integer> docsPorToken = new ArrayList<>();
+            Map<Long, List<Integer>> postings = new HashMap<>();
+            for (int doc = 0; doc < proveedores.length; doc++) {
+                Proveedor p = proveedores[doc];
+                String nombre = p.getNombre() != null ? TextoBusqueda.plegar(p.getNombre().trim()) : "";
+                nombres[doc] = nombre;
+                for (String token : TOKEN_SEPARATOR.split(nombre)) {
+                    if (!token.isEmpty()) {
+                        tokensPorDoc.add(token);
+                        docsPorToken.add(doc);
+                    }
+                }
+                if (p.getNumeroProveedor() != null && !p.getNumeroProveedor().isBlank()) {
+                    tokensPorDoc.add(TextoBusqueda.plegar(p.getNumeroProveedor().trim()));
+                    docsPorToken.add(doc);
+                }
+                for (int i = 0; i + 3 <= nombre.length(); i++) {
+                    List<Integer> docs = postings.computeIfAbsent(trigrama(nombre, i), k -> new ArrayList<>());
+                    if (docs.isEmpty() || docs.get(docs.size() - 1) != doc) docs.add(doc);
+                }
+            }
+            Integer[] orden = new Integer[tokensPorDoc.size()];
+            for (int i = 0; i < orden.length; i++) orden[i] = i;
+            Arrays.sort(orden, Comparator.comparing(tokensPorDoc::get));
+            tokens = new String[orden.length];
+            tokenDoc = new int[orden.length];
+            for (int i = 0; i < orden.length; i++) {
+                tokens[i] = tokensPorDoc.get(orden[i]);
+                tokenDoc[i] = docsPorToken.get(orden[i]);
+            }
+            Map<Long, int[]> compactos = new HashMap<>(postings.size() * 2);
+            postings.forEach((k, v) -> compactos.put(k, v.stream().mapToInt(Integer::intValue).toArray()));
+            trigramas = compactos;
+
+            Integer[] porNombre = new Integer[proveedores.length];
+            for (int i = 0; i < porNombre.length; i++) porNombre[i] = i;
+            Arrays.sort(porNombre, Comparator.<Integer>comparingInt(doc -> nombres[doc].length())
+                .thenComparing(doc -> nombres[doc]));
+            posicion = new int[proveedores.length];
+            porPosicion = new int[proveedores.length];
+            for (int i = 0; i < porNombre.length; i++) {
+                posicion[porNombre[i]] = i;
+                porPosicion[i] = porNombre[i];
+            }
+        }
+
+        public int size() { return proveedores.length; }
+
+        Resultado buscar(String texto, int k) {
+            String q = TextoBusqueda.plegar(texto.trim());
+            if (q.isEmpty() || proveedores.length == 0) return new Resultado(List.of(), 0);
+            // Mejor rango de cada proveedor encontrado; crece con las coincidencias, no con el catálogo
+            Map<Integer, Integer> rango = new HashMap<>();
+
+            // Prefijo de palabra o de número de proveedor: rango contiguo en los tokens ordenados
+            for (int i = primerTokenConPrefijo(q); i < tokens.length && tokens[i].startsWith(q); i++) {
+                int doc = tokenDoc[i];
+                if (!rango.containsKey(doc)) {
+                    rango.put(doc, rangoNombre(doc, q, RANK_PREFIJO_PALABRA));
+                }
+            }
+            // Coincidencia en medio de una palabra: intersección de trigramas y verificación
+            if (q.length() >= 3) {
+                for (int doc : candidatos(q)) {
+                    if (!rango.containsKey(doc) && nombres[doc].contains(q)) {
+                        rango.put(doc, rangoNombre(doc, q, RANK_CONTIENE));
+                    }
+                }
+            }
+            int total = rango.size();
+
+            // Top-k con un heap acotado de llaves primitivas (rango, posición alfabética por longitud)
+            long[] heap = new long[Math.max(1, Math.min(k, total))];
+            int size = 0;
+            for (Map.Entry<Integer, Integer> encontrado : rango.entrySet()) {
+                if (k <= 0) break;
+                long llave = ((long) encontrado.getValue() << 32) | posicion[encontrado.getKey()];
+                if (size < heap.length) {
+                    heap[size] = llave;
+                    subir(heap, size++);
+                } else if (llave < heap[0]) {
+                    heap[0] = llave;
+                    bajar(heap, size);
+                }
+            }
+            long[] mejores = Arrays.copyOf(heap, size);
+            Arrays.sort(mejores);
+            List<Proveedor> resultado = new ArrayList<>(size);
+            for (long llave : mejores) resultado.add(proveedores[porPosicion[(int) llave]]);
+            return new Resultado(resultado, total);
+        }
+
+        // Max-heap: la cabeza es la peor de las k mejores llaves
+        private static void subir(long[] heap, int i) {
+            while (i > 0) {
+                int padre = (i - 1) >>> 1;
+                if (heap[padre] >= heap[i]) return;
+                long tmp = heap[padre]; heap[padre] = heap[i]; heap[i] = tmp;
+                i = padre;
+            }
+        }
+
+        private static void bajar(long[] heap, int size) {
+            int i = 0;
+            while (true) {
+                int mayor = i, izq = 2 * i + 1, der = izq + 1;
+                if (izq < size && heap[izq] > heap[mayor]) mayor = izq;
+                if (der < size && heap[der] > heap[mayor]) mayor = der;
+                if (mayor == i) return;
+                long tmp = heap[mayor]; heap[mayor] = heap[i]; heap[i] = tmp;
+                i = mayor;
+            }
+        }
+
+        private int rangoNombre(int doc, String q, int porDefecto) {
+            if (nombres[doc].equals(q)) return RANK_EXACTO;
+            if (nombres[doc].startsWith(q)) return RANK_PREFIJO_NOMBRE;
+            return porDefecto;
+        }
+
+        private int primerTokenConPrefijo(String q) {
+            int lo = 0, hi = tokens.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (tokens[mid].compareTo(q) < 0) lo = mid + 1; else hi = mid;
+            }
+            return lo;
+        }
+
+        private int[] candidatos(String q) {
+            int[][] listas = new int[q.length() - 2][];
+            for (int i = 0; i < listas.length; i++) {
+                listas[i] = trigramas.get(trigrama(q, i));
+                if (listas[i] == null) return new int[0];
+            }
+            Arrays.sort(listas, Comparator.comparingInt(l -> l.length));
+            int[] base = listas[0];
+            int[] out = new int[base.length];
+            int n = 0;
+            siguiente:
+            for (int doc : base) {
+                for (int i = 1; i < listas.length; i++) {
+                    if (Arrays.binarySearch(listas[i], doc) < 0) continue siguiente;
+                }
+                out[n++] = doc;
+            }
+            return Arrays.copyOf(out, n);
+        }
+
+        private static long trigrama(String texto, int i) {
+            return ((long) texto.charAt(i) << 32) | ((long) texto.charAt(i + 1) << 16) | texto.charAt(i + 2);
+        }
+    }
+
+    /**
+     * Los k proveedores más relevantes para el texto: coincidencia exacta, luego prefijo del nombre,
+     * prefijo de una palabra o del número de proveedor y por último coincidencia en cualquier posición.
+     */
+    public Resultado buscar(String texto, int k) {
+        return snapshot().buscar(texto, k);
+    }
+
+    public Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                // Otra petición pudo cargarla mientras se esperaba el candado
+                current = snapshot;
+                if (current == null) {
+                    current = refresh();
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Recarga el catálogo completo desde DynamoDB y publica una nueva foto.
+     */
+    public synchronized Snapshot refresh() {
+        Snapshot fresh = new Snapshot(proveedorRepository.findAll());
+        snapshot = fresh;
+        logger.info("Índice de autocompletado de proveedores actualizado: {} proveedores", fresh.size());
+        return fresh;
+    }
+
+    /**
+     * Aplica un alta o cambio sobre la foto vigente sin releer la tabla.
+     */
+    public synchronized void upsert(Proveedor proveedor) {
+        Snapshot current = snapshot;
+        if (current == null || proveedor == null || proveedor.getId() == null) return;
+        Map<String, Proveedor> porId = porId(current);
+        porId.put(proveedor.getId(), proveedor);
+        snapshot = new Snapshot(new ArrayList<>(porId.values()));
+    }
+
+    public synchronized void remove(String id) {
+        Snapshot current = snapshot;
+        if (current == null || id == null) return;
+        Map<String, Proveedor> porId = porId(current);
+        if (porId.remove(id) != null) {
+            snapshot = new Snapshot(new ArrayList<>(porId.values()));
+        }
+    }
+
+    /**
+     * Recarga tras una importación. Si falla se descarta la foto para que la siguiente búsqueda la vuelva a cargar.
+     */
+    public void refreshAfterWrite() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            logger.warn("No se pudo refrescar el autocompletado de proveedores tras escritura, se invalidará: {}", e.getMessage());
+            snapshot = null;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${presupuesto.cache.proveedores.refresh-ms:600000}",
+               initialDelayString = "${presupuesto.cache.proveedores.refresh-ms:600000}")
+    public void scheduledRefresh() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            // Se conserva la foto anterior si DynamoDB no responde
+            logger.warn("No se pudo refrescar el autocompletado de proveedores: {}", e.getMessage());
+        }
+    }
+
+    private static Map<String, Proveedor> porId(Snapshot snapshot) {
+        Map<String, Proveedor> porId = new LinkedHashMap<>(snapshot.proveedores.length * 2);
+        for (Proveedor p : snapshot.proveedores) {
+            porId.put(p.getId(), p);
+        }
+        return porId;
+    }
+}
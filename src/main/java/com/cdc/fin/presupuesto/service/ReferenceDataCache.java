@@ -0,0 +1,214 @@
+package com.cdc.fin.presupuesto.service;
+
+import com.cdc.fin.presupuesto.model.Departamento;
+import com.cdc.fin.presupuesto.model.Presupuesto;
+import com.cdc.fin.presupuesto.repository.DepartamentoRepository;
+import com.cdc.fin.presupuesto.repository.PresupuestoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caché en memoria de presupuestos y departamentos.
+ * Mantiene una foto inmutable (versionada) indexada por (CeCo, CuentaGastos) y por CeCo,
+ * de modo que las búsquedas son O(1) en lugar de un scan completo por consulta.
+ * La foto se reemplaza completa en cada refresco; los lectores nunca ven un estado parcial.
+ * Un alta, cambio o baja individual se aplica sobre la foto vigente sin releer las tablas; la
+ * recarga completa queda para el refresco periódico y las importaciones, y estas la piden en
+ * segundo plano (varias peticiones seguidas se agrupan en una sola recarga).
+ */
+@Component
+public class ReferenceDataCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReferenceDataCache.class);
+
+    private final PresupuestoRepository presupuestoRepository;
+    private final DepartamentoRepository departamentoRepository;
+    private final TaskExecutor refreshExecutor;
+    // Hay una recarga en cola que todavía no empieza: otra petición no agrega una más
+    private final AtomicBoolean recargaPendiente = new AtomicBoolean();
+
+    private volatile Snapshot snapshot;
+    private long lastVersion;
+
+    @Autowired
+    public ReferenceDataCache(PresupuestoRepository presupuestoRepository,
+                              DepartamentoRepository departamentoRepository,
+                              @Qualifier("cacheRefreshExecutor") TaskExecutor refreshExecutor) {
+        this.presupuestoRepository = presupuestoRepository;
+        this.departamentoRepository = departamentoRepository;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /** Recarga en el hilo que la pide (benchmarks y pruebas). */
+    public ReferenceDataCache(PresupuestoRepository presupuestoRepository,
+                              DepartamentoRepository departamentoRepository) {
+        this(presupuestoRepository, departamentoRepository, Runnable::run);
+    }
+
+    /**
+     * Foto inmutable de los catálogos de referencia.
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final Instant loadedAt;
+        private final Map<String, Presupuesto> presupuestoByCecoCuenta;
+        private final Map<String, Departamento> departamentoByCeco;
+        // Catálogos en el orden leído, para derivar la siguiente foto tras un cambio individual
+        private final List<Presupuesto> presupuestos;
+        private final List<Departamento> departamentos;
+
+        Snapshot(long version, List<Presupuesto> presupuestos, List<Departamento> departamentos) {
+            this.version = version;
+            this.loadedAt = Instant.now();
+            this.presupuestos = List.copyOf(presupuestos);
+            this.departamentos = List.copyOf(departamentos);
+            Map<String, Presupuesto> byCecoCuenta = new HashMap<>();
+            for (Presupuesto p : presupuestos) {
+                if (p.getCeco() != null && p.getCuentaGastos() != null) {
+                    byCecoCuenta.putIfAbsent(key(p.getCeco(), p.getCuentaGastos()), p);
+                }
+            }
+            Map<String, Departamento> byCeco = new HashMap<>();
+            for (Departamento d : departamentos) {
+                if (d.getCeco() != null) {
+                    byCeco.putIfAbsent(d.getCeco(), d);
+                }
+            }
+            this.presupuestoByCecoCuenta = Map.copyOf(byCecoCuenta);
+            this.departamentoByCeco = Map.copyOf(byCeco);
+        }
+
+        public long getVersion() { return version; }
+        public Instant getLoadedAt() { return loadedAt; }
+
+        public Optional<Presupuesto> findPresupuesto(String ceco, String cuentaGastos) {
+            if (ceco == null || cuentaGastos == null) return Optional.empty();
+            return Optional.ofNullable(presupuestoByCecoCuenta.get(key(ceco, cuentaGastos)));
+        }
+
+        public Departamento findDepartamentoByCeco(String ceco) {
+            return ceco != null ? departamentoByCeco.get(ceco) : null;
+        }
+
+        private static String key(String ceco, String cuentaGastos) {
+            return ceco + '\u0000' + cuentaGastos;
+        }
+    }
+
+    /**
+     * Devuelve la foto vigente, cargándola la primera vez que se solicita.
+     * Los llamadores que hacen varias búsquedas deben tomar la foto una sola vez.
+     */
+    public Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            current = refresh();
+        }
+        return current;
+    }
+
+    public Optional<Presupuesto> findPresupuesto(String ceco, String cuentaGastos) {
+        return snapshot().findPresupuesto(ceco, cuentaGastos);
+    }
+
+    public Departamento findDepartamentoByCeco(String ceco) {
+        return snapshot().findDepartamentoByCeco(ceco);
+    }
+
+    /**
+     * Recarga ambos catálogos y publica una nueva versión.
+     * Se invoca de forma periódica y después de cada importación.
+     */
+    public synchronized Snapshot refresh() {
+        long version = ++lastVersion;
+        Snapshot fresh = new Snapshot(version, presupuestoRepository.findAll(), departamentoRepository.findAll());
+        snapshot = fresh;
+        logger.info("Caché de referencia actualizada (versión {}): {} presupuestos, {} departamentos",
+            version, fresh.presupuestoByCecoCuenta.size(), fresh.departamentoByCeco.size());
+        return fresh;
+    }
+
+    /**
+     * Aplica el alta o cambio de un departamento sobre la foto vigente, sin releer las tablas.
+     */
+    public synchronized void upsertDepartamento(Departamento departamento) {
+        Snapshot current = snapshot;
+        if (current == null || departamento == null || departamento.getId() == null) return;
+        List<Departamento> departamentos = new ArrayList<>(current.departamentos);
+        boolean reemplazado = false;
+        for (int i = 0; i < departamentos.size(); i++) {
+            if (departamento.getId().equals(departamentos.get(i).getId())) {
+                departamentos.set(i, departamento);
+                reemplazado = true;
+                break;
+            }
+        }
+        if (!reemplazado) {
+            departamentos.add(departamento);
+        }
+        snapshot = new Snapshot(++lastVersion, current.presupuestos, departamentos);
+    }
+
+    /**
+     * Quita un departamento de la foto vigente, sin releer las tablas.
+     */
+    public synchronized void removeDepartamento(String id) {
+        Snapshot current = snapshot;
+        if (current == null || id == null) return;
+        List<Departamento> departamentos = new ArrayList<>(current.departamentos);
+        if (departamentos.removeIf(d -> Objects.equals(id, d.getId()))) {
+            snapshot = new Snapshot(++lastVersion, current.presupuestos, departamentos);
+        }
+    }
+
+    /**
+     * Pide una recarga completa después de una importación, sin bloquear la petición. Si ya hay una
+     * recarga en cola no se agrega otra: esa todavía no ha leído las tablas y verá estos cambios.
+     * Si la recarga falla se descarta la foto vigente para que la siguiente lectura la vuelva a cargar.
+     */
+    public void refreshAfterWrite() {
+        if (!recargaPendiente.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                recargaPendiente.set(false);
+                try {
+                    refresh();
+                } catch (Exception e) {
+                    logger.warn("No se pudo refrescar la caché de referencia tras escritura, se invalidará: {}", e.getMessage());
+                    snapshot = null;
+                }
+            });
+        } catch (RuntimeException e) {
+            recargaPendiente.set(false);
+            logger.warn("No se pudo programar el refresco de la caché de referencia, se invalidará: {}", e.getMessage());
+            snapshot = null;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${presupuesto.cache.reference.refresh-ms:300000}",
+               initialDelayString = "${presupuesto.cache.reference.refresh-ms:300000}")
+    public void scheduledRefresh() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            // Se conserva la foto anterior si DynamoDB no responde
+            logger.warn("No se pudo refrescar la caché de referencia: {}", e.getMessage());
+        }
+    }
+}
@@ -5,7 +5,6 @@ import com.cdc.fin.presupuesto.repository.ScimUserRepository;
 import com.cdc.fin.presupuesto.model.ScimUser;
 import com.cdc.fin.presupuesto.model.ScimListResponse;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 @Service
 public class ScimUserService {
@@ -21,10 +20,8 @@ public class ScimUserService {
 
     // Crea usuario y retorna el objeto ScimUser
     public ScimUser createUser(ScimUser user) throws JsonProcessingException {
-        // Cambia para usar createUserFromJson si el objeto tiene schemas de extensión
-        ObjectMapper mapper = new ObjectMapper();
-        String json = mapper.writeValueAsString(user);
-        return userRepository.createUserFromJson(json);
+        // El objeto ya viene deserializado; no hace falta el viaje a JSON de createUserFromJson
+        return userRepository.createUser(user);
     }
 
     // Obtiene usuario por id
@@ -56,6 +53,11 @@ public class ScimUserService {
         return userRepository.listUsers(filter);
     }
 
+    // Lista usuarios aplicando la ventana SCIM startIndex/count
+    public ScimListResponse<ScimUser> listUsers(String filter, int startIndex, int count) throws JsonProcessingException {
+        return userRepository.listUsers(filter, startIndex, count);
+    }
+
     public ScimUser replaceUserFromJson(String id, String body) throws JsonProcessingException {
         org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ScimUserService.class);
         logger.debug("[SCIM][ScimUserService] Entrando a replaceUserFromJson con id={}, body={}", id, body);
@@ -0,0 +1,51 @@
+package com.cdc.fin.presupuesto.service;
+
+import com.cdc.fin.presupuesto.repository.SolicitudPresupuestoRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Normaliza al arrancar, en un hilo aparte, las solicitudes escritas antes de las reglas actuales:
+ * copias de búsqueda y estatus canónico (ver {@link SolicitudPresupuestoRepository#normalizarGuardadas()}).
+ * Es idempotente: si ya están normalizadas solo recorre la tabla.
+ */
+@Component
+public class SolicitudBackfill {
+
+    private static final Logger logger = LoggerFactory.getLogger(SolicitudBackfill.class);
+
+    private final SolicitudPresupuestoRepository repository;
+    private final boolean enabled;
+
+    public SolicitudBackfill(SolicitudPresupuestoRepository repository,
+                             @Value("${presupuesto.solicitudes.backfill.enabled:true}") boolean enabled) {
+        this.repository = repository;
+        this.enabled = enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void alIniciar() {
+        if (!enabled) {
+            return;
+        }
+        Thread hilo = new Thread(this::ejecutar, "backfill-solicitudes");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    void ejecutar() {
+        long inicio = System.nanoTime();
+        try {
+            int actualizadas = repository.normalizarGuardadas();
+            logger.info("Backfill de solicitudes: {} normalizadas ({} ms)",
+                actualizadas, (System.nanoTime() - inicio) / 1_000_000);
+        } catch (Exception e) {
+            // Se reintenta en el siguiente arranque
+            logger.warn("No se completó el backfill de solicitudes: {}", e.getMessage(), e);
+        }
+    }
+}
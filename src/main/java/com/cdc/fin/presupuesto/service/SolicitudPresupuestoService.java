@@ -2,6 +2,8 @@ package com.cdc.fin.presupuesto.service;
 
 import com.cdc.fin.presupuesto.model.SolicitudPresupuesto;
 import com.cdc.fin.presupuesto.repository.SolicitudPresupuestoRepository;
+import com.cdc.fin.presupuesto.util.EstatusSolicitud;
+import com.cdc.fin.presupuesto.util.SolicitudIdGenerator;
 import com.cdc.fin.presupuesto.util.UserAuthUtils;
 import com.cdc.fin.presupuesto.model.ScimUser;
 
@@ -9,12 +11,12 @@ import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 
 import java.time.Instant;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
 
 @Service
 public class SolicitudPresupuestoService {
@@ -25,18 +27,18 @@ public class SolicitudPresupuestoService {
 
     @Autowired
     private final UserAuthUtils userAuthUtils;
-
-    @Value("${presupuesto.solicitud.prefix:REQ-}")
-    private String solicitudPrefix;
+    private final SolicitudIdGenerator idGenerator;
 
     public SolicitudPresupuestoService(
         SolicitudPresupuestoRepository repository,
         EmailService emailService,
-        UserAuthUtils userAuthUtils
+        UserAuthUtils userAuthUtils,
+        SolicitudIdGenerator idGenerator
     ) {
         this.repository = repository;
         this.emailService = emailService;
         this.userAuthUtils = userAuthUtils;
+        this.idGenerator = idGenerator;
     }
     
     /**
@@ -69,18 +71,23 @@ public class SolicitudPresupuestoService {
         // String numeroEmpleado = scimUser != null ? scimUser.getEmployee_number() : null;
         // String departamento = scimUser != null ? scimUser.getUser_type() : null;
 
-        String id = UUID.randomUUID().toString();
-        String solicitudId = solicitudPrefix + System.currentTimeMillis();
+        // IDs ordenables por tiempo: únicos entre instancias y en creaciones concurrentes
+        String id = idGenerator.nextId();
+        String solicitudId = idGenerator.nextSolicitudId();
         
         solicitud.setId(id);
         solicitud.setSolicitudId(solicitudId);
-        solicitud.setEstatusConfirmacion("PENDIENTE");
+        solicitud.setEstatusConfirmacion(EstatusSolicitud.PENDIENTE);
         solicitud.setFechaCreacion(Instant.now());
         solicitud.setFechaActualizacion(Instant.now());
         solicitud.setCreadoPor(userEmail);
         solicitud.setActualizadoPor(userEmail);
         
-        SolicitudPresupuesto savedSolicitud = repository.save(solicitud);
+        // Alta condicional: si las llaves ya existen (nodo repetido) se generan otras
+        SolicitudPresupuesto savedSolicitud = repository.create(solicitud, s -> List.of(), s -> {
+            s.setId(idGenerator.nextId());
+            s.setSolicitudId(idGenerator.nextSolicitudId());
+        });
         
         return savedSolicitud;
     }
@@ -96,36 +103,35 @@ public class SolicitudPresupuestoService {
         // String userName = UserAuthUtils.getCurrentUserName();
         String userEmail ="";
 
-        Optional<SolicitudPresupuesto> existingSolicitud = repository.findById(id, solicitudId);
-        
-        if (existingSolicitud.isPresent()) {
-            SolicitudPresupuesto existing = existingSolicitud.get();
-            String oldStatus = existing.getEstatusConfirmacion();
-            
-            // Validar que el nuevo estatus sea válido
-            if (!isValidStatus(nuevoEstatus)) {
-                throw new IllegalArgumentException("Invalid status: " + nuevoEstatus);
-            }
-            
-            // Actualizar el estatus y comentarios
-            existing.setEstatusConfirmacion(nuevoEstatus);
-            existing.setComentarios(comentarios);
-            existing.setFechaActualizacion(Instant.now());
-            existing.setActualizadoPor(userEmail);
-            
-            SolicitudPresupuesto updatedSolicitud = repository.save(existing);
-            
-            return Optional.of(updatedSolicitud);
-        } else {
-            return Optional.empty();
+        // Validar que el nuevo estatus sea válido
+        if (!isValidStatus(nuevoEstatus)) {
+            throw new IllegalArgumentException("Invalid status: " + nuevoEstatus);
         }
+
+        // Cambio condicional y correo de la transición en una sola transacción; devuelve la imagen anterior
+        Map<String, String> campos = new HashMap<>();
+        campos.put("comentarios", comentarios);
+        campos.put("actualizadoPor", userEmail);
+        return repository.cambiarEstatus(id, solicitudId, nuevoEstatus, null, null, campos,
+                (anterior, posterior) -> emailService.correoCambioEstatus(
+                    anterior.getEstatusConfirmacion(), nuevoEstatus, posterior.getCorreo(), posterior,
+                    comentarios, "", ""))
+            .map(existing -> {
+                existing.setEstatusConfirmacion(EstatusSolicitud.normalizar(nuevoEstatus));
+                existing.setComentarios(comentarios);
+                existing.setFechaActualizacion(Instant.now());
+                existing.setActualizadoPor(userEmail);
+                existing.setVersion(existing.getVersion() != null ? existing.getVersion() + 1 : 1L);
+                return existing;
+            });
     }
     
     private boolean isValidStatus(String status) {
+        // Sin importar mayúsculas: el repositorio guarda la forma canónica
         return status != null && (
-            status.equals("PENDIENTE") || 
-            status.equals("APROBADO") || 
-            status.equals("RECHAZADO")
+            status.equalsIgnoreCase(EstatusSolicitud.PENDIENTE) || 
+            status.equalsIgnoreCase(EstatusSolicitud.APROBADO) || 
+            status.equalsIgnoreCase(EstatusSolicitud.RECHAZADO)
         );
     }
 }
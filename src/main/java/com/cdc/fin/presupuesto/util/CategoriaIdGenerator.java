@@ -0,0 +1,84 @@
+package com.cdc.fin.presupuesto.util;
+
+import java.util.UUID;
+
+/**
+ * ID de categoría de gasto a partir de su nombre: CAT_{NOMBRE_NORMALIZADO}.
+ * <p>
+ * El nombre se pasa a mayúsculas sin acentos (Ñ → N, Ç → C), todo lo que no sea A-Z o 0-9 se
+ * vuelve "_" (sin repetidos ni en los extremos) y se limita a 50 caracteres. Los caracteres
+ * Latin-1 se resuelven con una tabla precalculada en una sola pasada; el resto (poco común en los
+ * catálogos) pasa por {@link String#toUpperCase()}, con el mismo resultado que la cadena de
+ * expresiones regulares que había antes.
+ */
+public final class CategoriaIdGenerator {
+
+    private static final String PREFIJO = "CAT_";
+    private static final int LARGO_MAXIMO = 50;
+    // Equivalente de cada carácter Latin-1 ya normalizado; 0 si su mayúscula es de más de un carácter (ß → SS)
+    private static final char[] TABLA = new char[256];
+
+    static {
+        for (int c = 0; c < TABLA.length; c++) {
+            String mayuscula = String.valueOf((char) c).toUpperCase();
+            TABLA[c] = mayuscula.length() == 1 ? sinAcento(mayuscula.charAt(0)) : 0;
+        }
+    }
+
+    private CategoriaIdGenerator() {
+    }
+
+    public static String generar(String nombre) {
+        if (nombre == null || nombre.trim().isEmpty()) {
+            return PREFIJO + UUID.randomUUID();
+        }
+        String texto = nombre.trim();
+        StringBuilder normalizado = new StringBuilder(Math.min(texto.length(), 64));
+        for (int i = 0; i < texto.length(); ) {
+            int cp = texto.codePointAt(i);
+            i += Character.charCount(cp);
+            char c = cp < TABLA.length ? TABLA[cp] : 0;
+            if (c != 0) {
+                agregar(normalizado, c);
+            } else {
+                String mayuscula = new String(Character.toChars(cp)).toUpperCase();
+                for (int j = 0; j < mayuscula.length(); j++) {
+                    agregar(normalizado, sinAcento(mayuscula.charAt(j)));
+                }
+            }
+        }
+        int largo = normalizado.length();
+        if (largo > 0 && normalizado.charAt(largo - 1) == '_') {
+            normalizado.setLength(largo - 1);
+        }
+        if (normalizado.length() > LARGO_MAXIMO) {
+            normalizado.setLength(LARGO_MAXIMO);
+        }
+        return PREFIJO + normalizado;
+    }
+
+    // "_" sin repetir y nunca al inicio
+    private static void agregar(StringBuilder normalizado, char c) {
+        if (c == '_') {
+            int largo = normalizado.length();
+            if (largo == 0 || normalizado.charAt(largo - 1) == '_') {
+                return;
+            }
+        }
+        normalizado.append(c);
+    }
+
+    private static char sinAcento(char mayuscula) {
+        switch (mayuscula) {
+            case 'Á': case 'À': case 'Â': case 'Ã': case 'Ä': case 'Å': return 'A';
+            case 'É': case 'È': case 'Ê': case 'Ë': return 'E';
+            case 'Í': case 'Ì': case 'Î': case 'Ï': return 'I';
+            case 'Ó': case 'Ò': case 'Ô': case 'Õ': case 'Ö': return 'O';
+            case 'Ú': case 'Ù': case 'Û': case 'Ü': return 'U';
+            case 'Ñ': return 'N';
+            case 'Ç': return 'C';
+            default:
+                return (mayuscula >= 'A' && mayuscula <= 'Z') || (mayuscula >= '0' && mayuscula <= '9') ? mayuscula : '_';
+        }
+    }
+}
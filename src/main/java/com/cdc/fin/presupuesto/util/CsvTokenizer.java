@@ -0,0 +1,329 @@
+package com.cdc.fin.presupuesto.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Lector CSV (RFC 4180, UTF-8) para las importaciones de catálogos.
+ * <p>
+ * Trabaja sobre los bytes: un archivo en disco se mapea en memoria por ventanas y un flujo se lee a
+ * un búfer que se reutiliza. Cada registro se separa en rebanadas (inicio/fin dentro del búfer) que
+ * también se reutilizan, y solo se decodifican a {@link String} las columnas elegidas con
+ * {@link #seleccionar}; las demás quedan en null. Los campos entre comillas admiten separadores,
+ * saltos de línea y comillas escapadas ({@code ""}). Se aceptan fines de línea LF, CRLF y CR, y se
+ * omite el BOM inicial. La diagonal invertida no es carácter de escape (OpenCSV sí la interpretaba
+ * por defecto): {@code \"} dentro de un campo entre comillas se lee como una diagonal seguida de
+ * una comilla que cierra el campo.
+ * <p>
+ * No es seguro entre hilos: lo usa solo el hilo que lee el archivo.
+ */
+public final class CsvTokenizer implements RecordReader {
+
+    private static final byte SEPARADOR = ',';
+    private static final byte COMILLA = '"';
+    // Tamaño de cada ventana mapeada; crece si un registro no cabe
+    private static final int VENTANA_MAPEO = 256 * 1024 * 1024;
+    private static final int BUFER_FLUJO = 64 * 1024;
+
+    private final FileChannel canal;
+    private final InputStream flujo;
+    private final long tamanoArchivo;
+
+    private ByteBuffer buf;
+    // Posición en el archivo del byte 0 de la ventana actual (solo mapeo)
+    private long base;
+    private int limite;
+    private boolean fin;
+    private int pos;
+    private boolean saltarLF;
+    private boolean inicio = true;
+
+    // Rebanadas del registro actual
+    private int campos;
+    private int[] inicios = new int[16];
+    private int[] fines = new int[16];
+    private boolean[] conComillas = new boolean[16];
+
+    private boolean[] seleccion;
+    private byte[] scratch = new byte[256];
+
+    private CsvTokenizer(FileChannel canal, InputStream flujo, int ventanaMapeo) throws IOException {
+        this.canal = canal;
+        this.flujo = flujo;
+        this.tamanoArchivo = canal != null ? canal.size() : -1;
+        if (canal != null) {
+            mapear(0, ventanaMapeo);
+        } else {
+            buf = ByteBuffer.wrap(new byte[BUFER_FLUJO], 0, 0);
+        }
+    }
+
+    /** Abre un archivo en disco mapeándolo en memoria. */
+    public static CsvTokenizer mapear(Path archivo) throws IOException {
+        return mapear(archivo, VENTANA_MAPEO);
+    }
+
+    // Ventana configurable para probar el cambio y crecimiento de ventanas con archivos pequeños
+    static CsvTokenizer mapear(Path archivo, int ventanaMapeo) throws IOException {
+        FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ);
+        try {
+            return new CsvTokenizer(canal, null, ventanaMapeo);
+        } catch (IOException | RuntimeException e) {
+            canal.close();
+            throw e;
+        }
+    }
+
+    /** Lee un flujo (p. ej. el archivo subido) con un búfer reutilizable. */
+    public static CsvTokenizer leer(InputStream in) throws IOException {
+        return new CsvTokenizer(null, in, VENTANA_MAPEO);
+    }
+
+    @Override
+    public void seleccionar(int... columnas) {
+        if (columnas.length == 0) {
+            seleccion = null;
+            return;
+        }
+        int max = Arrays.stream(columnas).max().getAsInt();
+        seleccion = new boolean[max + 1];
+        for (int columna : columnas) {
+            seleccion[columna] = true;
+        }
+    }
+
+    /**
+     * Las columnas no seleccionadas quedan en null; el arreglo mide lo que el registro trae, como
+     * el de OpenCSV.
+     */
+    @Override
+    public String[] leerRegistro() throws IOException {
+        if (!siguiente()) {
+            return null;
+        }
+        String[] registro = new String[campos];
+        for (int i = 0; i < campos; i++) {
+            if (seleccion == null || (i < seleccion.length && seleccion[i])) {
+                registro[i] = campo(i);
+            }
+        }
+        return registro;
+    }
+
+    /**
+     * Avanza al siguiente registro sin decodificar nada.
+     * @return false al terminar el archivo
+     */
+    public boolean siguiente() throws IOException {
+        while (true) {
+            if (pos >= limite) {
+                if (fin) {
+                    return false;
+                }
+                rellenar(pos);
+                continue;
+            }
+            if (inicio) {
+                // Con una ventana o lectura muy corta el BOM podría quedar partido
+                if (limite - pos < 3 && !fin) {
+                    rellenar(pos);
+                    continue;
+                }
+                inicio = false;
+                if (limite - pos >= 3 && buf.get(pos) == (byte) 0xEF && buf.get(pos + 1) == (byte) 0xBB && buf.get(pos + 2) == (byte) 0xBF) {
+                    pos += 3;
+                    continue;
+                }
+            }
+            if (saltarLF) {
+                saltarLF = false;
+                if (buf.get(pos) == '\n') {
+                    pos++;
+                    continue;
+                }
+            }
+            if (separar()) {
+                return true;
+            }
+            // El registro no cabe en lo que queda del búfer: se vuelve a leer desde su inicio
+            rellenar(pos);
+        }
+    }
+
+    /** Número de campos del registro actual. */
+    public int campos() {
+        return campos;
+    }
+
+    /** Decodifica un campo del registro actual. */
+    public String campo(int indice) {
+        if (indice >= campos) {
+            throw new IndexOutOfBoundsException("El registro tiene " + campos + " campos; se pidió el " + indice);
+        }
+        int desde = inicios[indice];
+        int largo = fines[indice] - desde;
+        if (!conComillas[indice]) {
+            if (buf.hasArray()) {
+                return new String(buf.array(), buf.arrayOffset() + desde, largo, StandardCharsets.UTF_8);
+            }
+            byte[] bytes = scratch(largo);
+            buf.get(desde, bytes, 0, largo);
+            return new String(bytes, 0, largo, StandardCharsets.UTF_8);
+        }
+        // Entre comillas: se quitan las de apertura/cierre y "" se vuelve "
+        byte[] bytes = scratch(largo);
+        int n = 0;
+        boolean dentro = false;
+        for (int i = desde; i < fines[indice]; i++) {
+            byte b = buf.get(i);
+            if (b == COMILLA) {
+                if (dentro && i + 1 < fines[indice] && buf.get(i + 1) == COMILLA) {
+                    bytes[n++] = COMILLA;
+                    i++;
+                } else {
+                    dentro = !dentro;
+                }
+            } else {
+                bytes[n++] = b;
+            }
+        }
+        return new String(bytes, 0, n, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Separa el registro que empieza en pos.
+     * @return false si el búfer se acabó antes del fin del registro y todavía hay datos por leer
+     */
+    private boolean separar() throws IOException {
+        campos = 0;
+        int i = pos;
+        while (true) {
+            int desde = i;
+            boolean comillas = i < limite && buf.get(i) == COMILLA;
+            boolean dentro = comillas;
+            if (comillas) {
+                i++;
+            }
+            while (true) {
+                if (i >= limite) {
+                    if (!fin) {
+                        return false;
+                    }
+                    if (dentro) {
+                        throw new IOException("Campo entre comillas sin cerrar al final del archivo");
+                    }
+                    agregar(desde, i, comillas);
+                    pos = i;
+                    return true;
+                }
+                byte b = buf.get(i);
+                if (dentro) {
+                    if (b == COMILLA) {
+                        if (i + 1 >= limite && !fin) {
+                            return false;
+                        }
+                        if (i + 1 < limite && buf.get(i + 1) == COMILLA) {
+                            i += 2;
+                            continue;
+                        }
+                        dentro = false;
+                    }
+                    i++;
+                    continue;
+                }
+                if (b == SEPARADOR) {
+                    agregar(desde, i, comillas);
+                    i++;
+                    break;
+                }
+                if (b == '\n' || b == '\r') {
+                    agregar(desde, i, comillas);
+                    saltarLF = b == '\r';
+                    pos = i + 1;
+                    return true;
+                }
+                if (b == COMILLA && comillas) {
+                    // Texto entre comillas después del cierre ("a"b"c"): se vuelve a abrir
+                    dentro = true;
+                }
+                i++;
+            }
+        }
+    }
+
+    private void agregar(int desde, int hasta, boolean comillas) {
+        if (campos == inicios.length) {
+            int n = campos * 2;
+            inicios = Arrays.copyOf(inicios, n);
+            fines = Arrays.copyOf(fines, n);
+            conComillas = Arrays.copyOf(conComillas, n);
+        }
+        inicios[campos] = desde;
+        fines[campos] = hasta;
+        conComillas[campos] = comillas;
+        campos++;
+    }
+
+    /**
+     * Carga más datos conservando los bytes desde "desde" (el inicio del registro en curso), que
+     * quedan en la posición 0. Si no avanzó nada, la ventana o el búfer se duplican.
+     */
+    private void rellenar(int desde) throws IOException {
+        int pendientes = limite - desde;
+        if (canal != null) {
+            int tamano = buf.capacity();
+            if (desde == 0) {
+                tamano = (int) Math.min((long) tamano * 2, Integer.MAX_VALUE);
+            }
+            mapear(base + desde, tamano);
+        } else {
+            byte[] arreglo = buf.array();
+            if (desde == 0 && limite == arreglo.length) {
+                arreglo = Arrays.copyOf(arreglo, arreglo.length * 2);
+            } else {
+                System.arraycopy(arreglo, desde, arreglo, 0, pendientes);
+            }
+            int n = pendientes;
+            int leidos = 0;
+            while (n < arreglo.length && (leidos = flujo.read(arreglo, n, arreglo.length - n)) >= 0) {
+                n += leidos;
+                if (leidos == 0) break;
+            }
+            fin = leidos < 0;
+            buf = ByteBuffer.wrap(arreglo, 0, n);
+            limite = n;
+        }
+        pos = 0;
+    }
+
+    private void mapear(long desde, int tamano) throws IOException {
+        long largo = Math.min(tamano, tamanoArchivo - desde);
+        buf = canal.map(FileChannel.MapMode.READ_ONLY, desde, largo);
+        base = desde;
+        limite = (int) largo;
+        fin = desde + largo >= tamanoArchivo;
+    }
+
+    private byte[] scratch(int largo) {
+        if (scratch.length < largo) {
+            scratch = new byte[Math.max(largo, scratch.length * 2)];
+        }
+        return scratch;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // La ventana mapeada se libera con el GC; aquí solo se cierra el archivo o el flujo
+        if (canal != null) {
+            canal.close();
+        } else {
+            flujo.close();
+        }
+    }
+}
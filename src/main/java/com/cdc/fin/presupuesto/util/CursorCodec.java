@@ -0,0 +1,82 @@
+package com.cdc.fin.presupuesto.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Convierte el LastEvaluatedKey de DynamoDB en un cursor opaco (base64url) y viceversa.
+ * Solo soporta llaves de tipo String, que son las que usan nuestras tablas e índices.
+ * El cursor lleva además una huella de la consulta que lo generó (índice y filtros): una llave de
+ * un índice no sirve como ExclusiveStartKey de otro, así que un cursor usado con otros filtros se
+ * rechaza en lugar de devolver una página incorrecta.
+ */
+public final class CursorCodec {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, String>> MAP_TYPE = new TypeReference<>() {};
+    // Atributo reservado del cursor con la huella de la consulta (no es nombre de atributo de DynamoDB)
+    private static final String HUELLA = "#q";
+
+    private CursorCodec() {}
+
+    /**
+     * @param consulta descripción de la consulta (índice y filtros) a la que pertenece el cursor
+     */
+    public static String encode(Map<String, AttributeValue> lastEvaluatedKey, String consulta) {
+        if (lastEvaluatedKey == null || lastEvaluatedKey.isEmpty()) {
+            return null;
+        }
+        Map<String, String> plain = new HashMap<>();
+        lastEvaluatedKey.forEach((k, v) -> plain.put(k, v.s()));
+        plain.put(HUELLA, huella(consulta));
+        try {
+            byte[] json = MAPPER.writeValueAsBytes(plain);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+        } catch (Exception e) {
+            throw new IllegalStateException("No se pudo generar el cursor de paginación", e);
+        }
+    }
+
+    /**
+     * @param consulta la misma descripción con que se generó el cursor
+     * @throws IllegalArgumentException si el cursor es inválido o pertenece a otra consulta
+     */
+    public static Map<String, AttributeValue> decode(String cursor, String consulta) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        Map<String, String> plain;
+        try {
+            byte[] json = Base64.getUrlDecoder().decode(cursor.getBytes(StandardCharsets.US_ASCII));
+            plain = MAPPER.readValue(json, MAP_TYPE);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Cursor de paginación inválido");
+        }
+        if (!huella(consulta).equals(plain.remove(HUELLA))) {
+            throw new IllegalArgumentException("El cursor de paginación no corresponde a los filtros de la consulta");
+        }
+        Map<String, AttributeValue> key = new HashMap<>();
+        plain.forEach((k, v) -> key.put(k, AttributeValue.builder().s(v).build()));
+        return key;
+    }
+
+    // SHA-256 truncado: basta para distinguir consultas, no es un control de seguridad
+    private static String huella(String consulta) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest((consulta != null ? consulta : "").getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 12));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
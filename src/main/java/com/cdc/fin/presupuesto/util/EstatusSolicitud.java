@@ -0,0 +1,53 @@
+package com.cdc.fin.presupuesto.util;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Estatus de una solicitud. El GSI estatusConfirmacion-index compara por igualdad exacta, así que
+ * el repositorio guarda siempre la forma canónica ("Aprobado"); las búsquedas por estatus consultan
+ * además las variantes de mayúsculas que pudieron escribirse antes ("APROBADO", "aprobado").
+ * Otra variante (espacios, acentos) no se encuentra por el índice y debe corregirse en la tabla.
+ */
+public final class EstatusSolicitud {
+
+    public static final String PENDIENTE = "Pendiente";
+    public static final String APROBADO = "Aprobado";
+    public static final String RECHAZADO = "Rechazado";
+    public static final String PROCESADO = "Procesado";
+
+    private static final List<String> CONOCIDOS = List.of(PENDIENTE, APROBADO, RECHAZADO, PROCESADO);
+
+    private EstatusSolicitud() {}
+
+    /**
+     * Forma canónica de un estatus conocido sin importar mayúsculas; los demás se devuelven igual.
+     */
+    public static String normalizar(String estatus) {
+        if (estatus == null) {
+            return null;
+        }
+        String limpio = estatus.trim();
+        for (String conocido : CONOCIDOS) {
+            if (conocido.equalsIgnoreCase(limpio)) {
+                return conocido;
+            }
+        }
+        return estatus;
+    }
+
+    /**
+     * Forma canónica más las variantes de mayúsculas con que pudo guardarse (para IN en condiciones
+     * y para consultar el GSI por cada una).
+     */
+    public static List<String> variantes(String estatus) {
+        String canonico = normalizar(estatus);
+        Set<String> variantes = new LinkedHashSet<>();
+        variantes.add(canonico);
+        variantes.add(canonico.toUpperCase(Locale.ROOT));
+        variantes.add(canonico.toLowerCase(Locale.ROOT));
+        return List.copyOf(variantes);
+    }
+}
@@ -0,0 +1,47 @@
+package com.cdc.fin.presupuesto.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Lectura secuencial de registros de un archivo de importación (CSV o XLSX). El primer registro es
+ * el encabezado; las filas se leen de una en una, así la memoria no depende del tamaño del archivo.
+ */
+public interface RecordReader extends Closeable {
+
+    /** Un nombre de archivo .xlsx se lee como libro de Excel; cualquier otro, como CSV. */
+    static boolean esXlsx(String nombreArchivo) {
+        return nombreArchivo != null && nombreArchivo.toLowerCase().endsWith(".xlsx");
+    }
+
+    /** Archivo en disco (p. ej. el guardado por una importación asíncrona); un CSV se mapea en memoria. */
+    static RecordReader abrir(Path archivo) throws IOException {
+        return esXlsx(archivo.getFileName().toString()) ? XlsxRecordReader.abrir(archivo) : CsvTokenizer.mapear(archivo);
+    }
+
+    /** Flujo del archivo subido; el formato se decide por su nombre. */
+    static RecordReader leer(InputStream in, String nombreArchivo) throws IOException {
+        return esXlsx(nombreArchivo) ? XlsxRecordReader.leer(in) : CsvTokenizer.leer(in);
+    }
+
+    /**
+     * Siguiente registro; con {@link #seleccionar} solo trae decodificadas esas columnas.
+     * @return null al terminar el archivo
+     */
+    String[] leerRegistro() throws IOException;
+
+    /**
+     * Limita la decodificación a estas columnas (índices desde 0); sin argumentos, todas.
+     */
+    void seleccionar(int... columnas);
+
+    /**
+     * Avisos de la lectura para el reporte de la importación (p. ej. hojas omitidas).
+     */
+    default List<String> getAdvertencias() {
+        return List.of();
+    }
+}
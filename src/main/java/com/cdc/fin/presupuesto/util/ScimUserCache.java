@@ -0,0 +1,121 @@
+package com.cdc.fin.presupuesto.util;
+
+import com.cdc.fin.presupuesto.model.ScimUser;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Caché LRU acotada con TTL de usuarios SCIM por correo (userName).
+ * Evita una consulta al GSI UserNameIndex en cada petición; ScimUserRepository la invalida
+ * en cada escritura para que los cambios de Okta se reflejen de inmediato. Publica en Micrometer
+ * aciertos, fallos e invalidaciones (presupuesto.scim.cache.*) y el tamaño actual.
+ */
+@Component
+public class ScimUserCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScimUserCache.class);
+
+    private final long ttlMs;
+    private final Map<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private record Entry(ScimUser user, long expiresAt) {}
+
+    public ScimUserCache(@Value("${scim.user-cache.ttl-ms:300000}") long ttlMs,
+                         @Value("${scim.user-cache.max-size:1000}") int maxSize,
+                         MeterRegistry registry) {
+        this.ttlMs = ttlMs;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+        FunctionCounter.builder("presupuesto.scim.cache.consultas", hits, AtomicLong::get)
+            .description("Consultas a la caché de usuarios SCIM")
+            .tag("resultado", "acierto")
+            .register(registry);
+        FunctionCounter.builder("presupuesto.scim.cache.consultas", misses, AtomicLong::get)
+            .description("Consultas a la caché de usuarios SCIM")
+            .tag("resultado", "fallo")
+            .register(registry);
+        FunctionCounter.builder("presupuesto.scim.cache.invalidaciones", invalidations, AtomicLong::get)
+            .description("Invalidaciones de la caché de usuarios SCIM")
+            .register(registry);
+        Gauge.builder("presupuesto.scim.cache.tamano", this, ScimUserCache::size)
+            .description("Usuarios SCIM en caché")
+            .register(registry);
+    }
+
+    /**
+     * Devuelve el usuario en caché o lo carga con el loader. Los resultados nulos no se guardan.
+     * La carga se hace fuera del lock para no serializar las consultas a DynamoDB.
+     */
+    public ScimUser get(String email, Function<String, ScimUser> loader) {
+        if (email == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(email);
+            if (entry != null && entry.expiresAt() > now) {
+                hits.incrementAndGet();
+                return entry.user();
+            }
+        }
+        misses.incrementAndGet();
+        long generation = invalidations.get();
+        ScimUser user = loader.apply(email);
+        if (user != null) {
+            synchronized (entries) {
+                // Si hubo una escritura durante la carga, el resultado podría estar desactualizado
+                if (invalidations.get() == generation) {
+                    entries.put(email, new Entry(user, now + ttlMs));
+                }
+            }
+        }
+        return user;
+    }
+
+    /**
+     * Elimina el usuario por userName y por id (el userName pudo haber cambiado en un PUT/PATCH).
+     */
+    public void invalidate(String id, String userName) {
+        synchronized (entries) {
+            if (userName != null) {
+                entries.remove(userName);
+            }
+            if (id != null) {
+                entries.values().removeIf(e -> id.equals(e.user().getId()));
+            }
+            invalidations.incrementAndGet();
+        }
+        logger.debug("Caché de usuarios SCIM invalidada para id={}, userName={}", id, userName);
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            invalidations.incrementAndGet();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.cdc.fin.presupuesto.util;
+
+import com.cdc.fin.presupuesto.model.ScimUser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Conversión entre el item de DynamoDB de la tabla scim-users y ScimUser.
+ * Único punto de mapeo para el repositorio SCIM y UserAuthUtils; usa un ObjectMapper
+ * compartido (thread-safe tras su configuración) y lectores/escritores precompilados.
+ */
+public final class ScimUserItemCodec {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ObjectReader NAME_READER = MAPPER.readerFor(ScimUser.Name.class);
+    private static final ObjectWriter NAME_WRITER = MAPPER.writerFor(ScimUser.Name.class);
+
+    private ScimUserItemCodec() {}
+
+    /**
+     * ObjectMapper compartido para leer y escribir JSON SCIM. No debe reconfigurarse.
+     */
+    public static ObjectMapper mapper() {
+        return MAPPER;
+    }
+
+    public static ScimUser fromItem(Map<String, AttributeValue> item) throws JsonProcessingException {
+        ScimUser user = new ScimUser();
+        user.setId(string(item, "id"));
+        user.setUserName(string(item, "userName"));
+        AttributeValue active = item.get("active");
+        user.setActive(active == null || active.bool() == null || active.bool());
+
+        String firstName = string(item, "firstName");
+        String lastName = string(item, "lastName");
+        user.setFirstName(firstName);
+        user.setLastName(lastName);
+        String nameJson = string(item, "name");
+        if (nameJson != null) {
+            user.setName(NAME_READER.readValue(nameJson));
+        } else if (firstName != null || lastName != null) {
+            // Usuarios creados vía SAML sin objeto name: se arma desde firstName/lastName
+            ScimUser.Name name = new ScimUser.Name();
+            name.setGivenName(firstName);
+            name.setFamilyName(lastName);
+            user.setName(name);
+        }
+
+        // Leer atributos SAML/enterprise
+        String email = string(item, "email");
+        if (email != null)
+            user.setEmails(List.of(new ScimUser.Email(email, true, "work")));
+        user.setEmployeeNumber(string(item, "employeeNumber"));
+        user.setUserType(string(item, "userType"));
+        user.setDepartment(string(item, "department"));
+        user.setDisplayName(string(item, "displayName"));
+        String group = string(item, "group");
+        if (group != null)
+            user.setGroup(splitGroups(group));
+        return user;
+    }
+
+    public static Map<String, AttributeValue> toItem(ScimUser user) throws JsonProcessingException {
+        Map<String, AttributeValue> item = new HashMap<>(16);
+        item.put("id", AttributeValue.builder().s(user.getId()).build());
+        item.put("userName", AttributeValue.builder().s(user.getUserName()).build());
+        item.put("active", AttributeValue.builder().bool(user.getActive() != null ? user.getActive() : true).build());
+        if (user.getName() != null)
+            item.put("name", AttributeValue.builder().s(NAME_WRITER.writeValueAsString(user.getName())).build());
+        if (user.getEmails() != null && !user.getEmails().isEmpty())
+            item.put("email", AttributeValue.builder().s(user.getEmails().get(0).getValue()).build());
+        putIfNotNull(item, "firstName", user.getFirstName());
+        putIfNotNull(item, "lastName", user.getLastName());
+        putIfNotNull(item, "employeeNumber", user.getEmployeeNumber());
+        putIfNotNull(item, "department", user.getDepartment());
+        putIfNotNull(item, "userType", user.getUserType());
+        putIfNotNull(item, "displayName", user.getDisplayName());
+        return item;
+    }
+
+    private static String string(Map<String, AttributeValue> item, String key) {
+        AttributeValue value = item.get(key);
+        return value != null ? value.s() : null;
+    }
+
+    private static void putIfNotNull(Map<String, AttributeValue> item, String key, String value) {
+        if (value != null)
+            item.put(key, AttributeValue.builder().s(value).build());
+    }
+
+    // El atributo group se guarda como texto separado por comas
+    private static List<String> splitGroups(String group) {
+        if (group.indexOf(',') < 0) {
+            return List.of(group);
+        }
+        List<String> groups = new ArrayList<>();
+        for (String g : group.split(",")) {
+            String trimmed = g.trim();
+            if (!trimmed.isEmpty()) groups.add(trimmed);
+        }
+        return groups;
+    }
+}
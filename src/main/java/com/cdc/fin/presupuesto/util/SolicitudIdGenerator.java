@@ -0,0 +1,107 @@
+package com.cdc.fin.presupuesto.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generador de IDs ordenables por tiempo (estilo Snowflake), sin locks.
+ * Cada ID de 64 bits se compone de 41 bits de milisegundos desde EPOCH, 10 bits de nodo
+ * y 12 bits de secuencia, y se codifica en 13 caracteres Crockford base32 de ancho fijo,
+ * de modo que el orden lexicográfico del texto coincide con el orden de creación.
+ * <p>
+ * Es monótono por instancia: si el reloj retrocede o se agotan las 4096 secuencias de un
+ * milisegundo, se sigue sobre el último timestamp emitido en lugar de repetir un ID.
+ * El nodo distingue instancias de App Runner que generan IDs en paralelo. Derivado del hostname
+ * (presupuesto.id.node=-1) dos instancias pueden obtener el mismo nodo; por eso el alta de
+ * solicitudes es condicional (attribute_not_exists) y genera llaves nuevas si ya existen. Para
+ * descartar colisiones, configurar un nodo distinto por instancia.
+ */
+@Component
+public class SolicitudIdGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(SolicitudIdGenerator.class);
+
+    // 2024-01-01T00:00:00Z: 41 bits de milisegundos alcanzan hasta ~2093
+    static final long EPOCH = 1704067200000L;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int LENGTH = 13;
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    private final long node;
+    // Prefijo de los solicitudId (visible para el usuario), p. ej. "REQ-"
+    private final String solicitudPrefix;
+    // (milisegundos desde EPOCH << SEQUENCE_BITS) | secuencia del último ID emitido
+    private final AtomicLong state = new AtomicLong();
+
+    public SolicitudIdGenerator(@Value("${presupuesto.id.node:-1}") long configuredNode,
+                                @Value("${presupuesto.solicitud.prefix:REQ-}") String solicitudPrefix) {
+        this.solicitudPrefix = solicitudPrefix;
+        this.node = configuredNode >= 0 ? configuredNode & MAX_NODE : resolveNode();
+        if (configuredNode < 0) {
+            logger.warn("SolicitudIdGenerator inicializado con nodo {} derivado del hostname; puede coincidir con "
+                + "otra instancia, configurar presupuesto.id.node", node);
+        } else {
+            logger.info("SolicitudIdGenerator inicializado con nodo {}", node);
+        }
+    }
+
+    /**
+     * Siguiente ID, estrictamente mayor que cualquier otro emitido por esta instancia.
+     */
+    public String nextId() {
+        return encode(nextValue());
+    }
+
+    /**
+     * Siguiente solicitudId: el prefijo configurado (presupuesto.solicitud.prefix) más un ID nuevo.
+     */
+    public String nextSolicitudId() {
+        return solicitudPrefix + nextId();
+    }
+
+    long nextValue() {
+        long now = System.currentTimeMillis() - EPOCH;
+        long next;
+        long current;
+        do {
+            current = state.get();
+            long lastMillis = current >>> SEQUENCE_BITS;
+            if (now > lastMillis) {
+                next = now << SEQUENCE_BITS;
+            } else {
+                // Mismo milisegundo o reloj atrasado: la secuencia desborda hacia el siguiente milisegundo
+                next = current + 1;
+            }
+        } while (!state.compareAndSet(current, next));
+        long millis = next >>> SEQUENCE_BITS;
+        long sequence = next & SEQUENCE_MASK;
+        return (millis << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | sequence;
+    }
+
+    static String encode(long value) {
+        char[] out = new char[LENGTH];
+        // 13 x 5 = 65 bits: el primer carácter solo lleva el bit más alto
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            out[i] = ALPHABET[(int) (value & 31)];
+            value >>>= 5;
+        }
+        return new String(out);
+    }
+
+    // Sin nodo configurado se deriva del hostname del contenedor (único por instancia de App Runner)
+    private static long resolveNode() {
+        String host = System.getenv("HOSTNAME");
+        if (host != null && !host.isEmpty()) {
+            return (host.hashCode() & 0x7fffffff) % (MAX_NODE + 1);
+        }
+        return new SecureRandom().nextInt((int) MAX_NODE + 1);
+    }
+}
@@ -0,0 +1,26 @@
+package com.cdc.fin.presupuesto.util;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Forma plegada de un texto para búsquedas parciales que no distinguen mayúsculas ni acentos.
+ * Las solicitudes guardan una copia plegada de sus campos de búsqueda, así DynamoDB puede
+ * evaluar contains() sobre ella con el término plegado de la misma manera.
+ */
+public final class TextoBusqueda {
+
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+
+    private TextoBusqueda() {}
+
+    /** Minúsculas y sin diacríticos: "José Núñez" -> "jose nunez"; null se conserva. */
+    public static String plegar(String valor) {
+        if (valor == null) {
+            return null;
+        }
+        String descompuesto = Normalizer.normalize(valor, Normalizer.Form.NFD);
+        return MARCAS.matcher(descompuesto).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,26 +1,36 @@
 package com.cdc.fin.presupuesto.util;
 
 import com.cdc.fin.presupuesto.model.ScimUser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.*;
 
-import java.util.List;
 import java.util.Map;
 
 @Component
 public class UserAuthUtils {
 
+    private static final Logger logger = LoggerFactory.getLogger(UserAuthUtils.class);
+
     private final DynamoDbClient dynamoDbClient;
     private final String usersTable;
+    private final ScimUserCache scimUserCache;
 
-    public UserAuthUtils(DynamoDbClient dynamoDbClient, @Value("${aws.dynamodb.table.prefix}") String tablePrefix) {
+    public UserAuthUtils(DynamoDbClient dynamoDbClient, @Value("${aws.dynamodb.table.prefix}") String tablePrefix,
+                         ScimUserCache scimUserCache) {
         this.dynamoDbClient = dynamoDbClient;
         this.usersTable = tablePrefix + "scim-users";
+        this.scimUserCache = scimUserCache;
     }
 
     public ScimUser getScimUserByEmail(String email) {
+        return scimUserCache.get(email, this::loadScimUserByEmail);
+    }
+
+    private ScimUser loadScimUserByEmail(String email) {
         if (dynamoDbClient == null || usersTable == null || usersTable.isEmpty() || email == null) {
             return null;
         }
@@ -34,41 +44,9 @@ public class UserAuthUtils {
         if (response.hasItems() && !response.items().isEmpty()) {
             Map<String, AttributeValue> item = response.items().get(0);
             try {
-                ScimUser user = new ScimUser();
-                user.setId(item.get("id").s());
-                user.setUserName(item.get("userName").s());
-                user.setActive(item.containsKey("active") ? item.get("active").bool() : true);
-                if (item.containsKey("firstName") || item.containsKey("lastName")) {
-                    ScimUser.Name name = new ScimUser.Name();
-                    if (item.containsKey("firstName")) {
-                        name.setGivenName(item.get("firstName").s());
-                        user.setFirstName(item.get("firstName").s()); // SAML mapping
-                    }
-                    if (item.containsKey("lastName")) {
-                        name.setFamilyName(item.get("lastName").s());
-                        user.setLastName(item.get("lastName").s()); // SAML mapping
-                    }
-                    user.setName(name);
-                }
-                if (item.containsKey("email"))
-                    user.setEmails(List.of(new ScimUser.Email(item.get("email").s(), true, "work")));
-                if (item.containsKey("employeeNumber"))
-                    user.setEmployeeNumber(item.get("employeeNumber").s());
-                if (item.containsKey("userType"))
-                    user.setUserType(item.get("userType").s());
-                if (item.containsKey("department"))
-                    user.setDepartment(item.get("department").s());
-                if (item.containsKey("displayName"))
-                    user.setDisplayName(item.get("displayName").s());
-                // SAML/Group attributes
-                if (item.containsKey("group")) {
-                    // DynamoDB stores as string, split if needed
-                    String groupStr = item.get("group").s();
-                    user.setGroup(java.util.Arrays.asList(groupStr.split(",")));
-                }
-                return user;
+                return ScimUserItemCodec.fromItem(item);
             } catch (Exception e) {
-                e.printStackTrace();
+                logger.error("No se pudo leer el usuario SCIM {}: {}", email, e.getMessage(), e);
             }
         }
         return null;
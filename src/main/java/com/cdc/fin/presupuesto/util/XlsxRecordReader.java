@@ -0,0 +1,391 @@
+package com.cdc.fin.presupuesto.util;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.xml.sax.SAXException;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lector de libros .xlsx para las importaciones de catálogos, sin cargar el libro completo.
+ * <p>
+ * Con {@link XSSFReader} se recorren las hojas del paquete y el XML de cada una se lee por eventos
+ * (StAX), fila por fila: en memoria solo están la fila actual, la tabla de cadenas compartidas y
+ * los estilos. Los valores numéricos se formatean como los muestra Excel ({@link DataFormatter}),
+ * igual que al exportar a CSV.
+ * <p>
+ * Se usa StAX en lugar del manejador SAX de POI (XSSFSheetXMLHandler): SAX empuja todas las filas
+ * de la hoja en una sola llamada, y entregarlas de una en una desde {@link #leerRegistro()}
+ * obligaría a juntarlas en memoria o a leer en otro hilo. Con StAX el lector avanza solo cuando se
+ * pide el siguiente registro. El costo por celda es el mismo: ninguno de los dos arma el modelo del
+ * libro.
+ * <p>
+ * Todas las hojas forman parte del catálogo: el encabezado es la primera fila con datos de la
+ * primera hoja, y en las siguientes se omite su propio encabezado si coincide; una hoja con otro
+ * encabezado (instrucciones, notas) se salta y queda en {@link #getAdvertencias()}. Las filas en
+ * blanco (sin celdas, o con celdas vacías o de solo espacios) entre datos se entregan como
+ * registros vacíos, igual que las líneas vacías de un CSV; las del final de cada hoja se descartan.
+ */
+public final class XlsxRecordReader implements RecordReader {
+
+    private final OPCPackage paquete;
+    private final XSSFReader.SheetIterator hojas;
+    private final ReadOnlySharedStringsTable cadenas;
+    private final StylesTable estilos;
+    private final DataFormatter formatter = new DataFormatter();
+    private final List<String> advertencias = new ArrayList<>();
+
+    private InputStream hojaActual;
+    private XMLStreamReader xml;
+    private String nombreHoja;
+    private boolean inicioHoja;
+    private int ultimaFila;
+    private int blancosPendientes;
+    private String[] pendiente;
+    // La última celda leída trae algún valor (aunque su columna no esté seleccionada)
+    private boolean celdaConDato;
+
+    private String[] encabezado;
+    private boolean[] seleccion;
+    // Copia en disco de un libro recibido como flujo; se borra al cerrar
+    private Path temporal;
+
+    private XlsxRecordReader(OPCPackage paquete) throws IOException {
+        this.paquete = paquete;
+        try {
+            XSSFReader reader = new XSSFReader(paquete);
+            this.cadenas = new ReadOnlySharedStringsTable(paquete, false);
+            this.estilos = reader.getStylesTable();
+            this.hojas = (XSSFReader.SheetIterator) reader.getSheetsData();
+        } catch (OpenXML4JException | SAXException e) {
+            throw new IOException("El archivo no es un libro de Excel válido: " + e.getMessage(), e);
+        }
+    }
+
+    /** Abre un libro en disco en modo de solo lectura. */
+    public static XlsxRecordReader abrir(Path archivo) throws IOException {
+        OPCPackage paquete;
+        try {
+            paquete = OPCPackage.open(archivo.toFile(), PackageAccess.READ);
+        } catch (OpenXML4JException | RuntimeException e) {
+            throw new IOException("El archivo no es un libro de Excel válido: " + e.getMessage(), e);
+        }
+        try {
+            return new XlsxRecordReader(paquete);
+        } catch (IOException | RuntimeException e) {
+            paquete.revert();
+            throw e;
+        }
+    }
+
+    /**
+     * Lee un libro recibido como flujo (p. ej. el archivo subido). POI necesita acceso aleatorio al
+     * ZIP, así que primero se copia a un archivo temporal en lugar de cargarlo en memoria.
+     */
+    public static XlsxRecordReader leer(InputStream in) throws IOException {
+        Path temporal = Files.createTempFile("importacion-", ".xlsx");
+        try (InputStream origen = in) {
+            Files.copy(origen, temporal, StandardCopyOption.REPLACE_EXISTING);
+            XlsxRecordReader reader = abrir(temporal);
+            reader.temporal = temporal;
+            return reader;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporal);
+            throw e;
+        }
+    }
+
+    @Override
+    public void seleccionar(int... columnas) {
+        if (columnas.length == 0) {
+            seleccion = null;
+            return;
+        }
+        seleccion = new boolean[Arrays.stream(columnas).max().getAsInt() + 1];
+        for (int columna : columnas) {
+            seleccion[columna] = true;
+        }
+    }
+
+    /**
+     * Las columnas no seleccionadas quedan en null; el arreglo mide al menos lo que el encabezado,
+     * con "" en las celdas vacías.
+     */
+    @Override
+    public String[] leerRegistro() throws IOException {
+        try {
+            while (true) {
+                if (pendiente != null) {
+                    if (blancosPendientes > 0) {
+                        blancosPendientes--;
+                        return new String[0];
+                    }
+                    String[] registro = pendiente;
+                    pendiente = null;
+                    return registro;
+                }
+                if (xml == null && !abrirSiguienteHoja()) {
+                    return null;
+                }
+                Fila fila = leerFila();
+                if (fila == null) {
+                    // Fin de la hoja: las filas en blanco del final no cuentan
+                    cerrarHoja();
+                    continue;
+                }
+                blancosPendientes += Math.max(fila.numero - ultimaFila - 1, 0);
+                ultimaFila = fila.numero;
+                if (fila.blanca) {
+                    blancosPendientes++;
+                    continue;
+                }
+                if (inicioHoja) {
+                    inicioHoja = false;
+                    blancosPendientes = 0;
+                    if (encabezado == null) {
+                        encabezado = fila.valores;
+                        return fila.valores;
+                    }
+                    if (!mismoEncabezado(fila.valores)) {
+                        advertencias.add("Hoja '" + nombreHoja + "' omitida: su encabezado no coincide con el de la primera hoja");
+                        cerrarHoja();
+                    }
+                    continue;
+                }
+                pendiente = fila.valores;
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Error leyendo la hoja '" + nombreHoja + "': " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public List<String> getAdvertencias() {
+        return advertencias;
+    }
+
+    private boolean abrirSiguienteHoja() throws IOException, XMLStreamException {
+        if (!hojas.hasNext()) {
+            return false;
+        }
+        hojaActual = hojas.next();
+        nombreHoja = hojas.getSheetName();
+        xml = XMLHelper.newXMLInputFactory().createXMLStreamReader(hojaActual);
+        inicioHoja = true;
+        ultimaFila = 0;
+        blancosPendientes = 0;
+        return true;
+    }
+
+    private void cerrarHoja() throws IOException {
+        if (xml != null) {
+            try {
+                xml.close();
+            } catch (XMLStreamException e) {
+                // El flujo se cierra abajo de todos modos
+            }
+            xml = null;
+        }
+        if (hojaActual != null) {
+            hojaActual.close();
+            hojaActual = null;
+        }
+        blancosPendientes = 0;
+    }
+
+    /**
+     * Siguiente elemento {@code <row>} de la hoja actual.
+     * @return null al terminar la hoja
+     */
+    private Fila leerFila() throws XMLStreamException {
+        while (xml.hasNext()) {
+            if (xml.next() == XMLStreamConstants.START_ELEMENT && "row".equals(xml.getLocalName())) {
+                String r = xml.getAttributeValue(null, "r");
+                int numero = r != null ? Integer.parseInt(r) : ultimaFila + 1;
+                List<String> valores = new ArrayList<>();
+                boolean blanca = true;
+                int columna = -1;
+                while (xml.hasNext()) {
+                    int evento = xml.next();
+                    if (evento == XMLStreamConstants.END_ELEMENT && "row".equals(xml.getLocalName())) {
+                        break;
+                    }
+                    if (evento == XMLStreamConstants.START_ELEMENT && "c".equals(xml.getLocalName())) {
+                        String referencia = xml.getAttributeValue(null, "r");
+                        columna = referencia != null ? columna(referencia) : columna + 1;
+                        String valor = leerCelda(columna);
+                        while (valores.size() <= columna) {
+                            valores.add(seleccionada(valores.size()) ? "" : null);
+                        }
+                        valores.set(columna, valor);
+                        if (celdaConDato) {
+                            blanca = false;
+                        }
+                    }
+                }
+                // Mismo ancho que el encabezado, como las columnas vacías al final de un CSV exportado
+                int ancho = encabezado != null ? encabezado.length : 0;
+                while (valores.size() < ancho) {
+                    valores.add(seleccionada(valores.size()) ? "" : null);
+                }
+                return new Fila(numero, valores.toArray(new String[0]), blanca);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lee el elemento {@code <c>} actual hasta su cierre.
+     * @return el valor con formato, o null si la columna no está seleccionada
+     */
+    private String leerCelda(int columna) throws XMLStreamException {
+        String tipo = xml.getAttributeValue(null, "t");
+        String estilo = xml.getAttributeValue(null, "s");
+        String valor = null;
+        StringBuilder enLinea = null;
+        while (xml.hasNext()) {
+            int evento = xml.next();
+            if (evento == XMLStreamConstants.END_ELEMENT && "c".equals(xml.getLocalName())) {
+                break;
+            }
+            if (evento != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            String elemento = xml.getLocalName();
+            if ("v".equals(elemento)) {
+                valor = xml.getElementText();
+            } else if ("t".equals(elemento)) {
+                // Texto en línea (<is><t>…</t></is>), posiblemente en varios tramos con formato
+                if (enLinea == null) {
+                    enLinea = new StringBuilder();
+                }
+                enLinea.append(xml.getElementText());
+            } else if ("f".equals(elemento)) {
+                xml.getElementText();
+            }
+        }
+        // Una cadena compartida se resuelve para saber si la celda solo trae espacios
+        String compartida = "s".equals(tipo) && valor != null ? cadenas.getItemAt(Integer.parseInt(valor)).getString() : null;
+        if (compartida != null) {
+            celdaConDato = !compartida.isBlank();
+        } else {
+            celdaConDato = (valor != null && !valor.isBlank()) || (enLinea != null && !enLinea.toString().isBlank());
+        }
+        if (!seleccionada(columna)) {
+            return null;
+        }
+        if ("inlineStr".equals(tipo)) {
+            return enLinea != null ? enLinea.toString() : "";
+        }
+        if (valor == null) {
+            return "";
+        }
+        if (tipo == null || "n".equals(tipo)) {
+            return formatearNumero(valor, estilo);
+        }
+        switch (tipo) {
+            case "s":
+                return compartida;
+            case "b":
+                return "1".equals(valor) ? "TRUE" : "FALSE";
+            default:
+                // "str" (resultado de fórmula), "e" (error como #N/A) y "d" (fecha ISO) se usan tal cual
+                return valor;
+        }
+    }
+
+    private String formatearNumero(String valor, String estilo) {
+        short formato = 0;
+        String patron = null;
+        if (estilo != null) {
+            XSSFCellStyle cellStyle = estilos.getStyleAt(Integer.parseInt(estilo));
+            if (cellStyle != null) {
+                formato = cellStyle.getDataFormat();
+                patron = cellStyle.getDataFormatString();
+            }
+        }
+        if (patron == null) {
+            patron = BuiltinFormats.getBuiltinFormat(formato);
+        }
+        try {
+            return patron != null ? formatter.formatRawCellContents(Double.parseDouble(valor), formato, patron) : valor;
+        } catch (NumberFormatException e) {
+            return valor;
+        }
+    }
+
+    private boolean seleccionada(int columna) {
+        return seleccion == null || (columna < seleccion.length && seleccion[columna]);
+    }
+
+    /** Compara las columnas decodificadas con el encabezado de la primera hoja. */
+    private boolean mismoEncabezado(String[] valores) {
+        for (int i = 0; i < Math.max(valores.length, encabezado.length); i++) {
+            String valor = i < valores.length ? valores[i] : "";
+            if (valor == null) {
+                continue;
+            }
+            String esperado = i < encabezado.length && encabezado[i] != null ? encabezado[i] : "";
+            if (!valor.trim().equalsIgnoreCase(esperado.trim())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // "AB12" -> 27 (índice desde 0)
+    private static int columna(String referencia) {
+        int columna = 0;
+        for (int i = 0; i < referencia.length(); i++) {
+            char c = referencia.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                break;
+            }
+            columna = columna * 26 + (c - 'A' + 1);
+        }
+        return columna - 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            cerrarHoja();
+        } finally {
+            // Solo lectura: revert cierra el paquete sin intentar guardarlo
+            paquete.revert();
+            if (temporal != null) {
+                Files.deleteIfExists(temporal);
+            }
+        }
+    }
+
+    private static final class Fila {
+        private final int numero;
+        private final String[] valores;
+        private final boolean blanca;
+
+        private Fila(int numero, String[] valores, boolean blanca) {
+            this.numero = numero;
+            this.valores = valores;
+            this.blanca = blanca;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.cdc.fin.presupuesto.repository;
+
+import com.cdc.fin.presupuesto.model.Proveedor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BulkWriterTest {
+
+    private static final String TABLA = "proveedores";
+    // Límite muy por encima de lo que consumen las pruebas: el ritmo adaptativo sigue bajando a la
+    // mitad con cada throttling, pero sin alargar la prueba
+    private static final double MAX_WCU = 100_000;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final DynamoDbFalso dynamo = new DynamoDbFalso();
+    private final DynamoDbTable<Proveedor> table = DynamoDbEnhancedClient.builder()
+        .dynamoDbClient(dynamo)
+        .build()
+        .table(TABLA, TableSchema.fromBean(Proveedor.class));
+
+    @AfterEach
+    void cerrar() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void filasSinProcesarSeReintentanHastaEscribirse() {
+        // Cada tercera fila vuelve sin procesar en sus dos primeros intentos
+        dynamo.sinProcesar = (id, intento) -> numero(id) % 3 == 0 && intento <= 2;
+        List<Proveedor> proveedores = proveedores(103);
+
+        BulkWriter.Resultado resultado = writer(8).putAll(table, proveedores);
+
+        assertTrue(resultado.isCompleto(), () -> "fallos: " + indices(resultado));
+        assertEquals(103, resultado.getEscritos());
+        assertTrue(resultado.getReintentos() > 0);
+        assertEquals(103, dynamo.items.size());
+        // Ninguna fila se escribe dos veces ni se pierde
+        dynamo.escrituras.forEach((id, veces) -> assertEquals(1, veces.get(), id));
+    }
+
+    @Test
+    void reintentosAgotadosReportanLasFilasSinProcesar() {
+        dynamo.sinProcesar = (id, intento) -> numero(id) % 7 == 0;
+        List<Proveedor> proveedores = proveedores(60);
+
+        BulkWriter.Resultado resultado = writer(2).putAll(table, proveedores);
+
+        List<Integer> esperados = List.of(0, 7, 14, 21, 28, 35, 42, 49, 56);
+        assertEquals(esperados, indices(resultado));
+        assertEquals(60 - esperados.size(), resultado.getEscritos());
+        assertEquals(60 - esperados.size(), dynamo.items.size());
+        for (int indice : esperados) {
+            // Tres intentos: el original y dos reintentos
+            assertEquals(3, dynamo.intentos.get(proveedores.get(indice).getId()).get());
+        }
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> resultado.requireCompleto("proveedores"));
+        assertTrue(e.getMessage().startsWith("No se pudieron escribir 9 de 60 proveedores"), e.getMessage());
+    }
+
+    @Test
+    void loteRechazadoSeEscribeFilaPorFila() {
+        List<Proveedor> proveedores = proveedores(60);
+        for (int indice : new int[] {3, 27, 30, 59}) {
+            proveedores.get(indice).setNombre("INVALIDA");
+        }
+        // Dos filas idénticas e inválidas en el mismo lote: cada una se reporta con su propio índice
+        proveedores.set(31, copia(proveedores.get(30)));
+
+        BulkWriter.Resultado resultado = writer(8).putAll(table, proveedores);
+
+        assertEquals(List.of(3, 27, 30, 31, 59), indices(resultado));
+        assertEquals(55, resultado.getEscritos());
+        assertEquals(55, dynamo.items.size());
+        for (BulkWriter.Fallo fallo : resultado.getFallos()) {
+            assertTrue(fallo.getMensaje().startsWith("Nombre inválido"), fallo.getMensaje());
+        }
+    }
+
+    @Test
+    void throttlingDelClienteSeReintenta() {
+        dynamo.excepcionesPendientes.set(3);
+
+        BulkWriter.Resultado resultado = writer(8).putAll(table, proveedores(80));
+
+        assertTrue(resultado.isCompleto(), () -> "fallos: " + indices(resultado));
+        assertEquals(80, resultado.getEscritos());
+        assertEquals(3, resultado.getReintentos());
+        assertEquals(80, dynamo.items.size());
+    }
+
+    @Test
+    void borradoConFilasSinProcesar() {
+        List<Proveedor> proveedores = proveedores(40);
+        writer(8).putAll(table, proveedores).requireCompleto("proveedores");
+        dynamo.intentos.clear();
+        dynamo.sinProcesar = (id, intento) -> numero(id) % 2 == 0 && intento == 1;
+
+        BulkWriter.Resultado resultado = writer(8).deleteAll(table, proveedores);
+
+        assertTrue(resultado.isCompleto(), () -> "fallos: " + indices(resultado));
+        assertEquals(40, resultado.getEscritos());
+        assertTrue(dynamo.items.isEmpty());
+    }
+
+    private BulkWriter writer(int maxRetries) {
+        return new BulkWriter(dynamo, executor, 4, maxRetries, MAX_WCU);
+    }
+
+    private static List<Proveedor> proveedores(int n) {
+        List<Proveedor> proveedores = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Proveedor proveedor = new Proveedor();
+            proveedor.setId("P" + i);
+            proveedor.setNombre("Proveedor " + i);
+            proveedor.setNumeroProveedor(String.valueOf(1000 + i));
+            proveedores.add(proveedor);
+        }
+        return proveedores;
+    }
+
+    private static Proveedor copia(Proveedor original) {
+        Proveedor proveedor = new Proveedor();
+        proveedor.setId(original.getId());
+        proveedor.setNombre(original.getNombre());
+        proveedor.setNumeroProveedor(original.getNumeroProveedor());
+        return proveedor;
+    }
+
+    private static int numero(String id) {
+        return Integer.parseInt(id.substring(1));
+    }
+
+    private static List<Integer> indices(BulkWriter.Resultado resultado) {
+        List<Integer> indices = new ArrayList<>();
+        for (BulkWriter.Fallo fallo : resultado.getFallos()) {
+            indices.add(fallo.getIndice());
+        }
+        return indices;
+    }
+
+    /**
+     * DynamoDB falso: rechaza el lote completo si trae una fila con nombre "INVALIDA" (como un
+     * ValidationException) y devuelve sin procesar las filas que indique sinProcesar, como copias
+     * igual que el SDK al deserializar la respuesta.
+     */
+    private static final class DynamoDbFalso implements DynamoDbClient {
+        final Map<String, Map<String, AttributeValue>> items = new ConcurrentHashMap<>();
+        final Map<String, AtomicInteger> intentos = new ConcurrentHashMap<>();
+        final Map<String, AtomicInteger> escrituras = new ConcurrentHashMap<>();
+        final AtomicInteger excepcionesPendientes = new AtomicInteger();
+        // (id, número de intento de esa fila empezando en 1) → queda sin procesar
+        volatile BiPredicate<String, Integer> sinProcesar = (id, intento) -> false;
+
+        @Override
+        public BatchWriteItemResponse batchWriteItem(BatchWriteItemRequest request) {
+            if (excepcionesPendientes.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                throw ProvisionedThroughputExceededException.builder().message("Rate exceeded").build();
+            }
+            List<WriteRequest> escrituras = request.requestItems().get(TABLA);
+            for (WriteRequest escritura : escrituras) {
+                if (escritura.putRequest() != null && invalida(escritura.putRequest().item())) {
+                    throw DynamoDbException.builder().message("One or more parameter values were invalid").statusCode(400).build();
+                }
+            }
+            List<WriteRequest> devueltas = new ArrayList<>();
+            for (WriteRequest escritura : escrituras) {
+                String id = id(escritura);
+                int intento = intentos.computeIfAbsent(id, k -> new AtomicInteger()).incrementAndGet();
+                if (sinProcesar.test(id, intento)) {
+                    devueltas.add(escritura.toBuilder().build());
+                } else {
+                    aplicar(escritura);
+                }
+            }
+            return BatchWriteItemResponse.builder()
+                .unprocessedItems(devueltas.isEmpty() ? Map.of() : Map.of(TABLA, devueltas))
+                .consumedCapacity(ConsumedCapacity.builder()
+                    .tableName(TABLA)
+                    .capacityUnits((double) (escrituras.size() - devueltas.size()))
+                    .build())
+                .build();
+        }
+
+        @Override
+        public PutItemResponse putItem(PutItemRequest request) {
+            if (invalida(request.item())) {
+                throw DynamoDbException.builder().message("Nombre inválido").statusCode(400).build();
+            }
+            aplicar(WriteRequest.builder().putRequest(p -> p.item(request.item())).build());
+            return PutItemResponse.builder().build();
+        }
+
+        @Override
+        public DeleteItemResponse deleteItem(DeleteItemRequest request) {
+            aplicar(WriteRequest.builder().deleteRequest(d -> d.key(request.key())).build());
+            return DeleteItemResponse.builder().build();
+        }
+
+        private void aplicar(WriteRequest escritura) {
+            String id = id(escritura);
+            if (escritura.putRequest() != null) {
+                items.put(id, escritura.putRequest().item());
+                escrituras.computeIfAbsent(id, k -> new AtomicInteger()).incrementAndGet();
+            } else {
+                items.remove(id);
+            }
+        }
+
+        private static boolean invalida(Map<String, AttributeValue> item) {
+            AttributeValue nombre = item.get("nombre");
+            return nombre != null && "INVALIDA".equals(nombre.s());
+        }
+
+        private static String id(WriteRequest escritura) {
+            Map<String, AttributeValue> llave = escritura.putRequest() != null
+                ? escritura.putRequest().item()
+                : escritura.deleteRequest().key();
+            return llave.get("id").s();
+        }
+
+        @Override
+        public String serviceName() {
+            return SERVICE_NAME;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
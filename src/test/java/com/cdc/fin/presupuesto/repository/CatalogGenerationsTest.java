@@ -0,0 +1,205 @@
+package com.cdc.fin.presupuesto.repository;
+
+import com.cdc.fin.presupuesto.model.Departamento;
+import com.cdc.fin.presupuesto.model.Proveedor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CatalogGenerationsTest {
+
+    private static final String TABLA = "catalogo";
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final DynamoDbEnMemoria dynamo = new DynamoDbEnMemoria();
+    private final DynamoDbEnhancedClient enhancedClient = DynamoDbEnhancedClient.builder().dynamoDbClient(dynamo).build();
+    private final BulkWriter bulkWriter = new BulkWriter(dynamo, executor, 2, 2, 100_000);
+    // Sin caché de la generación activa ni espera antes de recolectar
+    private final CatalogGenerations generaciones = new CatalogGenerations(dynamo, bulkWriter, 0);
+    private final ProveedorRepository proveedores = repositorio(new ProveedorRepository(enhancedClient, TABLA));
+    private final DynamoDbTable<Proveedor> table = enhancedClient.table(TABLA, TableSchema.fromBean(Proveedor.class));
+
+    @AfterEach
+    void cerrar() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void duranteElReemplazoSeVeElCatalogoAnteriorCompleto() {
+        proveedores.saveAll(List.of(proveedor("P1", "Uno"), proveedor("P2", "Dos"))).requireCompleto("proveedores");
+
+        CatalogImportSession<Proveedor> sesion = proveedores.iniciarImportacion(CatalogImportSession.Modo.REEMPLAZAR);
+        List<Proveedor> lote = List.of(proveedor("P1", "Uno nuevo"), proveedor("P3", "Tres"));
+        assertTrue(sesion.escribir(lote).isEmpty());
+        // El lote conserva los IDs sin prefijo de generación
+        assertEquals("P1", lote.get(0).getId());
+
+        assertEquals(Map.of("P1", "Uno", "P2", "Dos"), nombres(proveedores.findAll()));
+        assertEquals("Uno", proveedores.findById("P1").orElseThrow().getNombre());
+        assertTrue(proveedores.findById("P3").isEmpty());
+
+        assertTrue(sesion.terminar().getAdvertencias().isEmpty());
+
+        assertEquals(Map.of("P1", "Uno nuevo", "P3", "Tres"), nombres(proveedores.findAll()));
+        assertEquals("P1", proveedores.findById("P1").orElseThrow().getId());
+        assertTrue(proveedores.findById("P2").isEmpty());
+
+        // La recolección deja solo la generación activa
+        assertEquals(2, generaciones.recolectar(table));
+        assertEquals(Set.of(CatalogGenerations.ID_CONTROL, "1#P1", "1#P3"), dynamo.items.keySet());
+    }
+
+    @Test
+    void reemplazoConRegistrosFallidosNoSeActivaYSeEliminanSusFilas() {
+        proveedores.saveAll(List.of(proveedor("P1", "Uno"))).requireCompleto("proveedores");
+        dynamo.rechazar = item -> "INVALIDA".equals(item.get("nombre").s());
+
+        CatalogImportSession.Cierre cierre;
+        try (CatalogImportSession<Proveedor> sesion = proveedores.iniciarImportacion(CatalogImportSession.Modo.REEMPLAZAR)) {
+            assertEquals(1, sesion.escribir(List.of(proveedor("P1", "Uno nuevo"), proveedor("P2", "INVALIDA"))).size());
+            cierre = sesion.terminar();
+        }
+
+        assertEquals(1, cierre.getAdvertencias().size());
+        assertTrue(cierre.getAdvertencias().get(0).contains("sigue vigente el anterior"), cierre.getAdvertencias().get(0));
+        assertEquals(Map.of("P1", "Uno"), nombres(proveedores.findAll()));
+        assertEquals(Set.of(CatalogGenerations.ID_CONTROL, "P1"), dynamo.items.keySet());
+    }
+
+    @Test
+    void reemplazoInterrumpidoSeDescartaYElSiguienteSeActiva() {
+        proveedores.saveAll(List.of(proveedor("P1", "Uno"))).requireCompleto("proveedores");
+
+        assertThrows(IOException.class, () -> {
+            try (CatalogImportSession<Proveedor> sesion = proveedores.iniciarImportacion(CatalogImportSession.Modo.REEMPLAZAR)) {
+                sesion.escribir(List.of(proveedor("P1", "Uno nuevo"), proveedor("P2", "Dos")));
+                throw new IOException("Archivo truncado");
+            }
+        });
+
+        assertEquals(Map.of("P1", "Uno"), nombres(proveedores.findAll()));
+        assertEquals(Set.of(CatalogGenerations.ID_CONTROL, "P1"), dynamo.items.keySet());
+
+        try (CatalogImportSession<Proveedor> sesion = proveedores.iniciarImportacion(CatalogImportSession.Modo.REEMPLAZAR)) {
+            sesion.escribir(List.of(proveedor("P2", "Dos")));
+            sesion.terminar();
+        }
+        assertEquals(Map.of("P2", "Dos"), nombres(proveedores.findAll()));
+        assertEquals(2, generaciones.activa(table));
+    }
+
+    @Test
+    void escriturasSueltasDuranteElReemplazoSeTrasladan() {
+        proveedores.saveAll(List.of(proveedor("P1", "Uno"), proveedor("P2", "Dos"), proveedor("P3", "Tres")))
+            .requireCompleto("proveedores");
+
+        try (CatalogImportSession<Proveedor> sesion = proveedores.iniciarImportacion(CatalogImportSession.Modo.REEMPLAZAR)) {
+            sesion.escribir(List.of(proveedor("P1", "Uno archivo"), proveedor("P2", "Dos archivo")));
+
+            proveedores.save(proveedor("P2", "Dos editado"));
+            proveedores.save(proveedor("P4", "Cuatro"));
+            proveedores.deleteById("P1");
+            // Se ven de inmediato en el catálogo vigente
+            assertEquals(Map.of("P2", "Dos editado", "P3", "Tres", "P4", "Cuatro"), nombres(proveedores.findAll()));
+
+            sesion.terminar();
+        }
+
+        // El archivo no traía P3; la edición de P2, el alta de P4 y la baja de P1 prevalecen sobre el archivo
+        assertEquals(Map.of("P2", "Dos editado", "P4", "Cuatro"), nombres(proveedores.findAll()));
+        assertFalse(dynamo.items.get(CatalogGenerations.ID_CONTROL).containsKey("pendientes"));
+    }
+
+    @Test
+    void escrituraAnotadaDespuesDeActivarSeTrasladaAlAnotarla() {
+        proveedores.saveAll(List.of(proveedor("P1", "Uno"))).requireCompleto("proveedores");
+        try (CatalogImportSession<Proveedor> sesion = proveedores.iniciarImportacion(CatalogImportSession.Modo.REEMPLAZAR)) {
+            sesion.escribir(List.of(proveedor("P1", "Uno archivo")));
+            // Escritura en la generación 0 que se anota hasta después de la activación
+            dynamo.items.put("P9", Map.of("id", AttributeValue.fromS("P9"), "nombre", AttributeValue.fromS("Nueve"),
+                CatalogGenerations.ATRIBUTO, AttributeValue.fromN("0")));
+            sesion.terminar();
+        }
+        assertTrue(proveedores.findById("P9").isEmpty());
+
+        generaciones.anotarEscrituras(table, List.of("P9"), 0);
+
+        assertEquals(Map.of("P1", "Uno archivo", "P9", "Nueve"), nombres(proveedores.findAll()));
+        assertFalse(dynamo.items.get(CatalogGenerations.ID_CONTROL).containsKey("pendientes"));
+    }
+
+    @Test
+    void departamentosConIdAleatorioNoSeDuplicanEntreGeneraciones() {
+        DepartamentoRepository departamentos = repositorio(new DepartamentoRepository(enhancedClient, TABLA));
+        for (int i = 0; i < 2; i++) {
+            try (CatalogImportSession<Departamento> sesion = departamentos.iniciarImportacion(CatalogImportSession.Modo.REEMPLAZAR)) {
+                sesion.escribir(List.of(departamento("C1", "IT"), departamento("C2", "Finanzas")));
+                // Durante el segundo reemplazo se ve solo el primero
+                assertEquals(i == 0 ? 0 : 2, departamentos.findAll().size());
+                sesion.terminar();
+            }
+            assertEquals(2, departamentos.findAll().size());
+        }
+
+        // Delta compara contra la generación activa y conserva sus IDs
+        Map<String, String> ids = new TreeMap<>();
+        departamentos.findAll().forEach(d -> ids.put(d.getCeco(), d.getId()));
+        CatalogImportSession.Cierre cierre;
+        try (CatalogImportSession<Departamento> sesion = departamentos.iniciarImportacion(CatalogImportSession.Modo.DELTA)) {
+            List<Departamento> lote = List.of(departamento("C1", "IT"), departamento("C2", "Finanzas"));
+            sesion.escribir(lote);
+            assertEquals(ids.get("C1"), lote.get(0).getId());
+            cierre = sesion.terminar();
+        }
+        assertEquals(2, cierre.getDiff().get("sinCambios"));
+        assertEquals(ids.get("C2"), departamentos.findByCeco("C2").getId());
+        assertEquals(ids.get("C2"), departamentos.findById(ids.get("C2")).orElseThrow().getId());
+    }
+
+    private <R> R repositorio(R repository) {
+        ReflectionTestUtils.setField(repository, "bulkWriter", bulkWriter);
+        ReflectionTestUtils.setField(repository, "generaciones", generaciones);
+        ReflectionTestUtils.setField(repository, "catalogDelta", new CatalogDelta(bulkWriter));
+        return repository;
+    }
+
+    private static Proveedor proveedor(String id, String nombre) {
+        Proveedor proveedor = new Proveedor();
+        proveedor.setId(id);
+        proveedor.setNombre(nombre);
+        return proveedor;
+    }
+
+    private static Departamento departamento(String ceco, String nombre) {
+        Departamento departamento = new Departamento();
+        departamento.setId(UUID.randomUUID().toString());
+        departamento.setCeco(ceco);
+        departamento.setNombreDepartamento(nombre);
+        departamento.setSubDepartamento("General");
+        return departamento;
+    }
+
+    private static Map<String, String> nombres(List<Proveedor> lista) {
+        Map<String, String> nombres = new TreeMap<>();
+        lista.forEach(proveedor -> nombres.put(proveedor.getId(), proveedor.getNombre()));
+        return nombres;
+    }
+}
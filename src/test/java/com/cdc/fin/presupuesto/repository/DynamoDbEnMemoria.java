@@ -0,0 +1,296 @@
+package com.cdc.fin.presupuesto.repository;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * DynamoDB en memoria para pruebas de repositorios: una tabla con llave de partición "id",
+ * expresiones de condición y filtro (comparaciones, AND/OR/NOT, paréntesis,
+ * attribute_exists/attribute_not_exists) y de actualización (SET de valores, REMOVE, ADD y DELETE).
+ * Las operaciones son atómicas (synchronized), como las de un item en DynamoDB.
+ */
+class DynamoDbEnMemoria implements DynamoDbClient {
+
+    private static final String PK = "id";
+
+    final Map<String, Map<String, AttributeValue>> items = new TreeMap<>();
+    // Filas que DynamoDB rechaza (como un ValidationException)
+    volatile Predicate<Map<String, AttributeValue>> rechazar = item -> false;
+
+    @Override
+    public synchronized GetItemResponse getItem(GetItemRequest request) {
+        Map<String, AttributeValue> item = items.get(request.key().get(PK).s());
+        return GetItemResponse.builder().item(item != null ? new HashMap<>(item) : null).build();
+    }
+
+    @Override
+    public synchronized PutItemResponse putItem(PutItemRequest request) {
+        if (rechazar.test(request.item())) {
+            throw DynamoDbException.builder().message("Fila rechazada").statusCode(400).build();
+        }
+        items.put(request.item().get(PK).s(), new HashMap<>(request.item()));
+        return PutItemResponse.builder().build();
+    }
+
+    @Override
+    public synchronized DeleteItemResponse deleteItem(DeleteItemRequest request) {
+        items.remove(request.key().get(PK).s());
+        return DeleteItemResponse.builder().build();
+    }
+
+    @Override
+    public synchronized BatchWriteItemResponse batchWriteItem(BatchWriteItemRequest request) {
+        for (List<WriteRequest> escrituras : request.requestItems().values()) {
+            for (WriteRequest escritura : escrituras) {
+                if (escritura.putRequest() != null && rechazar.test(escritura.putRequest().item())) {
+                    throw DynamoDbException.builder().message("Fila rechazada").statusCode(400).build();
+                }
+            }
+            for (WriteRequest escritura : escrituras) {
+                if (escritura.putRequest() != null) {
+                    Map<String, AttributeValue> item = escritura.putRequest().item();
+                    items.put(item.get(PK).s(), new HashMap<>(item));
+                } else {
+                    items.remove(escritura.deleteRequest().key().get(PK).s());
+                }
+            }
+        }
+        return BatchWriteItemResponse.builder().unprocessedItems(Map.of()).build();
+    }
+
+    @Override
+    public synchronized UpdateItemResponse updateItem(UpdateItemRequest request) {
+        String id = request.key().get(PK).s();
+        Map<String, AttributeValue> anterior = items.get(id);
+        Expresion expresion = new Expresion(request.expressionAttributeNames(), request.expressionAttributeValues());
+        if (request.conditionExpression() != null
+                && !expresion.evaluar(request.conditionExpression(), anterior != null ? anterior : Map.of())) {
+            throw ConditionalCheckFailedException.builder().message("The conditional request failed").build();
+        }
+        Map<String, AttributeValue> item = anterior != null ? new HashMap<>(anterior) : new HashMap<>(request.key());
+        expresion.actualizar(request.updateExpression(), item);
+        items.put(id, item);
+        return UpdateItemResponse.builder()
+            .attributes(request.returnValues() == ReturnValue.ALL_NEW ? new HashMap<>(item) : null)
+            .build();
+    }
+
+    @Override
+    public synchronized ScanResponse scan(ScanRequest request) {
+        Expresion expresion = new Expresion(request.expressionAttributeNames(), request.expressionAttributeValues());
+        List<Map<String, AttributeValue>> encontrados = new ArrayList<>();
+        for (Map<String, AttributeValue> item : items.values()) {
+            if (request.filterExpression() == null || expresion.evaluar(request.filterExpression(), item)) {
+                encontrados.add(new HashMap<>(item));
+            }
+        }
+        return ScanResponse.builder().items(encontrados).count(encontrados.size()).build();
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Evaluador de expresiones con sus nombres (#n) y valores (:v).
+     */
+    private static final class Expresion {
+        private static final Pattern TOKEN = Pattern.compile("\\s*(<>|<=|>=|[=<>(),]|[#:]?[A-Za-z_][A-Za-z0-9_]*)");
+
+        private final Map<String, String> nombres;
+        private final Map<String, AttributeValue> valores;
+        private List<String> tokens;
+        private int pos;
+
+        Expresion(Map<String, String> nombres, Map<String, AttributeValue> valores) {
+            this.nombres = nombres != null ? nombres : Map.of();
+            this.valores = valores != null ? valores : Map.of();
+        }
+
+        boolean evaluar(String expresion, Map<String, AttributeValue> item) {
+            tokens = tokens(expresion);
+            pos = 0;
+            boolean resultado = o(item);
+            if (pos != tokens.size()) {
+                throw new IllegalArgumentException("Expresión no soportada: " + expresion);
+            }
+            return resultado;
+        }
+
+        void actualizar(String expresion, Map<String, AttributeValue> item) {
+            tokens = tokens(expresion);
+            pos = 0;
+            while (pos < tokens.size()) {
+                String clausula = tokens.get(pos++).toUpperCase();
+                while (true) {
+                    String atributo = nombre(tokens.get(pos++));
+                    switch (clausula) {
+                        case "SET" -> {
+                            esperar("=");
+                            item.put(atributo, valor(tokens.get(pos++)));
+                        }
+                        case "REMOVE" -> item.remove(atributo);
+                        case "ADD" -> item.put(atributo, sumar(item.get(atributo), valor(tokens.get(pos++))));
+                        case "DELETE" -> {
+                            AttributeValue actual = item.get(atributo);
+                            if (actual != null) {
+                                Set<String> restantes = new LinkedHashSet<>(actual.ss());
+                                restantes.removeAll(valor(tokens.get(pos++)).ss());
+                                if (restantes.isEmpty()) item.remove(atributo);
+                                else item.put(atributo, AttributeValue.fromSs(new ArrayList<>(restantes)));
+                            } else {
+                                pos++;
+                            }
+                        }
+                        default -> throw new IllegalArgumentException("Cláusula no soportada: " + clausula);
+                    }
+                    if (pos >= tokens.size() || !tokens.get(pos).equals(",")) {
+                        break;
+                    }
+                    pos++;
+                }
+            }
+        }
+
+        private boolean o(Map<String, AttributeValue> item) {
+            boolean resultado = y(item);
+            while (pos < tokens.size() && tokens.get(pos).equalsIgnoreCase("OR")) {
+                pos++;
+                resultado = y(item) | resultado;
+            }
+            return resultado;
+        }
+
+        private boolean y(Map<String, AttributeValue> item) {
+            boolean resultado = factor(item);
+            while (pos < tokens.size() && tokens.get(pos).equalsIgnoreCase("AND")) {
+                pos++;
+                resultado = factor(item) & resultado;
+            }
+            return resultado;
+        }
+
+        private boolean factor(Map<String, AttributeValue> item) {
+            String token = tokens.get(pos++);
+            if (token.equalsIgnoreCase("NOT")) {
+                return !factor(item);
+            }
+            if (token.equals("(")) {
+                boolean resultado = o(item);
+                esperar(")");
+                return resultado;
+            }
+            if (token.equals("attribute_exists") || token.equals("attribute_not_exists")) {
+                esperar("(");
+                boolean existe = item.containsKey(nombre(tokens.get(pos++)));
+                esperar(")");
+                return token.equals("attribute_exists") == existe;
+            }
+            AttributeValue izquierdo = operando(token, item);
+            String operador = tokens.get(pos++);
+            AttributeValue derecho = operando(tokens.get(pos++), item);
+            if (izquierdo == null || derecho == null) {
+                return false;
+            }
+            int comparacion = comparar(izquierdo, derecho);
+            return switch (operador) {
+                case "=" -> comparacion == 0;
+                case "<>" -> comparacion != 0;
+                case "<" -> comparacion < 0;
+                case "<=" -> comparacion <= 0;
+                case ">" -> comparacion > 0;
+                case ">=" -> comparacion >= 0;
+                default -> throw new IllegalArgumentException("Operador no soportado: " + operador);
+            };
+        }
+
+        private AttributeValue operando(String token, Map<String, AttributeValue> item) {
+            return token.startsWith(":") ? valor(token) : item.get(nombre(token));
+        }
+
+        private String nombre(String token) {
+            return token.startsWith("#") ? nombres.get(token) : token;
+        }
+
+        private AttributeValue valor(String token) {
+            AttributeValue valor = valores.get(token);
+            if (valor == null) {
+                throw new IllegalArgumentException("Valor sin definir: " + token);
+            }
+            return valor;
+        }
+
+        private void esperar(String token) {
+            if (!tokens.get(pos++).equals(token)) {
+                throw new IllegalArgumentException("Se esperaba " + token);
+            }
+        }
+
+        private static int comparar(AttributeValue a, AttributeValue b) {
+            if (a.n() != null && b.n() != null) {
+                return new BigDecimal(a.n()).compareTo(new BigDecimal(b.n()));
+            }
+            if (a.s() != null && b.s() != null) {
+                return a.s().compareTo(b.s());
+            }
+            return a.equals(b) ? 0 : 1;
+        }
+
+        private static AttributeValue sumar(AttributeValue actual, AttributeValue valor) {
+            if (valor.n() != null) {
+                BigDecimal base = actual != null ? new BigDecimal(actual.n()) : BigDecimal.ZERO;
+                return AttributeValue.fromN(base.add(new BigDecimal(valor.n())).toPlainString());
+            }
+            Set<String> union = new LinkedHashSet<>(actual != null ? actual.ss() : List.of());
+            union.addAll(valor.ss());
+            return AttributeValue.fromSs(new ArrayList<>(union));
+        }
+
+        private static List<String> tokens(String expresion) {
+            List<String> tokens = new ArrayList<>();
+            Matcher matcher = TOKEN.matcher(expresion);
+            int fin = 0;
+            while (matcher.find() && matcher.start() == fin) {
+                tokens.add(matcher.group(1));
+                fin = matcher.end();
+            }
+            if (!expresion.substring(fin).isBlank()) {
+                throw new IllegalArgumentException("Expresión no soportada: " + expresion);
+            }
+            return tokens;
+        }
+    }
+}
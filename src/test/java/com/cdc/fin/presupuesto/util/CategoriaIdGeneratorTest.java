@@ -0,0 +1,87 @@
+package com.cdc.fin.presupuesto.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CategoriaIdGeneratorTest {
+
+    // Caracteres que ejercitan la tabla Latin-1 y el camino de toUpperCase: acentos, ß → SS, ÿ → Ÿ,
+    // µ → Μ, ı → I, ſ → S, ligaduras (ﬀ → FF), ǰ → J + combinante, letras no latinas y surrogados
+    private static final String[] ALFABETO = {
+        "a", "z", "A", "Z", "0", "9", " ", " ", "_", "-", ".", "/", "&", "\t",
+        "á", "à", "â", "ã", "ä", "å", "Á", "é", "È", "ë", "í", "Ï", "ó", "Õ", "ö", "ú", "Ü", "ñ", "Ñ", "ç", "Ç",
+        "ß", "ÿ", "µ", "ª", "º", "²", "½", "×", "÷", "ð", "þ", "Ø", "Æ", " ",
+        "ı", "ſ", "ﬀ", "ǰ", "ŉ", "ΐ", "ω", "Ж", "ж", "ա", "中", "ﾝ",
+        "𐐨", "𝐀", "😀", "\uD800", "\uDC00",
+    };
+
+    @Test
+    void coincideConLaCadenaDeExpresionesRegulares() {
+        Random random = new Random(20240617L);
+        for (int n = 0; n < 20_000; n++) {
+            int largo = 1 + random.nextInt(n % 10 == 0 ? 120 : 20);
+            StringBuilder nombre = new StringBuilder();
+            for (int i = 0; i < largo; i++) {
+                nombre.append(ALFABETO[random.nextInt(ALFABETO.length)]);
+            }
+            if (nombre.toString().trim().isEmpty()) {
+                // Sin nombre se genera un ID aleatorio (ver nombreVacioGeneraIdAleatorio)
+                continue;
+            }
+            assertEquals(generarConRegex(nombre.toString()), CategoriaIdGenerator.generar(nombre.toString()),
+                () -> "nombre: " + escapar(nombre.toString()));
+        }
+    }
+
+    @Test
+    void casosConocidos() {
+        for (String nombre : List.of("Viáticos y Gastos de Viaje", "  Teléfono / Internet  ", "Señalización",
+                "Straße", "__Café__", "Ǆ", "€ 100", "!!!", "a".repeat(60), "a ".repeat(40))) {
+            assertEquals(generarConRegex(nombre), CategoriaIdGenerator.generar(nombre), nombre);
+        }
+        assertEquals("CAT_VIATICOS_Y_GASTOS_DE_VIAJE", CategoriaIdGenerator.generar("Viáticos y Gastos de Viaje"));
+        assertEquals("CAT_STRASSE", CategoriaIdGenerator.generar("Straße"));
+        assertEquals("CAT_", CategoriaIdGenerator.generar("!!!"));
+    }
+
+    @Test
+    void nombreVacioGeneraIdAleatorio() {
+        for (String nombre : new String[] {null, "", "   "}) {
+            String id = CategoriaIdGenerator.generar(nombre);
+            assertTrue(id.startsWith("CAT_") && id.length() > "CAT_".length(), id);
+        }
+        assertNotEquals(CategoriaIdGenerator.generar(""), CategoriaIdGenerator.generar(""));
+    }
+
+    // Implementación anterior de CategoriaGastoService.generateCategoriaId
+    private static String generarConRegex(String nombre) {
+        String normalized = nombre.trim()
+            .toUpperCase()
+            .replaceAll("[ÁÀÂÃÄÅ]", "A")
+            .replaceAll("[ÉÈÊË]", "E")
+            .replaceAll("[ÍÌÎÏ]", "I")
+            .replaceAll("[ÓÒÔÕÖ]", "O")
+            .replaceAll("[ÚÙÛÜ]", "U")
+            .replaceAll("[Ñ]", "N")
+            .replaceAll("[Ç]", "C")
+            .replaceAll("[^A-Z0-9]", "_")
+            .replaceAll("_+", "_")
+            .replaceAll("^_|_$", "");
+        if (normalized.length() > 50) {
+            normalized = normalized.substring(0, 50);
+        }
+        return "CAT_" + normalized;
+    }
+
+    private static String escapar(String texto) {
+        StringBuilder sb = new StringBuilder();
+        texto.chars().forEach(c -> sb.append(c < 128 && c >= 32 ? String.valueOf((char) c) : String.format("\\u%04X", c)));
+        return sb.toString();
+    }
+}
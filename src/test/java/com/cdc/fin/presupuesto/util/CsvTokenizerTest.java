@@ -0,0 +1,162 @@
+package com.cdc.fin.presupuesto.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CsvTokenizerTest {
+
+    // Tamaño del búfer de CsvTokenizer.leer
+    private static final int BUFER = 64 * 1024;
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void finDeLineaPartidoEntreRellenos() throws IOException {
+        for (String fin : List.of("\r\n", "\r", "\n")) {
+            for (int largo = BUFER - 4; largo <= BUFER + 2; largo++) {
+                String primero = "x".repeat(largo);
+                String csv = primero + fin + "b,c" + fin + "d" + fin;
+                List<List<String>> esperado = List.of(List.of(primero), List.of("b", "c"), List.of("d"));
+                assertEquals(esperado, leerFlujo(csv), "fin " + fin.replace("\r", "CR").replace("\n", "LF") + ", largo " + largo);
+            }
+        }
+    }
+
+    @Test
+    void comillaEscapadaPartidaEntreRellenos() throws IOException {
+        for (int largo = BUFER - 8; largo <= BUFER + 2; largo++) {
+            String primero = "x".repeat(largo);
+            String csv = primero + ",\"a\"\"b\",\"c\"\n\"\"\"\",e\n";
+            List<List<String>> esperado = List.of(List.of(primero, "a\"b", "c"), List.of("\"", "e"));
+            assertEquals(esperado, leerFlujo(csv), "largo " + largo);
+        }
+    }
+
+    @Test
+    void registroMayorQueElBuferLoDuplica() throws IOException {
+        String largo = "ñ".repeat(BUFER);
+        String csv = "a," + largo + "\nb,c\n";
+        assertEquals(List.of(List.of("a", largo), List.of("b", "c")), leerFlujo(csv));
+    }
+
+    @Test
+    void flujoQueEntregaPocosBytesPorLectura() throws IOException {
+        String csv = "id,nombre\n1,\"Uno, dos\"\r\n2,\"tres\"\"\"\n";
+        InputStream goteo = new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+        try (CsvTokenizer csvTokenizer = CsvTokenizer.leer(goteo)) {
+            assertEquals(List.of(List.of("id", "nombre"), List.of("1", "Uno, dos"), List.of("2", "tres\"")), leerTodo(csvTokenizer));
+        }
+    }
+
+    @Test
+    void ventanasMapeadasPequenasDanLoMismoQueElFlujo() throws IOException {
+        StringBuilder csv = new StringBuilder("ceco,nombre,monto\r\n");
+        for (int i = 0; i < 200; i++) {
+            csv.append("C").append(i).append(",\"Depto ").append(i).append(", \"\"área\"\"\n")
+                .append("línea\",").append(i * 1000).append(i % 3 == 0 ? "\r" : "\r\n");
+        }
+        // Un registro más largo que varias ventanas obliga a duplicarla
+        csv.append("LARGO,").append("z".repeat(100)).append(",1\n");
+        Path archivo = escribir(csv.toString());
+
+        List<List<String>> esperado = leerFlujo(csv.toString());
+        assertEquals(202, esperado.size());
+        assertEquals(List.of("C7", "Depto 7, \"área\"\nlínea", "7000"), esperado.get(8));
+        for (int ventana : new int[] {1, 7, 16, 64, 4096}) {
+            try (CsvTokenizer csvTokenizer = CsvTokenizer.mapear(archivo, ventana)) {
+                assertEquals(esperado, leerTodo(csvTokenizer), "ventana " + ventana);
+            }
+        }
+        try (CsvTokenizer csvTokenizer = CsvTokenizer.mapear(archivo)) {
+            assertEquals(esperado, leerTodo(csvTokenizer));
+        }
+    }
+
+    @Test
+    void omiteElBom() throws IOException {
+        String csv = "\uFEFFnombre,ceco\nIT,C1\n";
+        List<List<String>> esperado = List.of(List.of("nombre", "ceco"), List.of("IT", "C1"));
+        assertEquals(esperado, leerFlujo(csv));
+        try (CsvTokenizer csvTokenizer = CsvTokenizer.mapear(escribir(csv), 2)) {
+            assertEquals(esperado, leerTodo(csvTokenizer));
+        }
+    }
+
+    @Test
+    void saltoDeLineaEntreComillas() throws IOException {
+        assertEquals(List.of(List.of("uno\r\ndos\ntres", "x"), List.of("y", "")),
+            leerFlujo("\"uno\r\ndos\ntres\",x\ny,\n"));
+    }
+
+    @Test
+    void comillaSinCerrarEsError() {
+        assertThrows(IOException.class, () -> leerFlujo("a,\"sin cerrar\nb,c\n"));
+        assertThrows(IOException.class, () -> {
+            try (CsvTokenizer csvTokenizer = CsvTokenizer.mapear(escribir("a,\"sin cerrar"), 4)) {
+                leerTodo(csvTokenizer);
+            }
+        });
+    }
+
+    @Test
+    void diagonalInvertidaEsLiteral() throws IOException {
+        // Solo "" escapa una comilla; \ se conserva tal cual y no evita que la comilla cierre el campo
+        assertEquals(List.of(List.of("C:\\datos\\", "x"), List.of("a\\nb", "\\")),
+            leerFlujo("\"C:\\datos\\\",x\na\\nb,\\\n"));
+    }
+
+    @Test
+    void columnasNoSeleccionadasQuedanEnNull() throws IOException {
+        try (CsvTokenizer csvTokenizer = CsvTokenizer.leer(flujo("a,b,c,d\n1,\"2\",3\n"))) {
+            csvTokenizer.seleccionar(1, 3);
+            assertArrayEquals(new String[] {null, "b", null, "d"}, csvTokenizer.leerRegistro());
+            // El arreglo mide lo que trae el registro aunque falte una columna seleccionada
+            assertArrayEquals(new String[] {null, "2", null}, csvTokenizer.leerRegistro());
+        }
+    }
+
+    private List<List<String>> leerFlujo(String csv) throws IOException {
+        try (CsvTokenizer csvTokenizer = CsvTokenizer.leer(flujo(csv))) {
+            return leerTodo(csvTokenizer);
+        }
+    }
+
+    private static List<List<String>> leerTodo(CsvTokenizer csvTokenizer) throws IOException {
+        List<List<String>> registros = new ArrayList<>();
+        String[] registro;
+        while ((registro = csvTokenizer.leerRegistro()) != null) {
+            registros.add(Arrays.asList(registro));
+        }
+        return registros;
+    }
+
+    private static InputStream flujo(String csv) {
+        return new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Path escribir(String csv) throws IOException {
+        Path archivo = Files.createTempFile(tmp, "importacion", ".csv");
+        Files.write(archivo, csv.getBytes(StandardCharsets.UTF_8));
+        return archivo;
+    }
+}
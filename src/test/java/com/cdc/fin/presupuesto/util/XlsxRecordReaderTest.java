@@ -0,0 +1,188 @@
+package com.cdc.fin.presupuesto.util;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class XlsxRecordReaderTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void encabezadoIgualEnVariasHojas() throws IOException {
+        Path archivo = libro(libro -> {
+            Sheet datos = libro.createSheet("Datos");
+            fila(datos, 1, "nombre", "ceco");
+            fila(datos, 2, "IT", "C1");
+            fila(datos, 3, "Finanzas", "C2");
+            // Mismo encabezado con otras mayúsculas y espacios
+            Sheet mas = libro.createSheet("Más");
+            fila(mas, 1, " Nombre ", "CECO");
+            fila(mas, 2, "Ventas", "C3");
+        });
+
+        try (XlsxRecordReader reader = XlsxRecordReader.abrir(archivo)) {
+            assertEquals(List.of(
+                List.of("nombre", "ceco"),
+                List.of("IT", "C1"),
+                List.of("Finanzas", "C2"),
+                List.of("Ventas", "C3")), leerTodo(reader));
+            assertTrue(reader.getAdvertencias().isEmpty(), reader.getAdvertencias()::toString);
+        }
+    }
+
+    @Test
+    void hojaConOtroEncabezadoSeOmite() throws IOException {
+        Path archivo = libro(libro -> {
+            Sheet datos = libro.createSheet("Datos");
+            fila(datos, 1, "nombre", "ceco");
+            fila(datos, 2, "IT", "C1");
+            Sheet instrucciones = libro.createSheet("Instrucciones");
+            fila(instrucciones, 1, "Llene una fila por departamento");
+            fila(instrucciones, 2, "No cambie el encabezado");
+            Sheet mas = libro.createSheet("Más");
+            fila(mas, 3, "nombre", "ceco");
+            fila(mas, 4, "Ventas", "C3");
+        });
+
+        try (XlsxRecordReader reader = XlsxRecordReader.abrir(archivo)) {
+            assertEquals(List.of(List.of("nombre", "ceco"), List.of("IT", "C1"), List.of("Ventas", "C3")), leerTodo(reader));
+            assertEquals(1, reader.getAdvertencias().size());
+            assertTrue(reader.getAdvertencias().get(0).contains("'Instrucciones'"), reader.getAdvertencias().get(0));
+        }
+    }
+
+    @Test
+    void filasEnBlancoIntermediasSeConservanYLasFinalesNo() throws IOException {
+        Path archivo = libro(libro -> {
+            Sheet datos = libro.createSheet("Datos");
+            // Filas en blanco antes del encabezado: no cuentan
+            fila(datos, 2, "");
+            fila(datos, 3, "nombre", "ceco");
+            fila(datos, 4, "IT", "C1");
+            // Fila 5 sin elemento <row>, fila 6 con una celda vacía y fila 7 con solo espacios
+            fila(datos, 6, "");
+            fila(datos, 7, "   ", null);
+            fila(datos, 8, "Finanzas", "C2");
+            fila(datos, 9, "", "");
+            fila(datos, 12, "");
+            Sheet mas = libro.createSheet("Más");
+            fila(mas, 1, "nombre", "ceco");
+            fila(mas, 2, "");
+            fila(mas, 3, "Ventas", "C3");
+            fila(mas, 4, "");
+        });
+
+        try (XlsxRecordReader reader = XlsxRecordReader.abrir(archivo)) {
+            assertEquals(List.of(
+                List.of("nombre", "ceco"),
+                List.of("IT", "C1"),
+                List.of(), List.of(), List.of(),
+                List.of("Finanzas", "C2"),
+                List.of(),
+                List.of("Ventas", "C3")), leerTodo(reader));
+        }
+    }
+
+    @Test
+    void valoresConFormatoYColumnasSeleccionadas() throws IOException {
+        Path archivo = libro(libro -> {
+            Sheet datos = libro.createSheet("Datos");
+            fila(datos, 1, "ceco", "monto", "activo", "notas");
+            fila(datos, 2, "C1", 100000, true, "x");
+            fila(datos, 3, "C2", 1234.5);
+            fila(datos, 4, null, null, false);
+        });
+
+        try (XlsxRecordReader reader = XlsxRecordReader.abrir(archivo)) {
+            assertArrayEquals(new String[] {"ceco", "monto", "activo", "notas"}, reader.leerRegistro());
+            reader.seleccionar(0, 1, 2);
+            assertArrayEquals(new String[] {"C1", "100000", "TRUE", null}, reader.leerRegistro());
+            // Las celdas que faltan hasta el ancho del encabezado vienen como "" (o null si no se eligieron)
+            assertArrayEquals(new String[] {"C2", "1234.5", "", null}, reader.leerRegistro());
+            assertArrayEquals(new String[] {"", "", "FALSE", null}, reader.leerRegistro());
+            assertEquals(null, reader.leerRegistro());
+        }
+    }
+
+    @Test
+    void leeUnFlujoComoElArchivoSubido() throws IOException {
+        Path archivo = libro(libro -> {
+            Sheet datos = libro.createSheet("Datos");
+            fila(datos, 1, "nombre");
+            fila(datos, 2, "IT");
+        });
+
+        try (RecordReader reader = RecordReader.leer(new ByteArrayInputStream(Files.readAllBytes(archivo)), "Departamentos.XLSX")) {
+            assertTrue(reader instanceof XlsxRecordReader);
+            assertEquals(List.of(List.of("nombre"), List.of("IT")), leerTodo(reader));
+        }
+    }
+
+    @Test
+    void archivoQueNoEsLibroEsError() {
+        assertThrows(IOException.class,
+            () -> XlsxRecordReader.leer(new ByteArrayInputStream("nombre,ceco\nIT,C1\n".getBytes())));
+    }
+
+    private interface Contenido {
+        void escribir(XSSFWorkbook libro);
+    }
+
+    private Path libro(Contenido contenido) throws IOException {
+        Path archivo = Files.createTempFile(tmp, "catalogo", ".xlsx");
+        try (XSSFWorkbook libro = new XSSFWorkbook(); OutputStream out = Files.newOutputStream(archivo)) {
+            contenido.escribir(libro);
+            libro.write(out);
+        }
+        return archivo;
+    }
+
+    /**
+     * Fila con número de Excel (desde 1). Un valor null no crea la celda; "" crea una celda vacía.
+     */
+    private static void fila(Sheet hoja, int numero, Object... valores) {
+        Row row = hoja.createRow(numero - 1);
+        for (int i = 0; i < valores.length; i++) {
+            Object valor = valores[i];
+            if (valor == null) {
+                continue;
+            }
+            if ("".equals(valor)) {
+                row.createCell(i);
+            } else if (valor instanceof Number) {
+                row.createCell(i).setCellValue(((Number) valor).doubleValue());
+            } else if (valor instanceof Boolean) {
+                row.createCell(i).setCellValue((Boolean) valor);
+            } else {
+                row.createCell(i).setCellValue(valor.toString());
+            }
+        }
+    }
+
+    private static List<List<String>> leerTodo(RecordReader reader) throws IOException {
+        List<List<String>> registros = new ArrayList<>();
+        String[] registro;
+        while ((registro = reader.leerRegistro()) != null) {
+            registros.add(Arrays.asList(registro));
+        }
+        return registros;
+    }
+}